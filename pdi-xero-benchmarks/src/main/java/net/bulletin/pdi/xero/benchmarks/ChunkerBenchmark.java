@@ -0,0 +1,98 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.bulletin.pdi.xero.benchmarks;
+
+import net.bulletin.pdi.xero.step.XeroGetStepMeta;
+import net.bulletin.pdi.xero.step.support.XMLChunker;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>This benchmark measures how quickly chunks can be pulled from a chunker over payloads of
+ * different sizes, with different sizes of chunk (line items per invoice) and depths of nesting
+ * inside each chunk.  Each operation is a single chunk so that, when run with the
+ * <code>-prof gc</code> profiler, the <code>gc.alloc.rate.norm</code> figure is the bytes
+ * allocated per chunk.  When the chunker reaches the end of the payload, it is re-opened.</p>
+ *
+ * <p>The full matrix of parameters takes a long time to run; use <code>-p</code> to restrict
+ * it.  For example;</p>
+ *
+ * <pre>java -jar benchmarks.jar ChunkerBenchmark -p payloadBytes=1048576 -p chunking=STAX -prof gc</pre>
+ *
+ * @author Andrew Lindesay
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx1g"})
+public class ChunkerBenchmark {
+
+    @Param({"1048576", "16777216", "268435456", "1073741824"})
+    public long payloadBytes;
+
+    @Param({"1", "8", "64"})
+    public int lineItemsPerInvoice;
+
+    @Param({"0", "16"})
+    public int extraNestingDepth;
+
+    @Param({"STAX", "BYTE_RANGE"})
+    public XeroGetStepMeta.Chunking chunking;
+
+    private XeroPayload payload;
+
+    private XMLChunker xmlChunker;
+
+    @Setup(Level.Trial)
+    public void setupPayload() throws Exception {
+        payload = new XeroPayload(payloadBytes, lineItemsPerInvoice, extraNestingDepth);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownPayload() {
+        payload.delete();
+    }
+
+    @Setup(Level.Iteration)
+    public void setupXmlChunker() throws Exception {
+        xmlChunker = payload.openXmlChunker(chunking);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDownXmlChunker() throws Exception {
+        xmlChunker.close();
+    }
+
+    @Benchmark
+    public String pullNextXmlChunk() throws Exception {
+        String xml = xmlChunker.pullNextXmlChunk();
+
+        if (null == xml) {
+            xmlChunker.close();
+            xmlChunker = payload.openXmlChunker(chunking);
+            xml = xmlChunker.pullNextXmlChunk();
+        }
+
+        return xml;
+    }
+
+}
@@ -0,0 +1,156 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.bulletin.pdi.xero.benchmarks;
+
+import net.bulletin.pdi.xero.step.support.ElementPath;
+import net.bulletin.pdi.xero.step.support.ElementPathMatcher;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Stack;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>This benchmark compares the original approach of tracking the current element path with a
+ * pair of {@link Stack}s against the {@link ElementPathMatcher}.  The element events are read
+ * from a synthetic response ahead of time so that only the cost of tracking the path is
+ * measured and not the cost of parsing.  Each invocation processes all of the events so the
+ * reported throughput is in element events per second.</p>
+ *
+ * @author Andrew Lindesay
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ElementPathBenchmark {
+
+    /**
+     * <p>This needs to be a compile-time constant for the {@link OperationsPerInvocation}.</p>
+     */
+
+    private final static int EVENTS = 1000000;
+
+    /**
+     * <p>The local names of elements being started or null where the element is being ended.</p>
+     */
+
+    private String[] events;
+
+    private Stack<String> expectedContainerElementsStack;
+
+    private ElementPath expectedContainerElementPath;
+
+    @Setup
+    public void setup() throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        new XeroPayloadGenerator().write(outputStream, 64 * 1024 * 1024);
+
+        XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(
+                new ByteArrayInputStream(outputStream.toByteArray()));
+        List<String> recorded = new ArrayList<String>();
+
+        while (reader.hasNext() && recorded.size() < EVENTS) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    recorded.add(reader.getLocalName());
+                    break;
+
+                case XMLStreamConstants.END_ELEMENT:
+                    recorded.add(null);
+                    break;
+            }
+        }
+
+        reader.close();
+
+        if (recorded.size() < EVENTS) {
+            throw new IllegalStateException("the synthetic response did not have enough events");
+        }
+
+        events = recorded.toArray(new String[recorded.size()]);
+
+        expectedContainerElementsStack = new Stack<String>();
+        String[] containerElements = XeroPayloadGenerator.CONTAINER_ELEMENTS.split("/");
+
+        for (String containerElement : containerElements) {
+            expectedContainerElementsStack.push(containerElement);
+        }
+
+        expectedContainerElementPath = new ElementPath(containerElements);
+    }
+
+    /**
+     * <p>This is the approach that was taken before the {@link ElementPathMatcher}.</p>
+     */
+
+    private static boolean actualElementStackHasExpectedElements(Stack<String> actual, Stack<String> expected) {
+        if (actual.size() < expected.size()) {
+            return false;
+        }
+
+        for (int i = 0; i < expected.size(); i++) {
+            if (!actual.get(i).equals(expected.get(i))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public void stack(Blackhole blackhole) {
+        Stack<String> elementStack = new Stack<String>();
+
+        for (String event : events) {
+            if (null == event) {
+                elementStack.pop();
+            } else {
+                elementStack.push(event);
+                blackhole.consume(actualElementStackHasExpectedElements(elementStack, expectedContainerElementsStack));
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public void matcher(Blackhole blackhole) {
+        ElementPathMatcher matcher = new ElementPathMatcher(expectedContainerElementPath);
+
+        for (String event : events) {
+            if (null == event) {
+                matcher.pop();
+            } else {
+                matcher.push(event);
+                blackhole.consume(matcher.isMatched());
+            }
+        }
+    }
+
+}
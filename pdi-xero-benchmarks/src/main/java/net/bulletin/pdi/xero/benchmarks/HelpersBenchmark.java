@@ -0,0 +1,52 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.bulletin.pdi.xero.benchmarks;
+
+import net.bulletin.pdi.xero.step.support.Helpers;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>This benchmark measures the assembly of the query on a Xero API URL.</p>
+ *
+ * @author Andrew Lindesay
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HelpersBenchmark {
+
+    private final static String URL = "https://api.xero.com/api.xro/2.0/Invoices";
+
+    @Param({"Status==\"AUTHORISED\"", "Status==\"AUTHORISED\" AND Date>=DateTime(2015, 01, 01) AND Contact.Name.Contains(\"Ltd & Co\")"})
+    public String where;
+
+    @Benchmark
+    public String appendUrlQuery() {
+        StringBuilder url = new StringBuilder(URL);
+        Helpers.appendUrlQuery(url, "where", where);
+        Helpers.appendUrlQuery(url, "page", "12");
+        return url.toString();
+    }
+
+}
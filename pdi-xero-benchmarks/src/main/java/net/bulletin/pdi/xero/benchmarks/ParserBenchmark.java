@@ -0,0 +1,91 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.bulletin.pdi.xero.benchmarks;
+
+import net.bulletin.pdi.xero.step.XeroGetStepMeta;
+import net.bulletin.pdi.xero.step.support.XMLChunker;
+import net.bulletin.pdi.xero.step.support.XMLParserBackend;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>This benchmark compares the StAX parsers that the step is able to use by measuring how
+ * quickly chunks can be pulled with the StAX chunking over payloads of different sizes.  Each
+ * operation is a single chunk.  A parser that is not on the classpath fails its trial.</p>
+ *
+ * <pre>java -jar benchmarks.jar ParserBenchmark -p payloadBytes=16777216 -prof gc</pre>
+ *
+ * @author Andrew Lindesay
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx1g"})
+public class ParserBenchmark {
+
+    @Param({"1048576", "16777216", "268435456"})
+    public long payloadBytes;
+
+    @Param({"8"})
+    public int lineItemsPerInvoice;
+
+    @Param({"JDK", "WOODSTOX", "AALTO"})
+    public XMLParserBackend parser;
+
+    private XeroPayload payload;
+
+    private XMLChunker xmlChunker;
+
+    @Setup(Level.Trial)
+    public void setupPayload() throws Exception {
+        payload = new XeroPayload(payloadBytes, lineItemsPerInvoice, 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownPayload() {
+        payload.delete();
+    }
+
+    @Setup(Level.Iteration)
+    public void setupXmlChunker() throws Exception {
+        xmlChunker = payload.openXmlChunker(XeroGetStepMeta.Chunking.STAX, parser);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDownXmlChunker() throws Exception {
+        xmlChunker.close();
+    }
+
+    @Benchmark
+    public String pullNextXmlChunk() throws Exception {
+        String xml = xmlChunker.pullNextXmlChunk();
+
+        if (null == xml) {
+            xmlChunker.close();
+            xmlChunker = payload.openXmlChunker(XeroGetStepMeta.Chunking.STAX, parser);
+            xml = xmlChunker.pullNextXmlChunk();
+        }
+
+        return xml;
+    }
+
+}
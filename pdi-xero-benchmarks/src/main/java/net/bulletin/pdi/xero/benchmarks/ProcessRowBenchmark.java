@@ -0,0 +1,111 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.bulletin.pdi.xero.benchmarks;
+
+import net.bulletin.pdi.xero.step.XeroGetStep;
+import net.bulletin.pdi.xero.step.XeroGetStepData;
+import net.bulletin.pdi.xero.step.XeroGetStepMeta;
+import org.openjdk.jmh.annotations.*;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.exception.KettleStepException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.StepMeta;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>This benchmark measures {@link XeroGetStep#processRow} emitting rows from a synthetic
+ * payload.  Rather than connecting to Xero, the chunker is supplied directly on the step data and
+ * the rows that would be put into the stream are discarded.  Each operation is one row.</p>
+ *
+ * @author Andrew Lindesay
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ProcessRowBenchmark {
+
+    @Param({"1048576", "16777216"})
+    public long payloadBytes;
+
+    @Param({"STAX", "BYTE_RANGE"})
+    public XeroGetStepMeta.Chunking chunking;
+
+    private XeroPayload payload;
+
+    private XeroGetStepMeta meta;
+
+    private XeroGetStepData data;
+
+    private XeroGetStep step;
+
+    /**
+     * <p>The last row is retained here so that the row is not optimized away.</p>
+     */
+
+    private volatile Object[] lastRow;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        KettleEnvironment.init(false);
+
+        payload = new XeroPayload(payloadBytes, 4, 0);
+
+        meta = new XeroGetStepMeta();
+        meta.setDefault();
+        meta.setChunking(chunking);
+
+        TransMeta transMeta = new TransMeta();
+        StepMeta stepMeta = new StepMeta("xero", meta);
+        transMeta.addStep(stepMeta);
+
+        data = new XeroGetStepData();
+        data.setXmlChunker(payload.openXmlChunker(chunking));
+
+        step = new XeroGetStep(stepMeta, data, 0, transMeta, new Trans(transMeta)) {
+            @Override
+            public void putRow(RowMetaInterface rowMeta, Object[] row) throws KettleStepException {
+                lastRow = row;
+            }
+        };
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        data.getXmlChunker().close();
+        payload.delete();
+    }
+
+    @Benchmark
+    public Object[] processRow() throws Exception {
+        if (!step.processRow(meta, data)) {
+            data.getXmlChunker().close();
+            data.setXmlChunker(payload.openXmlChunker(chunking));
+            step.processRow(meta, data);
+        }
+
+        return lastRow;
+    }
+
+}
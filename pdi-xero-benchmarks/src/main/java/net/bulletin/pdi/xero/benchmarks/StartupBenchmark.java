@@ -0,0 +1,102 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.bulletin.pdi.xero.benchmarks;
+
+import net.bulletin.pdi.xero.step.support.ElementPath;
+import net.bulletin.pdi.xero.step.support.XMLChunker;
+import net.bulletin.pdi.xero.step.support.XMLChunkerImpl;
+import net.bulletin.pdi.xero.step.support.XMLFactories;
+import net.bulletin.pdi.xero.step.support.XMLParserBackend;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>This benchmark measures the cost of a single short poll of Xero; obtaining the StAX
+ * factories and then chunking a small response.  When the factories are not shared, each poll
+ * has to find them on the classpath again as the step did before the factories were shared.
+ * The search is slower still inside the class loader of a PDI plugin than it is here.</p>
+ *
+ * <pre>java -jar benchmarks.jar StartupBenchmark</pre>
+ *
+ * @author Andrew Lindesay
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StartupBenchmark {
+
+    private final static ElementPath CONTAINER_ELEMENT_PATH =
+            new ElementPath(XeroPayloadGenerator.CONTAINER_ELEMENTS.split("/"));
+
+    @Param({"16384"})
+    public long payloadBytes;
+
+    @Param({"true", "false"})
+    public boolean shared;
+
+    private XeroPayload payload;
+
+    @Setup(Level.Trial)
+    public void setupPayload() throws Exception {
+        payload = new XeroPayload(payloadBytes, 8, 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownPayload() {
+        payload.delete();
+    }
+
+    @Benchmark
+    public void poll(Blackhole blackhole) throws Exception {
+        XMLInputFactory xmlInputFactory;
+
+        if (shared) {
+            xmlInputFactory = XMLFactories.getXMLInputFactory(XMLParserBackend.DEFAULT);
+            blackhole.consume(XMLFactories.getXMLOutputFactory());
+        } else {
+            xmlInputFactory = XMLInputFactory.newInstance();
+            blackhole.consume(XMLOutputFactory.newInstance());
+        }
+
+        InputStream inputStream = payload.openInputStream();
+        XMLChunker xmlChunker = new XMLChunkerImpl(
+                xmlInputFactory.createXMLStreamReader(inputStream),
+                CONTAINER_ELEMENT_PATH,
+                inputStream);
+
+        try {
+            String xml;
+
+            while (null != (xml = xmlChunker.pullNextXmlChunk())) {
+                blackhole.consume(xml);
+            }
+        } finally {
+            xmlChunker.close();
+        }
+    }
+
+}
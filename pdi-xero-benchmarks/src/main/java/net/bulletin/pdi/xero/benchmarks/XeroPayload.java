@@ -0,0 +1,118 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.bulletin.pdi.xero.benchmarks;
+
+import net.bulletin.pdi.xero.step.XeroGetStepMeta;
+import net.bulletin.pdi.xero.step.support.ByteRangeXMLChunker;
+import net.bulletin.pdi.xero.step.support.ElementPath;
+import net.bulletin.pdi.xero.step.support.XMLChunker;
+import net.bulletin.pdi.xero.step.support.XMLChunkerImpl;
+import net.bulletin.pdi.xero.step.support.XMLFactories;
+import net.bulletin.pdi.xero.step.support.XMLParserBackend;
+
+import java.io.*;
+
+/**
+ * <p>This is a synthetic Xero response that the benchmarks read from.  Small payloads are held in
+ * memory, but larger ones are written to a temporary file so that the benchmarks are able to run
+ * with a modest heap.</p>
+ *
+ * @author Andrew Lindesay
+ */
+
+public class XeroPayload {
+
+    private final static long LIMIT_IN_MEMORY_BYTES = 64 * 1024 * 1024;
+
+    private final static ElementPath CONTAINER_ELEMENT_PATH =
+            new ElementPath(XeroPayloadGenerator.CONTAINER_ELEMENTS.split("/"));
+
+    private byte[] data;
+
+    private File file;
+
+    private int invoiceCount;
+
+    public XeroPayload(long targetBytes, int lineItemsPerInvoice, int extraNestingDepth) throws IOException {
+        XeroPayloadGenerator generator = new XeroPayloadGenerator();
+        generator.setLineItemsPerInvoice(lineItemsPerInvoice);
+        generator.setExtraNestingDepth(extraNestingDepth);
+
+        if (targetBytes <= LIMIT_IN_MEMORY_BYTES) {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream((int) targetBytes + 4096);
+            invoiceCount = generator.write(outputStream, targetBytes);
+            data = outputStream.toByteArray();
+        } else {
+            file = File.createTempFile("pdi-xero-benchmark-", ".xml");
+            file.deleteOnExit();
+            OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(file));
+
+            try {
+                invoiceCount = generator.write(outputStream, targetBytes);
+            } finally {
+                outputStream.close();
+            }
+        }
+    }
+
+    /**
+     * @return the number of chunks that a chunker should produce from this payload.
+     */
+
+    public int getInvoiceCount() {
+        return invoiceCount;
+    }
+
+    public InputStream openInputStream() throws IOException {
+        if (null != data) {
+            return new ByteArrayInputStream(data);
+        }
+
+        return new BufferedInputStream(new FileInputStream(file), 64 * 1024);
+    }
+
+    public XMLChunker openXmlChunker(XeroGetStepMeta.Chunking chunking) throws Exception {
+        return openXmlChunker(chunking, XMLParserBackend.DEFAULT);
+    }
+
+    /**
+     * <p>The parser only applies to the StAX chunking.</p>
+     */
+
+    public XMLChunker openXmlChunker(XeroGetStepMeta.Chunking chunking, XMLParserBackend parser) throws Exception {
+        InputStream inputStream = openInputStream();
+
+        switch (chunking) {
+            case BYTE_RANGE:
+                return new ByteRangeXMLChunker(inputStream, CONTAINER_ELEMENT_PATH);
+
+            default:
+                return new XMLChunkerImpl(
+                        XMLFactories.getXMLInputFactory(parser).createXMLStreamReader(inputStream),
+                        CONTAINER_ELEMENT_PATH,
+                        inputStream);
+        }
+    }
+
+    public void delete() {
+        if (null != file && !file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+}
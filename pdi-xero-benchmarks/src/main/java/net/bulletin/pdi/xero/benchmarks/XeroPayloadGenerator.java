@@ -0,0 +1,207 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.bulletin.pdi.xero.benchmarks;
+
+import org.apache.commons.lang.CharEncoding;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.UUID;
+
+/**
+ * <p>This produces a synthetic response from the Xero API that is shaped like a list of invoices
+ * with their line items.  It is not intended to be a faithful reproduction of an invoice; only to
+ * have the same sort of mix of elements, nesting and text as a real response so that the chunkers
+ * can be measured against a payload of a known size.</p>
+ *
+ * @author Andrew Lindesay
+ */
+
+public class XeroPayloadGenerator {
+
+    public final static String CONTAINER_ELEMENTS = "Response/Invoices/Invoice";
+
+    private int lineItemsPerInvoice = 4;
+
+    /**
+     * <p>This is the number of additional elements that are nested inside each line item in order
+     * to simulate more deeply structured data.</p>
+     */
+
+    private int extraNestingDepth = 0;
+
+    public int getLineItemsPerInvoice() {
+        return lineItemsPerInvoice;
+    }
+
+    public void setLineItemsPerInvoice(int lineItemsPerInvoice) {
+        this.lineItemsPerInvoice = lineItemsPerInvoice;
+    }
+
+    public int getExtraNestingDepth() {
+        return extraNestingDepth;
+    }
+
+    public void setExtraNestingDepth(int extraNestingDepth) {
+        this.extraNestingDepth = extraNestingDepth;
+    }
+
+    private void writeElement(Writer writer, String name, String value) throws IOException {
+        writer.write('<');
+        writer.write(name);
+        writer.write('>');
+        writer.write(value);
+        writer.write("</");
+        writer.write(name);
+        writer.write('>');
+    }
+
+    private void writeLineItem(Writer writer, int index) throws IOException {
+        writer.write("<LineItem>");
+        writeElement(writer, "Description", "Consulting services &amp; expenses for item " + index);
+        writeElement(writer, "UnitAmount", Integer.toString(100 + (index % 900)) + ".00");
+        writeElement(writer, "TaxType", "OUTPUT2");
+        writeElement(writer, "TaxAmount", "15.00");
+        writeElement(writer, "LineAmount", "115.00");
+        writeElement(writer, "AccountCode", "200");
+        writeElement(writer, "Quantity", "1.0000");
+        writeElement(writer, "LineItemID", UUID.nameUUIDFromBytes(Integer.toString(index).getBytes()).toString());
+
+        if (extraNestingDepth > 0) {
+            writer.write("<Tracking>");
+
+            for (int i = 0; i < extraNestingDepth; i++) {
+                writer.write("<TrackingCategory>");
+                writeElement(writer, "Name", "Region");
+                writeElement(writer, "Option", "North");
+            }
+
+            for (int i = 0; i < extraNestingDepth; i++) {
+                writer.write("</TrackingCategory>");
+            }
+
+            writer.write("</Tracking>");
+        }
+
+        writer.write("</LineItem>");
+    }
+
+    private void writeInvoice(Writer writer, int index, String dateString) throws IOException {
+        writer.write("<Invoice>");
+        writeElement(writer, "Type", "ACCREC");
+        writer.write("<Contact>");
+        writeElement(writer, "ContactID", UUID.nameUUIDFromBytes(Integer.toString(index % 50).getBytes()).toString());
+        writeElement(writer, "Name", "Customer " + (index % 50));
+        writer.write("</Contact>");
+        writeElement(writer, "Date", dateString);
+        writeElement(writer, "DueDate", dateString);
+        writeElement(writer, "Status", "AUTHORISED");
+        writeElement(writer, "LineAmountTypes", "Exclusive");
+        writer.write("<LineItems>");
+
+        for (int i = 0; i < lineItemsPerInvoice; i++) {
+            writeLineItem(writer, index * lineItemsPerInvoice + i);
+        }
+
+        writer.write("</LineItems>");
+        writeElement(writer, "SubTotal", "400.00");
+        writeElement(writer, "TotalTax", "60.00");
+        writeElement(writer, "Total", "460.00");
+        writeElement(writer, "UpdatedDateUTC", dateString);
+        writeElement(writer, "CurrencyCode", "NZD");
+        writeElement(writer, "InvoiceID", UUID.nameUUIDFromBytes(("i" + index).getBytes()).toString());
+        writeElement(writer, "InvoiceNumber", "INV-" + index);
+        writer.write("</Invoice>");
+    }
+
+    /**
+     * <p>Writes invoices into the output stream until at least the target number of bytes have
+     * been written.</p>
+     *
+     * @return the number of invoices that were written.
+     */
+
+    public int write(OutputStream outputStream, long targetBytes) throws IOException {
+        CountingOutputStream countingOutputStream = new CountingOutputStream(outputStream);
+        Writer writer = new OutputStreamWriter(countingOutputStream, CharEncoding.UTF_8);
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss", Locale.ENGLISH);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        String dateString = dateFormat.format(new Date(1420070400000L));
+        int count = 0;
+
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<Response xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">");
+        writeElement(writer, "Id", UUID.nameUUIDFromBytes("response".getBytes()).toString());
+        writeElement(writer, "Status", "OK");
+        writeElement(writer, "ProviderName", "Benchmark");
+        writeElement(writer, "DateTimeUTC", dateString);
+        writer.write("<Invoices>");
+
+        while (countingOutputStream.getCount() < targetBytes) {
+            writeInvoice(writer, count++, dateString);
+
+            if (0 == count % 100) {
+                writer.flush();
+            }
+        }
+
+        writer.write("</Invoices></Response>");
+        writer.flush();
+
+        return count;
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+
+        private final OutputStream delegate;
+
+        private long count = 0;
+
+        CountingOutputStream(OutputStream delegate) {
+            this.delegate = delegate;
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            delegate.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            delegate.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            delegate.flush();
+        }
+
+    }
+
+}
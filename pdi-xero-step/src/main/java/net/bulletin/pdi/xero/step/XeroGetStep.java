@@ -16,26 +16,56 @@
 
 package net.bulletin.pdi.xero.step;
 
+import net.bulletin.pdi.xero.step.support.ByteRangeXMLChunker;
+import net.bulletin.pdi.xero.step.support.ChangeIndex;
+import net.bulletin.pdi.xero.step.support.ChunkSpill;
+import net.bulletin.pdi.xero.step.support.DeferredXMLChunker;
+import net.bulletin.pdi.xero.step.support.ElementPath;
 import net.bulletin.pdi.xero.step.support.Helpers;
+import net.bulletin.pdi.xero.step.support.IdBatches;
+import net.bulletin.pdi.xero.step.support.JSONChunker;
+import net.bulletin.pdi.xero.step.support.PageCoordinator;
+import net.bulletin.pdi.xero.step.support.PagingXMLChunker;
+import net.bulletin.pdi.xero.step.support.PooledHttpClient;
+import net.bulletin.pdi.xero.step.support.PrefetchingXMLChunker;
+import net.bulletin.pdi.xero.step.support.ResponseCache;
+import net.bulletin.pdi.xero.step.support.ResponseCapture;
+import net.bulletin.pdi.xero.step.support.TenantTaggingXMLChunker;
+import net.bulletin.pdi.xero.step.support.WatermarkFile;
+import net.bulletin.pdi.xero.step.support.WorkUnitXMLChunker;
+import net.bulletin.pdi.xero.step.support.XMLChunk;
 import net.bulletin.pdi.xero.step.support.XMLChunker;
 import net.bulletin.pdi.xero.step.support.XMLChunkerImpl;
+import net.bulletin.pdi.xero.step.support.XMLChunkerPageProvider;
+import net.bulletin.pdi.xero.step.support.XMLChunkerProvider;
+import net.bulletin.pdi.xero.step.support.XMLChunkerWorkUnitProvider;
+import net.bulletin.pdi.xero.step.support.XMLFactories;
+import net.bulletin.pdi.xero.step.support.XXHash64;
+import net.bulletin.pdi.xero.step.support.XeroAccessorCache;
+import net.bulletin.pdi.xero.step.support.XeroGetRequest;
+import net.bulletin.pdi.xero.step.support.XeroGetStepMetrics;
+import net.bulletin.pdi.xero.step.support.XeroRequestScheduler;
 import net.oauth.*;
-import net.oauth.client.OAuthClient;
-import net.oauth.client.URLConnectionClient;
-import net.oauth.signature.RSA_SHA1;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.CharEncoding;
 import org.apache.commons.lang.StringUtils;
 import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleValueException;
 import org.pentaho.di.core.row.RowDataUtil;
-import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.job.Job;
 import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransAdapter;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.step.*;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
 import javax.xml.stream.*;
+import java.lang.management.ManagementFactory;
 import java.io.*;
+import java.net.HttpURLConnection;
 import java.net.URISyntaxException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -74,7 +104,45 @@ public class XeroGetStep extends BaseStep implements StepInterface {
 
     private static final String FORMAT_TIMESTAMP_INPUT = "yyyy-MM-dd HH:mm:ss";
 
-    private XMLChunker xmlChunker;
+    /**
+     * <p>The metrics and, when the chunks are being prefetched, the state of the prefetch queue
+     * are logged at the detailed level each time this many rows have been output.</p>
+     */
+
+    private static final long LOG_INTERVAL_ROWS = 10000;
+
+    /**
+     * <p>The metrics of each copy of the step are registered with JMX in this domain.</p>
+     */
+
+    private static final String JMX_DOMAIN = "net.bulletin.pdi.xero";
+
+    /**
+     * <p>When fetching for many tenants or many batches of ids, the chunks from all of them are
+     * merged into a queue of this depth unless a prefetch queue depth is configured.</p>
+     */
+
+    private static final int DEFAULT_WORK_UNIT_QUEUE_DEPTH = 1000;
+
+    /**
+     * <p>This error code is used when a tenant is sent to the error stream.</p>
+     */
+
+    private static final String ERROR_CODE_TENANT = "XERO-TENANT";
+
+    /**
+     * <p>This error code is used when the input rows of a batch of ids are sent to the error
+     * stream.</p>
+     */
+
+    private static final String ERROR_CODE_ID = "XERO-ID";
+
+    /**
+     * <p>When a watermark is configured, the value of this element in each chunk is tracked so
+     * that the latest can be stored as the watermark once the transformation has succeeded.</p>
+     */
+
+    private static final ElementPath FIELD_PATH_WATERMARK = new ElementPath(new String[] { "UpdatedDateUTC" });
 
     public XeroGetStep(
             StepMeta stepMeta,
@@ -85,168 +153,1142 @@ public class XeroGetStep extends BaseStep implements StepInterface {
         super(stepMeta, stepDataInterface, copyNr, transMeta, dis);
     }
 
-    @Override
-    public boolean init(StepMetaInterface smi, StepDataInterface sdi) {
-        XeroGetStepMeta meta = (XeroGetStepMeta) smi;
-        XeroGetStepData data = (XeroGetStepData) sdi;
-        boolean result = false;
+    @Override
+    public boolean init(StepMetaInterface smi, StepDataInterface sdi) {
+        final XeroGetStepMeta meta = (XeroGetStepMeta) smi;
+        final XeroGetStepData data = (XeroGetStepData) sdi;
+        boolean result = false;
+
+        try {
+            if (XeroGetStepMeta.Format.JSON == meta.getFormat() && isWatermarkConfigured(meta)) {
+                throw new KettleException("a watermark cannot be used with the json format");
+            }
+
+            final ElementPath containerElementPath = getContainerElementPath(meta);
+            final ElementPath[] fieldPaths = getFieldPaths(meta);
+
+            data.setAccept(XeroGetStepMeta.Format.JSON == meta.getFormat() ? "application/json" : "text/xml");
+            data.setJson(XeroGetStepMeta.Format.JSON == meta.getFormat());
+            data.setOutputFieldCount(meta.getOutputFields().size());
+            data.setChildContainerPaths(getChildContainerPaths(meta, containerElementPath));
+            data.setRateLimitPerMinute(parseInteger(meta.getRateLimitPerMinute(), "rate limit per minute", 1));
+            data.setRateLimitPerDay(parseInteger(meta.getRateLimitPerDay(), "rate limit per day", 1));
+            data.setMaxRetries(parseInteger(meta.getMaxRetries(), "maximum retries", 0));
+            data.setHttpClient(PooledHttpClient.getInstance(
+                    parsePositiveInteger(meta.getConnectionPoolSize(), "connection pool size"),
+                    parsePositiveInteger(meta.getConnectionIdleSeconds(), "connection idle seconds")));
+            configureResponseCache(meta, data);
+            configureResponseCapture(meta, data);
+            configureChunkSpill(meta, data);
+            configureParser(meta);
+            configureChangeIndex(meta, data, fieldPaths);
+            registerMetrics(data);
+
+            // when fetching by id, the ids are only known once the input rows are read.
+
+            if (meta.isFetchingByIds()) {
+                if (meta.isTenanted()) {
+                    throw new KettleException("ids and tenants cannot both be supplied as input rows");
+                }
+
+                if (isWatermarkConfigured(meta)) {
+                    throw new KettleException("a watermark cannot be used when fetching by id");
+                }
+
+                data.setIdFieldIndex(meta.getOutputFields().size());
+                return super.init(smi, sdi);
+            }
+
+            // when tenanted, the tenants are only known once the input rows are read.
+
+            if (meta.isTenanted()) {
+                if (isWatermarkConfigured(meta)) {
+                    throw new KettleException("a watermark cannot be used when fetching for many tenants");
+                }
+
+                return super.init(smi, sdi);
+            }
+
+            final OAuthAccessor accessor = createXeroAccessor(
+                    meta.getAuthenticationConsumerKey(),
+                    meta.getAuthenticationKeyFile());
+            final String url = createXeroUrl(meta, meta.getUrl());
+            final String ifModifiedSinceHeaderValue = createIfModifiedSinceHeaderValue(meta);
+
+            // a replay does not move the watermark on because nothing new has been fetched.
+
+            if (isWatermarkConfigured(meta)) {
+                data.setWatermarkFieldIndex(meta.getOutputFields().size());
+
+                if (!meta.isReplay()) {
+                    registerWatermarkCommit(meta, data);
+                }
+            }
+
+            // when there are a number of copies of the step, the copies share out the pages between
+            // them.  A request that is not paged is not able to be shared out.
+
+            int copies = getStepMeta().getCopies();
+
+            if (meta.isPaging()) {
+                PageCoordinator pageCoordinator = new PageCoordinator();
+
+                if (copies > 1) {
+                    pageCoordinator = PageCoordinator.acquire(getTrans(), getStepname());
+                    data.setPageCoordinatorShared(true);
+                    logBasic("copy " + getCopy() + " will share the pages with " + (copies - 1) + " other copies");
+                }
+
+                data.setXmlChunker(createPagingXmlChunker(
+                        meta, data, accessor, url, ifModifiedSinceHeaderValue, containerElementPath, fieldPaths, pageCoordinator));
+            } else if (getCopy() > 0) {
+                logBasic("copy " + getCopy() + " has nothing to fetch; a request that is not paged is only fetched by the first copy");
+                return super.init(smi, sdi);
+            } else {
+
+                // the request is made in the background so that the initialization of the
+                // transformation does not wait on xero; the first row waits for the response.
+
+                DeferredXMLChunker deferredXmlChunker = new DeferredXMLChunker(new XMLChunkerProvider() {
+                    @Override
+                    public XMLChunker open() throws KettleException {
+                        return createXmlChunker(
+                                meta,
+                                data,
+                                openXero(data, accessor, url, ifModifiedSinceHeaderValue),
+                                containerElementPath,
+                                fieldPaths);
+                    }
+                });
+
+                deferredXmlChunker.start();
+                data.getMetrics().setDeferredXmlChunker(deferredXmlChunker);
+                data.setXmlChunker(deferredXmlChunker);
+            }
+
+            if (StringUtils.isNotBlank(environmentSubstitute(meta.getPrefetchQueueDepth()))) {
+                int prefetchQueueDepth = parsePositiveInteger(meta.getPrefetchQueueDepth(), "prefetch queue depth");
+                PrefetchingXMLChunker prefetchingXmlChunker = new PrefetchingXMLChunker(data.getXmlChunker(), prefetchQueueDepth);
+                data.getMetrics().setPrefetchingXmlChunker(prefetchingXmlChunker);
+                data.setXmlChunker(prefetchingXmlChunker);
+                logBasic("will prefetch chunks from xero into a queue of depth " + prefetchQueueDepth);
+            }
+
+            result = true;
+        } catch (KettleException ke) {
+            logError("unable to initialize the xero step", ke);
+        }
+
+        return result && super.init(smi, sdi);
+    }
+
+    /**
+     * <p>This method may be invoked concurrently when tenants are being fetched in parallel.</p>
+     */
+
+    private XMLChunker createPagingXmlChunker(
+            final XeroGetStepMeta meta,
+            final XeroGetStepData data,
+            final OAuthAccessor accessor,
+            final String url,
+            final String ifModifiedSinceHeaderValue,
+            final ElementPath containerElementPath,
+            final ElementPath[] fieldPaths,
+            final PageCoordinator pageCoordinator) throws KettleException {
+        int pageSize = parsePositiveInteger(meta.getPageSize(), "page size");
+        int pageConcurrency = parsePositiveInteger(meta.getPageConcurrency(), "page concurrency");
+
+        logBasic("will fetch pages of " + pageSize + " from xero with a concurrency of " + pageConcurrency);
+
+        return new PagingXMLChunker(
+                new XMLChunkerPageProvider() {
+                    @Override
+                    public XMLChunker openPage(int page) throws KettleException {
+                        String pageUrl = Helpers.appendUrlQuery(
+                                new StringBuilder(url),
+                                "page",
+                                Integer.toString(page)).toString();
+                        return createXmlChunker(
+                                meta,
+                                data,
+                                openXero(data, accessor, pageUrl, ifModifiedSinceHeaderValue),
+                                containerElementPath,
+                                fieldPaths);
+                    }
+                },
+                pageSize,
+                pageConcurrency,
+                pageCoordinator);
+    }
+
+    /**
+     * <p>The tenants are read from all of the input rows and then the data for each tenant is
+     * fetched concurrently.  Any URL, consumer key or key file that is not supplied for a tenant
+     * is taken from the step's configuration.</p>
+     */
+
+    private XMLChunker createTenantXmlChunker(
+            final XeroGetStepMeta meta,
+            final XeroGetStepData data) throws KettleException {
+        final List<XeroGetStepTenant> tenants = readTenants(meta, data);
+        final ElementPath containerElementPath = getContainerElementPath(meta);
+        final ElementPath[] fieldPaths = getFieldPaths(meta);
+        final String ifModifiedSinceHeaderValue = createIfModifiedSinceHeaderValue(meta);
+        int tenantConcurrency = parsePositiveInteger(meta.getTenantConcurrency(), "tenant concurrency");
+        int queueDepth = getWorkUnitQueueDepth(meta);
+
+        logBasic("will fetch for " + tenants.size() + " tenants from xero with a concurrency of "
+                + tenantConcurrency + " into a queue of depth " + queueDepth);
+
+        return new WorkUnitXMLChunker(
+                new XMLChunkerWorkUnitProvider() {
+                    @Override
+                    public XMLChunker openWorkUnit(int workUnitIndex) throws KettleException {
+                        XeroGetStepTenant tenant = tenants.get(workUnitIndex);
+                        OAuthAccessor accessor = createXeroAccessor(
+                                null != tenant.getConsumerKey() ? tenant.getConsumerKey() : meta.getAuthenticationConsumerKey(),
+                                null != tenant.getKeyFile() ? tenant.getKeyFile() : meta.getAuthenticationKeyFile());
+                        String url = createXeroUrl(meta, null != tenant.getUrl() ? tenant.getUrl() : meta.getUrl());
+                        XMLChunker xmlChunker;
+
+                        logBasic("will fetch for the tenant; " + tenant.getId());
+
+                        if (meta.isPaging()) {
+                            xmlChunker = createPagingXmlChunker(
+                                    meta, data, accessor, url, ifModifiedSinceHeaderValue, containerElementPath, fieldPaths,
+                                    new PageCoordinator());
+                        } else {
+                            xmlChunker = createXmlChunker(
+                                    meta,
+                                    data,
+                                    openXero(data, accessor, url, ifModifiedSinceHeaderValue),
+                                    containerElementPath,
+                                    fieldPaths);
+                        }
+
+                        return new TenantTaggingXMLChunker(xmlChunker, tenant.getId());
+                    }
+
+                    @Override
+                    public void workUnitFailed(int workUnitIndex, KettleException kettleException) throws KettleException {
+                        failTenant(meta, data, tenants.get(workUnitIndex), kettleException);
+                    }
+                },
+                tenants.size(),
+                tenantConcurrency,
+                queueDepth);
+    }
+
+    private int getWorkUnitQueueDepth(XeroGetStepMeta meta) throws KettleException {
+        if (StringUtils.isNotBlank(environmentSubstitute(meta.getPrefetchQueueDepth()))) {
+            return parsePositiveInteger(meta.getPrefetchQueueDepth(), "prefetch queue depth");
+        }
+
+        return DEFAULT_WORK_UNIT_QUEUE_DEPTH;
+    }
+
+    /**
+     * <p>The ids are read from all of the input rows and are then fetched in batches using a
+     * query parameter such as "IDs".  The batches are fetched concurrently as units of work in
+     * the same way as tenants are.  An id that appears in more than one input row is only fetched
+     * once.</p>
+     *
+     * @return the chunker or null if there are no input rows.
+     */
+
+    private XMLChunker createIdXmlChunker(
+            final XeroGetStepMeta meta,
+            final XeroGetStepData data) throws KettleException {
+        final IdBatches batches = readIdBatches(meta, data);
+
+        if (0 == batches.getBatchCount()) {
+            logBasic("no ids were supplied in the input rows");
+            return null;
+        }
+
+        final ElementPath containerElementPath = getContainerElementPath(meta);
+        final ElementPath[] fieldPaths = getFieldPaths(meta);
+        final String ifModifiedSinceHeaderValue = createIfModifiedSinceHeaderValue(meta);
+        final OAuthAccessor accessor = createXeroAccessor(
+                meta.getAuthenticationConsumerKey(),
+                meta.getAuthenticationKeyFile());
+        final String url = createXeroUrl(meta, meta.getUrl());
+        final String parameter = StringUtils.trimToNull(environmentSubstitute(meta.getIdParameter()));
+        int batchConcurrency = parsePositiveInteger(meta.getIdBatchConcurrency(), "id batch concurrency");
+        int queueDepth = getWorkUnitQueueDepth(meta);
+
+        if (null == parameter) {
+            throw new KettleException("the id query parameter must be supplied");
+        }
+
+        logBasic("will fetch " + batches.getBatchCount() + " batches of ids from xero with a concurrency of "
+                + batchConcurrency + " into a queue of depth " + queueDepth);
+
+        return new WorkUnitXMLChunker(
+                new XMLChunkerWorkUnitProvider() {
+                    @Override
+                    public XMLChunker openWorkUnit(int workUnitIndex) throws KettleException {
+                        String batchUrl = batches.createBatchUrl(url, parameter, workUnitIndex);
+
+                        if (meta.isPaging()) {
+                            return createPagingXmlChunker(
+                                    meta, data, accessor, batchUrl, ifModifiedSinceHeaderValue, containerElementPath, fieldPaths,
+                                    new PageCoordinator());
+                        }
+
+                        return createXmlChunker(
+                                meta,
+                                data,
+                                openXero(data, accessor, batchUrl, ifModifiedSinceHeaderValue),
+                                containerElementPath,
+                                fieldPaths);
+                    }
+
+                    @Override
+                    public void workUnitFailed(int workUnitIndex, KettleException kettleException) throws KettleException {
+                        failIdBatch(meta, data, batches.getBatch(workUnitIndex), kettleException);
+                    }
+                },
+                batches.getBatchCount(),
+                batchConcurrency,
+                queueDepth);
+    }
+
+    /**
+     * <p>The ids are split into batches of the configured size and the input rows are kept with
+     * them so that the chunks are able to be joined back to the rows.</p>
+     */
+
+    private IdBatches readIdBatches(XeroGetStepMeta meta, XeroGetStepData data) throws KettleException {
+        IdBatches result = new IdBatches(parsePositiveInteger(meta.getIdBatchSize(), "id batch size"));
+        RowMetaInterface inputRowMeta = null;
+        int idIndex = -1;
+        int rowNumber = 0;
+        Object[] row;
+
+        while (null != (row = getRow())) {
+            rowNumber++;
+
+            if (null == inputRowMeta) {
+                inputRowMeta = getInputRowMeta();
+                idIndex = indexOfInputField(inputRowMeta, meta.getIdFieldName());
+                data.setIdRowMeta(inputRowMeta);
+            }
+
+            String id = getInputValue(inputRowMeta, row, idIndex);
+
+            if (null != id) {
+                result.add(id, row);
+            } else if (getStepMeta().isDoingErrorHandling()) {
+                putError(
+                        inputRowMeta,
+                        row,
+                        1,
+                        "the input row has no id",
+                        environmentSubstitute(meta.getIdFieldName()),
+                        ERROR_CODE_ID);
+            } else {
+                throw new KettleException("the input row " + rowNumber + " has no id");
+            }
+        }
+
+        data.setIdBatches(result);
+        return result;
+    }
+
+    /**
+     * <p>If error handling is configured for the step then the input rows for the ids of the
+     * batch are sent to the error stream and the other batches carry on.  Otherwise the failure
+     * fails the step so that the transformation does not succeed without the batch's data.</p>
+     */
+
+    private void failIdBatch(
+            XeroGetStepMeta meta,
+            XeroGetStepData data,
+            List<String> batch,
+            KettleException kettleException) throws KettleException {
+        if (getStepMeta().isDoingErrorHandling()) {
+            for (String id : batch) {
+                data.getIdBatches().markResolved(id);
+
+                for (Object[] row : data.getIdBatches().getRows(id)) {
+                    putError(
+                            data.getIdRowMeta(),
+                            row,
+                            1,
+                            kettleException.getMessage(),
+                            environmentSubstitute(meta.getIdFieldName()),
+                            ERROR_CODE_ID);
+                }
+            }
+        } else {
+            throw new KettleException("unable to fetch the batch of ids; " + StringUtils.join(batch, ','), kettleException);
+        }
+    }
+
+    private List<XeroGetStepTenant> readTenants(XeroGetStepMeta meta, XeroGetStepData data) throws KettleException {
+        List<XeroGetStepTenant> result = new ArrayList<XeroGetStepTenant>();
+        RowMetaInterface inputRowMeta = null;
+        int idIndex = -1;
+        int urlIndex = -1;
+        int consumerKeyIndex = -1;
+        int keyFileIndex = -1;
+        Object[] row;
+
+        while (null != (row = getRow())) {
+            if (null == inputRowMeta) {
+                inputRowMeta = getInputRowMeta();
+                idIndex = indexOfInputField(inputRowMeta, meta.getTenantIdFieldName());
+                urlIndex = indexOfInputField(inputRowMeta, meta.getTenantUrlFieldName());
+                consumerKeyIndex = indexOfInputField(inputRowMeta, meta.getTenantConsumerKeyFieldName());
+                keyFileIndex = indexOfInputField(inputRowMeta, meta.getTenantKeyFileFieldName());
+                data.setTenantRowMeta(inputRowMeta);
+            }
+
+            String id = getInputValue(inputRowMeta, row, idIndex);
+
+            if (null == id) {
+                throw new KettleException("an input row has no tenant id");
+            }
+
+            result.add(new XeroGetStepTenant(
+                    id,
+                    getInputValue(inputRowMeta, row, urlIndex),
+                    getInputValue(inputRowMeta, row, consumerKeyIndex),
+                    getInputValue(inputRowMeta, row, keyFileIndex),
+                    row));
+        }
+
+        return result;
+    }
+
+    /**
+     * @return the index of the named field in the input rows or -1 if no field name is supplied.
+     */
+
+    private int indexOfInputField(RowMetaInterface inputRowMeta, String fieldName) throws KettleException {
+        String fieldNameSubstituted = StringUtils.trimToNull(environmentSubstitute(fieldName));
+
+        if (null == fieldNameSubstituted) {
+            return -1;
+        }
+
+        int result = inputRowMeta.indexOfValue(fieldNameSubstituted);
+
+        if (-1 == result) {
+            throw new KettleException("the input field could not be found; " + fieldNameSubstituted);
+        }
+
+        return result;
+    }
+
+    private String getInputValue(RowMetaInterface inputRowMeta, Object[] row, int index) throws KettleException {
+        return -1 == index ? null : StringUtils.trimToNull(inputRowMeta.getString(row, index));
+    }
+
+    /**
+     * <p>If error handling is configured for the step then the input row for the tenant is sent
+     * to the error stream and the other tenants carry on.  Otherwise the failure fails the
+     * step so that the transformation does not succeed without the tenant's data.</p>
+     */
+
+    private void failTenant(
+            XeroGetStepMeta meta,
+            XeroGetStepData data,
+            XeroGetStepTenant tenant,
+            KettleException kettleException) throws KettleException {
+        if (getStepMeta().isDoingErrorHandling()) {
+            putError(
+                    data.getTenantRowMeta(),
+                    tenant.getRow(),
+                    1,
+                    kettleException.getMessage(),
+                    environmentSubstitute(meta.getTenantIdFieldName()),
+                    ERROR_CODE_TENANT);
+        } else {
+            throw new KettleException("unable to fetch for the tenant; " + tenant.getId(), kettleException);
+        }
+    }
+
+    /**
+     * <p>The chunker takes over the supplied stream and will close it when the chunker is
+     * closed.</p>
+     */
+
+    private XMLChunker createXmlChunker(
+            XeroGetStepMeta meta,
+            XeroGetStepData data,
+            InputStream inputStream,
+            ElementPath containerElementPath,
+            ElementPath[] fieldPaths) throws KettleException {
+        boolean xmlBinary = meta.isXmlBinary();
+        boolean xmlIncluded = meta.isXmlRequired();
+
+        try {
+            if (XeroGetStepMeta.Format.JSON == meta.getFormat()) {
+                JSONChunker result = new JSONChunker(inputStream, containerElementPath, fieldPaths, xmlIncluded);
+                result.setChunkSpill(data.getChunkSpill());
+                return result;
+            }
+
+            if (XeroGetStepMeta.Chunking.BYTE_RANGE == meta.getChunking()) {
+                ByteRangeXMLChunker result = new ByteRangeXMLChunker(
+                        inputStream, containerElementPath, fieldPaths, xmlIncluded, xmlBinary);
+                result.setChunkSpill(data.getChunkSpill());
+                result.setChildContainerPaths(data.getChildContainerPaths());
+                return result;
+            }
+
+            XMLChunkerImpl result = new XMLChunkerImpl(
+                    XMLFactories.getXMLInputFactory(meta.getParser()).createXMLStreamReader(inputStream),
+                    containerElementPath,
+                    fieldPaths,
+                    xmlIncluded,
+                    xmlBinary,
+                    inputStream);
+            result.setChunkSpill(data.getChunkSpill());
+            result.setChildContainerPaths(data.getChildContainerPaths());
+            return result;
+        } catch (Exception ioe) {
+            IOUtils.closeQuietly(inputStream);
+            throw new KettleException("unable to process the xero input as xml", ioe);
+        }
+    }
+
+    /**
+     * <p>The metrics of each copy of the step are registered with JMX so that they are able to be
+     * watched while the transformation is running.  A failure to register is not fatal.</p>
+     */
+
+    private void registerMetrics(XeroGetStepData data) {
+        try {
+            Hashtable<String, String> properties = new Hashtable<String, String>();
+            properties.put("type", "XeroGetStep");
+            properties.put("transformation", ObjectName.quote(null == getTransMeta() ? "" : String.valueOf(getTransMeta().getName())));
+            properties.put("step", ObjectName.quote(getStepname()));
+            properties.put("copy", Integer.toString(getCopy()));
+            ObjectName objectName = new ObjectName(JMX_DOMAIN, properties);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(data.getMetrics(), objectName);
+            data.setMetricsObjectName(objectName);
+        } catch (JMException jme) {
+            logDetailed("unable to register the metrics with jmx; " + jme.getMessage());
+        }
+    }
+
+    private void unregisterMetrics(XeroGetStepData data) {
+        ObjectName objectName = data.getMetricsObjectName();
+
+        if (null != objectName) {
+            data.setMetricsObjectName(null);
+
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException jme) {
+                logDetailed("unable to unregister the metrics from jmx; " + jme.getMessage());
+            }
+        }
+    }
+
+    private void configureResponseCapture(XeroGetStepMeta meta, XeroGetStepData data) throws KettleException {
+        String directory = StringUtils.trimToNull(environmentSubstitute(meta.getCaptureDirectory()));
+
+        if (null == directory) {
+            if (meta.isReplay()) {
+                throw new KettleException("a capture directory is required to replay captured responses");
+            }
+
+            return;
+        }
+
+        try {
+            data.setResponseCapture(new ResponseCapture(new File(directory)));
+        } catch (IOException ioe) {
+            throw new KettleException("unable to use the capture directory; " + directory, ioe);
+        }
+
+        data.setReplay(meta.isReplay());
+
+        if (meta.isReplay()) {
+            logBasic("will replay responses captured in; " + directory);
+        } else {
+            logBasic("will capture responses from xero into; " + directory);
+        }
+    }
+
+    private void configureChunkSpill(XeroGetStepMeta meta, XeroGetStepData data) throws KettleException {
+        if (meta.isSpilling() && meta.isXmlRequired()) {
+            int thresholdKilobytes = parsePositiveInteger(meta.getSpillThresholdKilobytes(), "spill threshold kilobytes");
+            String directory = StringUtils.trimToNull(environmentSubstitute(meta.getSpillDirectory()));
+            String suffix = XeroGetStepMeta.Format.JSON == meta.getFormat() ? ".json" : ".xml";
+
+            try {
+                data.setChunkSpill(new ChunkSpill(
+                        null == directory ? null : new File(directory),
+                        thresholdKilobytes * 1024,
+                        suffix));
+            } catch (IllegalStateException ise) {
+                throw new KettleException("unable to use the spill directory; " + directory, ise);
+            }
+
+            logBasic("will write chunks larger than " + thresholdKilobytes + "KB to files");
+        }
+    }
+
+    /**
+     * <p>The factory for the parser is obtained here so that a parser which is not available
+     * fails the step early.  The factory is shared with later runs of the step.</p>
+     */
+
+    private void configureParser(XeroGetStepMeta meta) throws KettleException {
+        if (XeroGetStepMeta.Format.XML == meta.getFormat() && XeroGetStepMeta.Chunking.STAX == meta.getChunking()) {
+            XMLInputFactory xmlInputFactory = XMLFactories.getXMLInputFactory(meta.getParser());
+            logBasic("will parse the xml with; " + xmlInputFactory.getClass().getName());
+        }
+    }
+
+    /**
+     * <p>The change index is only stored once the whole transformation has finished without
+     * errors, in the same way as the watermark, so that records which did not reach their
+     * destination are output again on the next run.  Copies of the step would each have their own
+     * index and so change detection is limited to a single copy.</p>
+     */
+
+    private void configureChangeIndex(
+            XeroGetStepMeta meta,
+            final XeroGetStepData data,
+            ElementPath[] fieldPaths) throws KettleException {
+        if (!meta.isDetectingChanges()) {
+            return;
+        }
+
+        if (getStepMeta().getCopies() > 1) {
+            throw new KettleException("changes cannot be detected with more than one copy of the step");
+        }
+
+        String path = StringUtils.trimToNull(environmentSubstitute(meta.getChangeIndexFile()));
+
+        if (null == path) {
+            throw new KettleException("the change index file must be supplied");
+        }
+
+        final ChangeIndex changeIndex = new ChangeIndex(new File(path));
+        changeIndex.load();
+        data.setChangeIndex(changeIndex);
+        data.setChangeKeyFieldIndex(fieldPaths.length - 1);
+        data.setChangeFieldsOnly(meta.isChangeFieldsOnly());
+        data.setChangeTypeIncluded(StringUtils.isNotBlank(meta.getChangeTypeFieldName()));
+        logBasic("will detect changes against the " + changeIndex.size() + " records in; " + path);
+
+        getTrans().addTransListener(new TransAdapter() {
+            @Override
+            public void transFinished(Trans trans) throws KettleException {
+                if (0 != trans.getErrors()) {
+                    logBasic("will not store the change index because the transformation has errors");
+                } else {
+                    changeIndex.commit();
+                    logBasic("did store the change index of " + changeIndex.size() + " records to; " + changeIndex.getFile());
+                }
+            }
+        });
+    }
+
+    private void configureResponseCache(XeroGetStepMeta meta, XeroGetStepData data) throws KettleException {
+        String directory = StringUtils.trimToNull(environmentSubstitute(meta.getResponseCacheDirectory()));
+
+        if (null != directory) {
+            long maxBytes = parsePositiveInteger(meta.getResponseCacheMaxMegabytes(), "response cache maximum megabytes") * 1024L * 1024L;
+
+            try {
+                data.setResponseCache(new ResponseCache(new File(directory), maxBytes));
+            } catch (IOException ioe) {
+                throw new KettleException("unable to use the response cache directory; " + directory, ioe);
+            }
+
+            data.setResponseCacheMaxAgeMillis(
+                    parseInteger(meta.getResponseCacheMaxAgeSeconds(), "response cache maximum age seconds", 0) * 1000L);
+            logBasic("will cache responses from xero in; " + directory);
+        }
+    }
+
+    private int parsePositiveInteger(String value, String description) throws KettleException {
+        return parseInteger(value, description, 1);
+    }
+
+    private int parseInteger(String value, String description, int minimum) throws KettleException {
+        String valueSubstituted = StringUtils.trimToEmpty(environmentSubstitute(value));
+
+        try {
+            int result = Integer.parseInt(valueSubstituted);
+
+            if (result < minimum) {
+                throw new KettleException("the " + description + " must be at least " + minimum + "; " + valueSubstituted);
+            }
+
+            return result;
+        } catch (NumberFormatException nfe) {
+            throw new KettleException("the " + description + " is malformed; " + valueSubstituted, nfe);
+        }
+    }
+
+    /**
+     * <p>A stored watermark takes precedence over the fixed "If-Modified-Since" date; the fixed
+     * date is then only used for the first run before any watermark has been stored.  A replay
+     * does not call Xero and so does not use the watermark.</p>
+     */
+
+    private String createIfModifiedSinceHeaderValue(XeroGetStepMeta meta) throws KettleException {
+        Date ifModifiedSince = null;
+        String watermark = meta.isReplay() ? null : readWatermark(meta);
+
+        if (null != watermark) {
+            ifModifiedSince = WatermarkFile.parse(watermark);
+            logBasic("will use the stored watermark; " + watermark);
+        } else {
+            String ifModifiedSinceAsSupplied = meta.getIfModifiedSince();
+
+            if (StringUtils.isNotBlank(ifModifiedSinceAsSupplied)) {
+                ifModifiedSinceAsSupplied = environmentSubstitute(ifModifiedSinceAsSupplied);
+                SimpleDateFormat formatInput = new SimpleDateFormat(FORMAT_TIMESTAMP_INPUT);
+
+                try {
+                    ifModifiedSince = formatInput.parse(ifModifiedSinceAsSupplied);
+                } catch (ParseException pe) {
+                    throw new KettleException("unable to parse the supplied if-modified-since; " + ifModifiedSinceAsSupplied + " (should be '" + FORMAT_TIMESTAMP_INPUT + "')", pe);
+                }
+            }
+        }
+
+        if (null != ifModifiedSince) {
+            SimpleDateFormat formatOutput = new SimpleDateFormat(FORMAT_TIMESTAMP_IFMODIFIEDSINCE_XERO);
+            formatOutput.setTimeZone(TimeZone.getTimeZone("GMT-0"));
+            return formatOutput.format(ifModifiedSince);
+        }
+
+        return null;
+    }
+
+    private boolean isWatermarkConfigured(XeroGetStepMeta meta) {
+        return StringUtils.isNotBlank(meta.getWatermarkFile()) || StringUtils.isNotBlank(meta.getWatermarkVariable());
+    }
+
+    private WatermarkFile getWatermarkFile(XeroGetStepMeta meta) {
+        String path = StringUtils.trimToNull(environmentSubstitute(meta.getWatermarkFile()));
+        return null == path ? null : new WatermarkFile(new File(path));
+    }
+
+    private String getWatermarkVariableName(XeroGetStepMeta meta) {
+        return StringUtils.trimToNull(environmentSubstitute(meta.getWatermarkVariable()));
+    }
+
+    /**
+     * <p>If both a watermark file and a watermark variable are configured then the file is
+     * preferred.</p>
+     *
+     * @return the stored watermark or null if none has been stored yet.
+     */
+
+    private String readWatermark(XeroGetStepMeta meta) throws KettleException {
+        WatermarkFile watermarkFile = getWatermarkFile(meta);
+
+        if (null != watermarkFile) {
+            String result = watermarkFile.read();
+
+            if (null != result) {
+                return result;
+            }
+        }
+
+        String variableName = getWatermarkVariableName(meta);
+
+        if (null != variableName) {
+            return StringUtils.trimToNull(getVariable(variableName));
+        }
+
+        return null;
+    }
+
+    /**
+     * <p>The watermark is only stored once the whole transformation has finished without errors
+     * so that a failure downstream of this step causes the same data to be fetched again on the
+     * next run.</p>
+     */
+
+    private void registerWatermarkCommit(final XeroGetStepMeta meta, final XeroGetStepData data) {
+        getTrans().addTransListener(new TransAdapter() {
+            @Override
+            public void transFinished(Trans trans) throws KettleException {
+                String watermark = data.getWatermark();
+
+                if (0 != trans.getErrors()) {
+                    logBasic("will not store the watermark because the transformation has errors");
+                } else if (null != watermark) {
+                    commitWatermark(meta, trans, watermark);
+                }
+            }
+        });
+    }
+
+    private void commitWatermark(XeroGetStepMeta meta, Trans trans, String watermark) throws KettleException {
+        WatermarkFile watermarkFile = getWatermarkFile(meta);
+
+        if (null != watermarkFile) {
+            if (watermarkFile.commit(watermark)) {
+                logBasic("did store the watermark " + watermark + " to; " + watermarkFile.getFile());
+            }
+        }
+
+        String variableName = getWatermarkVariableName(meta);
+
+        if (null != variableName) {
+            String existing = StringUtils.trimToNull(trans.getVariable(variableName));
+
+            if (null == existing || WatermarkFile.parse(existing).before(WatermarkFile.parse(watermark))) {
+                trans.setVariable(variableName, watermark);
+
+                for (Job job = trans.getParentJob(); null != job; job = job.getParentJob()) {
+                    job.setVariable(variableName, watermark);
+                }
+
+                logBasic("did store the watermark " + watermark + " to the variable; " + variableName);
+            }
+        }
+    }
+
+    private String createXeroUrl(XeroGetStepMeta meta, String baseUrl) throws KettleException {
+        StringBuilder url = new StringBuilder(environmentSubstitute(StringUtils.trimToEmpty(baseUrl)));
+
+        if (0 == url.length()) {
+            throw new KettleException("the xero url must be supplied");
+        }
+
+        return Helpers.appendUrlQuery(
+                url,
+                "where",
+                environmentSubstitute(StringUtils.trimToEmpty(meta.getWhere()))).toString();
+    }
+
+    /**
+     * <p>The Xero cert to use is stored in a file which is pointed at from the meta-data for
+     * the step.  The accessor with the parsed key is cached for the JVM so that the file is only
+     * read and parsed again if it changes.</p>
+     */
+
+    private OAuthAccessor createXeroAccessor(String authenticationConsumerKey, String authenticationKeyFile) throws KettleException {
+
+        String consumerKey = environmentSubstitute(authenticationConsumerKey);
+
+        if (StringUtils.isBlank(consumerKey)) {
+            throw new KettleException("the xero consumer key must be supplied");
+        }
+
+        logBasic("will use xero consumer key; " + Helpers.obfuscateAuthenticationDetailForLog(consumerKey));
 
-        try {
-            data.setOAuthMessage(openXero(meta));
+        String keyFilePath = environmentSubstitute(StringUtils.trimToEmpty(authenticationKeyFile));
 
-            try {
+        if (StringUtils.isBlank(keyFilePath)) {
+            throw new KettleException("the xero key file must be supplied");
+        }
 
-                xmlChunker = new XMLChunkerImpl(XMLInputFactory.newInstance().createXMLStreamReader(data.getOAuthMessage().getBodyAsStream()),
-                        getContainerElementsStack(meta));
+        logBasic("will load xero key from; " + keyFilePath);
 
-                result = true;
-            } catch (Exception ioe) {
-                throw new KettleException("unable to process the xero input as xml", ioe);
-            }
+        XeroAccessorCache accessorCache = XeroAccessorCache.getInstance();
+        OAuthAccessor result = accessorCache.get(new File(keyFilePath), consumerKey);
 
-        } catch (KettleException ke) {
-            logError("unable to initialize the xero step", ke);
+        if (isDetailed()) {
+            logDetailed("xero key cache hits " + accessorCache.getHits() + "; misses " + accessorCache.getMisses());
         }
 
-        return result && super.init(smi, sdi);
+        return result;
     }
 
-    private String createIfModifiedSinceHeaderValue(XeroGetStepMeta meta) throws KettleException {
-        String ifModifiedSinceAsSupplied = meta.getIfModifiedSince();
+    /**
+     * <p>This method may be invoked concurrently when pages are being fetched in parallel.  If a
+     * capture directory is configured then the body is either copied into the capture as it is
+     * read or, when replaying, is read from an earlier capture without calling Xero.</p>
+     *
+     * @return the body of the response which the caller must close.
+     */
+
+    private InputStream openXero(
+            final XeroGetStepData data,
+            final OAuthAccessor accessor,
+            final String url,
+            final String ifModifiedSinceHeaderValue) throws KettleException {
+        ResponseCapture responseCapture = data.getResponseCapture();
+
+        if (null == responseCapture) {
+            return openXeroResponse(data, accessor, url, ifModifiedSinceHeaderValue);
+        }
 
-        if (StringUtils.isNotBlank(ifModifiedSinceAsSupplied)) {
-            ifModifiedSinceAsSupplied = environmentSubstitute(ifModifiedSinceAsSupplied);
-            SimpleDateFormat formatInput = new SimpleDateFormat(FORMAT_TIMESTAMP_INPUT);
+        String key = createCaptureKey(data, accessor, url);
 
+        if (data.isReplay()) {
             try {
-                Date ifModifiedSince = formatInput.parse(ifModifiedSinceAsSupplied);
-                SimpleDateFormat formatOutput = new SimpleDateFormat(FORMAT_TIMESTAMP_IFMODIFIEDSINCE_XERO);
-                formatOutput.setTimeZone(TimeZone.getTimeZone("GMT-0"));
-                return formatOutput.format(ifModifiedSince);
-            } catch (ParseException pe) {
-                throw new KettleException("unable to parse the supplied if-modified-since; " + ifModifiedSinceAsSupplied + " (should be '" + FORMAT_TIMESTAMP_INPUT + "')", pe);
+                InputStream result = responseCapture.replay(key);
+                logBasic("did replay the captured response for; " + url);
+                return result;
+            } catch (IOException ioe) {
+                throw new KettleException("unable to replay the captured response for; " + url, ioe);
             }
         }
 
-        return null;
+        InputStream body = openXeroResponse(data, accessor, url, ifModifiedSinceHeaderValue);
+
+        try {
+            return responseCapture.capture(key, body);
+        } catch (IOException ioe) {
+            IOUtils.closeQuietly(body);
+            throw new KettleException("unable to capture the response for; " + url, ioe);
+        }
     }
 
-    private String createXeroUrl(XeroGetStepMeta meta) throws KettleException {
-        StringBuilder url = new StringBuilder(environmentSubstitute(StringUtils.trimToEmpty(meta.getUrl())));
+    /**
+     * <p>The key identifies a request for the response capture.  It leaves out the
+     * "If-Modified-Since" date because a capture run moves the watermark on and the replay must
+     * still find the responses that were captured.</p>
+     */
+
+    private String createCaptureKey(
+            XeroGetStepData data,
+            OAuthAccessor accessor,
+            String url) {
+        return ResponseCache.createKey(url, accessor.consumer.consumerKey, data.getAccept());
+    }
 
-        if (0 == url.length()) {
-            throw new KettleException("the xero url must be supplied");
-        }
+    /**
+     * <p>The key identifies a request for the response cache.</p>
+     */
 
-        return Helpers.appendUrlQuery(
-                url,
-                "where",
-                environmentSubstitute(StringUtils.trimToEmpty(meta.getWhere()))).toString();
+    private String createResponseKey(
+            XeroGetStepData data,
+            OAuthAccessor accessor,
+            String url,
+            String ifModifiedSinceHeaderValue) {
+        return ResponseCache.createKey(url, accessor.consumer.consumerKey, ifModifiedSinceHeaderValue, data.getAccept());
     }
 
     /**
-     * <p>The Xero cert to use is stored in a file which is pointed at from the meta-data for
-     * the step.  This method will pull in that file and turn it into a string so that it can
-     * be used.</p>
+     * <p>The requests are paced by the {@link XeroRequestScheduler} for the consumer key.  If a
+     * response cache is configured then a cached body that is younger than the maximum age is
+     * used without asking Xero.  An older cached body is revalidated with its "ETag" and is used
+     * if Xero says that it has not been modified.  Otherwise the body from Xero is copied into the
+     * cache as it is read.</p>
      */
 
-    private String readXeroKey(XeroGetStepMeta meta) throws KettleException {
-        String keyFilePath = environmentSubstitute(meta.getAuthenticationKeyFile());
+    private InputStream openXeroResponse(
+            XeroGetStepData data,
+            OAuthAccessor accessor,
+            String url,
+            String ifModifiedSinceHeaderValue) throws KettleException {
 
-        logBasic("will load xero key from; " + keyFilePath);
+        if (StringUtils.isNotBlank(ifModifiedSinceHeaderValue)) {
+            logBasic("will use 'If-Modified-Since' header of; " + ifModifiedSinceHeaderValue);
+        }
+
+        ResponseCache responseCache = data.getResponseCache();
+        String cacheKey = null;
+        ResponseCache.Entry cacheEntry = null;
+
+        if (null != responseCache) {
+            cacheKey = createResponseKey(data, accessor, url, ifModifiedSinceHeaderValue);
+            cacheEntry = responseCache.get(cacheKey);
 
-        File file = new File(keyFilePath);
+            if (null != cacheEntry && cacheEntry.getAgeMillis() < data.getResponseCacheMaxAgeMillis()) {
+                InputStream result = openCachedBody(responseCache, cacheEntry);
 
-        if (!file.exists()) {
-            throw new KettleException("the xero key file cannot be found; " + file.getAbsolutePath());
+                if (null != result) {
+                    responseCache.incrementHits();
+                    logBasic("did use the cached response for; " + url);
+                    return result;
+                }
+            }
         }
 
-        InputStream inputStream = null;
+        String ifNoneMatchHeaderValue = null != cacheEntry ? cacheEntry.getEtag() : null;
 
         try {
-            inputStream = new FileInputStream(file);
-            String key = StringUtils.trimToEmpty(IOUtils.toString(inputStream, CharEncoding.UTF_8));
+            XeroRequestScheduler scheduler = XeroRequestScheduler.getInstance(
+                    accessor.consumer.consumerKey,
+                    data.getRateLimitPerMinute(),
+                    data.getRateLimitPerDay());
+
+            XeroGetRequest request = new XeroGetRequest(
+                    accessor,
+                    url,
+                    data.getHttpClient(),
+                    data.getAccept(),
+                    data.getRequestCounters(),
+                    data.getMetrics());
+            request.setIfModifiedSince(ifModifiedSinceHeaderValue);
+            request.setIfNoneMatch(ifNoneMatchHeaderValue);
+
+            OAuthMessage result = scheduler.execute(
+                    request,
+                    data.getMaxRetries(),
+                    data.getRequestCounters());
+
+            logBasic("did open xero connection to; " + url);
 
-            if (StringUtils.isBlank(key)) {
-                throw new KettleException("the xero key file appears to be blank; " + file.getAbsolutePath());
+            InputStream body = data.getRequestCounters().countDecodedBytes(result.getBodyAsStream());
+
+            if (null != responseCache) {
+                return responseCache.store(cacheKey, result.getHeader("ETag"), body);
             }
 
-            return key;
-        } catch (IOException ioe) {
-            throw new KettleException("unable to process the xero key file; " + file.getAbsolutePath());
-        } finally {
-            if (null != inputStream) {
-                try {
-                    inputStream.close();
-                } catch (IOException ignore) {
+            return body;
+
+        } catch (OAuthProblemException e) {
+            if (HttpURLConnection.HTTP_NOT_MODIFIED == e.getHttpStatusCode() && null != ifNoneMatchHeaderValue) {
+                InputStream result = openCachedBody(responseCache, cacheEntry);
+
+                if (null != result) {
+                    responseCache.incrementRevalidations();
+                    touchCacheEntry(responseCache, cacheEntry);
+                    logBasic("did revalidate the cached response for; " + url);
+                    return result;
                 }
             }
+
+            // http://developer.xero.com/documentation/getting-started/http-response-codes/
+            throw new KettleException("error has arisen communicating with xero api at; " + url + " (" + e.getHttpStatusCode() + ")", e);
+        } catch (IOException e) {
+            throw new KettleException("error has arisen communicating with xero api at; " + url, e);
+        } catch (OAuthException e) {
+            throw new KettleException("error has arisen communicating with xero api at; " + url, e);
+        } catch (URISyntaxException use) {
+            throw new KettleException("the supplied URI syntax is malformed; " + url, use);
         }
+
     }
 
-    private OAuthMessage openXero(XeroGetStepMeta meta) throws KettleException {
+    /**
+     * @return the cached body or null if it has been evicted in the meantime.
+     */
 
-        String consumerKey = environmentSubstitute(meta.getAuthenticationConsumerKey());
+    private InputStream openCachedBody(ResponseCache responseCache, ResponseCache.Entry cacheEntry) {
+        try {
+            return responseCache.openBody(cacheEntry);
+        } catch (IOException ioe) {
+            logError("unable to read the cached response; " + cacheEntry.getKey(), ioe);
+            return null;
+        }
+    }
 
-        if (StringUtils.isBlank(consumerKey)) {
-            throw new KettleException("the xero consumer key must be supplied");
+    /**
+     * <p>A revalidated response is marked as being fresh again so that it is used without asking
+     * Xero until it is once more older than the maximum age.  A failure to do this only means
+     * that the response is revalidated again next time.</p>
+     */
+
+    private void touchCacheEntry(ResponseCache responseCache, ResponseCache.Entry cacheEntry) {
+        try {
+            responseCache.touch(cacheEntry);
+        } catch (IOException ioe) {
+            logError("unable to mark the cached response as revalidated; " + cacheEntry.getKey(), ioe);
         }
+    }
 
-        logBasic("will use xero consumer key; " + Helpers.obfuscateAuthenticationDetailForLog(consumerKey));
+    /**
+     * <p>The container elements are compiled once into an {@link ElementPath} which can then be
+     * shared by all of the chunkers that are created by this step.</p>
+     */
 
-        String key = readXeroKey(meta);
-        logBasic("will use xero key; " + Helpers.obfuscateAuthenticationDetailForLog(key));
+    private ElementPath getContainerElementPath(XeroGetStepMeta meta) throws KettleException {
+        String containerElements = meta.getContainerElements();
 
-        String url = createXeroUrl(meta);
-        String ifModifiedSinceHeaderValue = createIfModifiedSinceHeaderValue(meta);
+        // a json path to an array may be written as "Invoices[*]".
 
-        OAuthServiceProvider serviceProvider = new OAuthServiceProvider(null, null, null);
-        OAuthConsumer consumer = new OAuthConsumer(null, consumerKey, null, serviceProvider);
-        consumer.setProperty(RSA_SHA1.PRIVATE_KEY, key);
+        if (XeroGetStepMeta.Format.JSON == meta.getFormat() && null != containerElements) {
+            containerElements = containerElements.replace("[*]", "");
+        }
 
-        consumer.setProperty(OAuth.OAUTH_SIGNATURE_METHOD, OAuth.RSA_SHA1);
-        OAuthAccessor accessor = new OAuthAccessor(consumer);
-        accessor.accessToken = consumerKey;
+        return compileElementPath(containerElements, "container elements");
+    }
 
-        try {
-            OAuthMessage request = accessor.newRequestMessage(
-                    "GET",
-                    createXeroUrl(meta),
-                    new ArrayList<Map.Entry>(),
-                    null);
+    /**
+     * <p>The paths of the fields are relative to the root element of each chunk.  If a watermark
+     * is configured then its path is added after those of the output fields.  When fetching by
+     * id, the path of the id is added next and when detecting changes, the path of the change key
+     * is added last.</p>
+     */
 
-            OAuthClient client = new OAuthClient(new URLConnectionClient());
-            request.getHeaders().add(new OAuth.Parameter("Accept", "text/xml"));
+    private ElementPath[] getFieldPaths(XeroGetStepMeta meta) throws KettleException {
+        List<XeroGetStepField> outputFields = meta.getOutputFields();
+        List<ElementPath> result = new ArrayList<ElementPath>();
 
-            if (StringUtils.isNotBlank(ifModifiedSinceHeaderValue)) {
-                request.getHeaders().add(new OAuth.Parameter("If-Modified-Since", ifModifiedSinceHeaderValue));
-                logBasic("will use 'If-Modified-Since' header of; " + ifModifiedSinceHeaderValue);
+        for (XeroGetStepField outputField : outputFields) {
+            ElementPath fieldPath = compileElementPath(outputField.getPath(), "field path for " + outputField.getName());
+
+            if (0 == fieldPath.size()) {
+                throw new KettleException("the field " + outputField.getName() + " requires an element path");
             }
 
-            Object ps = accessor.consumer.getProperty(OAuthClient.PARAMETER_STYLE);
-            ParameterStyle style = (ps == null) ? ParameterStyle.BODY
-                    : Enum.valueOf(ParameterStyle.class, ps.toString());
+            result.add(fieldPath);
+        }
 
-            OAuthMessage result = client.invoke(request, style);
-            logBasic("did open xero connection to; " + url);
-            return result;
+        if (isWatermarkConfigured(meta)) {
+            result.add(FIELD_PATH_WATERMARK);
+        }
 
-        } catch (OAuthProblemException e) {
-            // http://developer.xero.com/documentation/getting-started/http-response-codes/
-            throw new KettleException("error has arisen communicating with xero api at; " + meta.getUrl() + " (" + e.getHttpStatusCode() + ")", e);
-        } catch (IOException e) {
-            throw new KettleException("error has arisen communicating with xero api at; " + meta.getUrl(), e);
-        } catch (OAuthException e) {
-            throw new KettleException("error has arisen communicating with xero api at; " + meta.getUrl(), e);
-        } catch (URISyntaxException use) {
-            throw new KettleException("the supplied URI syntax is malformed; " + meta.getUrl(), use);
+        if (meta.isFetchingByIds()) {
+            result.add(compileRequiredElementPath(meta.getIdPath(), "id element path"));
         }
 
+        if (meta.isDetectingChanges()) {
+            result.add(compileRequiredElementPath(meta.getChangeKeyPath(), "change key element path"));
+        }
+
+        return result.toArray(new ElementPath[result.size()]);
+    }
+
+    private ElementPath compileRequiredElementPath(String value, String description) throws KettleException {
+        ElementPath result = compileElementPath(value, description);
+
+        if (0 == result.size()) {
+            throw new KettleException("the " + description + " is required");
+        }
+
+        return result;
+    }
+
+    /**
+     * <p>Each child record must be inside the element of the chunk and so its path must continue
+     * on from the container elements.</p>
+     */
+
+    private ElementPath[] getChildContainerPaths(XeroGetStepMeta meta, ElementPath containerElementPath) throws KettleException {
+        List<XeroGetStepChild> children = meta.getChildren();
+        ElementPath[] result = new ElementPath[children.size()];
+
+        if (!children.isEmpty() && XeroGetStepMeta.Format.JSON == meta.getFormat()) {
+            throw new KettleException("child records cannot be used with the json format");
+        }
+
+        for (int i = 0; i < children.size(); i++) {
+            XeroGetStepChild child = children.get(i);
+            result[i] = compileElementPath(child.getPath(), "container elements for the child " + child.getName());
+            boolean inside = result[i].size() > Math.max(1, containerElementPath.size());
+
+            for (int j = 0; inside && j < containerElementPath.size(); j++) {
+                inside = containerElementPath.getName(j).equals(result[i].getName(j));
+            }
+
+            if (!inside) {
+                throw new KettleException("the child " + child.getName() + " must be inside the container elements; " + result[i]);
+            }
+
+            for (int j = 0; j < i; j++) {
+                if (result[j].equals(result[i])) {
+                    throw new KettleException("the child " + child.getName() + " has the same container elements as another child");
+                }
+            }
+        }
+
+        return result;
     }
 
-    private Stack<String> getContainerElementsStack(XeroGetStepMeta meta) throws KettleException {
-        Stack<String> result = new Stack<String>();
-        String ce = StringUtils.trimToEmpty(meta.getContainerElements());
+    private ElementPath compileElementPath(String value, String description) throws KettleException {
+        String ce = StringUtils.trimToEmpty(value);
 
         while (ce.startsWith("/")) {
             ce = ce.substring(1);
@@ -254,13 +1296,13 @@ public class XeroGetStep extends BaseStep implements StepInterface {
 
         if (StringUtils.isNotBlank(ce)) {
             if (!PATTERN_CONTAINERELEMENTS.matcher(ce).matches()) {
-                throw new KettleException("malformed container elements; " + ce);
+                throw new KettleException("malformed " + description + "; " + ce);
             }
 
-            Collections.addAll(result, ce.split("/"));
+            return new ElementPath(ce.split("/"));
         }
 
-        return result;
+        return ElementPath.ROOT;
     }
 
     /**
@@ -275,51 +1317,356 @@ public class XeroGetStep extends BaseStep implements StepInterface {
 
         if (first) {
             first = false;
-            RowMetaInterface outputRowMeta = new RowMeta();
-            meta.getFields(outputRowMeta, getStepname(), null, null, this, null, null);
+
+            // when fetching by id, the fields of the input rows lead each output row.
+
+            if (meta.isFetchingByIds()) {
+                data.setXmlChunker(createIdXmlChunker(meta, data));
+            }
+
+            RowMetaInterface outputRowMeta = meta.createOutputRowMeta(data.getIdRowMeta(), getStepname(), this);
             data.setOutputRowMeta(outputRowMeta);
+            data.setConvertRowMeta(outputRowMeta.cloneToType(ValueMetaInterface.TYPE_STRING));
+            data.setXmlIncluded(StringUtils.isNotBlank(meta.getXmlFieldName()));
+            data.setXmlBinary(meta.isXmlBinary());
+            data.setTenanted(meta.isTenanted());
+
+            if (meta.isTenanted()) {
+                data.setXmlChunker(createTenantXmlChunker(meta, data));
+            }
+        }
+
+        XMLChunker xmlChunker = data.getXmlChunker();
+
+        // another copy of the step is doing the fetching.
+
+        if (null == xmlChunker) {
+            setOutputDone();
+            return false;
         }
 
-        String xml = xmlChunker.pullNextXmlChunk();
+        XeroGetStepMetrics metrics = data.getMetrics();
+        long start = System.nanoTime();
+        XMLChunk chunk = xmlChunker.pullNextChunk();
+        metrics.addPullNanos(System.nanoTime() - start);
+
+        if (null != chunk) {
+            metrics.addChunk(chunk.getXmlLength());
+            incrementLinesInput();
+
+            if (-1 != data.getWatermarkFieldIndex()) {
+                data.observeWatermark(chunk.getFieldValue(data.getWatermarkFieldIndex()));
+            }
+
+            if (data.isFetchingByIds()) {
+                data.getIdBatches().markResolved(chunk.getFieldValue(data.getIdFieldIndex()));
+            }
+
+            if (null != data.getChangeIndex() && ChangeIndex.Change.UNCHANGED == observeChange(data, chunk)) {
+                if (!chunk.discard()) {
+                    logError("unable to delete the spill file; " + chunk.getSpillFile());
+                }
+
+                return true;
+            }
+
+            Object[] outputRow = createOutputRow(data, chunk);
+            start = System.nanoTime();
+
+            if (data.isFetchingByIds()) {
+                putIdRows(data, chunk, outputRow);
+            } else {
+                putOutputRow(data, outputRow);
+            }
+
+            metrics.addPutRowNanos(System.nanoTime() - start);
+
+            // a record that was only spilled to be hashed has nowhere downstream to go.
+
+            if (!data.isXmlIncluded() && !chunk.discard()) {
+                logError("unable to delete the spill file; " + chunk.getSpillFile());
+            }
 
-        if (null != xml) {
-            Object[] outputRow = RowDataUtil.allocateRowData(1);
-            outputRow[0] = xml;
-            putRow(data.getOutputRowMeta(), outputRow);
-            incrementLinesOutput();
             return true;
         }
 
+        if (data.isFetchingByIds()) {
+            putUnresolvedIdRows(meta, data);
+        }
+
+        ChangeIndex changeIndex = data.getChangeIndex();
+
+        if (null != changeIndex) {
+            logBasic("did detect " + changeIndex.getNewCount() + " new, " + changeIndex.getChangedCount()
+                    + " changed and " + changeIndex.getUnchangedCount() + " unchanged records");
+        }
+
+        if (xmlChunker instanceof WorkUnitXMLChunker) {
+            WorkUnitXMLChunker workUnitXmlChunker = (WorkUnitXMLChunker) xmlChunker;
+            logBasic("did fetch " + workUnitXmlChunker.getWorkUnitCount()
+                    + (data.isFetchingByIds() ? " batches of ids" : " tenants") + " of which "
+                    + workUnitXmlChunker.getFailedWorkUnitCount() + " failed");
+        }
+
         setOutputDone();
         return false;
     }
 
+    /**
+     * <p>The chunk is joined to each of the input rows that asked for its id.  The values of the
+     * input row are copied into the start of the output row.  A child record carries the fields
+     * of its parent and so is joined in the same way.</p>
+     */
+
+    private void putIdRows(XeroGetStepData data, XMLChunk chunk, Object[] outputRow) throws KettleException {
+        String id = chunk.getFieldValue(data.getIdFieldIndex());
+        List<Object[]> idRows = data.getIdBatches().getRows(id);
+        int inputFieldCount = data.getIdRowMeta().size();
+
+        if (idRows.isEmpty()) {
+            logError("unable to find the input row for the id; " + id);
+        }
+
+        for (int i = 0; i < idRows.size(); i++) {
+            Object[] row = 0 == i ? outputRow : outputRow.clone();
+            System.arraycopy(idRows.get(i), 0, row, 0, inputFieldCount);
+            putOutputRow(data, row);
+        }
+    }
+
+    /**
+     * <p>Xero does not return a record for an id that it does not know.  If error handling is
+     * configured for the step then the input rows for such ids are sent to the error stream;
+     * otherwise they are counted in the log.</p>
+     */
+
+    private void putUnresolvedIdRows(XeroGetStepMeta meta, XeroGetStepData data) throws KettleException {
+        List<Object[]> rows = data.getIdBatches().getUnresolvedRows();
+
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        if (getStepMeta().isDoingErrorHandling()) {
+            for (Object[] row : rows) {
+                putError(
+                        data.getIdRowMeta(),
+                        row,
+                        1,
+                        "xero returned no record for the id",
+                        environmentSubstitute(meta.getIdFieldName()),
+                        ERROR_CODE_ID);
+            }
+        }
+
+        logBasic("xero returned no record for the ids of " + rows.size() + " input rows");
+    }
+
+    /**
+     * <p>Each row that is put out is counted so that the lines written reflect the rows rather
+     * than the chunks.</p>
+     */
+
+    private void putOutputRow(XeroGetStepData data, Object[] row) throws KettleException {
+        putRow(data.getOutputRowMeta(), row);
+
+        if (0 == incrementLinesOutput() % LOG_INTERVAL_ROWS && isDetailed()) {
+            logDetailed(data.getMetrics().toString());
+
+            if (data.getXmlChunker() instanceof PrefetchingXMLChunker) {
+                logDetailed(describePrefetch((PrefetchingXMLChunker) data.getXmlChunker()));
+            }
+        }
+    }
+
+    /**
+     * <p>The values of the fields arrive as strings and are converted here to the types of the
+     * output fields.  A JSON date is first put into the form of an XML date so that the same
+     * conversion applies.  When fetching by id, the fields of the input row come first and are
+     * filled in later.</p>
+     */
+
+    private Object[] createOutputRow(XeroGetStepData data, XMLChunk chunk) throws KettleException {
+        RowMetaInterface outputRowMeta = data.getOutputRowMeta();
+        RowMetaInterface convertRowMeta = data.getConvertRowMeta();
+        Object[] result = RowDataUtil.allocateRowData(outputRowMeta.size());
+        int index = null == data.getIdRowMeta() ? 0 : data.getIdRowMeta().size();
+
+        Object xml = data.isXmlBinary() ? chunk.getXmlUtf8() : chunk.getXml();
+
+        if (data.isXmlIncluded()) {
+            if (0 == chunk.getContainerIndex()) {
+                result[index] = xml;
+
+                if (null != data.getChunkSpill() && null != chunk.getSpillFile()) {
+                    result[index + 1] = chunk.getSpillFile().getAbsolutePath();
+                }
+            }
+
+            index += null == data.getChunkSpill() ? 1 : 2;
+        }
+
+        // a child record goes into the field for its child container.
+
+        if (0 != chunk.getContainerIndex()) {
+            result[index + chunk.getContainerIndex() - 1] = xml;
+        }
+
+        index += data.getChildContainerPaths().length;
+
+        for (int i = 0; i < data.getOutputFieldCount(); i++, index++) {
+            ValueMetaInterface valueMeta = outputRowMeta.getValueMeta(index);
+            String value = chunk.getFieldValue(i);
+
+            if (data.isJson() && ValueMetaInterface.TYPE_DATE == valueMeta.getType()) {
+                value = Helpers.convertJsonDateToXml(value);
+            }
+
+            try {
+                result[index] = valueMeta.convertDataFromString(
+                        value,
+                        convertRowMeta.getValueMeta(index),
+                        null,
+                        null,
+                        ValueMetaInterface.TRIM_TYPE_NONE);
+            } catch (KettleValueException kve) {
+                throw new KettleException("unable to convert the value for the field " + valueMeta.getName()
+                        + "; " + value, kve);
+            }
+        }
+
+        if (data.isTenanted()) {
+            result[index++] = chunk.getTenantId();
+        }
+
+        if (data.isChangeTypeIncluded()) {
+            result[index] = data.getChange().name();
+        }
+
+        return result;
+    }
+
+    /**
+     * <p>The hash of the record is compared with the hash that was stored for its key.  A child
+     * record has the same change as the record that it is inside.  When there are many tenants,
+     * the key includes the tenant's id.  The changed records are counted in the step's "updated"
+     * lines and the unchanged records in its "skipped" lines.</p>
+     */
+
+    private ChangeIndex.Change observeChange(XeroGetStepData data, XMLChunk chunk) throws KettleException {
+        if (0 == chunk.getContainerIndex()) {
+            String key = chunk.getFieldValue(data.getChangeKeyFieldIndex());
+
+            if (null == key) {
+                throw new KettleException("a record has no value at the change key element path");
+            }
+
+            if (data.isTenanted()) {
+                key = chunk.getTenantId() + "/" + key;
+            }
+
+            data.setChange(data.getChangeIndex().observe(key, hashChunk(data, chunk)));
+
+            switch (data.getChange()) {
+                case CHANGED:
+                    incrementLinesUpdated();
+                    break;
+                case UNCHANGED:
+                    incrementLinesSkipped();
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        return data.getChange();
+    }
+
+    private long hashChunk(XeroGetStepData data, XMLChunk chunk) throws KettleException {
+        XXHash64 result = new XXHash64();
+
+        try {
+            if (data.isChangeFieldsOnly()) {
+
+                // each value is marked and terminated so that values are not able to run together.
+
+                for (int i = 0; i < data.getOutputFieldCount(); i++) {
+                    String value = chunk.getFieldValue(i);
+
+                    if (null == value) {
+                        result.update(0);
+                    } else {
+                        byte[] valueUtf8 = value.getBytes(CharEncoding.UTF_8);
+                        result.update(1);
+                        result.update(valueUtf8, 0, valueUtf8.length);
+                        result.update(0);
+                    }
+                }
+            } else if (null != chunk.getSpillFile()) {
+                InputStream inputStream = new FileInputStream(chunk.getSpillFile());
+
+                try {
+                    byte[] buffer = new byte[64 * 1024];
+                    int read;
+
+                    while (-1 != (read = inputStream.read(buffer))) {
+                        result.update(buffer, 0, read);
+                    }
+                } finally {
+                    inputStream.close();
+                }
+            } else {
+                byte[] xmlUtf8 = chunk.getXmlUtf8();
+                result.update(xmlUtf8, 0, xmlUtf8.length);
+            }
+        } catch (IOException ioe) {
+            throw new KettleException("unable to hash the record to detect changes", ioe);
+        }
+
+        return result.getValue();
+    }
+
+    private String describePrefetch(PrefetchingXMLChunker prefetchingXmlChunker) {
+        return "prefetch queue occupancy "
+                + prefetchingXmlChunker.getQueueOccupancy() + "/" + prefetchingXmlChunker.getQueueDepth()
+                + "; waiting for xero " + prefetchingXmlChunker.getConsumerStallMillis() + "ms"
+                + "; waiting for downstream " + prefetchingXmlChunker.getProducerStallMillis() + "ms";
+    }
+
     @Override
     public void dispose(StepMetaInterface smi, StepDataInterface sdi) {
         XeroGetStepMeta meta = (XeroGetStepMeta) smi;
         XeroGetStepData data = (XeroGetStepData) sdi;
+        XMLChunker xmlChunker = data.getXmlChunker();
 
-        try {
-            xmlChunker.close();
-        } catch (KettleException e) {
-            logError("unable to close the xml stream from xero", e);
+        if (xmlChunker instanceof PrefetchingXMLChunker) {
+            logBasic(describePrefetch((PrefetchingXMLChunker) xmlChunker));
         }
 
-        OAuthMessage oAuthMessage = data.getOAuthMessage();
+        logBasic(data.getRequestCounters().toString());
+        logBasic(data.getMetrics().toString());
+        unregisterMetrics(data);
 
-        if (null != oAuthMessage) {
+        if (null != xmlChunker) {
             try {
-                InputStream inputStream = oAuthMessage.getBodyAsStream();
-
-                if (null != inputStream) {
-                    inputStream.close();
-                    logBasic("did close xero connection");
-                }
-            } catch (IOException ioe) {
-                logError("unable to close the oauth stream from xero", ioe);
+                xmlChunker.close();
+            } catch (KettleException e) {
+                logError("unable to close the xml stream from xero", e);
             }
         }
 
+        if (data.isPageCoordinatorShared()) {
+            PageCoordinator.release(getTrans(), getStepname());
+        }
+
+        ResponseCache responseCache = data.getResponseCache();
+
+        if (null != responseCache) {
+            logBasic("response cache hits " + responseCache.getHits()
+                    + "; revalidations " + responseCache.getRevalidations()
+                    + "; stores " + responseCache.getStores());
+        }
+
         super.dispose(meta, data);
     }
 
@@ -0,0 +1,72 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.bulletin.pdi.xero.step;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * <p>This is the definition of a child record that is split out of each chunk of XML and put
+ * into the stream on a row of its own; for example each "LineItem" of an "Invoice".  The path is
+ * from the root of the document in the same way as the container elements; for example
+ * "/Response/Invoices/Invoice/LineItems/LineItem".  The XML of the child record is put into the
+ * field with the name.</p>
+ *
+ * @author Andrew Lindesay
+ */
+
+public class XeroGetStepChild implements Cloneable {
+
+    private String name;
+
+    private String path;
+
+    public XeroGetStepChild() {
+        super();
+    }
+
+    public XeroGetStepChild(String name, String path) {
+        this();
+        setName(name);
+        setPath(path);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = StringUtils.trimToNull(name);
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = StringUtils.trimToNull(path);
+    }
+
+    @Override
+    public XeroGetStepChild clone() {
+        try {
+            return (XeroGetStepChild) super.clone();
+        } catch (CloneNotSupportedException cnse) {
+            throw new IllegalStateException(cnse);
+        }
+    }
+
+}
@@ -16,11 +16,21 @@
 
 package net.bulletin.pdi.xero.step;
 
-import net.oauth.OAuthMessage;
+import net.bulletin.pdi.xero.step.support.ChangeIndex;
+import net.bulletin.pdi.xero.step.support.ChunkSpill;
+import net.bulletin.pdi.xero.step.support.ElementPath;
+import net.bulletin.pdi.xero.step.support.IdBatches;
+import net.bulletin.pdi.xero.step.support.PooledHttpClient;
+import net.bulletin.pdi.xero.step.support.ResponseCache;
+import net.bulletin.pdi.xero.step.support.ResponseCapture;
+import net.bulletin.pdi.xero.step.support.XMLChunker;
+import net.bulletin.pdi.xero.step.support.XeroGetStepMetrics;
+import net.bulletin.pdi.xero.step.support.XeroRequestCounters;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
 
+import javax.management.ObjectName;
 import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamReader;
 import java.util.Stack;
@@ -35,7 +45,152 @@ public class XeroGetStepData extends BaseStepData implements StepDataInterface {
 
     private RowMetaInterface outputRowMeta;
 
-    private OAuthMessage oAuthMessage = null;
+    /**
+     * <p>This describes the output row with all of the fields as strings; the values that are
+     * extracted from the XML are converted from this.</p>
+     */
+
+    private RowMetaInterface convertRowMeta;
+
+    private boolean xmlIncluded = true;
+
+    /**
+     * <p>If true then the XML field is binary and carries the UTF-8 bytes of each chunk.</p>
+     */
+
+    private boolean xmlBinary = false;
+
+    private int outputFieldCount = 0;
+
+    private boolean tenanted = false;
+
+    /**
+     * <p>This describes the input rows that supplied the tenants.</p>
+     */
+
+    private RowMetaInterface tenantRowMeta;
+
+    /**
+     * <p>This describes the input rows that supplied the ids when fetching by id.  The fields of
+     * these rows are at the start of each output row.</p>
+     */
+
+    private RowMetaInterface idRowMeta;
+
+    /**
+     * <p>When fetching by id, these are the batches of ids together with the input rows that
+     * asked for each id so that each chunk can be joined back to them.</p>
+     */
+
+    private IdBatches idBatches = null;
+
+    /**
+     * <p>This is the index of the chunk's field value that carries the id of the chunk or -1 if
+     * the step is not fetching by id.</p>
+     */
+
+    private int idFieldIndex = -1;
+
+    /**
+     * <p>When detecting changes, this is the index that the hash of each record is compared
+     * with.</p>
+     */
+
+    private ChangeIndex changeIndex = null;
+
+    /**
+     * <p>This is the index of the chunk's field value that carries the key of the record for the
+     * change index or -1 if the step is not detecting changes.</p>
+     */
+
+    private int changeKeyFieldIndex = -1;
+
+    private boolean changeFieldsOnly = false;
+
+    private boolean changeTypeIncluded = false;
+
+    /**
+     * <p>The change of the last record; the child records that follow a record share its
+     * change.</p>
+     */
+
+    private ChangeIndex.Change change = null;
+
+    /**
+     * <p>This is the index of the chunk's field value that carries the "UpdatedDateUTC" or -1 if
+     * no watermark is configured.</p>
+     */
+
+    private int watermarkFieldIndex = -1;
+
+    private volatile String watermark = null;
+
+    /**
+     * <p>This is the media type that is requested from Xero.</p>
+     */
+
+    private String accept = "text/xml";
+
+    /**
+     * <p>When the data is JSON, the values of date fields are in Xero's "/Date(...)/" form.</p>
+     */
+
+    private boolean json = false;
+
+    private int rateLimitPerMinute = 60;
+
+    private int rateLimitPerDay = 5000;
+
+    private int maxRetries = 3;
+
+    private final XeroRequestCounters requestCounters = new XeroRequestCounters();
+
+    private final XeroGetStepMetrics metrics = new XeroGetStepMetrics(requestCounters);
+
+    /**
+     * <p>This is the name under which the metrics are registered with JMX or null if they are
+     * not registered.</p>
+     */
+
+    private ObjectName metricsObjectName = null;
+
+    private PooledHttpClient httpClient = null;
+
+    /**
+     * <p>This is null if no response cache is configured.</p>
+     */
+
+    private ResponseCache responseCache = null;
+
+    private long responseCacheMaxAgeMillis = 0;
+
+    /**
+     * <p>This is null if the responses are not being captured or replayed.</p>
+     */
+
+    private ResponseCapture responseCapture = null;
+
+    /**
+     * <p>This is true if the pages are being shared out between the copies of the step.</p>
+     */
+
+    private boolean pageCoordinatorShared = false;
+
+    /**
+     * <p>This is null if large chunks are not being written out to files.</p>
+     */
+
+    private ChunkSpill chunkSpill = null;
+
+    /**
+     * <p>These are the paths of the child records that are split out of each chunk.</p>
+     */
+
+    private ElementPath[] childContainerPaths = new ElementPath[0];
+
+    private boolean replay = false;
+
+    private XMLChunker xmlChunker = null;
 
     public XeroGetStepData() {
         super();
@@ -49,12 +204,271 @@ public class XeroGetStepData extends BaseStepData implements StepDataInterface {
         return outputRowMeta;
     }
 
-    public void setOAuthMessage(OAuthMessage oAuthMessage) {
-        this.oAuthMessage = oAuthMessage;
+    public void setConvertRowMeta(RowMetaInterface convertRowMeta) {
+        this.convertRowMeta = convertRowMeta;
+    }
+
+    public RowMetaInterface getConvertRowMeta() {
+        return convertRowMeta;
+    }
+
+    public void setXmlIncluded(boolean xmlIncluded) {
+        this.xmlIncluded = xmlIncluded;
+    }
+
+    public boolean isXmlIncluded() {
+        return xmlIncluded;
+    }
+
+    public void setXmlBinary(boolean xmlBinary) {
+        this.xmlBinary = xmlBinary;
+    }
+
+    public boolean isXmlBinary() {
+        return xmlBinary;
+    }
+
+    public void setOutputFieldCount(int outputFieldCount) {
+        this.outputFieldCount = outputFieldCount;
+    }
+
+    public int getOutputFieldCount() {
+        return outputFieldCount;
+    }
+
+    public void setTenanted(boolean tenanted) {
+        this.tenanted = tenanted;
+    }
+
+    public boolean isTenanted() {
+        return tenanted;
+    }
+
+    public void setTenantRowMeta(RowMetaInterface tenantRowMeta) {
+        this.tenantRowMeta = tenantRowMeta;
+    }
+
+    public RowMetaInterface getTenantRowMeta() {
+        return tenantRowMeta;
+    }
+
+    public void setIdRowMeta(RowMetaInterface idRowMeta) {
+        this.idRowMeta = idRowMeta;
+    }
+
+    public RowMetaInterface getIdRowMeta() {
+        return idRowMeta;
+    }
+
+    public boolean isFetchingByIds() {
+        return null != idBatches;
+    }
+
+    public void setIdBatches(IdBatches idBatches) {
+        this.idBatches = idBatches;
+    }
+
+    public IdBatches getIdBatches() {
+        return idBatches;
+    }
+
+    public void setIdFieldIndex(int idFieldIndex) {
+        this.idFieldIndex = idFieldIndex;
+    }
+
+    public int getIdFieldIndex() {
+        return idFieldIndex;
+    }
+
+    public ChangeIndex getChangeIndex() {
+        return changeIndex;
+    }
+
+    public void setChangeIndex(ChangeIndex changeIndex) {
+        this.changeIndex = changeIndex;
+    }
+
+    public int getChangeKeyFieldIndex() {
+        return changeKeyFieldIndex;
+    }
+
+    public void setChangeKeyFieldIndex(int changeKeyFieldIndex) {
+        this.changeKeyFieldIndex = changeKeyFieldIndex;
+    }
+
+    public boolean isChangeFieldsOnly() {
+        return changeFieldsOnly;
+    }
+
+    public void setChangeFieldsOnly(boolean changeFieldsOnly) {
+        this.changeFieldsOnly = changeFieldsOnly;
+    }
+
+    public boolean isChangeTypeIncluded() {
+        return changeTypeIncluded;
+    }
+
+    public void setChangeTypeIncluded(boolean changeTypeIncluded) {
+        this.changeTypeIncluded = changeTypeIncluded;
+    }
+
+    public ChangeIndex.Change getChange() {
+        return change;
+    }
+
+    public void setChange(ChangeIndex.Change change) {
+        this.change = change;
+    }
+
+    public void setWatermarkFieldIndex(int watermarkFieldIndex) {
+        this.watermarkFieldIndex = watermarkFieldIndex;
+    }
+
+    public int getWatermarkFieldIndex() {
+        return watermarkFieldIndex;
+    }
+
+    /**
+     * <p>Xero supplies the "UpdatedDateUTC" in a fixed width form and so the latest value is
+     * also the greatest when the values are compared as strings.</p>
+     */
+
+    public void observeWatermark(String value) {
+        if (null != value && (null == watermark || value.compareTo(watermark) > 0)) {
+            watermark = value;
+        }
+    }
+
+    public String getWatermark() {
+        return watermark;
+    }
+
+    public void setRateLimitPerMinute(int rateLimitPerMinute) {
+        this.rateLimitPerMinute = rateLimitPerMinute;
+    }
+
+    public int getRateLimitPerMinute() {
+        return rateLimitPerMinute;
+    }
+
+    public void setRateLimitPerDay(int rateLimitPerDay) {
+        this.rateLimitPerDay = rateLimitPerDay;
+    }
+
+    public int getRateLimitPerDay() {
+        return rateLimitPerDay;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public void setAccept(String accept) {
+        this.accept = accept;
+    }
+
+    public String getAccept() {
+        return accept;
+    }
+
+    public void setJson(boolean json) {
+        this.json = json;
+    }
+
+    public boolean isJson() {
+        return json;
+    }
+
+    public XeroRequestCounters getRequestCounters() {
+        return requestCounters;
+    }
+
+    public XeroGetStepMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetricsObjectName(ObjectName metricsObjectName) {
+        this.metricsObjectName = metricsObjectName;
+    }
+
+    public ObjectName getMetricsObjectName() {
+        return metricsObjectName;
+    }
+
+    public void setHttpClient(PooledHttpClient httpClient) {
+        this.httpClient = httpClient;
+    }
+
+    public PooledHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    public void setResponseCache(ResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    public void setResponseCacheMaxAgeMillis(long responseCacheMaxAgeMillis) {
+        this.responseCacheMaxAgeMillis = responseCacheMaxAgeMillis;
+    }
+
+    public long getResponseCacheMaxAgeMillis() {
+        return responseCacheMaxAgeMillis;
+    }
+
+    public void setResponseCapture(ResponseCapture responseCapture) {
+        this.responseCapture = responseCapture;
+    }
+
+    public ResponseCapture getResponseCapture() {
+        return responseCapture;
+    }
+
+    public void setChildContainerPaths(ElementPath[] childContainerPaths) {
+        this.childContainerPaths = childContainerPaths;
+    }
+
+    public ElementPath[] getChildContainerPaths() {
+        return childContainerPaths;
+    }
+
+    public void setChunkSpill(ChunkSpill chunkSpill) {
+        this.chunkSpill = chunkSpill;
+    }
+
+    public ChunkSpill getChunkSpill() {
+        return chunkSpill;
+    }
+
+    public void setPageCoordinatorShared(boolean pageCoordinatorShared) {
+        this.pageCoordinatorShared = pageCoordinatorShared;
+    }
+
+    public boolean isPageCoordinatorShared() {
+        return pageCoordinatorShared;
+    }
+
+    public void setReplay(boolean replay) {
+        this.replay = replay;
+    }
+
+    public boolean isReplay() {
+        return replay;
+    }
+
+    public void setXmlChunker(XMLChunker xmlChunker) {
+        this.xmlChunker = xmlChunker;
     }
 
-    public OAuthMessage getOAuthMessage() {
-        return oAuthMessage;
+    public XMLChunker getXmlChunker() {
+        return xmlChunker;
     }
 
 }
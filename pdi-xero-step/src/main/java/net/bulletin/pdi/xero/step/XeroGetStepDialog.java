@@ -16,8 +16,10 @@
 
 package net.bulletin.pdi.xero.step;
 
+import net.bulletin.pdi.xero.step.support.XMLParserBackend;
 import org.apache.commons.lang.StringUtils;
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.CCombo;
 import org.eclipse.swt.events.ModifyEvent;
 import org.eclipse.swt.events.ModifyListener;
 import org.eclipse.swt.events.SelectionAdapter;
@@ -30,12 +32,18 @@ import org.eclipse.swt.layout.FormLayout;
 import org.eclipse.swt.widgets.*;
 import org.pentaho.di.core.Const;
 import org.pentaho.di.i18n.BaseMessages;
+import org.pentaho.di.core.row.ValueMeta;
 import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.ui.core.widget.ColumnInfo;
+import org.pentaho.di.ui.core.widget.TableView;
 import org.pentaho.di.ui.core.widget.TextVar;
 import org.pentaho.di.ui.trans.step.BaseStepDialog;
 import org.pentaho.di.trans.step.BaseStepMeta;
 import org.pentaho.di.trans.step.StepDialogInterface;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * <p>This provides the user interface that pops up when the user double-clicks on the
  * step.  It was based off a sample dialog that looked like it was machine-generated.
@@ -65,6 +73,47 @@ public class XeroGetStepDialog extends BaseStepDialog implements StepDialogInter
     private TextVar wIfModifiedSince;
     private Text wXmlFieldName;
     private TextVar wWhere;
+    private Button wPaging;
+    private TextVar wPageSize;
+    private TextVar wPageConcurrency;
+    private TextVar wPrefetchQueueDepth;
+    private CCombo wFormat;
+
+    private CCombo wChunking;
+
+    private CCombo wParser;
+    private TextVar wWatermarkFile;
+    private TextVar wWatermarkVariable;
+    private Text wTenantIdFieldName;
+    private Text wTenantUrlFieldName;
+    private Text wTenantConsumerKeyFieldName;
+    private Text wTenantKeyFileFieldName;
+    private TextVar wTenantConcurrency;
+    private TextVar wRateLimitPerMinute;
+    private TextVar wRateLimitPerDay;
+    private TextVar wMaxRetries;
+    private TextVar wConnectionPoolSize;
+    private TextVar wConnectionIdleSeconds;
+    private TextVar wResponseCacheDirectory;
+    private TextVar wResponseCacheMaxMegabytes;
+    private TextVar wResponseCacheMaxAgeSeconds;
+    private TextVar wCaptureDirectory;
+    private Button wReplay;
+    private Button wXmlBinary;
+    private TextVar wSpillThresholdKilobytes;
+    private TextVar wSpillDirectory;
+    private Text wSpillFileFieldName;
+    private TableView wChildren;
+    private Text wIdFieldName;
+    private Text wIdPath;
+    private TextVar wIdBatchSize;
+    private TextVar wIdBatchConcurrency;
+    private TextVar wIdParameter;
+    private TextVar wChangeIndexFile;
+    private Text wChangeKeyPath;
+    private Text wChangeTypeFieldName;
+    private Button wChangeFieldsOnly;
+    private TableView wFields;
 
     public XeroGetStepDialog(Shell parent, Object in, TransMeta transMeta, String sname) {
         super(parent, (BaseStepMeta) in, transMeta, sname);
@@ -97,6 +146,123 @@ public class XeroGetStepDialog extends BaseStepDialog implements StepDialogInter
         return result;
     }
 
+    private Button createStandardCheckbox(Composite composite, FormData formData) {
+        Button result = new Button(composite, SWT.CHECK);
+        props.setLook(result);
+        result.addSelectionListener(new SelectionAdapter() {
+            public void widgetSelected(SelectionEvent e) {
+                meta.setChanged();
+            }
+        });
+        result.setLayoutData(formData);
+        return result;
+    }
+
+    private CCombo createStandardCombo(Composite composite, String[] items, FormData formData, ModifyListener modifyListener) {
+        CCombo result = new CCombo(composite, SWT.READ_ONLY | SWT.BORDER);
+        result.setItems(items);
+        props.setLook(result);
+        result.addModifyListener(modifyListener);
+        result.setLayoutData(formData);
+        return result;
+    }
+
+    private String[] createFormatItems() {
+        XeroGetStepMeta.Format[] values = XeroGetStepMeta.Format.values();
+        String[] result = new String[values.length];
+
+        for (int i = 0; i < values.length; i++) {
+            result[i] = BaseMessages.getString(PKG, "XeroGetStep.Format." + values[i].name());
+        }
+
+        return result;
+    }
+
+    private String[] createChunkingItems() {
+        XeroGetStepMeta.Chunking[] values = XeroGetStepMeta.Chunking.values();
+        String[] result = new String[values.length];
+
+        for (int i = 0; i < values.length; i++) {
+            result[i] = BaseMessages.getString(PKG, "XeroGetStep.Chunking." + values[i].name());
+        }
+
+        return result;
+    }
+
+    private String[] createParserItems() {
+        XMLParserBackend[] values = XMLParserBackend.values();
+        String[] result = new String[values.length];
+
+        for (int i = 0; i < values.length; i++) {
+            result[i] = BaseMessages.getString(PKG, "XeroGetStep.Parser." + values[i].name());
+        }
+
+        return result;
+    }
+
+    private String[] createFieldTypeItems() {
+        String[] result = new String[XeroGetStepField.TYPES.length];
+
+        for (int i = 0; i < XeroGetStepField.TYPES.length; i++) {
+            result[i] = ValueMeta.getTypeDesc(XeroGetStepField.TYPES[i]);
+        }
+
+        return result;
+    }
+
+    private TableView createFieldsTableView(Composite composite, ModifyListener modifyListener) {
+        ColumnInfo[] columns = new ColumnInfo[]{
+                new ColumnInfo(
+                        BaseMessages.getString(PKG, "XeroGetStep.Fields.Name.Column"),
+                        ColumnInfo.COLUMN_TYPE_TEXT,
+                        false),
+                new ColumnInfo(
+                        BaseMessages.getString(PKG, "XeroGetStep.Fields.Path.Column"),
+                        ColumnInfo.COLUMN_TYPE_TEXT,
+                        false),
+                new ColumnInfo(
+                        BaseMessages.getString(PKG, "XeroGetStep.Fields.Type.Column"),
+                        ColumnInfo.COLUMN_TYPE_CCOMBO,
+                        createFieldTypeItems(),
+                        true),
+                new ColumnInfo(
+                        BaseMessages.getString(PKG, "XeroGetStep.Fields.Format.Column"),
+                        ColumnInfo.COLUMN_TYPE_FORMAT,
+                        3)
+        };
+
+        return new TableView(
+                transMeta,
+                composite,
+                SWT.BORDER | SWT.FULL_SELECTION | SWT.MULTI,
+                columns,
+                meta.getOutputFields().size(),
+                modifyListener,
+                props);
+    }
+
+    private TableView createChildrenTableView(Composite composite, ModifyListener modifyListener) {
+        ColumnInfo[] columns = new ColumnInfo[]{
+                new ColumnInfo(
+                        BaseMessages.getString(PKG, "XeroGetStep.Children.Name.Column"),
+                        ColumnInfo.COLUMN_TYPE_TEXT,
+                        false),
+                new ColumnInfo(
+                        BaseMessages.getString(PKG, "XeroGetStep.Children.Path.Column"),
+                        ColumnInfo.COLUMN_TYPE_TEXT,
+                        false)
+        };
+
+        return new TableView(
+                transMeta,
+                composite,
+                SWT.BORDER | SWT.FULL_SELECTION | SWT.MULTI,
+                columns,
+                meta.getChildren().size(),
+                modifyListener,
+                props);
+    }
+
     private FormData createStandardLabelFormData(Control lastControl) {
         FormData ds = new FormData();
         ds.left = new FormAttachment(0, 0);
@@ -212,13 +378,278 @@ public class XeroGetStepDialog extends BaseStepDialog implements StepDialogInter
             lastControl = wWhere;
         }
 
+        {
+            createStandardLabel(shell, "XeroGetStep.Paging.Title", createStandardLabelFormData(lastControl));
+            wPaging = createStandardCheckbox(shell, createStandardControlFormData(lastControl));
+            lastControl = wPaging;
+        }
+
+        {
+            createStandardLabel(shell, "XeroGetStep.PageSize.Title", createStandardLabelFormData(lastControl));
+            wPageSize = createStandardTextVar(shell, "", createStandardControlFormData(lastControl), lsMod);
+            lastControl = wPageSize;
+        }
+
+        {
+            createStandardLabel(shell, "XeroGetStep.PageConcurrency.Title", createStandardLabelFormData(lastControl));
+            wPageConcurrency = createStandardTextVar(shell, "", createStandardControlFormData(lastControl), lsMod);
+            lastControl = wPageConcurrency;
+        }
+
+        {
+            createStandardLabel(shell, "XeroGetStep.PrefetchQueueDepth.Title", createStandardLabelFormData(lastControl));
+            wPrefetchQueueDepth = createStandardTextVar(shell, "", createStandardControlFormData(lastControl), lsMod);
+            lastControl = wPrefetchQueueDepth;
+        }
+
+        {
+            createStandardLabel(shell, "XeroGetStep.Format.Title", createStandardLabelFormData(lastControl));
+            wFormat = createStandardCombo(shell, createFormatItems(), createStandardControlFormData(lastControl), lsMod);
+            lastControl = wFormat;
+        }
+
+        {
+            createStandardLabel(shell, "XeroGetStep.Chunking.Title", createStandardLabelFormData(lastControl));
+            wChunking = createStandardCombo(shell, createChunkingItems(), createStandardControlFormData(lastControl), lsMod);
+            lastControl = wChunking;
+        }
+
+        {
+            createStandardLabel(shell, "XeroGetStep.Parser.Title", createStandardLabelFormData(lastControl));
+            wParser = createStandardCombo(shell, createParserItems(), createStandardControlFormData(lastControl), lsMod);
+            lastControl = wParser;
+        }
+
+        {
+            createStandardLabel(shell, "XeroGetStep.WatermarkFile.Title", createStandardLabelFormData(lastControl));
+            wWatermarkFile = createStandardTextVar(shell, "", createStandardControlFormData(lastControl), lsMod);
+            lastControl = wWatermarkFile;
+        }
+
+        {
+            createStandardLabel(shell, "XeroGetStep.WatermarkVariable.Title", createStandardLabelFormData(lastControl));
+            wWatermarkVariable = createStandardTextVar(shell, "", createStandardControlFormData(lastControl), lsMod);
+            lastControl = wWatermarkVariable;
+        }
+
+        {
+            createStandardLabel(shell, "XeroGetStep.TenantIdFieldName.Title", createStandardLabelFormData(lastControl));
+            wTenantIdFieldName = createStandardText(shell, "", createStandardControlFormData(lastControl), lsMod);
+            lastControl = wTenantIdFieldName;
+        }
+
+        {
+            createStandardLabel(shell, "XeroGetStep.TenantUrlFieldName.Title", createStandardLabelFormData(lastControl));
+            wTenantUrlFieldName = createStandardText(shell, "", createStandardControlFormData(lastControl), lsMod);
+            lastControl = wTenantUrlFieldName;
+        }
+
+        {
+            createStandardLabel(shell, "XeroGetStep.TenantConsumerKeyFieldName.Title", createStandardLabelFormData(lastControl));
+            wTenantConsumerKeyFieldName = createStandardText(shell, "", createStandardControlFormData(lastControl), lsMod);
+            lastControl = wTenantConsumerKeyFieldName;
+        }
+
+        {
+            createStandardLabel(shell, "XeroGetStep.TenantKeyFileFieldName.Title", createStandardLabelFormData(lastControl));
+            wTenantKeyFileFieldName = createStandardText(shell, "", createStandardControlFormData(lastControl), lsMod);
+            lastControl = wTenantKeyFileFieldName;
+        }
+
+        {
+            createStandardLabel(shell, "XeroGetStep.TenantConcurrency.Title", createStandardLabelFormData(lastControl));
+            wTenantConcurrency = createStandardTextVar(shell, "", createStandardControlFormData(lastControl), lsMod);
+            lastControl = wTenantConcurrency;
+        }
+
+        {
+            createStandardLabel(shell, "XeroGetStep.RateLimitPerMinute.Title", createStandardLabelFormData(lastControl));
+            wRateLimitPerMinute = createStandardTextVar(shell, "", createStandardControlFormData(lastControl), lsMod);
+            lastControl = wRateLimitPerMinute;
+        }
+
+        {
+            createStandardLabel(shell, "XeroGetStep.RateLimitPerDay.Title", createStandardLabelFormData(lastControl));
+            wRateLimitPerDay = createStandardTextVar(shell, "", createStandardControlFormData(lastControl), lsMod);
+            lastControl = wRateLimitPerDay;
+        }
+
+        {
+            createStandardLabel(shell, "XeroGetStep.MaxRetries.Title", createStandardLabelFormData(lastControl));
+            wMaxRetries = createStandardTextVar(shell, "", createStandardControlFormData(lastControl), lsMod);
+            lastControl = wMaxRetries;
+        }
+
+        {
+            createStandardLabel(shell, "XeroGetStep.ConnectionPoolSize.Title", createStandardLabelFormData(lastControl));
+            wConnectionPoolSize = createStandardTextVar(shell, "", createStandardControlFormData(lastControl), lsMod);
+            lastControl = wConnectionPoolSize;
+        }
+
+        {
+            createStandardLabel(shell, "XeroGetStep.ConnectionIdleSeconds.Title", createStandardLabelFormData(lastControl));
+            wConnectionIdleSeconds = createStandardTextVar(shell, "", createStandardControlFormData(lastControl), lsMod);
+            lastControl = wConnectionIdleSeconds;
+        }
+
+        {
+            createStandardLabel(shell, "XeroGetStep.ResponseCacheDirectory.Title", createStandardLabelFormData(lastControl));
+            wResponseCacheDirectory = createStandardTextVar(shell, "", createStandardControlFormData(lastControl), lsMod);
+            lastControl = wResponseCacheDirectory;
+        }
+
+        {
+            createStandardLabel(shell, "XeroGetStep.ResponseCacheMaxMegabytes.Title", createStandardLabelFormData(lastControl));
+            wResponseCacheMaxMegabytes = createStandardTextVar(shell, "", createStandardControlFormData(lastControl), lsMod);
+            lastControl = wResponseCacheMaxMegabytes;
+        }
+
+        {
+            createStandardLabel(shell, "XeroGetStep.ResponseCacheMaxAgeSeconds.Title", createStandardLabelFormData(lastControl));
+            wResponseCacheMaxAgeSeconds = createStandardTextVar(shell, "", createStandardControlFormData(lastControl), lsMod);
+            lastControl = wResponseCacheMaxAgeSeconds;
+        }
+
+        {
+            createStandardLabel(shell, "XeroGetStep.CaptureDirectory.Title", createStandardLabelFormData(lastControl));
+            wCaptureDirectory = createStandardTextVar(shell, "", createStandardControlFormData(lastControl), lsMod);
+            lastControl = wCaptureDirectory;
+        }
+
+        {
+            createStandardLabel(shell, "XeroGetStep.Replay.Title", createStandardLabelFormData(lastControl));
+            wReplay = createStandardCheckbox(shell, createStandardControlFormData(lastControl));
+            lastControl = wReplay;
+        }
+
+        {
+            createStandardLabel(shell, "XeroGetStep.XmlBinary.Title", createStandardLabelFormData(lastControl));
+            wXmlBinary = createStandardCheckbox(shell, createStandardControlFormData(lastControl));
+            lastControl = wXmlBinary;
+        }
+
+        {
+            createStandardLabel(shell, "XeroGetStep.SpillThresholdKilobytes.Title", createStandardLabelFormData(lastControl));
+            wSpillThresholdKilobytes = createStandardTextVar(shell, "", createStandardControlFormData(lastControl), lsMod);
+            lastControl = wSpillThresholdKilobytes;
+        }
+
+        {
+            createStandardLabel(shell, "XeroGetStep.SpillDirectory.Title", createStandardLabelFormData(lastControl));
+            wSpillDirectory = createStandardTextVar(shell, "", createStandardControlFormData(lastControl), lsMod);
+            lastControl = wSpillDirectory;
+        }
+
+        {
+            createStandardLabel(shell, "XeroGetStep.SpillFileFieldName.Title", createStandardLabelFormData(lastControl));
+            wSpillFileFieldName = createStandardText(shell, "", createStandardControlFormData(lastControl), lsMod);
+            lastControl = wSpillFileFieldName;
+        }
+
+        {
+            createStandardLabel(shell, "XeroGetStep.IdFieldName.Title", createStandardLabelFormData(lastControl));
+            wIdFieldName = createStandardText(shell, "", createStandardControlFormData(lastControl), lsMod);
+            lastControl = wIdFieldName;
+        }
+
+        {
+            createStandardLabel(shell, "XeroGetStep.IdPath.Title", createStandardLabelFormData(lastControl));
+            wIdPath = createStandardText(shell, "", createStandardControlFormData(lastControl), lsMod);
+            lastControl = wIdPath;
+        }
+
+        {
+            createStandardLabel(shell, "XeroGetStep.IdBatchSize.Title", createStandardLabelFormData(lastControl));
+            wIdBatchSize = createStandardTextVar(shell, "", createStandardControlFormData(lastControl), lsMod);
+            lastControl = wIdBatchSize;
+        }
+
+        {
+            createStandardLabel(shell, "XeroGetStep.IdBatchConcurrency.Title", createStandardLabelFormData(lastControl));
+            wIdBatchConcurrency = createStandardTextVar(shell, "", createStandardControlFormData(lastControl), lsMod);
+            lastControl = wIdBatchConcurrency;
+        }
+
+        {
+            createStandardLabel(shell, "XeroGetStep.IdParameter.Title", createStandardLabelFormData(lastControl));
+            wIdParameter = createStandardTextVar(shell, "", createStandardControlFormData(lastControl), lsMod);
+            lastControl = wIdParameter;
+        }
+
+        {
+            createStandardLabel(shell, "XeroGetStep.ChangeIndexFile.Title", createStandardLabelFormData(lastControl));
+            wChangeIndexFile = createStandardTextVar(shell, "", createStandardControlFormData(lastControl), lsMod);
+            lastControl = wChangeIndexFile;
+        }
+
+        {
+            createStandardLabel(shell, "XeroGetStep.ChangeKeyPath.Title", createStandardLabelFormData(lastControl));
+            wChangeKeyPath = createStandardText(shell, "", createStandardControlFormData(lastControl), lsMod);
+            lastControl = wChangeKeyPath;
+        }
+
+        {
+            createStandardLabel(shell, "XeroGetStep.ChangeTypeFieldName.Title", createStandardLabelFormData(lastControl));
+            wChangeTypeFieldName = createStandardText(shell, "", createStandardControlFormData(lastControl), lsMod);
+            lastControl = wChangeTypeFieldName;
+        }
+
+        {
+            createStandardLabel(shell, "XeroGetStep.ChangeFieldsOnly.Title", createStandardLabelFormData(lastControl));
+            wChangeFieldsOnly = createStandardCheckbox(shell, createStandardControlFormData(lastControl));
+            lastControl = wChangeFieldsOnly;
+        }
+
         // OK and cancel buttons
         wOK = new Button(shell, SWT.PUSH);
         wOK.setText(BaseMessages.getString(PKG, "System.Button.OK"));
         wCancel = new Button(shell, SWT.PUSH);
         wCancel.setText(BaseMessages.getString(PKG, "System.Button.Cancel"));
 
-        BaseStepDialog.positionBottomButtons(shell, new Button[]{wOK, wCancel}, margin, lastControl);
+        // the buttons are at the bottom so that the table of fields can take the remaining space.
+
+        setButtonPositions(new Button[]{wOK, wCancel}, margin, null);
+
+        {
+            Label wlChildren = new Label(shell, SWT.NONE);
+            wlChildren.setText(BaseMessages.getString(PKG, "XeroGetStep.Children.Title"));
+            props.setLook(wlChildren);
+            FormData fdlChildren = new FormData();
+            fdlChildren.left = new FormAttachment(0, 0);
+            fdlChildren.top = new FormAttachment(lastControl, margin);
+            wlChildren.setLayoutData(fdlChildren);
+            lastControl = wlChildren;
+
+            // the children are few and so the table is kept short to leave the space for the fields.
+
+            wChildren = createChildrenTableView(shell, lsMod);
+            FormData fdChildren = new FormData();
+            fdChildren.left = new FormAttachment(0, 0);
+            fdChildren.top = new FormAttachment(lastControl, margin);
+            fdChildren.right = new FormAttachment(100, 0);
+            fdChildren.height = 80;
+            wChildren.setLayoutData(fdChildren);
+            lastControl = wChildren;
+        }
+
+        {
+            Label wlFields = new Label(shell, SWT.NONE);
+            wlFields.setText(BaseMessages.getString(PKG, "XeroGetStep.Fields.Title"));
+            props.setLook(wlFields);
+            FormData fdlFields = new FormData();
+            fdlFields.left = new FormAttachment(0, 0);
+            fdlFields.top = new FormAttachment(lastControl, margin);
+            wlFields.setLayoutData(fdlFields);
+            lastControl = wlFields;
+
+            wFields = createFieldsTableView(shell, lsMod);
+            FormData fdFields = new FormData();
+            fdFields.left = new FormAttachment(0, 0);
+            fdFields.top = new FormAttachment(lastControl, margin);
+            fdFields.right = new FormAttachment(100, 0);
+            fdFields.bottom = new FormAttachment(wOK, -2 * margin);
+            wFields.setLayoutData(fdFields);
+        }
 
         // Add listeners for cancel and OK
         lsCancel = new Listener() {
@@ -282,6 +713,69 @@ public class XeroGetStepDialog extends BaseStepDialog implements StepDialogInter
         wIfModifiedSince.setText(StringUtils.trimToEmpty(meta.getIfModifiedSince()));
         wXmlFieldName.setText(StringUtils.trimToEmpty(meta.getXmlFieldName()));
         wWhere.setText(StringUtils.trimToEmpty(meta.getWhere()));
+        wPaging.setSelection(meta.isPaging());
+        wPageSize.setText(StringUtils.trimToEmpty(meta.getPageSize()));
+        wPageConcurrency.setText(StringUtils.trimToEmpty(meta.getPageConcurrency()));
+        wPrefetchQueueDepth.setText(StringUtils.trimToEmpty(meta.getPrefetchQueueDepth()));
+        wFormat.select(meta.getFormat().ordinal());
+        wChunking.select(meta.getChunking().ordinal());
+        wParser.select(meta.getParser().ordinal());
+        wWatermarkFile.setText(StringUtils.trimToEmpty(meta.getWatermarkFile()));
+        wWatermarkVariable.setText(StringUtils.trimToEmpty(meta.getWatermarkVariable()));
+        wTenantIdFieldName.setText(StringUtils.trimToEmpty(meta.getTenantIdFieldName()));
+        wTenantUrlFieldName.setText(StringUtils.trimToEmpty(meta.getTenantUrlFieldName()));
+        wTenantConsumerKeyFieldName.setText(StringUtils.trimToEmpty(meta.getTenantConsumerKeyFieldName()));
+        wTenantKeyFileFieldName.setText(StringUtils.trimToEmpty(meta.getTenantKeyFileFieldName()));
+        wTenantConcurrency.setText(StringUtils.trimToEmpty(meta.getTenantConcurrency()));
+        wRateLimitPerMinute.setText(StringUtils.trimToEmpty(meta.getRateLimitPerMinute()));
+        wRateLimitPerDay.setText(StringUtils.trimToEmpty(meta.getRateLimitPerDay()));
+        wMaxRetries.setText(StringUtils.trimToEmpty(meta.getMaxRetries()));
+        wConnectionPoolSize.setText(StringUtils.trimToEmpty(meta.getConnectionPoolSize()));
+        wConnectionIdleSeconds.setText(StringUtils.trimToEmpty(meta.getConnectionIdleSeconds()));
+        wResponseCacheDirectory.setText(StringUtils.trimToEmpty(meta.getResponseCacheDirectory()));
+        wResponseCacheMaxMegabytes.setText(StringUtils.trimToEmpty(meta.getResponseCacheMaxMegabytes()));
+        wResponseCacheMaxAgeSeconds.setText(StringUtils.trimToEmpty(meta.getResponseCacheMaxAgeSeconds()));
+        wCaptureDirectory.setText(StringUtils.trimToEmpty(meta.getCaptureDirectory()));
+        wReplay.setSelection(meta.isReplay());
+        wXmlBinary.setSelection(meta.isXmlBinary());
+        wSpillThresholdKilobytes.setText(StringUtils.trimToEmpty(meta.getSpillThresholdKilobytes()));
+        wSpillDirectory.setText(StringUtils.trimToEmpty(meta.getSpillDirectory()));
+        wSpillFileFieldName.setText(StringUtils.trimToEmpty(meta.getSpillFileFieldName()));
+
+        List<XeroGetStepChild> children = meta.getChildren();
+
+        for (int i = 0; i < children.size(); i++) {
+            XeroGetStepChild child = children.get(i);
+            TableItem item = wChildren.table.getItem(i);
+            item.setText(1, StringUtils.trimToEmpty(child.getName()));
+            item.setText(2, StringUtils.trimToEmpty(child.getPath()));
+        }
+
+        wChildren.setRowNums();
+        wChildren.optWidth(true);
+        wIdFieldName.setText(StringUtils.trimToEmpty(meta.getIdFieldName()));
+        wIdPath.setText(StringUtils.trimToEmpty(meta.getIdPath()));
+        wIdBatchSize.setText(StringUtils.trimToEmpty(meta.getIdBatchSize()));
+        wIdBatchConcurrency.setText(StringUtils.trimToEmpty(meta.getIdBatchConcurrency()));
+        wIdParameter.setText(StringUtils.trimToEmpty(meta.getIdParameter()));
+        wChangeIndexFile.setText(StringUtils.trimToEmpty(meta.getChangeIndexFile()));
+        wChangeKeyPath.setText(StringUtils.trimToEmpty(meta.getChangeKeyPath()));
+        wChangeTypeFieldName.setText(StringUtils.trimToEmpty(meta.getChangeTypeFieldName()));
+        wChangeFieldsOnly.setSelection(meta.isChangeFieldsOnly());
+
+        List<XeroGetStepField> outputFields = meta.getOutputFields();
+
+        for (int i = 0; i < outputFields.size(); i++) {
+            XeroGetStepField outputField = outputFields.get(i);
+            TableItem item = wFields.table.getItem(i);
+            item.setText(1, StringUtils.trimToEmpty(outputField.getName()));
+            item.setText(2, StringUtils.trimToEmpty(outputField.getPath()));
+            item.setText(3, outputField.getTypeDesc());
+            item.setText(4, StringUtils.trimToEmpty(outputField.getFormat()));
+        }
+
+        wFields.setRowNums();
+        wFields.optWidth(true);
     }
 
     private void cancel() {
@@ -299,6 +793,66 @@ public class XeroGetStepDialog extends BaseStepDialog implements StepDialogInter
         meta.setIfModifiedSince(wIfModifiedSince.getText());
         meta.setXmlFieldName(wXmlFieldName.getText());
         meta.setWhere(wWhere.getText());
+        meta.setPaging(wPaging.getSelection());
+        meta.setPageSize(wPageSize.getText());
+        meta.setPageConcurrency(wPageConcurrency.getText());
+        meta.setPrefetchQueueDepth(wPrefetchQueueDepth.getText());
+        meta.setFormat(XeroGetStepMeta.Format.values()[Math.max(0, wFormat.getSelectionIndex())]);
+        meta.setChunking(XeroGetStepMeta.Chunking.values()[Math.max(0, wChunking.getSelectionIndex())]);
+        meta.setParser(XMLParserBackend.values()[Math.max(0, wParser.getSelectionIndex())]);
+        meta.setWatermarkFile(wWatermarkFile.getText());
+        meta.setWatermarkVariable(wWatermarkVariable.getText());
+        meta.setTenantIdFieldName(wTenantIdFieldName.getText());
+        meta.setTenantUrlFieldName(wTenantUrlFieldName.getText());
+        meta.setTenantConsumerKeyFieldName(wTenantConsumerKeyFieldName.getText());
+        meta.setTenantKeyFileFieldName(wTenantKeyFileFieldName.getText());
+        meta.setTenantConcurrency(wTenantConcurrency.getText());
+        meta.setRateLimitPerMinute(wRateLimitPerMinute.getText());
+        meta.setRateLimitPerDay(wRateLimitPerDay.getText());
+        meta.setMaxRetries(wMaxRetries.getText());
+        meta.setConnectionPoolSize(wConnectionPoolSize.getText());
+        meta.setConnectionIdleSeconds(wConnectionIdleSeconds.getText());
+        meta.setResponseCacheDirectory(wResponseCacheDirectory.getText());
+        meta.setResponseCacheMaxMegabytes(wResponseCacheMaxMegabytes.getText());
+        meta.setResponseCacheMaxAgeSeconds(wResponseCacheMaxAgeSeconds.getText());
+        meta.setCaptureDirectory(wCaptureDirectory.getText());
+        meta.setReplay(wReplay.getSelection());
+        meta.setXmlBinary(wXmlBinary.getSelection());
+        meta.setSpillThresholdKilobytes(wSpillThresholdKilobytes.getText());
+        meta.setSpillDirectory(wSpillDirectory.getText());
+        meta.setSpillFileFieldName(wSpillFileFieldName.getText());
+
+        List<XeroGetStepChild> children = new ArrayList<XeroGetStepChild>();
+
+        for (int i = 0; i < wChildren.nrNonEmpty(); i++) {
+            TableItem item = wChildren.getNonEmpty(i);
+            children.add(new XeroGetStepChild(item.getText(1), item.getText(2)));
+        }
+
+        meta.setChildren(children);
+        meta.setIdFieldName(wIdFieldName.getText());
+        meta.setIdPath(wIdPath.getText());
+        meta.setIdBatchSize(wIdBatchSize.getText());
+        meta.setIdBatchConcurrency(wIdBatchConcurrency.getText());
+        meta.setIdParameter(wIdParameter.getText());
+        meta.setChangeIndexFile(wChangeIndexFile.getText());
+        meta.setChangeKeyPath(wChangeKeyPath.getText());
+        meta.setChangeTypeFieldName(wChangeTypeFieldName.getText());
+        meta.setChangeFieldsOnly(wChangeFieldsOnly.getSelection());
+
+        List<XeroGetStepField> outputFields = new ArrayList<XeroGetStepField>();
+
+        for (int i = 0; i < wFields.nrNonEmpty(); i++) {
+            TableItem item = wFields.getNonEmpty(i);
+            XeroGetStepField outputField = new XeroGetStepField();
+            outputField.setName(item.getText(1));
+            outputField.setPath(item.getText(2));
+            outputField.setTypeDesc(item.getText(3));
+            outputField.setFormat(item.getText(4));
+            outputFields.add(outputField);
+        }
+
+        meta.setOutputFields(outputFields);
         dispose();
     }
 }
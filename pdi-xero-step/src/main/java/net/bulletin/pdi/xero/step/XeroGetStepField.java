@@ -0,0 +1,183 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.bulletin.pdi.xero.step;
+
+import org.apache.commons.lang.StringUtils;
+import org.pentaho.di.core.row.ValueMeta;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+import java.util.TimeZone;
+
+/**
+ * <p>This is the definition of a field that is extracted from each chunk of XML and is put into
+ * the stream as its own typed column.  The path is relative to the root element of the chunk; for
+ * example "Contact/Name" when the container elements are "/Response/Invoices/Invoice".</p>
+ *
+ * @author Andrew Lindesay
+ */
+
+public class XeroGetStepField implements Cloneable {
+
+    /**
+     * <p>These are the types that a field may be converted to.</p>
+     */
+
+    public final static int[] TYPES = new int[]{
+            ValueMetaInterface.TYPE_STRING,
+            ValueMetaInterface.TYPE_NUMBER,
+            ValueMetaInterface.TYPE_INTEGER,
+            ValueMetaInterface.TYPE_BIGNUMBER,
+            ValueMetaInterface.TYPE_DATE,
+            ValueMetaInterface.TYPE_BOOLEAN
+    };
+
+    /**
+     * <p>Xero presents dates in this format; it is used where a date field has no format.  Any
+     * fractional seconds on the end of the value are ignored.</p>
+     */
+
+    public final static String FORMAT_DATE_XERO = "yyyy-MM-dd'T'HH:mm:ss";
+
+    /**
+     * <p>Xero names the elements that carry a UTC date with this suffix; for example
+     * "UpdatedDateUTC".</p>
+     */
+
+    private final static String SUFFIX_UTC = "UTC";
+
+    private String name;
+
+    private String path;
+
+    private int type = ValueMetaInterface.TYPE_STRING;
+
+    private String format;
+
+    public XeroGetStepField() {
+        super();
+    }
+
+    public XeroGetStepField(String name, String path, int type, String format) {
+        this();
+        setName(name);
+        setPath(path);
+        setType(type);
+        setFormat(format);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = StringUtils.trimToNull(name);
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = StringUtils.trimToNull(path);
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public void setType(int type) {
+        this.type = type;
+    }
+
+    public String getTypeDesc() {
+        return ValueMeta.getTypeDesc(type);
+    }
+
+    /**
+     * <p>Sets the type from its Kettle description such as "Number".  If the description is not
+     * known then the type is a string.</p>
+     */
+
+    public void setTypeDesc(String value) {
+        int t = ValueMeta.getType(StringUtils.trimToEmpty(value));
+        setType(ValueMetaInterface.TYPE_NONE == t ? ValueMetaInterface.TYPE_STRING : t);
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public void setFormat(String format) {
+        this.format = StringUtils.trimToNull(format);
+    }
+
+    /**
+     * <p>Xero presents the dates of elements such as "UpdatedDateUTC" in UTC whereas other dates,
+     * such as the "Date" of an invoice, are in the time zone of the organisation and carry no
+     * zone at all.  The former are parsed as UTC and the latter in the time zone of the JVM.  A
+     * date in JSON is converted into the XML form in UTC and so it follows the same rule.</p>
+     */
+
+    public boolean isUtc() {
+        return StringUtils.endsWith(getPath(), SUFFIX_UTC);
+    }
+
+    /**
+     * <p>This creates the value meta that describes the field in the output stream.</p>
+     */
+
+    public ValueMetaInterface createValueMeta(String origin) {
+        ValueMetaInterface result = new ValueMeta(getName(), getType());
+
+        switch (getType()) {
+            case ValueMetaInterface.TYPE_NUMBER:
+            case ValueMetaInterface.TYPE_INTEGER:
+            case ValueMetaInterface.TYPE_BIGNUMBER:
+                result.setDecimalSymbol(".");
+                result.setGroupingSymbol("");
+                result.setConversionMask(getFormat());
+                break;
+
+            case ValueMetaInterface.TYPE_DATE:
+                result.setConversionMask(null == getFormat() ? FORMAT_DATE_XERO : getFormat());
+
+                if (isUtc()) {
+                    result.setDateFormatTimeZone(TimeZone.getTimeZone("UTC"));
+                }
+
+                break;
+
+            default:
+                result.setConversionMask(getFormat());
+                break;
+        }
+
+        result.setOrigin(origin);
+        return result;
+    }
+
+    @Override
+    public XeroGetStepField clone() {
+        try {
+            return (XeroGetStepField) super.clone();
+        } catch (CloneNotSupportedException cnse) {
+            throw new IllegalStateException(cnse);
+        }
+    }
+
+}
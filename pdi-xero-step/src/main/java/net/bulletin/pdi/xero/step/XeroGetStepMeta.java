@@ -16,15 +16,18 @@
 
 package net.bulletin.pdi.xero.step;
 
+import net.bulletin.pdi.xero.step.support.XMLParserBackend;
 import org.apache.commons.lang.StringUtils;
 import org.pentaho.di.core.CheckResult;
 import org.pentaho.di.core.CheckResultInterface;
+import org.pentaho.di.core.Const;
 import org.pentaho.di.core.annotations.Step;
 import org.pentaho.di.core.database.DatabaseMeta;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleStepException;
 import org.pentaho.di.core.exception.KettleValueException;
 import org.pentaho.di.core.exception.KettleXMLException;
+import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMeta;
 import org.pentaho.di.core.row.ValueMetaInterface;
@@ -39,6 +42,7 @@ import org.pentaho.di.trans.step.*;
 import org.pentaho.metastore.api.IMetaStore;
 import org.w3c.dom.Node;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -65,145 +69,924 @@ public class XeroGetStepMeta extends BaseStepMeta implements StepMetaInterface {
      */
     private static Class<?> PKG = XeroGetStepMeta.class; // for i18n purposes
 
+    /**
+     * <p>This defines the format in which the data is requested from Xero.</p>
+     */
+
+    public enum Format {
+
+        XML,
+
+        /**
+         * <p>JSON is smaller than XML and cheaper to tokenize.  The chunking does not apply to
+         * JSON.</p>
+         */
+
+        JSON
+    }
+
+    /**
+     * <p>This defines how the XML from Xero is broken up into chunks.</p>
+     */
+
+    public enum Chunking {
+
+        /**
+         * <p>The XML is read with a StAX reader and each chunk is written out with a StAX
+         * writer.</p>
+         */
+
+        STAX,
+
+        /**
+         * <p>The bytes of each chunk are copied directly from the input.</p>
+         */
+
+        BYTE_RANGE
+    }
+
     // -----------------------
     // KEYS USED FOR IDENTIFYING CONFIGURATION
 
-    private final static String KEY_URL = "url";
+    private final static String KEY_URL = "url";
+
+    private final static String KEY_AUTHENTICATIONCONSUMERKEY = "authentication_consumer_key";
+
+    private final static String KEY_AUTHENTICATIONKEYFILE = "authentication_key_file";
+
+    private final static String KEY_WHERE = "where";
+
+    private final static String KEY_XMLFIELDNAME = "xml_field_name";
+
+    private final static String KEY_CONTAINERELEMENTS = "container_elements";
+
+    private final static String KEY_IFMODIFIEDSINCE = "if_modified_since";
+
+    private final static String KEY_PAGING = "paging";
+
+    private final static String KEY_PAGESIZE = "page_size";
+
+    private final static String KEY_PAGECONCURRENCY = "page_concurrency";
+
+    private final static String KEY_PREFETCHQUEUEDEPTH = "prefetch_queue_depth";
+
+    private final static String KEY_FORMAT = "format";
+
+    private final static String KEY_CHUNKING = "chunking";
+
+    private final static String KEY_PARSER = "parser";
+
+    private final static String KEY_WATERMARKFILE = "watermark_file";
+
+    private final static String KEY_WATERMARKVARIABLE = "watermark_variable";
+
+    private final static String KEY_TENANTIDFIELDNAME = "tenant_id_field";
+
+    private final static String KEY_TENANTURLFIELDNAME = "tenant_url_field";
+
+    private final static String KEY_TENANTCONSUMERKEYFIELDNAME = "tenant_consumer_key_field";
+
+    private final static String KEY_TENANTKEYFILEFIELDNAME = "tenant_key_file_field";
+
+    private final static String KEY_TENANTCONCURRENCY = "tenant_concurrency";
+
+    private final static String KEY_RATELIMITPERMINUTE = "rate_limit_per_minute";
+
+    private final static String KEY_RATELIMITPERDAY = "rate_limit_per_day";
+
+    private final static String KEY_MAXRETRIES = "max_retries";
+
+    private final static String KEY_CONNECTIONPOOLSIZE = "connection_pool_size";
+
+    private final static String KEY_CONNECTIONIDLESECONDS = "connection_idle_seconds";
+
+    private final static String KEY_RESPONSECACHEDIRECTORY = "response_cache_directory";
+
+    private final static String KEY_RESPONSECACHEMAXMEGABYTES = "response_cache_max_megabytes";
+
+    private final static String KEY_RESPONSECACHEMAXAGESECONDS = "response_cache_max_age_seconds";
+
+    private final static String KEY_CAPTUREDIRECTORY = "capture_directory";
+
+    private final static String KEY_REPLAY = "replay";
+
+    private final static String KEY_XMLBINARY = "xml_binary";
+
+    private final static String KEY_SPILLTHRESHOLDKILOBYTES = "spill_threshold_kilobytes";
+
+    private final static String KEY_SPILLDIRECTORY = "spill_directory";
+
+    private final static String KEY_SPILLFILEFIELDNAME = "spill_file_field_name";
+
+    private final static String KEY_CHILDREN = "children";
+
+    private final static String KEY_CHILD = "child";
+
+    private final static String KEY_CHILD_NAME = "child_name";
+
+    private final static String KEY_CHILD_PATH = "child_path";
+
+    private final static String KEY_IDFIELDNAME = "id_field_name";
+
+    private final static String KEY_IDPATH = "id_path";
+
+    private final static String KEY_IDBATCHSIZE = "id_batch_size";
+
+    private final static String KEY_IDBATCHCONCURRENCY = "id_batch_concurrency";
+
+    private final static String KEY_IDPARAMETER = "id_parameter";
+
+    private final static String KEY_CHANGEINDEXFILE = "change_index_file";
+
+    private final static String KEY_CHANGEKEYPATH = "change_key_path";
+
+    private final static String KEY_CHANGETYPEFIELDNAME = "change_type_field_name";
+
+    private final static String KEY_CHANGEFIELDSONLY = "change_fields_only";
+
+    private final static String KEY_FIELDS = "fields";
+
+    private final static String KEY_FIELD = "field";
+
+    private final static String KEY_FIELD_NAME = "field_name";
+
+    private final static String KEY_FIELD_PATH = "field_path";
+
+    private final static String KEY_FIELD_TYPE = "field_type";
+
+    private final static String KEY_FIELD_FORMAT = "field_format";
+
+    // -----------------------
+    // STATE
+
+    private String url;
+
+    private String authenticationConsumerKey;
+
+    private String authenticationKeyFile;
+
+    private String where;
+
+    private String xmlFieldName;
+
+    private String containerElements;
+
+    private String ifModifiedSince;
+
+    private boolean paging;
+
+    private String pageSize;
+
+    private String pageConcurrency;
+
+    private String prefetchQueueDepth;
+
+    private Format format = Format.XML;
+
+    private Chunking chunking = Chunking.STAX;
+
+    private XMLParserBackend parser = XMLParserBackend.DEFAULT;
+
+    private String watermarkFile;
+
+    private String watermarkVariable;
+
+    private String tenantIdFieldName;
+
+    private String tenantUrlFieldName;
+
+    private String tenantConsumerKeyFieldName;
+
+    private String tenantKeyFileFieldName;
+
+    private String tenantConcurrency;
+
+    private String rateLimitPerMinute;
+
+    private String rateLimitPerDay;
+
+    private String maxRetries;
+
+    private String connectionPoolSize;
+
+    private String connectionIdleSeconds;
+
+    private String responseCacheDirectory;
+
+    private String responseCacheMaxMegabytes;
+
+    private String responseCacheMaxAgeSeconds;
+
+    private String captureDirectory;
+
+    private boolean replay;
+
+    private boolean xmlBinary;
+
+    private String spillThresholdKilobytes;
+
+    private String spillDirectory;
+
+    private String spillFileFieldName;
+
+    private List<XeroGetStepChild> children = new ArrayList<XeroGetStepChild>();
+
+    private String idFieldName;
+
+    private String idPath;
+
+    private String idBatchSize;
+
+    private String idBatchConcurrency;
+
+    private String idParameter;
+
+    private String changeIndexFile;
+
+    private String changeKeyPath;
+
+    private String changeTypeFieldName;
+
+    private boolean changeFieldsOnly;
+
+    private List<XeroGetStepField> outputFields = new ArrayList<XeroGetStepField>();
+
+    public XeroGetStepMeta() {
+        super();
+    }
+
+    // -----------------------
+    // GET'ER AND SET'ER
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public void setUrlIfPresent(String value) {
+        if (StringUtils.isNotBlank(value)) {
+            setUrl(value);
+        }
+    }
+
+    public String getAuthenticationConsumerKey() {
+        return authenticationConsumerKey;
+    }
+
+    public void setAuthenticationConsumerKey(String authenticationConsumerKey) {
+        this.authenticationConsumerKey = authenticationConsumerKey;
+    }
+
+    public void setAuthenticationConsumerKeyIfPresent(String value) {
+        if (StringUtils.isNotBlank(value)) {
+            setAuthenticationConsumerKey(value);
+        }
+    }
+
+    public String getAuthenticationKeyFile() {
+        return authenticationKeyFile;
+    }
+
+    public void setAuthenticationKeyFile(String authenticationKeyFile) {
+        this.authenticationKeyFile = authenticationKeyFile;
+    }
+
+    public void setAuthenticationKeyFileIfPresent(String value) {
+        if (StringUtils.isNotBlank(value)) {
+            setAuthenticationKeyFile(value);
+        }
+    }
+
+    public String getWhere() {
+        return where;
+    }
+
+    public void setWhere(String where) {
+        this.where = where;
+    }
+
+    public void setWhereIfPresent(String value) {
+        if (StringUtils.isNotBlank(value)) {
+            setWhere(value);
+        }
+    }
+
+    public String getXmlFieldName() {
+        return xmlFieldName;
+    }
+
+    public void setXmlFieldName(String xmlFieldName) {
+        this.xmlFieldName = StringUtils.trimToNull(xmlFieldName);
+    }
+
+    public void setXmlFieldNameIfPresent(String value) {
+        if (StringUtils.isNotBlank(value)) {
+            setXmlFieldName(value);
+        }
+    }
+
+    public String getContainerElements() {
+        return containerElements;
+    }
+
+    public void setContainerElements(String containerElements) {
+        this.containerElements = StringUtils.trimToNull(containerElements);
+    }
+
+    public void setContainerElementsIfPresent(String value) {
+        if (StringUtils.isNotBlank(value)) {
+            setContainerElements(value);
+        }
+    }
+
+    public String getIfModifiedSince() {
+        return ifModifiedSince;
+    }
+
+    public void setIfModifiedSince(String ifModifiedSince) {
+        this.ifModifiedSince = ifModifiedSince;
+    }
+
+    public void setIfModifiedSinceIfPresent(String value) {
+        if (StringUtils.isNotBlank(value)) {
+            setIfModifiedSince(value);
+        }
+    }
+
+    public boolean isPaging() {
+        return paging;
+    }
+
+    public void setPaging(boolean paging) {
+        this.paging = paging;
+    }
+
+    public String getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(String pageSize) {
+        this.pageSize = StringUtils.trimToNull(pageSize);
+    }
+
+    public void setPageSizeIfPresent(String value) {
+        if (StringUtils.isNotBlank(value)) {
+            setPageSize(value);
+        }
+    }
+
+    public String getPageConcurrency() {
+        return pageConcurrency;
+    }
+
+    public void setPageConcurrency(String pageConcurrency) {
+        this.pageConcurrency = StringUtils.trimToNull(pageConcurrency);
+    }
+
+    public void setPageConcurrencyIfPresent(String value) {
+        if (StringUtils.isNotBlank(value)) {
+            setPageConcurrency(value);
+        }
+    }
+
+    public String getPrefetchQueueDepth() {
+        return prefetchQueueDepth;
+    }
+
+    public void setPrefetchQueueDepth(String prefetchQueueDepth) {
+        this.prefetchQueueDepth = StringUtils.trimToNull(prefetchQueueDepth);
+    }
+
+    public void setPrefetchQueueDepthIfPresent(String value) {
+        if (StringUtils.isNotBlank(value)) {
+            setPrefetchQueueDepth(value);
+        }
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    public void setFormat(Format format) {
+        this.format = null == format ? Format.XML : format;
+    }
+
+    public void setFormatIfPresent(String value) {
+        if (StringUtils.isNotBlank(value)) {
+            setFormat(Format.valueOf(value.trim()));
+        }
+    }
+
+    public Chunking getChunking() {
+        return chunking;
+    }
+
+    public void setChunking(Chunking chunking) {
+        this.chunking = null == chunking ? Chunking.STAX : chunking;
+    }
+
+    public void setChunkingIfPresent(String value) {
+        if (StringUtils.isNotBlank(value)) {
+            setChunking(Chunking.valueOf(value.trim()));
+        }
+    }
+
+    /**
+     * <p>The parser only applies to the StAX chunking.</p>
+     */
+
+    public XMLParserBackend getParser() {
+        return parser;
+    }
+
+    public void setParser(XMLParserBackend parser) {
+        this.parser = null == parser ? XMLParserBackend.DEFAULT : parser;
+    }
+
+    public void setParserIfPresent(String value) {
+        if (StringUtils.isNotBlank(value)) {
+            setParser(XMLParserBackend.valueOf(value.trim()));
+        }
+    }
+
+    public String getWatermarkFile() {
+        return watermarkFile;
+    }
+
+    public void setWatermarkFile(String watermarkFile) {
+        this.watermarkFile = StringUtils.trimToNull(watermarkFile);
+    }
+
+    public void setWatermarkFileIfPresent(String value) {
+        if (StringUtils.isNotBlank(value)) {
+            setWatermarkFile(value);
+        }
+    }
+
+    public String getWatermarkVariable() {
+        return watermarkVariable;
+    }
+
+    public void setWatermarkVariable(String watermarkVariable) {
+        this.watermarkVariable = StringUtils.trimToNull(watermarkVariable);
+    }
+
+    public void setWatermarkVariableIfPresent(String value) {
+        if (StringUtils.isNotBlank(value)) {
+            setWatermarkVariable(value);
+        }
+    }
+
+    public String getTenantIdFieldName() {
+        return tenantIdFieldName;
+    }
+
+    public void setTenantIdFieldName(String tenantIdFieldName) {
+        this.tenantIdFieldName = StringUtils.trimToNull(tenantIdFieldName);
+    }
+
+    public void setTenantIdFieldNameIfPresent(String value) {
+        if (StringUtils.isNotBlank(value)) {
+            setTenantIdFieldName(value);
+        }
+    }
+
+    /**
+     * <p>The step is tenanted when it takes a list of Xero organisations to fetch from as input
+     * rows rather than fetching from a single organisation.</p>
+     */
+
+    public boolean isTenanted() {
+        return StringUtils.isNotBlank(tenantIdFieldName);
+    }
+
+    /**
+     * <p>The step fetches by id when it takes a list of ids of the records to fetch as input rows.
+     * The ids are fetched in batches and each chunk is joined back to the input rows with its
+     * id.</p>
+     */
+
+    public boolean isFetchingByIds() {
+        return StringUtils.isNotBlank(idFieldName);
+    }
+
+    /**
+     * <p>When detecting changes, the hash of each record is compared with the hash that was
+     * stored for the record in a local index the last time and only new or changed records are
+     * output.</p>
+     */
+
+    public boolean isDetectingChanges() {
+        return StringUtils.isNotBlank(changeIndexFile);
+    }
+
+    /**
+     * <p>The XML of each record is kept if it is output or if it is hashed to detect changes in
+     * the whole of each record.</p>
+     */
+
+    public boolean isXmlRequired() {
+        return StringUtils.isNotBlank(getXmlFieldName()) || (isDetectingChanges() && !isChangeFieldsOnly());
+    }
+
+    public String getTenantUrlFieldName() {
+        return tenantUrlFieldName;
+    }
+
+    public void setTenantUrlFieldName(String tenantUrlFieldName) {
+        this.tenantUrlFieldName = StringUtils.trimToNull(tenantUrlFieldName);
+    }
+
+    public void setTenantUrlFieldNameIfPresent(String value) {
+        if (StringUtils.isNotBlank(value)) {
+            setTenantUrlFieldName(value);
+        }
+    }
+
+    public String getTenantConsumerKeyFieldName() {
+        return tenantConsumerKeyFieldName;
+    }
+
+    public void setTenantConsumerKeyFieldName(String tenantConsumerKeyFieldName) {
+        this.tenantConsumerKeyFieldName = StringUtils.trimToNull(tenantConsumerKeyFieldName);
+    }
+
+    public void setTenantConsumerKeyFieldNameIfPresent(String value) {
+        if (StringUtils.isNotBlank(value)) {
+            setTenantConsumerKeyFieldName(value);
+        }
+    }
+
+    public String getTenantKeyFileFieldName() {
+        return tenantKeyFileFieldName;
+    }
+
+    public void setTenantKeyFileFieldName(String tenantKeyFileFieldName) {
+        this.tenantKeyFileFieldName = StringUtils.trimToNull(tenantKeyFileFieldName);
+    }
+
+    public void setTenantKeyFileFieldNameIfPresent(String value) {
+        if (StringUtils.isNotBlank(value)) {
+            setTenantKeyFileFieldName(value);
+        }
+    }
+
+    public String getTenantConcurrency() {
+        return tenantConcurrency;
+    }
+
+    public void setTenantConcurrency(String tenantConcurrency) {
+        this.tenantConcurrency = StringUtils.trimToNull(tenantConcurrency);
+    }
+
+    public void setTenantConcurrencyIfPresent(String value) {
+        if (StringUtils.isNotBlank(value)) {
+            setTenantConcurrency(value);
+        }
+    }
+
+    public String getRateLimitPerMinute() {
+        return rateLimitPerMinute;
+    }
+
+    public void setRateLimitPerMinute(String rateLimitPerMinute) {
+        this.rateLimitPerMinute = StringUtils.trimToNull(rateLimitPerMinute);
+    }
+
+    public void setRateLimitPerMinuteIfPresent(String value) {
+        if (StringUtils.isNotBlank(value)) {
+            setRateLimitPerMinute(value);
+        }
+    }
+
+    public String getRateLimitPerDay() {
+        return rateLimitPerDay;
+    }
+
+    public void setRateLimitPerDay(String rateLimitPerDay) {
+        this.rateLimitPerDay = StringUtils.trimToNull(rateLimitPerDay);
+    }
+
+    public void setRateLimitPerDayIfPresent(String value) {
+        if (StringUtils.isNotBlank(value)) {
+            setRateLimitPerDay(value);
+        }
+    }
+
+    public String getMaxRetries() {
+        return maxRetries;
+    }
+
+    public void setMaxRetries(String maxRetries) {
+        this.maxRetries = StringUtils.trimToNull(maxRetries);
+    }
+
+    public void setMaxRetriesIfPresent(String value) {
+        if (StringUtils.isNotBlank(value)) {
+            setMaxRetries(value);
+        }
+    }
+
+    public String getConnectionPoolSize() {
+        return connectionPoolSize;
+    }
+
+    public void setConnectionPoolSize(String connectionPoolSize) {
+        this.connectionPoolSize = StringUtils.trimToNull(connectionPoolSize);
+    }
+
+    public void setConnectionPoolSizeIfPresent(String value) {
+        if (StringUtils.isNotBlank(value)) {
+            setConnectionPoolSize(value);
+        }
+    }
+
+    public String getConnectionIdleSeconds() {
+        return connectionIdleSeconds;
+    }
+
+    public void setConnectionIdleSeconds(String connectionIdleSeconds) {
+        this.connectionIdleSeconds = StringUtils.trimToNull(connectionIdleSeconds);
+    }
+
+    public void setConnectionIdleSecondsIfPresent(String value) {
+        if (StringUtils.isNotBlank(value)) {
+            setConnectionIdleSeconds(value);
+        }
+    }
+
+    public String getResponseCacheDirectory() {
+        return responseCacheDirectory;
+    }
+
+    public void setResponseCacheDirectory(String responseCacheDirectory) {
+        this.responseCacheDirectory = StringUtils.trimToNull(responseCacheDirectory);
+    }
+
+    public void setResponseCacheDirectoryIfPresent(String value) {
+        if (StringUtils.isNotBlank(value)) {
+            setResponseCacheDirectory(value);
+        }
+    }
+
+    public String getResponseCacheMaxMegabytes() {
+        return responseCacheMaxMegabytes;
+    }
+
+    public void setResponseCacheMaxMegabytes(String responseCacheMaxMegabytes) {
+        this.responseCacheMaxMegabytes = StringUtils.trimToNull(responseCacheMaxMegabytes);
+    }
+
+    public void setResponseCacheMaxMegabytesIfPresent(String value) {
+        if (StringUtils.isNotBlank(value)) {
+            setResponseCacheMaxMegabytes(value);
+        }
+    }
+
+    public String getResponseCacheMaxAgeSeconds() {
+        return responseCacheMaxAgeSeconds;
+    }
 
-    private final static String KEY_AUTHENTICATIONCONSUMERKEY = "authentication_consumer_key";
+    public void setResponseCacheMaxAgeSeconds(String responseCacheMaxAgeSeconds) {
+        this.responseCacheMaxAgeSeconds = StringUtils.trimToNull(responseCacheMaxAgeSeconds);
+    }
 
-    private final static String KEY_AUTHENTICATIONKEYFILE = "authentication_key_file";
+    public void setResponseCacheMaxAgeSecondsIfPresent(String value) {
+        if (StringUtils.isNotBlank(value)) {
+            setResponseCacheMaxAgeSeconds(value);
+        }
+    }
 
-    private final static String KEY_WHERE = "where";
+    public String getCaptureDirectory() {
+        return captureDirectory;
+    }
 
-    private final static String KEY_XMLFIELDNAME = "xml_field_name";
+    public void setCaptureDirectory(String captureDirectory) {
+        this.captureDirectory = StringUtils.trimToNull(captureDirectory);
+    }
 
-    private final static String KEY_CONTAINERELEMENTS = "container_elements";
+    public void setCaptureDirectoryIfPresent(String value) {
+        if (StringUtils.isNotBlank(value)) {
+            setCaptureDirectory(value);
+        }
+    }
 
-    private final static String KEY_IFMODIFIEDSINCE = "if_modified_since";
+    public boolean isReplay() {
+        return replay;
+    }
 
-    // -----------------------
-    // STATE
+    public void setReplay(boolean replay) {
+        this.replay = replay;
+    }
 
-    private String url;
+    public boolean isXmlBinary() {
+        return xmlBinary;
+    }
 
-    private String authenticationConsumerKey;
+    public void setXmlBinary(boolean xmlBinary) {
+        this.xmlBinary = xmlBinary;
+    }
 
-    private String authenticationKeyFile;
+    public String getSpillThresholdKilobytes() {
+        return spillThresholdKilobytes;
+    }
 
-    private String where;
+    public void setSpillThresholdKilobytes(String spillThresholdKilobytes) {
+        this.spillThresholdKilobytes = StringUtils.trimToNull(spillThresholdKilobytes);
+    }
 
-    private String xmlFieldName;
+    public void setSpillThresholdKilobytesIfPresent(String value) {
+        if (StringUtils.isNotBlank(value)) {
+            setSpillThresholdKilobytes(value);
+        }
+    }
 
-    private String containerElements;
+    public String getSpillDirectory() {
+        return spillDirectory;
+    }
 
-    private String ifModifiedSince;
+    public void setSpillDirectory(String spillDirectory) {
+        this.spillDirectory = StringUtils.trimToNull(spillDirectory);
+    }
 
-    public XeroGetStepMeta() {
-        super();
+    public void setSpillDirectoryIfPresent(String value) {
+        if (StringUtils.isNotBlank(value)) {
+            setSpillDirectory(value);
+        }
     }
 
-    // -----------------------
-    // GET'ER AND SET'ER
+    public String getSpillFileFieldName() {
+        return spillFileFieldName;
+    }
 
-    public String getUrl() {
-        return url;
+    public void setSpillFileFieldName(String spillFileFieldName) {
+        this.spillFileFieldName = StringUtils.trimToNull(spillFileFieldName);
     }
 
-    public void setUrl(String url) {
-        this.url = url;
+    public void setSpillFileFieldNameIfPresent(String value) {
+        if (StringUtils.isNotBlank(value)) {
+            setSpillFileFieldName(value);
+        }
     }
 
-    public void setUrlIfPresent(String value) {
+    /**
+     * <p>When spilling, a chunk that is larger than the threshold is written to a file.  The XML
+     * field is then null and the path of the file is in the spill file field instead.</p>
+     */
+
+    public boolean isSpilling() {
+        return StringUtils.isNotBlank(getSpillThresholdKilobytes()) && StringUtils.isNotBlank(getSpillFileFieldName());
+    }
+
+    /**
+     * <p>These are the child records that are split out of each chunk and put into the stream
+     * on rows of their own after the chunk.</p>
+     */
+
+    public List<XeroGetStepChild> getChildren() {
+        return children;
+    }
+
+    public void setChildren(List<XeroGetStepChild> children) {
+        this.children = null == children ? new ArrayList<XeroGetStepChild>() : children;
+    }
+
+    public String getIdFieldName() {
+        return idFieldName;
+    }
+
+    public void setIdFieldName(String idFieldName) {
+        this.idFieldName = StringUtils.trimToNull(idFieldName);
+    }
+
+    public void setIdFieldNameIfPresent(String value) {
         if (StringUtils.isNotBlank(value)) {
-            setUrl(value);
+            setIdFieldName(value);
         }
     }
 
-    public String getAuthenticationConsumerKey() {
-        return authenticationConsumerKey;
+    public String getIdPath() {
+        return idPath;
     }
 
-    public void setAuthenticationConsumerKey(String authenticationConsumerKey) {
-        this.authenticationConsumerKey = authenticationConsumerKey;
+    public void setIdPath(String idPath) {
+        this.idPath = StringUtils.trimToNull(idPath);
     }
 
-    public void setAuthenticationConsumerKeyIfPresent(String value) {
+    public void setIdPathIfPresent(String value) {
         if (StringUtils.isNotBlank(value)) {
-            setAuthenticationConsumerKey(value);
+            setIdPath(value);
         }
     }
 
-    public String getAuthenticationKeyFile() {
-        return authenticationKeyFile;
+    public String getIdBatchSize() {
+        return idBatchSize;
     }
 
-    public void setAuthenticationKeyFile(String authenticationKeyFile) {
-        this.authenticationKeyFile = authenticationKeyFile;
+    public void setIdBatchSize(String idBatchSize) {
+        this.idBatchSize = StringUtils.trimToNull(idBatchSize);
     }
 
-    public void setAuthenticationKeyFileIfPresent(String value) {
+    public void setIdBatchSizeIfPresent(String value) {
         if (StringUtils.isNotBlank(value)) {
-            setAuthenticationKeyFile(value);
+            setIdBatchSize(value);
         }
     }
 
-    public String getWhere() {
-        return where;
+    public String getIdBatchConcurrency() {
+        return idBatchConcurrency;
     }
 
-    public void setWhere(String where) {
-        this.where = where;
+    public void setIdBatchConcurrency(String idBatchConcurrency) {
+        this.idBatchConcurrency = StringUtils.trimToNull(idBatchConcurrency);
     }
 
-    public void setWhereIfPresent(String value) {
+    public void setIdBatchConcurrencyIfPresent(String value) {
         if (StringUtils.isNotBlank(value)) {
-            setWhere(value);
+            setIdBatchConcurrency(value);
         }
     }
 
-    public String getXmlFieldName() {
-        return xmlFieldName;
+    public String getIdParameter() {
+        return idParameter;
     }
 
-    public void setXmlFieldName(String xmlFieldName) {
-        this.xmlFieldName = StringUtils.trimToNull(xmlFieldName);
+    public void setIdParameter(String idParameter) {
+        this.idParameter = StringUtils.trimToNull(idParameter);
     }
 
-    public void setXmlFieldNameIfPresent(String value) {
+    public void setIdParameterIfPresent(String value) {
         if (StringUtils.isNotBlank(value)) {
-            setXmlFieldName(value);
+            setIdParameter(value);
         }
     }
 
-    public String getContainerElements() {
-        return containerElements;
+    public String getChangeIndexFile() {
+        return changeIndexFile;
     }
 
-    public void setContainerElements(String containerElements) {
-        this.containerElements = StringUtils.trimToNull(containerElements);
+    public void setChangeIndexFile(String changeIndexFile) {
+        this.changeIndexFile = StringUtils.trimToNull(changeIndexFile);
     }
 
-    public void setContainerElementsIfPresent(String value) {
+    public void setChangeIndexFileIfPresent(String value) {
         if (StringUtils.isNotBlank(value)) {
-            setContainerElements(value);
+            setChangeIndexFile(value);
         }
     }
 
-    public String getIfModifiedSince() {
-        return ifModifiedSince;
+    public String getChangeKeyPath() {
+        return changeKeyPath;
     }
 
-    public void setIfModifiedSince(String ifModifiedSince) {
-        this.ifModifiedSince = ifModifiedSince;
+    public void setChangeKeyPath(String changeKeyPath) {
+        this.changeKeyPath = StringUtils.trimToNull(changeKeyPath);
     }
 
-    public void setIfModifiedSinceIfPresent(String value) {
+    public void setChangeKeyPathIfPresent(String value) {
         if (StringUtils.isNotBlank(value)) {
-            setIfModifiedSince(value);
+            setChangeKeyPath(value);
+        }
+    }
+
+    public String getChangeTypeFieldName() {
+        return changeTypeFieldName;
+    }
+
+    public void setChangeTypeFieldName(String changeTypeFieldName) {
+        this.changeTypeFieldName = StringUtils.trimToNull(changeTypeFieldName);
+    }
+
+    public void setChangeTypeFieldNameIfPresent(String value) {
+        if (StringUtils.isNotBlank(value)) {
+            setChangeTypeFieldName(value);
         }
     }
 
+    public boolean isChangeFieldsOnly() {
+        return changeFieldsOnly;
+    }
+
+    public void setChangeFieldsOnly(boolean changeFieldsOnly) {
+        this.changeFieldsOnly = changeFieldsOnly;
+    }
+
+    /**
+     * <p>These are the fields that are extracted from each chunk and put into the stream in
+     * addition to, or instead of, the XML of the chunk.</p>
+     */
+
+    public List<XeroGetStepField> getOutputFields() {
+        return outputFields;
+    }
+
+    public void setOutputFields(List<XeroGetStepField> outputFields) {
+        this.outputFields = null == outputFields ? new ArrayList<XeroGetStepField>() : outputFields;
+    }
+
     @Override
     public StepInterface getStep(StepMeta stepMeta, StepDataInterface stepDataInterface, int cnr, TransMeta transMeta, Trans disp) {
         return new XeroGetStep(stepMeta, stepDataInterface, cnr, transMeta, disp);
@@ -223,11 +1006,65 @@ public class XeroGetStepMeta extends BaseStepMeta implements StepMetaInterface {
         setContainerElements("/Response/Contacts/Contact");
         setAuthenticationConsumerKey(null);
         setAuthenticationKeyFile(null);
+        setPaging(false);
+        setPageSize("100");
+        setPageConcurrency("4");
+        setPrefetchQueueDepth(null);
+        setFormat(Format.XML);
+        setChunking(Chunking.STAX);
+        setParser(XMLParserBackend.DEFAULT);
+        setWatermarkFile(null);
+        setWatermarkVariable(null);
+        setTenantIdFieldName(null);
+        setTenantUrlFieldName(null);
+        setTenantConsumerKeyFieldName(null);
+        setTenantKeyFileFieldName(null);
+        setTenantConcurrency("4");
+        setRateLimitPerMinute("60");
+        setRateLimitPerDay("5000");
+        setMaxRetries("3");
+        setConnectionPoolSize("8");
+        setConnectionIdleSeconds("60");
+        setResponseCacheDirectory(null);
+        setResponseCacheMaxMegabytes("256");
+        setResponseCacheMaxAgeSeconds("0");
+        setCaptureDirectory(null);
+        setReplay(false);
+        setXmlBinary(false);
+        setSpillThresholdKilobytes(null);
+        setSpillDirectory(null);
+        setSpillFileFieldName(null);
+        setChildren(null);
+        setIdFieldName(null);
+        setIdPath(null);
+        setIdBatchSize("50");
+        setIdBatchConcurrency("2");
+        setIdParameter("IDs");
+        setChangeIndexFile(null);
+        setChangeKeyPath(null);
+        setChangeTypeFieldName(null);
+        setChangeFieldsOnly(false);
+        setOutputFields(null);
     }
 
     @Override
     public Object clone() {
-        return super.clone();
+        XeroGetStepMeta result = (XeroGetStepMeta) super.clone();
+        List<XeroGetStepChild> clonedChildren = new ArrayList<XeroGetStepChild>();
+
+        for (XeroGetStepChild child : children) {
+            clonedChildren.add(child.clone());
+        }
+
+        result.setChildren(clonedChildren);
+        List<XeroGetStepField> clonedOutputFields = new ArrayList<XeroGetStepField>();
+
+        for (XeroGetStepField outputField : outputFields) {
+            clonedOutputFields.add(outputField.clone());
+        }
+
+        result.setOutputFields(clonedOutputFields);
+        return result;
     }
 
     @Override
@@ -241,6 +1078,67 @@ public class XeroGetStepMeta extends BaseStepMeta implements StepMetaInterface {
         result.append(XMLHandler.addTagValue(KEY_CONTAINERELEMENTS, getContainerElements()));
         result.append(XMLHandler.addTagValue(KEY_IFMODIFIEDSINCE, getIfModifiedSince()));
         result.append(XMLHandler.addTagValue(KEY_WHERE, getWhere()));
+        result.append(XMLHandler.addTagValue(KEY_PAGING, isPaging()));
+        result.append(XMLHandler.addTagValue(KEY_PAGESIZE, getPageSize()));
+        result.append(XMLHandler.addTagValue(KEY_PAGECONCURRENCY, getPageConcurrency()));
+        result.append(XMLHandler.addTagValue(KEY_PREFETCHQUEUEDEPTH, getPrefetchQueueDepth()));
+        result.append(XMLHandler.addTagValue(KEY_FORMAT, getFormat().name()));
+        result.append(XMLHandler.addTagValue(KEY_CHUNKING, getChunking().name()));
+        result.append(XMLHandler.addTagValue(KEY_PARSER, getParser().name()));
+        result.append(XMLHandler.addTagValue(KEY_WATERMARKFILE, getWatermarkFile()));
+        result.append(XMLHandler.addTagValue(KEY_WATERMARKVARIABLE, getWatermarkVariable()));
+        result.append(XMLHandler.addTagValue(KEY_TENANTIDFIELDNAME, getTenantIdFieldName()));
+        result.append(XMLHandler.addTagValue(KEY_TENANTURLFIELDNAME, getTenantUrlFieldName()));
+        result.append(XMLHandler.addTagValue(KEY_TENANTCONSUMERKEYFIELDNAME, getTenantConsumerKeyFieldName()));
+        result.append(XMLHandler.addTagValue(KEY_TENANTKEYFILEFIELDNAME, getTenantKeyFileFieldName()));
+        result.append(XMLHandler.addTagValue(KEY_TENANTCONCURRENCY, getTenantConcurrency()));
+        result.append(XMLHandler.addTagValue(KEY_RATELIMITPERMINUTE, getRateLimitPerMinute()));
+        result.append(XMLHandler.addTagValue(KEY_RATELIMITPERDAY, getRateLimitPerDay()));
+        result.append(XMLHandler.addTagValue(KEY_MAXRETRIES, getMaxRetries()));
+        result.append(XMLHandler.addTagValue(KEY_CONNECTIONPOOLSIZE, getConnectionPoolSize()));
+        result.append(XMLHandler.addTagValue(KEY_CONNECTIONIDLESECONDS, getConnectionIdleSeconds()));
+        result.append(XMLHandler.addTagValue(KEY_RESPONSECACHEDIRECTORY, getResponseCacheDirectory()));
+        result.append(XMLHandler.addTagValue(KEY_RESPONSECACHEMAXMEGABYTES, getResponseCacheMaxMegabytes()));
+        result.append(XMLHandler.addTagValue(KEY_RESPONSECACHEMAXAGESECONDS, getResponseCacheMaxAgeSeconds()));
+        result.append(XMLHandler.addTagValue(KEY_CAPTUREDIRECTORY, getCaptureDirectory()));
+        result.append(XMLHandler.addTagValue(KEY_REPLAY, isReplay()));
+        result.append(XMLHandler.addTagValue(KEY_XMLBINARY, isXmlBinary()));
+        result.append(XMLHandler.addTagValue(KEY_SPILLTHRESHOLDKILOBYTES, getSpillThresholdKilobytes()));
+        result.append(XMLHandler.addTagValue(KEY_SPILLDIRECTORY, getSpillDirectory()));
+        result.append(XMLHandler.addTagValue(KEY_SPILLFILEFIELDNAME, getSpillFileFieldName()));
+
+        result.append(XMLHandler.openTag(KEY_CHILDREN)).append(Const.CR);
+
+        for (XeroGetStepChild child : children) {
+            result.append(XMLHandler.openTag(KEY_CHILD)).append(Const.CR);
+            result.append(XMLHandler.addTagValue(KEY_CHILD_NAME, child.getName()));
+            result.append(XMLHandler.addTagValue(KEY_CHILD_PATH, child.getPath()));
+            result.append(XMLHandler.closeTag(KEY_CHILD)).append(Const.CR);
+        }
+
+        result.append(XMLHandler.closeTag(KEY_CHILDREN)).append(Const.CR);
+        result.append(XMLHandler.addTagValue(KEY_IDFIELDNAME, getIdFieldName()));
+        result.append(XMLHandler.addTagValue(KEY_IDPATH, getIdPath()));
+        result.append(XMLHandler.addTagValue(KEY_IDBATCHSIZE, getIdBatchSize()));
+        result.append(XMLHandler.addTagValue(KEY_IDBATCHCONCURRENCY, getIdBatchConcurrency()));
+        result.append(XMLHandler.addTagValue(KEY_IDPARAMETER, getIdParameter()));
+        result.append(XMLHandler.addTagValue(KEY_CHANGEINDEXFILE, getChangeIndexFile()));
+        result.append(XMLHandler.addTagValue(KEY_CHANGEKEYPATH, getChangeKeyPath()));
+        result.append(XMLHandler.addTagValue(KEY_CHANGETYPEFIELDNAME, getChangeTypeFieldName()));
+        result.append(XMLHandler.addTagValue(KEY_CHANGEFIELDSONLY, isChangeFieldsOnly()));
+
+        result.append(XMLHandler.openTag(KEY_FIELDS)).append(Const.CR);
+
+        for (XeroGetStepField outputField : outputFields) {
+            result.append(XMLHandler.openTag(KEY_FIELD)).append(Const.CR);
+            result.append(XMLHandler.addTagValue(KEY_FIELD_NAME, outputField.getName()));
+            result.append(XMLHandler.addTagValue(KEY_FIELD_PATH, outputField.getPath()));
+            result.append(XMLHandler.addTagValue(KEY_FIELD_TYPE, outputField.getTypeDesc()));
+            result.append(XMLHandler.addTagValue(KEY_FIELD_FORMAT, outputField.getFormat()));
+            result.append(XMLHandler.closeTag(KEY_FIELD)).append(Const.CR);
+        }
+
+        result.append(XMLHandler.closeTag(KEY_FIELDS)).append(Const.CR);
 
         return result.toString();
     }
@@ -255,6 +1153,78 @@ public class XeroGetStepMeta extends BaseStepMeta implements StepMetaInterface {
             setContainerElementsIfPresent(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, KEY_CONTAINERELEMENTS)));
             setIfModifiedSinceIfPresent(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, KEY_IFMODIFIEDSINCE)));
             setWhereIfPresent(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, KEY_WHERE)));
+            setPaging("Y".equalsIgnoreCase(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, KEY_PAGING))));
+            setPageSizeIfPresent(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, KEY_PAGESIZE)));
+            setPageConcurrencyIfPresent(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, KEY_PAGECONCURRENCY)));
+            setPrefetchQueueDepthIfPresent(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, KEY_PREFETCHQUEUEDEPTH)));
+            setFormatIfPresent(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, KEY_FORMAT)));
+            setChunkingIfPresent(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, KEY_CHUNKING)));
+            setParserIfPresent(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, KEY_PARSER)));
+            setWatermarkFileIfPresent(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, KEY_WATERMARKFILE)));
+            setWatermarkVariableIfPresent(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, KEY_WATERMARKVARIABLE)));
+            setTenantIdFieldNameIfPresent(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, KEY_TENANTIDFIELDNAME)));
+            setTenantUrlFieldNameIfPresent(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, KEY_TENANTURLFIELDNAME)));
+            setTenantConsumerKeyFieldNameIfPresent(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, KEY_TENANTCONSUMERKEYFIELDNAME)));
+            setTenantKeyFileFieldNameIfPresent(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, KEY_TENANTKEYFILEFIELDNAME)));
+            setTenantConcurrencyIfPresent(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, KEY_TENANTCONCURRENCY)));
+            setRateLimitPerMinuteIfPresent(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, KEY_RATELIMITPERMINUTE)));
+            setRateLimitPerDayIfPresent(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, KEY_RATELIMITPERDAY)));
+            setMaxRetriesIfPresent(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, KEY_MAXRETRIES)));
+            setConnectionPoolSizeIfPresent(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, KEY_CONNECTIONPOOLSIZE)));
+            setConnectionIdleSecondsIfPresent(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, KEY_CONNECTIONIDLESECONDS)));
+            setResponseCacheDirectoryIfPresent(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, KEY_RESPONSECACHEDIRECTORY)));
+            setResponseCacheMaxMegabytesIfPresent(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, KEY_RESPONSECACHEMAXMEGABYTES)));
+            setResponseCacheMaxAgeSecondsIfPresent(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, KEY_RESPONSECACHEMAXAGESECONDS)));
+            setCaptureDirectoryIfPresent(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, KEY_CAPTUREDIRECTORY)));
+            setReplay("Y".equalsIgnoreCase(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, KEY_REPLAY))));
+            setXmlBinary("Y".equalsIgnoreCase(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, KEY_XMLBINARY))));
+            setSpillThresholdKilobytesIfPresent(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, KEY_SPILLTHRESHOLDKILOBYTES)));
+            setSpillDirectoryIfPresent(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, KEY_SPILLDIRECTORY)));
+            setSpillFileFieldNameIfPresent(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, KEY_SPILLFILEFIELDNAME)));
+
+            List<XeroGetStepChild> loadedChildren = new ArrayList<XeroGetStepChild>();
+            Node childrenNode = XMLHandler.getSubNode(stepnode, KEY_CHILDREN);
+
+            if (null != childrenNode) {
+                int count = XMLHandler.countNodes(childrenNode, KEY_CHILD);
+
+                for (int i = 0; i < count; i++) {
+                    Node childNode = XMLHandler.getSubNodeByNr(childrenNode, KEY_CHILD, i);
+                    loadedChildren.add(new XeroGetStepChild(
+                            XMLHandler.getTagValue(childNode, KEY_CHILD_NAME),
+                            XMLHandler.getTagValue(childNode, KEY_CHILD_PATH)));
+                }
+            }
+
+            setChildren(loadedChildren);
+            setIdFieldNameIfPresent(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, KEY_IDFIELDNAME)));
+            setIdPathIfPresent(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, KEY_IDPATH)));
+            setIdBatchSizeIfPresent(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, KEY_IDBATCHSIZE)));
+            setIdBatchConcurrencyIfPresent(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, KEY_IDBATCHCONCURRENCY)));
+            setIdParameterIfPresent(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, KEY_IDPARAMETER)));
+            setChangeIndexFileIfPresent(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, KEY_CHANGEINDEXFILE)));
+            setChangeKeyPathIfPresent(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, KEY_CHANGEKEYPATH)));
+            setChangeTypeFieldNameIfPresent(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, KEY_CHANGETYPEFIELDNAME)));
+            setChangeFieldsOnly("Y".equalsIgnoreCase(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, KEY_CHANGEFIELDSONLY))));
+
+            List<XeroGetStepField> loadedOutputFields = new ArrayList<XeroGetStepField>();
+            Node fieldsNode = XMLHandler.getSubNode(stepnode, KEY_FIELDS);
+
+            if (null != fieldsNode) {
+                int count = XMLHandler.countNodes(fieldsNode, KEY_FIELD);
+
+                for (int i = 0; i < count; i++) {
+                    Node fieldNode = XMLHandler.getSubNodeByNr(fieldsNode, KEY_FIELD, i);
+                    XeroGetStepField outputField = new XeroGetStepField();
+                    outputField.setName(XMLHandler.getTagValue(fieldNode, KEY_FIELD_NAME));
+                    outputField.setPath(XMLHandler.getTagValue(fieldNode, KEY_FIELD_PATH));
+                    outputField.setTypeDesc(XMLHandler.getTagValue(fieldNode, KEY_FIELD_TYPE));
+                    outputField.setFormat(XMLHandler.getTagValue(fieldNode, KEY_FIELD_FORMAT));
+                    loadedOutputFields.add(outputField);
+                }
+            }
+
+            setOutputFields(loadedOutputFields);
         } catch (Exception e) {
             throw new KettleXMLException("unable to read the step's configuration from xml", e);
         }
@@ -270,6 +1240,57 @@ public class XeroGetStepMeta extends BaseStepMeta implements StepMetaInterface {
             rep.saveStepAttribute(id_transformation, id_step, KEY_XMLFIELDNAME, getXmlFieldName());
             rep.saveStepAttribute(id_transformation, id_step, KEY_IFMODIFIEDSINCE, getIfModifiedSince());
             rep.saveStepAttribute(id_transformation, id_step, KEY_WHERE, getWhere());
+            rep.saveStepAttribute(id_transformation, id_step, KEY_PAGING, isPaging());
+            rep.saveStepAttribute(id_transformation, id_step, KEY_PAGESIZE, getPageSize());
+            rep.saveStepAttribute(id_transformation, id_step, KEY_PAGECONCURRENCY, getPageConcurrency());
+            rep.saveStepAttribute(id_transformation, id_step, KEY_PREFETCHQUEUEDEPTH, getPrefetchQueueDepth());
+            rep.saveStepAttribute(id_transformation, id_step, KEY_FORMAT, getFormat().name());
+            rep.saveStepAttribute(id_transformation, id_step, KEY_CHUNKING, getChunking().name());
+            rep.saveStepAttribute(id_transformation, id_step, KEY_PARSER, getParser().name());
+            rep.saveStepAttribute(id_transformation, id_step, KEY_WATERMARKFILE, getWatermarkFile());
+            rep.saveStepAttribute(id_transformation, id_step, KEY_WATERMARKVARIABLE, getWatermarkVariable());
+            rep.saveStepAttribute(id_transformation, id_step, KEY_TENANTIDFIELDNAME, getTenantIdFieldName());
+            rep.saveStepAttribute(id_transformation, id_step, KEY_TENANTURLFIELDNAME, getTenantUrlFieldName());
+            rep.saveStepAttribute(id_transformation, id_step, KEY_TENANTCONSUMERKEYFIELDNAME, getTenantConsumerKeyFieldName());
+            rep.saveStepAttribute(id_transformation, id_step, KEY_TENANTKEYFILEFIELDNAME, getTenantKeyFileFieldName());
+            rep.saveStepAttribute(id_transformation, id_step, KEY_TENANTCONCURRENCY, getTenantConcurrency());
+            rep.saveStepAttribute(id_transformation, id_step, KEY_RATELIMITPERMINUTE, getRateLimitPerMinute());
+            rep.saveStepAttribute(id_transformation, id_step, KEY_RATELIMITPERDAY, getRateLimitPerDay());
+            rep.saveStepAttribute(id_transformation, id_step, KEY_MAXRETRIES, getMaxRetries());
+            rep.saveStepAttribute(id_transformation, id_step, KEY_CONNECTIONPOOLSIZE, getConnectionPoolSize());
+            rep.saveStepAttribute(id_transformation, id_step, KEY_CONNECTIONIDLESECONDS, getConnectionIdleSeconds());
+            rep.saveStepAttribute(id_transformation, id_step, KEY_RESPONSECACHEDIRECTORY, getResponseCacheDirectory());
+            rep.saveStepAttribute(id_transformation, id_step, KEY_RESPONSECACHEMAXMEGABYTES, getResponseCacheMaxMegabytes());
+            rep.saveStepAttribute(id_transformation, id_step, KEY_RESPONSECACHEMAXAGESECONDS, getResponseCacheMaxAgeSeconds());
+            rep.saveStepAttribute(id_transformation, id_step, KEY_CAPTUREDIRECTORY, getCaptureDirectory());
+            rep.saveStepAttribute(id_transformation, id_step, KEY_REPLAY, isReplay());
+            rep.saveStepAttribute(id_transformation, id_step, KEY_XMLBINARY, isXmlBinary());
+            rep.saveStepAttribute(id_transformation, id_step, KEY_SPILLTHRESHOLDKILOBYTES, getSpillThresholdKilobytes());
+            rep.saveStepAttribute(id_transformation, id_step, KEY_SPILLDIRECTORY, getSpillDirectory());
+            rep.saveStepAttribute(id_transformation, id_step, KEY_SPILLFILEFIELDNAME, getSpillFileFieldName());
+
+            for (int i = 0; i < children.size(); i++) {
+                XeroGetStepChild child = children.get(i);
+                rep.saveStepAttribute(id_transformation, id_step, i, KEY_CHILD_NAME, child.getName());
+                rep.saveStepAttribute(id_transformation, id_step, i, KEY_CHILD_PATH, child.getPath());
+            }
+            rep.saveStepAttribute(id_transformation, id_step, KEY_IDFIELDNAME, getIdFieldName());
+            rep.saveStepAttribute(id_transformation, id_step, KEY_IDPATH, getIdPath());
+            rep.saveStepAttribute(id_transformation, id_step, KEY_IDBATCHSIZE, getIdBatchSize());
+            rep.saveStepAttribute(id_transformation, id_step, KEY_IDBATCHCONCURRENCY, getIdBatchConcurrency());
+            rep.saveStepAttribute(id_transformation, id_step, KEY_IDPARAMETER, getIdParameter());
+            rep.saveStepAttribute(id_transformation, id_step, KEY_CHANGEINDEXFILE, getChangeIndexFile());
+            rep.saveStepAttribute(id_transformation, id_step, KEY_CHANGEKEYPATH, getChangeKeyPath());
+            rep.saveStepAttribute(id_transformation, id_step, KEY_CHANGETYPEFIELDNAME, getChangeTypeFieldName());
+            rep.saveStepAttribute(id_transformation, id_step, KEY_CHANGEFIELDSONLY, isChangeFieldsOnly());
+
+            for (int i = 0; i < outputFields.size(); i++) {
+                XeroGetStepField outputField = outputFields.get(i);
+                rep.saveStepAttribute(id_transformation, id_step, i, KEY_FIELD_NAME, outputField.getName());
+                rep.saveStepAttribute(id_transformation, id_step, i, KEY_FIELD_PATH, outputField.getPath());
+                rep.saveStepAttribute(id_transformation, id_step, i, KEY_FIELD_TYPE, outputField.getTypeDesc());
+                rep.saveStepAttribute(id_transformation, id_step, i, KEY_FIELD_FORMAT, outputField.getFormat());
+            }
         } catch (Exception e) {
             throw new KettleException("Unable to save step into repository: " + id_step, e);
         }
@@ -285,11 +1306,92 @@ public class XeroGetStepMeta extends BaseStepMeta implements StepMetaInterface {
             setXmlFieldNameIfPresent(rep.getStepAttributeString(id_step, KEY_XMLFIELDNAME));
             setIfModifiedSinceIfPresent(rep.getStepAttributeString(id_step, KEY_IFMODIFIEDSINCE));
             setWhereIfPresent(rep.getStepAttributeString(id_step, KEY_WHERE));
+            setPaging(rep.getStepAttributeBoolean(id_step, KEY_PAGING));
+            setPageSizeIfPresent(rep.getStepAttributeString(id_step, KEY_PAGESIZE));
+            setPageConcurrencyIfPresent(rep.getStepAttributeString(id_step, KEY_PAGECONCURRENCY));
+            setPrefetchQueueDepthIfPresent(rep.getStepAttributeString(id_step, KEY_PREFETCHQUEUEDEPTH));
+            setFormatIfPresent(rep.getStepAttributeString(id_step, KEY_FORMAT));
+            setChunkingIfPresent(rep.getStepAttributeString(id_step, KEY_CHUNKING));
+            setParserIfPresent(rep.getStepAttributeString(id_step, KEY_PARSER));
+            setWatermarkFileIfPresent(rep.getStepAttributeString(id_step, KEY_WATERMARKFILE));
+            setWatermarkVariableIfPresent(rep.getStepAttributeString(id_step, KEY_WATERMARKVARIABLE));
+            setTenantIdFieldNameIfPresent(rep.getStepAttributeString(id_step, KEY_TENANTIDFIELDNAME));
+            setTenantUrlFieldNameIfPresent(rep.getStepAttributeString(id_step, KEY_TENANTURLFIELDNAME));
+            setTenantConsumerKeyFieldNameIfPresent(rep.getStepAttributeString(id_step, KEY_TENANTCONSUMERKEYFIELDNAME));
+            setTenantKeyFileFieldNameIfPresent(rep.getStepAttributeString(id_step, KEY_TENANTKEYFILEFIELDNAME));
+            setTenantConcurrencyIfPresent(rep.getStepAttributeString(id_step, KEY_TENANTCONCURRENCY));
+            setRateLimitPerMinuteIfPresent(rep.getStepAttributeString(id_step, KEY_RATELIMITPERMINUTE));
+            setRateLimitPerDayIfPresent(rep.getStepAttributeString(id_step, KEY_RATELIMITPERDAY));
+            setMaxRetriesIfPresent(rep.getStepAttributeString(id_step, KEY_MAXRETRIES));
+            setConnectionPoolSizeIfPresent(rep.getStepAttributeString(id_step, KEY_CONNECTIONPOOLSIZE));
+            setConnectionIdleSecondsIfPresent(rep.getStepAttributeString(id_step, KEY_CONNECTIONIDLESECONDS));
+            setResponseCacheDirectoryIfPresent(rep.getStepAttributeString(id_step, KEY_RESPONSECACHEDIRECTORY));
+            setResponseCacheMaxMegabytesIfPresent(rep.getStepAttributeString(id_step, KEY_RESPONSECACHEMAXMEGABYTES));
+            setResponseCacheMaxAgeSecondsIfPresent(rep.getStepAttributeString(id_step, KEY_RESPONSECACHEMAXAGESECONDS));
+            setCaptureDirectoryIfPresent(rep.getStepAttributeString(id_step, KEY_CAPTUREDIRECTORY));
+            setReplay(rep.getStepAttributeBoolean(id_step, KEY_REPLAY));
+            setXmlBinary(rep.getStepAttributeBoolean(id_step, KEY_XMLBINARY));
+            setSpillThresholdKilobytesIfPresent(rep.getStepAttributeString(id_step, KEY_SPILLTHRESHOLDKILOBYTES));
+            setSpillDirectoryIfPresent(rep.getStepAttributeString(id_step, KEY_SPILLDIRECTORY));
+            setSpillFileFieldNameIfPresent(rep.getStepAttributeString(id_step, KEY_SPILLFILEFIELDNAME));
+
+            List<XeroGetStepChild> loadedChildren = new ArrayList<XeroGetStepChild>();
+            int childCount = rep.countNrStepAttributes(id_step, KEY_CHILD_NAME);
+
+            for (int i = 0; i < childCount; i++) {
+                loadedChildren.add(new XeroGetStepChild(
+                        rep.getStepAttributeString(id_step, i, KEY_CHILD_NAME),
+                        rep.getStepAttributeString(id_step, i, KEY_CHILD_PATH)));
+            }
+
+            setChildren(loadedChildren);
+            setIdFieldNameIfPresent(rep.getStepAttributeString(id_step, KEY_IDFIELDNAME));
+            setIdPathIfPresent(rep.getStepAttributeString(id_step, KEY_IDPATH));
+            setIdBatchSizeIfPresent(rep.getStepAttributeString(id_step, KEY_IDBATCHSIZE));
+            setIdBatchConcurrencyIfPresent(rep.getStepAttributeString(id_step, KEY_IDBATCHCONCURRENCY));
+            setIdParameterIfPresent(rep.getStepAttributeString(id_step, KEY_IDPARAMETER));
+            setChangeIndexFileIfPresent(rep.getStepAttributeString(id_step, KEY_CHANGEINDEXFILE));
+            setChangeKeyPathIfPresent(rep.getStepAttributeString(id_step, KEY_CHANGEKEYPATH));
+            setChangeTypeFieldNameIfPresent(rep.getStepAttributeString(id_step, KEY_CHANGETYPEFIELDNAME));
+            setChangeFieldsOnly(rep.getStepAttributeBoolean(id_step, KEY_CHANGEFIELDSONLY));
+
+            List<XeroGetStepField> loadedOutputFields = new ArrayList<XeroGetStepField>();
+            int count = rep.countNrStepAttributes(id_step, KEY_FIELD_NAME);
+
+            for (int i = 0; i < count; i++) {
+                XeroGetStepField outputField = new XeroGetStepField();
+                outputField.setName(rep.getStepAttributeString(id_step, i, KEY_FIELD_NAME));
+                outputField.setPath(rep.getStepAttributeString(id_step, i, KEY_FIELD_PATH));
+                outputField.setTypeDesc(rep.getStepAttributeString(id_step, i, KEY_FIELD_TYPE));
+                outputField.setFormat(rep.getStepAttributeString(id_step, i, KEY_FIELD_FORMAT));
+                loadedOutputFields.add(outputField);
+            }
+
+            setOutputFields(loadedOutputFields);
         } catch (Exception e) {
             throw new KettleException("Unable to load step from repository", e);
         }
     }
 
+    /**
+     * <p>This is the layout of the rows that the step puts out when it runs.  When fetching by id,
+     * the fields of the input rows that supplied the ids come first.</p>
+     */
+
+    public RowMetaInterface createOutputRowMeta(
+            RowMetaInterface idRowMeta,
+            String name,
+            VariableSpace space) throws KettleStepException {
+        RowMetaInterface result = null == idRowMeta ? new RowMeta() : idRowMeta.clone();
+        getFields(result, name, null, null, space, null, null);
+        return result;
+    }
+
+    /**
+     * <p>Only when fetching by id are the fields of the input rows carried into the output rows;
+     * otherwise the input rows, such as those supplying the tenants, do not flow through.</p>
+     */
+
     @Override
     public void getFields(
             RowMetaInterface inputRowMeta,
@@ -299,10 +1401,61 @@ public class XeroGetStepMeta extends BaseStepMeta implements StepMetaInterface {
             VariableSpace space,
             Repository repository,
             IMetaStore metaStore) throws KettleStepException {
-        ValueMetaInterface v = new ValueMeta(getXmlFieldName(), ValueMeta.TYPE_STRING);
-        v.setTrimType(ValueMeta.TRIM_TYPE_BOTH);
-        v.setOrigin(name);
-        inputRowMeta.addValueMeta(v);
+        if (!isFetchingByIds()) {
+            inputRowMeta.clear();
+        }
+
+        if (StringUtils.isNotBlank(getXmlFieldName())) {
+            ValueMetaInterface v;
+
+            if (isXmlBinary()) {
+                v = new ValueMeta(getXmlFieldName(), ValueMeta.TYPE_BINARY);
+            } else {
+                v = new ValueMeta(getXmlFieldName(), ValueMeta.TYPE_STRING);
+                v.setTrimType(ValueMeta.TRIM_TYPE_BOTH);
+            }
+
+            v.setOrigin(name);
+            inputRowMeta.addValueMeta(v);
+
+            if (isSpilling()) {
+                v = new ValueMeta(getSpillFileFieldName(), ValueMeta.TYPE_STRING);
+                v.setOrigin(name);
+                inputRowMeta.addValueMeta(v);
+            }
+        }
+
+        for (XeroGetStepChild child : children) {
+            ValueMetaInterface v = new ValueMeta(child.getName(), isXmlBinary() ? ValueMeta.TYPE_BINARY : ValueMeta.TYPE_STRING);
+            v.setOrigin(name);
+            inputRowMeta.addValueMeta(v);
+        }
+
+        for (XeroGetStepField outputField : outputFields) {
+            inputRowMeta.addValueMeta(outputField.createValueMeta(name));
+        }
+
+        if (isTenanted()) {
+            ValueMetaInterface v = new ValueMeta(getTenantIdFieldName(), ValueMeta.TYPE_STRING);
+            v.setOrigin(name);
+            inputRowMeta.addValueMeta(v);
+        }
+
+        if (isDetectingChanges() && StringUtils.isNotBlank(getChangeTypeFieldName())) {
+            ValueMetaInterface v = new ValueMeta(getChangeTypeFieldName(), ValueMeta.TYPE_STRING);
+            v.setOrigin(name);
+            inputRowMeta.addValueMeta(v);
+        }
+    }
+
+    /**
+     * <p>When the tenants or ids are supplied as input rows, a tenant or batch of ids that fails
+     * can be sent to the error stream.</p>
+     */
+
+    @Override
+    public boolean supportsErrorHandling() {
+        return isTenanted() || isFetchingByIds();
     }
 
     @Override
@@ -318,27 +1471,144 @@ public class XeroGetStepMeta extends BaseStepMeta implements StepMetaInterface {
             Repository repository,
             IMetaStore metaStore) {
 
-        if (StringUtils.isBlank(url)) {
+        if (StringUtils.isBlank(url) && StringUtils.isBlank(tenantUrlFieldName)) {
             remarks.add(new CheckResult(
                     CheckResult.TYPE_RESULT_ERROR,
                     BaseMessages.getString(PKG, "XeroGetStep.CheckResult.URL.Required"),
                     stepMeta));
         }
 
-        if (StringUtils.isBlank(authenticationConsumerKey)) {
+        if (StringUtils.isBlank(authenticationConsumerKey) && StringUtils.isBlank(tenantConsumerKeyFieldName)) {
             remarks.add(new CheckResult(
                     CheckResult.TYPE_RESULT_ERROR,
                     BaseMessages.getString(PKG, "XeroGetStep.CheckResult.AuthenticationConsumerKey.Required"),
                     stepMeta));
         }
 
-        if (StringUtils.isBlank(authenticationKeyFile)) {
+        if (StringUtils.isBlank(authenticationKeyFile) && StringUtils.isBlank(tenantKeyFileFieldName)) {
             remarks.add(new CheckResult(
                     CheckResult.TYPE_RESULT_ERROR,
                     BaseMessages.getString(PKG, "XeroGetStep.CheckResult.AuthenticationKey.Required"),
                     stepMeta));
         }
 
+        if (paging && (StringUtils.isBlank(pageSize) || StringUtils.isBlank(pageConcurrency))) {
+            remarks.add(new CheckResult(
+                    CheckResult.TYPE_RESULT_ERROR,
+                    BaseMessages.getString(PKG, "XeroGetStep.CheckResult.Paging.Required"),
+                    stepMeta));
+        }
+
+        if (isTenanted() && (null == prev || 0 == prev.size())) {
+            remarks.add(new CheckResult(
+                    CheckResult.TYPE_RESULT_ERROR,
+                    BaseMessages.getString(PKG, "XeroGetStep.CheckResult.Tenant.InputRequired"),
+                    stepMeta));
+        }
+
+        if (isFetchingByIds() && (null == prev || 0 == prev.size())) {
+            remarks.add(new CheckResult(
+                    CheckResult.TYPE_RESULT_ERROR,
+                    BaseMessages.getString(PKG, "XeroGetStep.CheckResult.Id.InputRequired"),
+                    stepMeta));
+        }
+
+        if (isFetchingByIds() && StringUtils.isBlank(idPath)) {
+            remarks.add(new CheckResult(
+                    CheckResult.TYPE_RESULT_ERROR,
+                    BaseMessages.getString(PKG, "XeroGetStep.CheckResult.Id.PathRequired"),
+                    stepMeta));
+        }
+
+        if (isFetchingByIds() && isTenanted()) {
+            remarks.add(new CheckResult(
+                    CheckResult.TYPE_RESULT_ERROR,
+                    BaseMessages.getString(PKG, "XeroGetStep.CheckResult.Id.Tenant"),
+                    stepMeta));
+        }
+
+        if (isFetchingByIds() && (StringUtils.isNotBlank(watermarkFile) || StringUtils.isNotBlank(watermarkVariable))) {
+            remarks.add(new CheckResult(
+                    CheckResult.TYPE_RESULT_ERROR,
+                    BaseMessages.getString(PKG, "XeroGetStep.CheckResult.Id.Watermark"),
+                    stepMeta));
+        }
+
+        if (isTenanted() && (StringUtils.isNotBlank(watermarkFile) || StringUtils.isNotBlank(watermarkVariable))) {
+            remarks.add(new CheckResult(
+                    CheckResult.TYPE_RESULT_ERROR,
+                    BaseMessages.getString(PKG, "XeroGetStep.CheckResult.Tenant.Watermark"),
+                    stepMeta));
+        }
+
+        if (Format.JSON == format && (StringUtils.isNotBlank(watermarkFile) || StringUtils.isNotBlank(watermarkVariable))) {
+            remarks.add(new CheckResult(
+                    CheckResult.TYPE_RESULT_ERROR,
+                    BaseMessages.getString(PKG, "XeroGetStep.CheckResult.Format.Watermark"),
+                    stepMeta));
+        }
+
+        if (replay && StringUtils.isBlank(captureDirectory)) {
+            remarks.add(new CheckResult(
+                    CheckResult.TYPE_RESULT_ERROR,
+                    BaseMessages.getString(PKG, "XeroGetStep.CheckResult.Replay.Required"),
+                    stepMeta));
+        }
+
+        if (StringUtils.isNotBlank(spillThresholdKilobytes)
+                && (StringUtils.isBlank(spillFileFieldName) || StringUtils.isBlank(xmlFieldName))) {
+            remarks.add(new CheckResult(
+                    CheckResult.TYPE_RESULT_ERROR,
+                    BaseMessages.getString(PKG, "XeroGetStep.CheckResult.Spill.Required"),
+                    stepMeta));
+        }
+
+        if (isDetectingChanges() && StringUtils.isBlank(changeKeyPath)) {
+            remarks.add(new CheckResult(
+                    CheckResult.TYPE_RESULT_ERROR,
+                    BaseMessages.getString(PKG, "XeroGetStep.CheckResult.Change.KeyRequired"),
+                    stepMeta));
+        }
+
+        if (isDetectingChanges() && changeFieldsOnly && outputFields.isEmpty()) {
+            remarks.add(new CheckResult(
+                    CheckResult.TYPE_RESULT_ERROR,
+                    BaseMessages.getString(PKG, "XeroGetStep.CheckResult.Change.FieldsRequired"),
+                    stepMeta));
+        }
+
+        for (XeroGetStepChild child : children) {
+            if (StringUtils.isBlank(child.getName()) || StringUtils.isBlank(child.getPath())) {
+                remarks.add(new CheckResult(
+                        CheckResult.TYPE_RESULT_ERROR,
+                        BaseMessages.getString(PKG, "XeroGetStep.CheckResult.Child.Required"),
+                        stepMeta));
+            }
+        }
+
+        if (Format.JSON == format && !children.isEmpty()) {
+            remarks.add(new CheckResult(
+                    CheckResult.TYPE_RESULT_ERROR,
+                    BaseMessages.getString(PKG, "XeroGetStep.CheckResult.Format.Children"),
+                    stepMeta));
+        }
+
+        if (StringUtils.isBlank(xmlFieldName) && outputFields.isEmpty() && children.isEmpty()) {
+            remarks.add(new CheckResult(
+                    CheckResult.TYPE_RESULT_ERROR,
+                    BaseMessages.getString(PKG, "XeroGetStep.CheckResult.Output.Required"),
+                    stepMeta));
+        }
+
+        for (XeroGetStepField outputField : outputFields) {
+            if (StringUtils.isBlank(outputField.getName()) || StringUtils.isBlank(outputField.getPath())) {
+                remarks.add(new CheckResult(
+                        CheckResult.TYPE_RESULT_ERROR,
+                        BaseMessages.getString(PKG, "XeroGetStep.CheckResult.Field.Required"),
+                        stepMeta));
+            }
+        }
+
     }
 
 
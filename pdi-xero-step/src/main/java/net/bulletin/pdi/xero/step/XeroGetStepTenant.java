@@ -0,0 +1,73 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.bulletin.pdi.xero.step;
+
+/**
+ * <p>This describes a single tenant (a Xero organisation) that has been supplied to the step as an
+ * input row.  Where the URL, the consumer key or the key file are null, those configured on the
+ * step are used instead.  An instance is immutable so that it can be read from the threads that
+ * fetch the data for the tenants.</p>
+ *
+ * @author Andrew Lindesay
+ */
+
+public class XeroGetStepTenant {
+
+    private final String id;
+
+    private final String url;
+
+    private final String consumerKey;
+
+    private final String keyFile;
+
+    private final Object[] row;
+
+    public XeroGetStepTenant(String id, String url, String consumerKey, String keyFile, Object[] row) {
+        this.id = id;
+        this.url = url;
+        this.consumerKey = consumerKey;
+        this.keyFile = keyFile;
+        this.row = row;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getConsumerKey() {
+        return consumerKey;
+    }
+
+    public String getKeyFile() {
+        return keyFile;
+    }
+
+    /**
+     * <p>This is the input row that described the tenant; it is used if the tenant has to be
+     * sent to the error stream.</p>
+     */
+
+    public Object[] getRow() {
+        return row;
+    }
+
+}
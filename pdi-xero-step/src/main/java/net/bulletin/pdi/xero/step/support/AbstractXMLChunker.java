@@ -0,0 +1,37 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.bulletin.pdi.xero.step.support;
+
+import org.pentaho.di.core.exception.KettleException;
+
+/**
+ * <p>This provides {@link #pullNextXmlChunk()} in terms of {@link #pullNextChunk()} so that an
+ * implementation only needs to produce {@link XMLChunk}s.</p>
+ *
+ * @author Andrew Lindesay
+ */
+
+public abstract class AbstractXMLChunker implements XMLChunker {
+
+    @Override
+    public String pullNextXmlChunk() throws KettleException {
+        XMLChunk chunk = pullNextChunk();
+        return null == chunk ? null : chunk.getXml();
+    }
+
+}
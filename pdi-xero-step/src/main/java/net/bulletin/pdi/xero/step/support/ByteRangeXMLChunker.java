@@ -0,0 +1,1089 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.bulletin.pdi.xero.step.support;
+
+import org.apache.commons.lang.CharEncoding;
+import org.pentaho.di.core.exception.KettleException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Stack;
+
+/**
+ * <p>This chunker is an alternative to {@link XMLChunkerImpl} that does not use a StAX reader and
+ * writer.  It scans the UTF-8 bytes of the XML itself and copies the bytes of each matching
+ * element directly into a reusable buffer.  The only allocation per chunk is the resulting
+ * string or, where the XML is wanted as UTF-8, a copy of the bytes.  Where the XML is not wanted,
+ * the buffer is emptied after each piece of markup so that only the text of the fields is held,
+ * however large the chunk.</p>
+ *
+ * <p>The output is the same as that of {@link XMLChunkerImpl}; where the source uses a form that
+ * the StAX writer would have written differently (single-quoted attributes, empty-element tags,
+ * CDATA sections, character references and so on) the construct is rewritten into the form that
+ * the StAX writer would have produced.  The well-formed, canonical XML that Xero sends is almost
+ * entirely copied verbatim.</p>
+ *
+ * <p>This chunker does not validate the XML; it only supports UTF-8 input and it does not support
+ * entities declared in a DTD.</p>
+ *
+ * @author Andrew Lindesay
+ */
+
+public class ByteRangeXMLChunker extends AbstractXMLChunker {
+
+    private final static Charset CHARSET_UTF8 = Charset.forName(CharEncoding.UTF_8);
+
+    private final static byte[] BYTES_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>".getBytes(CHARSET_UTF8);
+
+    private final static int SIZE_INPUT_BUFFER = 64 * 1024;
+
+    private final static int SIZE_INITIAL_BUFFER = 8 * 1024;
+
+    private final static ElementPath[] NO_FIELD_PATHS = new ElementPath[0];
+
+    private final static String[] NO_FIELD_VALUES = new String[0];
+
+    private final InputStream inputStream;
+
+    private final ElementPathMatcher elementPathMatcher;
+
+    /**
+     * <p>If this is null then there are no fields to extract from the chunks.</p>
+     */
+
+    private final XMLChunkFieldExtractor fieldExtractor;
+
+    private final boolean xmlIncluded;
+
+    /**
+     * <p>If true then the XML of each chunk is handed over as UTF-8 bytes and is not decoded.</p>
+     */
+
+    private final boolean xmlUtf8;
+
+    private final byte[] input = new byte[SIZE_INPUT_BUFFER];
+
+    private int inputPosition = 0;
+
+    private int inputLimit = 0;
+
+    private boolean inputEnded = false;
+
+    /**
+     * <p>This buffer holds a single piece of markup; a tag, comment, processing instruction and
+     * so on.</p>
+     */
+
+    private byte[] token = new byte[SIZE_INITIAL_BUFFER];
+
+    private int tokenLength = 0;
+
+    /**
+     * <p>This buffer holds the chunk that is presently being assembled.</p>
+     */
+
+    private byte[] chunk = new byte[SIZE_INITIAL_BUFFER];
+
+    private int chunkLength = 0;
+
+    /**
+     * <p>The depth of the element at the root of the chunk being assembled or -1 if no chunk is
+     * being assembled.</p>
+     */
+
+    private int chunkDepth = -1;
+
+    /**
+     * <p>If this is not null then a chunk that grows past the threshold is moved out of the
+     * buffer and into a file.</p>
+     */
+
+    private ChunkSpill chunkSpill = null;
+
+    /**
+     * <p>This is the file output of the chunk that is presently being assembled once it has
+     * become too large to keep in the buffer.</p>
+     */
+
+    private ChunkSpill.SpillingOutputStream chunkSpillOutputStream = null;
+
+    /**
+     * <p>If this is not null then the child records within each chunk are also split out as
+     * chunks of their own.</p>
+     */
+
+    private XMLChunkChildMatcher childMatcher = null;
+
+    /**
+     * <p>For each child path, the offset in the chunk buffer at which the open child record
+     * starts.</p>
+     */
+
+    private int[] childOffsets = null;
+
+    /**
+     * <p>The child records of the chunk being assembled; they are complete before the chunk is.</p>
+     */
+
+    private final List<XMLChunk> childChunks = new ArrayList<XMLChunk>();
+
+    private final LinkedList<XMLChunk> pendingChunks = new LinkedList<XMLChunk>();
+
+    private boolean previousWasCarriageReturn = false;
+
+    private boolean finished = false;
+
+    public ByteRangeXMLChunker(InputStream inputStream, Stack<String> expectedContainerElementsStack) {
+        this(inputStream, null == expectedContainerElementsStack ? null : new ElementPath(expectedContainerElementsStack));
+    }
+
+    public ByteRangeXMLChunker(InputStream inputStream, ElementPath expectedContainerElementPath) {
+        this(inputStream, expectedContainerElementPath, NO_FIELD_PATHS, true);
+    }
+
+    /**
+     * @param fieldPaths  are paths relative to the root element of each chunk from which text
+     *                    values should be extracted; see {@link XMLChunkFieldExtractor}.
+     * @param xmlIncluded is false if the XML of each chunk is not required; only the values of
+     *                    the fields.
+     */
+
+    public ByteRangeXMLChunker(
+            InputStream inputStream,
+            ElementPath expectedContainerElementPath,
+            ElementPath[] fieldPaths,
+            boolean xmlIncluded) {
+        this(inputStream, expectedContainerElementPath, fieldPaths, xmlIncluded, false);
+    }
+
+    /**
+     * @param xmlUtf8 is true if the XML of each chunk should be carried as UTF-8 bytes rather
+     *                than as a string; see {@link XMLChunk#getXmlUtf8()}.
+     */
+
+    public ByteRangeXMLChunker(
+            InputStream inputStream,
+            ElementPath expectedContainerElementPath,
+            ElementPath[] fieldPaths,
+            boolean xmlIncluded,
+            boolean xmlUtf8) {
+
+        if (null == inputStream) {
+            throw new IllegalArgumentException("an input stream is required");
+        }
+
+        if (null == expectedContainerElementPath) {
+            throw new IllegalArgumentException("an expected container element path is required");
+        }
+
+        this.inputStream = inputStream;
+        this.elementPathMatcher = new ElementPathMatcher(expectedContainerElementPath);
+        this.fieldExtractor = null == fieldPaths || 0 == fieldPaths.length ? null : new XMLChunkFieldExtractor(fieldPaths);
+        this.xmlIncluded = xmlIncluded;
+        this.xmlUtf8 = xmlUtf8;
+    }
+
+    /**
+     * <p>Chunks with XML larger than the threshold of the supplied spill are written to files
+     * rather than being held in memory.</p>
+     */
+
+    public void setChunkSpill(ChunkSpill chunkSpill) {
+        this.chunkSpill = chunkSpill;
+    }
+
+    /**
+     * <p>The child records at the supplied paths, which are from the root of the document, are
+     * split out of each chunk in the same pass.  Each child record follows the chunk that it is
+     * in and carries that chunk's field values; see {@link XMLChunk#getContainerIndex()}.</p>
+     */
+
+    public void setChildContainerPaths(ElementPath[] childContainerPaths) {
+        if (null == childContainerPaths || 0 == childContainerPaths.length) {
+            childMatcher = null;
+            childOffsets = null;
+        } else {
+            childMatcher = new XMLChunkChildMatcher(childContainerPaths);
+            childOffsets = new int[childContainerPaths.length];
+        }
+    }
+
+    // ------------------------------------------------------
+    // INPUT
+
+    private boolean fill() throws IOException {
+        if (inputPosition < inputLimit) {
+            return true;
+        }
+
+        if (inputEnded) {
+            return false;
+        }
+
+        int read;
+
+        do {
+            read = inputStream.read(input, 0, input.length);
+        } while (0 == read);
+
+        if (-1 == read) {
+            inputEnded = true;
+            return false;
+        }
+
+        inputPosition = 0;
+        inputLimit = read;
+        return true;
+    }
+
+    private int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+
+        return input[inputPosition++] & 0xff;
+    }
+
+    private int peek() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+
+        return input[inputPosition] & 0xff;
+    }
+
+    // ------------------------------------------------------
+    // OUTPUT
+
+    private void ensureChunkCapacity(int additional) {
+        if (chunkLength + additional > chunk.length) {
+            byte[] replacement = new byte[Math.max(chunk.length * 2, chunkLength + additional)];
+            System.arraycopy(chunk, 0, replacement, 0, chunkLength);
+            chunk = replacement;
+        }
+    }
+
+    private void write(int b) {
+        ensureChunkCapacity(1);
+        chunk[chunkLength++] = (byte) b;
+    }
+
+    private void write(byte[] bytes, int offset, int length) {
+        ensureChunkCapacity(length);
+        System.arraycopy(bytes, offset, chunk, chunkLength, length);
+        chunkLength += length;
+    }
+
+    private void write(String ascii) {
+        for (int i = 0; i < ascii.length(); i++) {
+            write(ascii.charAt(i));
+        }
+    }
+
+    private void writeCodePoint(int codePoint) {
+        if (codePoint < 0x80) {
+            write(codePoint);
+        } else if (codePoint < 0x800) {
+            write(0xc0 | (codePoint >> 6));
+            write(0x80 | (codePoint & 0x3f));
+        } else if (codePoint < 0x10000) {
+            write(0xe0 | (codePoint >> 12));
+            write(0x80 | ((codePoint >> 6) & 0x3f));
+            write(0x80 | (codePoint & 0x3f));
+        } else {
+            write(0xf0 | (codePoint >> 18));
+            write(0x80 | ((codePoint >> 12) & 0x3f));
+            write(0x80 | ((codePoint >> 6) & 0x3f));
+            write(0x80 | (codePoint & 0x3f));
+        }
+    }
+
+    /**
+     * <p>Writes the code point escaped in the same way as the StAX writer escapes text.</p>
+     */
+
+    private void writeTextCodePoint(int codePoint) {
+        switch (codePoint) {
+            case '&':
+                write("&amp;");
+                break;
+            case '<':
+                write("&lt;");
+                break;
+            case '>':
+                write("&gt;");
+                break;
+            default:
+                writeCodePoint(codePoint);
+                break;
+        }
+    }
+
+    /**
+     * <p>Writes the code point escaped in the same way as the StAX writer escapes attribute
+     * values.</p>
+     */
+
+    private void writeAttributeCodePoint(int codePoint) {
+        if ('"' == codePoint) {
+            write("&quot;");
+        } else {
+            writeTextCodePoint(codePoint);
+        }
+    }
+
+    /**
+     * <p>Moves the chunk assembled so far out of the buffer; into its spill file if the XML is
+     * wanted and it has become too large, or away altogether if the XML is not wanted.  This is
+     * only done between pieces of markup so that the text being extracted for the fields is
+     * still in the buffer.  The bytes of an open child record are kept because the child record
+     * is made from them.</p>
+     */
+
+    private void releaseChunk() throws IOException {
+        if (-1 == chunkDepth || (null != childMatcher && childMatcher.isAnyOpen())) {
+            return;
+        }
+
+        if (!xmlIncluded) {
+            chunkLength = 0;
+        } else if (null != chunkSpill && chunkLength > chunkSpill.getThresholdBytes()) {
+            if (null == chunkSpillOutputStream) {
+                chunkSpillOutputStream = chunkSpill.createOutputStream();
+            }
+
+            chunkSpillOutputStream.write(chunk, 0, chunkLength);
+            chunkLength = 0;
+        }
+    }
+
+    /**
+     * <p>The bytes of the child record that has just ended are still in the chunk buffer from
+     * the offset at which it started.</p>
+     */
+
+    private void completeChildChunk(int childIndex) {
+        int offset = childOffsets[childIndex];
+        byte[] childXml = new byte[BYTES_DECLARATION.length + chunkLength - offset];
+        System.arraycopy(BYTES_DECLARATION, 0, childXml, 0, BYTES_DECLARATION.length);
+        System.arraycopy(chunk, offset, childXml, BYTES_DECLARATION.length, chunkLength - offset);
+        XMLChunk childChunk = xmlUtf8
+                ? XMLChunk.fromUtf8(childXml, NO_FIELD_VALUES)
+                : new XMLChunk(new String(childXml, CHARSET_UTF8), NO_FIELD_VALUES);
+        childChunks.add(childChunk.withContainer(childIndex + 1, NO_FIELD_VALUES));
+    }
+
+    private XMLChunk completeChunk() throws IOException {
+        String[] fieldValues = null == fieldExtractor ? NO_FIELD_VALUES : fieldExtractor.getValues();
+        XMLChunk result;
+
+        for (XMLChunk childChunk : childChunks) {
+            pendingChunks.add(childChunk.withContainer(childChunk.getContainerIndex(), fieldValues));
+        }
+
+        childChunks.clear();
+
+        if (null != chunkSpillOutputStream) {
+            chunkSpillOutputStream.write(chunk, 0, chunkLength);
+            chunkSpillOutputStream.close();
+            result = XMLChunk.fromSpillFile(chunkSpillOutputStream.getFile(), fieldValues);
+            chunkSpillOutputStream = null;
+        } else if (xmlIncluded && xmlUtf8) {
+            result = XMLChunk.fromUtf8(Arrays.copyOf(chunk, chunkLength), fieldValues);
+        } else {
+            result = new XMLChunk(
+                    xmlIncluded ? new String(chunk, 0, chunkLength, CHARSET_UTF8) : null,
+                    fieldValues);
+        }
+
+        chunkLength = 0;
+        chunkDepth = -1;
+        return result;
+    }
+
+    // ------------------------------------------------------
+    // FIELD EXTRACTION
+
+    /**
+     * <p>The text that has been written to the chunk from the offset to the end is passed to the
+     * field extractor.  The text in the chunk is in the form that the StAX writer would write it
+     * and so the only references in it are those for '&amp;', '&lt;' and '&gt;'.</p>
+     */
+
+    private void extractTextWrittenSince(int offset) {
+        if (null != fieldExtractor && fieldExtractor.isCapturing() && offset < chunkLength) {
+            String text = new String(chunk, offset, chunkLength - offset, CHARSET_UTF8);
+
+            if (-1 != text.indexOf('&')) {
+                text = text.replace("&lt;", "<").replace("&gt;", ">").replace("&amp;", "&");
+            }
+
+            fieldExtractor.characters(text);
+        }
+    }
+
+    // ------------------------------------------------------
+    // TOKEN
+
+    private void appendToToken(int b) {
+        if (tokenLength == token.length) {
+            byte[] replacement = new byte[token.length * 2];
+            System.arraycopy(token, 0, replacement, 0, tokenLength);
+            token = replacement;
+        }
+
+        token[tokenLength++] = (byte) b;
+    }
+
+    private boolean tokenEndsWith(String suffix) {
+        int offset = tokenLength - suffix.length();
+
+        if (offset < 0) {
+            return false;
+        }
+
+        for (int i = 0; i < suffix.length(); i++) {
+            if (token[offset + i] != suffix.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean tokenStartsWith(String prefix) {
+        if (tokenLength < prefix.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < prefix.length(); i++) {
+            if (token[i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void readTokenUntil(String terminator, int minimumLength) throws IOException, KettleException {
+        while (tokenLength < minimumLength || !tokenEndsWith(terminator)) {
+            int b = read();
+
+            if (-1 == b) {
+                throw new KettleException("the xero xml stream ended part way through some markup");
+            }
+
+            appendToToken(b);
+        }
+    }
+
+    /**
+     * <p>Reads a piece of markup starting with the '&lt;' character into the token buffer.</p>
+     */
+
+    private void readToken() throws IOException, KettleException {
+        tokenLength = 0;
+        appendToToken(read()); // the '<'
+
+        int b = read();
+
+        if (-1 == b) {
+            throw new KettleException("the xero xml stream ended part way through some markup");
+        }
+
+        appendToToken(b);
+
+        if ('?' == b) {
+            readTokenUntil("?>", 4);
+            return;
+        }
+
+        if ('!' == b) {
+            while (tokenLength < 4 && -1 != peek() && '>' != peek()) {
+                appendToToken(read());
+            }
+
+            if (tokenStartsWith("<!--")) {
+                readTokenUntil("-->", 7);
+                return;
+            }
+
+            while (tokenLength < 9 && -1 != peek() && '>' != peek()) {
+                appendToToken(read());
+            }
+
+            if (tokenStartsWith("<![CDATA[")) {
+                readTokenUntil("]]>", 12);
+                return;
+            }
+
+            readDeclarationToken();
+            return;
+        }
+
+        readTagToken();
+    }
+
+    /**
+     * <p>Reads a document type declaration; this may have an internal subset in square brackets
+     * that can contain '&gt;' characters.</p>
+     */
+
+    private void readDeclarationToken() throws IOException, KettleException {
+        int brackets = 0;
+        int quote = 0;
+
+        while (true) {
+            int b = read();
+
+            if (-1 == b) {
+                throw new KettleException("the xero xml stream ended part way through a declaration");
+            }
+
+            appendToToken(b);
+
+            if (0 != quote) {
+                if (b == quote) {
+                    quote = 0;
+                }
+            } else if ('"' == b || '\'' == b) {
+                quote = b;
+            } else if ('[' == b) {
+                brackets++;
+            } else if (']' == b) {
+                brackets--;
+            } else if ('>' == b && brackets <= 0) {
+                return;
+            }
+        }
+    }
+
+    private void readTagToken() throws IOException, KettleException {
+        int quote = 0;
+
+        while (true) {
+            int b = read();
+
+            if (-1 == b) {
+                throw new KettleException("the xero xml stream ended part way through a tag");
+            }
+
+            appendToToken(b);
+
+            if (0 != quote) {
+                if (b == quote) {
+                    quote = 0;
+                }
+            } else if ('"' == b || '\'' == b) {
+                quote = b;
+            } else if ('>' == b) {
+                return;
+            }
+        }
+    }
+
+    private static boolean isWhitespace(int b) {
+        return ' ' == b || '\t' == b || '\n' == b || '\r' == b;
+    }
+
+    private int skipTokenWhitespace(int offset) {
+        while (offset < tokenLength && isWhitespace(token[offset])) {
+            offset++;
+        }
+
+        return offset;
+    }
+
+    private int findTokenNameEnd(int offset) {
+        while (offset < tokenLength) {
+            byte b = token[offset];
+
+            if (isWhitespace(b) || '/' == b || '>' == b || '=' == b) {
+                break;
+            }
+
+            offset++;
+        }
+
+        return offset;
+    }
+
+    /**
+     * <p>Decodes a character or entity reference at the offset which points to the '&amp;' in the
+     * supplied buffer.  The returned value has the code point in the lower 32 bits and the length
+     * of the reference in the upper 32 bits.</p>
+     */
+
+    private static long decodeReference(byte[] buffer, int offset, int limit) throws KettleException {
+        int end = offset + 1;
+
+        while (end < limit && ';' != buffer[end]) {
+            end++;
+        }
+
+        if (end >= limit) {
+            throw new KettleException("unterminated reference in the xero xml stream");
+        }
+
+        String name = new String(buffer, offset + 1, end - (offset + 1), CHARSET_UTF8);
+        int codePoint;
+
+        if (name.startsWith("#x")) {
+            codePoint = Integer.parseInt(name.substring(2), 16);
+        } else if (name.startsWith("#")) {
+            codePoint = Integer.parseInt(name.substring(1));
+        } else if ("amp".equals(name)) {
+            codePoint = '&';
+        } else if ("lt".equals(name)) {
+            codePoint = '<';
+        } else if ("gt".equals(name)) {
+            codePoint = '>';
+        } else if ("quot".equals(name)) {
+            codePoint = '"';
+        } else if ("apos".equals(name)) {
+            codePoint = '\'';
+        } else {
+            throw new KettleException("unsupported entity reference in the xero xml stream; " + name);
+        }
+
+        return ((long) (end + 1 - offset) << 32) | codePoint;
+    }
+
+    // ------------------------------------------------------
+    // MARKUP HANDLING
+
+    /**
+     * <p>Writes out the start tag in the form that the StAX writer would; namespace declarations
+     * first, followed by the other attributes with normalized values in double quotes.</p>
+     */
+
+    private void writeStartTag(int nameEnd, boolean emptyElement) throws KettleException {
+
+        // the common case of a simple start tag can be copied directly.
+
+        if (!emptyElement && nameEnd == tokenLength - 1) {
+            write(token, 0, tokenLength);
+            return;
+        }
+
+        write(token, 0, nameEnd);
+        writeAttributes(nameEnd, true);
+        writeAttributes(nameEnd, false);
+        write('>');
+    }
+
+    private void writeAttributes(int offset, boolean namespaceDeclarations) throws KettleException {
+        while (true) {
+            offset = skipTokenWhitespace(offset);
+
+            if (offset >= tokenLength || '/' == token[offset] || '>' == token[offset]) {
+                return;
+            }
+
+            int nameStart = offset;
+            int nameEnd = findTokenNameEnd(offset);
+            offset = skipTokenWhitespace(nameEnd);
+
+            if (offset >= tokenLength || '=' != token[offset]) {
+                throw new KettleException("malformed attribute in the xero xml stream");
+            }
+
+            offset = skipTokenWhitespace(offset + 1);
+
+            if (offset >= tokenLength || ('"' != token[offset] && '\'' != token[offset])) {
+                throw new KettleException("malformed attribute value in the xero xml stream");
+            }
+
+            byte quote = token[offset];
+            int valueStart = offset + 1;
+            int valueEnd = valueStart;
+
+            while (valueEnd < tokenLength && quote != token[valueEnd]) {
+                valueEnd++;
+            }
+
+            offset = valueEnd + 1;
+
+            boolean isNamespaceDeclaration = (nameEnd - nameStart == 5 || (nameEnd - nameStart > 5 && ':' == token[nameStart + 5]))
+                    && 'x' == token[nameStart] && 'm' == token[nameStart + 1] && 'l' == token[nameStart + 2]
+                    && 'n' == token[nameStart + 3] && 's' == token[nameStart + 4];
+
+            if (isNamespaceDeclaration == namespaceDeclarations) {
+                write(' ');
+                write(token, nameStart, nameEnd - nameStart);
+                write("=\"");
+                writeAttributeValue(valueStart, valueEnd);
+                write('"');
+            }
+        }
+    }
+
+    private void writeAttributeValue(int offset, int limit) throws KettleException {
+        while (offset < limit) {
+            int b = token[offset] & 0xff;
+
+            if ('&' == b) {
+                long reference = decodeReference(token, offset, limit);
+                writeAttributeCodePoint((int) reference);
+                offset += (int) (reference >>> 32);
+            } else {
+                if ('\r' == b) {
+                    if (offset + 1 < limit && '\n' == token[offset + 1]) {
+                        offset++;
+                    }
+                    write(' ');
+                } else if ('\n' == b || '\t' == b) {
+                    write(' ');
+                } else if (b < 0x80) {
+                    writeAttributeCodePoint(b);
+                } else {
+                    write(b);
+                }
+
+                offset++;
+            }
+        }
+    }
+
+    /**
+     * <p>Writes the region of the token as text, normalizing line endings and escaping as the
+     * StAX writer would.  This is used for comments (unescaped) and CDATA (escaped).</p>
+     */
+
+    private void writeTokenRegionAsText(int offset, int limit, boolean escape) {
+        for (int i = offset; i < limit; i++) {
+            int b = token[i] & 0xff;
+
+            if ('\r' == b) {
+                if (i + 1 < limit && '\n' == token[i + 1]) {
+                    i++;
+                }
+                write('\n');
+            } else if (escape && b < 0x80) {
+                writeTextCodePoint(b);
+            } else {
+                write(b);
+            }
+        }
+    }
+
+    private void writeProcessingInstruction() {
+        int targetEnd = findTokenNameEnd(2);
+
+        // a processing instruction's target may not contain '?' but the name scan does not stop
+        // on it; it does stop on the '>' at the end though.
+
+        if (targetEnd > tokenLength - 2) {
+            targetEnd = tokenLength - 2;
+        }
+
+        write(token, 0, targetEnd);
+        write(' ');
+        writeTokenRegionAsText(skipTokenWhitespace(targetEnd), tokenLength - 2, false);
+        write("?>");
+    }
+
+    private void checkXmlDeclaration() throws KettleException {
+        String declaration = new String(token, 0, tokenLength, CHARSET_UTF8);
+        int encodingOffset = declaration.indexOf("encoding");
+
+        if (-1 != encodingOffset) {
+            String remainder = declaration.substring(encodingOffset + 8).replaceAll("^[\\s=]*['\"]", "");
+            int end = remainder.indexOf('"') == -1 ? remainder.indexOf('\'') : remainder.indexOf('"');
+            String encoding = -1 == end ? remainder : remainder.substring(0, end);
+
+            if (!CharEncoding.UTF_8.equalsIgnoreCase(encoding.trim())) {
+                throw new KettleException("the byte range chunker only supports utf-8 xml; " + encoding);
+            }
+        }
+    }
+
+    /**
+     * @return true if the markup has completed a chunk.
+     */
+
+    private boolean handleToken() throws KettleException {
+        boolean inChunk = -1 != chunkDepth;
+
+        if (tokenStartsWith("</")) {
+            if (inChunk) {
+                write(token, 0, findTokenNameEnd(2));
+                write('>');
+            }
+
+            return popElement(inChunk);
+        }
+
+        if (tokenStartsWith("<!--")) {
+            if (inChunk) {
+                write("<!--");
+                writeTokenRegionAsText(4, tokenLength - 3, false);
+                write("-->");
+            }
+
+            return false;
+        }
+
+        if (tokenStartsWith("<![CDATA[")) {
+            if (inChunk) {
+                int textOffset = chunkLength;
+                writeTokenRegionAsText(9, tokenLength - 3, true);
+                extractTextWrittenSince(textOffset);
+            }
+
+            return false;
+        }
+
+        if (tokenStartsWith("<?")) {
+            if (inChunk) {
+                writeProcessingInstruction();
+            } else if (tokenLength > 5 && tokenStartsWith("<?xml") && isWhitespace(token[5])) {
+                checkXmlDeclaration();
+            }
+
+            return false;
+        }
+
+        if (tokenStartsWith("<!")) {
+            return false; // document type declaration
+        }
+
+        int nameEnd = findTokenNameEnd(1);
+        boolean emptyElement = tokenEndsWith("/>");
+        elementPathMatcher.push(token, 1, nameEnd - 1);
+        int childStarted = null == childMatcher ? -1 : childMatcher.push(token, 1, nameEnd - 1);
+
+        if (!inChunk && elementPathMatcher.isMatched()) {
+            chunkLength = 0;
+            chunkDepth = elementPathMatcher.getDepth();
+            write(BYTES_DECLARATION, 0, BYTES_DECLARATION.length);
+            inChunk = true;
+
+            if (null != fieldExtractor) {
+                fieldExtractor.reset();
+            }
+        } else if (inChunk && null != fieldExtractor) {
+            fieldExtractor.startElement(token, 1, nameEnd - 1);
+        }
+
+        if (inChunk) {
+            if (-1 != childStarted) {
+                childOffsets[childStarted] = chunkLength;
+            }
+
+            writeStartTag(nameEnd, emptyElement);
+        }
+
+        if (emptyElement) {
+            if (inChunk) {
+                write("</");
+                write(token, 1, nameEnd - 1);
+                write('>');
+            }
+
+            return popElement(inChunk);
+        }
+
+        return false;
+    }
+
+    /**
+     * @return true if the element that was popped completed the chunk.
+     */
+
+    private boolean popElement(boolean inChunk) {
+        elementPathMatcher.pop();
+        int childEnded = null == childMatcher ? -1 : childMatcher.pop();
+
+        if (inChunk) {
+            if (-1 != childEnded) {
+                completeChildChunk(childEnded);
+            }
+
+            if (elementPathMatcher.getDepth() < chunkDepth) {
+                return true;
+            }
+
+            if (null != fieldExtractor) {
+                fieldExtractor.endElement();
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * <p>Handles the text up to the next markup.  Outside of a chunk, the text is skipped over
+     * without looking at it.</p>
+     */
+
+    private void handleText() throws IOException, KettleException {
+        boolean inChunk = -1 != chunkDepth;
+        int textOffset = chunkLength;
+
+        handleTextRuns(inChunk);
+
+        if (inChunk) {
+            extractTextWrittenSince(textOffset);
+        }
+    }
+
+    private void handleTextRuns(boolean inChunk) throws IOException, KettleException {
+
+        while (fill()) {
+            int runStart = inputPosition;
+
+            while (inputPosition < inputLimit) {
+                byte b = input[inputPosition];
+
+                if ('<' == b) {
+                    break;
+                }
+
+                if (inChunk) {
+                    if ('&' == b || '>' == b || '\r' == b || ('\n' == b && previousWasCarriageReturn)) {
+                        break;
+                    }
+
+                    previousWasCarriageReturn = false;
+                }
+
+                inputPosition++;
+            }
+
+            if (inChunk) {
+                write(input, runStart, inputPosition - runStart);
+            }
+
+            if (inputPosition == inputLimit) {
+                continue;
+            }
+
+            byte b = input[inputPosition];
+
+            if ('<' == b) {
+                previousWasCarriageReturn = false;
+                return;
+            }
+
+            switch (b) {
+                case '>':
+                    write("&gt;");
+                    inputPosition++;
+                    previousWasCarriageReturn = false;
+                    break;
+
+                case '\r':
+                    write('\n');
+                    inputPosition++;
+                    previousWasCarriageReturn = true;
+                    break;
+
+                case '\n':
+                    inputPosition++; // the second half of a CR-LF that was already written
+                    previousWasCarriageReturn = false;
+                    break;
+
+                case '&':
+                    writeTextCodePoint(readReference());
+                    previousWasCarriageReturn = false;
+                    break;
+            }
+        }
+    }
+
+    private int readReference() throws IOException, KettleException {
+        tokenLength = 0;
+
+        while (true) {
+            int b = read();
+
+            if (-1 == b) {
+                throw new KettleException("the xero xml stream ended part way through a reference");
+            }
+
+            appendToToken(b);
+
+            if (';' == b) {
+                return (int) decodeReference(token, 0, tokenLength);
+            }
+        }
+    }
+
+    @Override
+    public XMLChunk pullNextChunk() throws KettleException {
+        if (!pendingChunks.isEmpty()) {
+            return pendingChunks.removeFirst();
+        }
+
+        if (finished) {
+            return null;
+        }
+
+        try {
+            while (true) {
+                int b = peek();
+
+                if (-1 == b) {
+                    finished = true;
+
+                    if (-1 != chunkDepth) {
+                        throw new KettleException("the xero xml stream ended part way through a chunk");
+                    }
+
+                    return null;
+                }
+
+                if ('<' == b) {
+                    readToken();
+
+                    if (handleToken()) {
+                        return completeChunk();
+                    }
+                } else {
+                    handleText();
+                }
+
+                releaseChunk();
+            }
+        } catch (IOException ioe) {
+            throw new KettleException("a problem has arisen reading the xero xml stream", ioe);
+        } catch (NumberFormatException nfe) {
+            throw new KettleException("a malformed character reference was found in the xero xml stream", nfe);
+        }
+    }
+
+    @Override
+    public void close() throws KettleException {
+        if (null != chunkSpillOutputStream) {
+            chunkSpillOutputStream.abandon();
+            chunkSpillOutputStream = null;
+        }
+
+        try {
+            inputStream.close();
+        } catch (IOException ioe) {
+            throw new KettleException("unable to close the underlying xero stream", ioe);
+        }
+    }
+
+}
@@ -0,0 +1,266 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.bulletin.pdi.xero.step.support;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.CharEncoding;
+import org.pentaho.di.core.exception.KettleException;
+
+import java.io.*;
+
+/**
+ * <p>This is a compact index of the hash of the content of each record that has been seen from
+ * Xero, keyed by the hash of the record's key.  It is used to find out whether a record that
+ * Xero has supplied is new, has changed or is the same as it was the last time.  Both the keys
+ * and the content are reduced to 64 bit {@link XXHash64} hashes so that each record takes up 16
+ * bytes in an open-addressed table.</p>
+ *
+ * <p>The index is read from a local file and is only written back when {@link #commit()} is
+ * invoked.  As with the {@link WatermarkFile}, it is written to a temporary file alongside the
+ * file and then renamed over it so that a partially written index is never read.</p>
+ *
+ * @author Andrew Lindesay
+ */
+
+public class ChangeIndex {
+
+    public enum Change {
+        NEW,
+        CHANGED,
+        UNCHANGED
+    }
+
+    private final static int MAGIC = 0x58434931; // "XCI1"
+
+    private final static int INITIAL_CAPACITY = 1024;
+
+    /**
+     * <p>A key hash of zero marks an empty slot and so a key that hashes to zero is moved.</p>
+     */
+
+    private final static long KEY_ZERO_REPLACEMENT = 0x5DEECE66DL;
+
+    private final File file;
+
+    private long[] keys = new long[INITIAL_CAPACITY];
+
+    private long[] hashes = new long[INITIAL_CAPACITY];
+
+    private int size = 0;
+
+    private long newCount = 0;
+
+    private long changedCount = 0;
+
+    private long unchangedCount = 0;
+
+    public ChangeIndex(File file) {
+
+        if (null == file) {
+            throw new IllegalArgumentException("the file is required");
+        }
+
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getNewCount() {
+        return newCount;
+    }
+
+    public long getChangedCount() {
+        return changedCount;
+    }
+
+    public long getUnchangedCount() {
+        return unchangedCount;
+    }
+
+    /**
+     * <p>Reads the index from the file.  If there is no file yet then the index is empty.</p>
+     */
+
+    public void load() throws KettleException {
+        if (!file.exists()) {
+            return;
+        }
+
+        DataInputStream inputStream = null;
+
+        try {
+            inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+            if (MAGIC != inputStream.readInt()) {
+                throw new KettleException("the file is not a change index; " + file);
+            }
+
+            int count = inputStream.readInt();
+
+            for (int i = 0; i < count; i++) {
+                put(inputStream.readLong(), inputStream.readLong());
+            }
+        } catch (IOException ioe) {
+            throw new KettleException("unable to read the change index; " + file, ioe);
+        } finally {
+            IOUtils.closeQuietly(inputStream);
+        }
+    }
+
+    public static long hashKey(String key) {
+        try {
+            long result = XXHash64.hash(key.getBytes(CharEncoding.UTF_8));
+            return 0 == result ? KEY_ZERO_REPLACEMENT : result;
+        } catch (UnsupportedEncodingException uee) {
+            throw new IllegalStateException("the encoding must be supported; " + CharEncoding.UTF_8);
+        }
+    }
+
+    /**
+     * <p>Records the hash of the content for the key and reports how it compares to the hash that
+     * was recorded before.</p>
+     */
+
+    public Change observe(String key, long hash) {
+        if (null == key) {
+            throw new IllegalArgumentException("the key is required");
+        }
+
+        // a content hash of zero is stored as one so that zero is able to mean "not present".
+
+        if (0 == hash) {
+            hash = 1;
+        }
+
+        long previous = put(hashKey(key), hash);
+
+        if (0 == previous) {
+            newCount++;
+            return Change.NEW;
+        }
+
+        if (previous != hash) {
+            changedCount++;
+            return Change.CHANGED;
+        }
+
+        unchangedCount++;
+        return Change.UNCHANGED;
+    }
+
+    private int slot(long[] table, long keyHash) {
+        int mask = table.length - 1;
+        int result = (int) (keyHash ^ (keyHash >>> 32)) & mask;
+
+        while (0 != table[result] && keyHash != table[result]) {
+            result = (result + 1) & mask;
+        }
+
+        return result;
+    }
+
+    /**
+     * @return the hash that was stored for the key before or zero if there was none.
+     */
+
+    private long put(long keyHash, long hash) {
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+        }
+
+        int index = slot(keys, keyHash);
+        long result = 0 == keys[index] ? 0 : hashes[index];
+
+        if (0 == keys[index]) {
+            keys[index] = keyHash;
+            size++;
+        }
+
+        hashes[index] = hash;
+        return result;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldHashes = hashes;
+        keys = new long[oldKeys.length * 2];
+        hashes = new long[oldKeys.length * 2];
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (0 != oldKeys[i]) {
+                int index = slot(keys, oldKeys[i]);
+                keys[index] = oldKeys[i];
+                hashes[index] = oldHashes[i];
+            }
+        }
+    }
+
+    /**
+     * <p>Writes the index to the file.</p>
+     */
+
+    public void commit() throws KettleException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        File temporaryFile;
+        FileOutputStream fileOutputStream = null;
+
+        try {
+            temporaryFile = File.createTempFile(file.getName(), ".tmp", directory);
+        } catch (IOException ioe) {
+            throw new KettleException("unable to create a temporary file for the change index in; " + directory, ioe);
+        }
+
+        try {
+            fileOutputStream = new FileOutputStream(temporaryFile);
+            DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(fileOutputStream, 64 * 1024));
+            outputStream.writeInt(MAGIC);
+            outputStream.writeInt(size);
+
+            for (int i = 0; i < keys.length; i++) {
+                if (0 != keys[i]) {
+                    outputStream.writeLong(keys[i]);
+                    outputStream.writeLong(hashes[i]);
+                }
+            }
+
+            outputStream.flush();
+            fileOutputStream.getFD().sync();
+            fileOutputStream.close();
+            fileOutputStream = null;
+
+            if (!Helpers.moveIntoPlace(temporaryFile, file)) {
+                throw new KettleException("unable to move the change index into place; " + file);
+            }
+        } catch (IOException ioe) {
+            throw new KettleException("unable to write the change index; " + file, ioe);
+        } finally {
+            IOUtils.closeQuietly(fileOutputStream);
+
+            if (temporaryFile.exists() && !temporaryFile.delete()) {
+                temporaryFile.deleteOnExit();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,175 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.bulletin.pdi.xero.step.support;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * <p>A chunk may be very large; with the container elements as "/" the whole of the response is
+ * a single chunk.  Rather than holding such a chunk in memory, a chunker is able to write it out
+ * to a file once it has grown past a threshold.  This object describes where those files go and
+ * how large a chunk may become in memory first.</p>
+ *
+ * <p>The files are not deleted here; they are handed on in the stream and it is for the steps
+ * downstream to deal with them.</p>
+ *
+ * @author Andrew Lindesay
+ */
+
+public class ChunkSpill {
+
+    private final static String PREFIX = "xero-chunk-";
+
+    private final static int SIZE_FILE_BUFFER = 64 * 1024;
+
+    private final File directory;
+
+    private final int thresholdBytes;
+
+    private final String suffix;
+
+    /**
+     * @param directory      is where the files are written or null for the system's temporary
+     *                       directory.
+     * @param thresholdBytes is the size in bytes past which a chunk is written to a file.
+     * @param suffix         is the extension of the files such as ".xml".
+     */
+
+    public ChunkSpill(File directory, int thresholdBytes, String suffix) {
+
+        if (thresholdBytes <= 0) {
+            throw new IllegalArgumentException("the threshold must be positive");
+        }
+
+        if (null != directory && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalStateException("unable to create the spill directory; " + directory);
+        }
+
+        this.directory = directory;
+        this.thresholdBytes = thresholdBytes;
+        this.suffix = null == suffix ? "" : suffix;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public int getThresholdBytes() {
+        return thresholdBytes;
+    }
+
+    public SpillingOutputStream createOutputStream() {
+        return new SpillingOutputStream();
+    }
+
+    /**
+     * <p>This stream gathers the bytes in memory until there are more than the threshold and then
+     * moves them into a new file and writes the rest there.  Once closed, the bytes are either
+     * available from {@link #toByteArray()} or have been written to {@link #getFile()}.</p>
+     */
+
+    public class SpillingOutputStream extends OutputStream {
+
+        private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+
+        private File file = null;
+
+        private OutputStream fileOutputStream = null;
+
+        private SpillingOutputStream() {
+        }
+
+        private OutputStream prepare(int additional) throws IOException {
+            if (null != memory && memory.size() + additional > thresholdBytes) {
+                file = File.createTempFile(PREFIX, suffix, directory);
+                fileOutputStream = new BufferedOutputStream(new FileOutputStream(file), SIZE_FILE_BUFFER);
+                memory.writeTo(fileOutputStream);
+                memory = null;
+            }
+
+            return null == memory ? fileOutputStream : memory;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            prepare(1).write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            prepare(len).write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (null != fileOutputStream) {
+                fileOutputStream.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (null != fileOutputStream) {
+                fileOutputStream.close();
+            }
+        }
+
+        /**
+         * <p>If the chunk is not going to be used then this closes the stream and removes any
+         * file that it wrote.</p>
+         */
+
+        public void abandon() {
+            try {
+                close();
+            } catch (IOException ignore) {
+                // the file is being deleted anyway
+            }
+
+            if (null != file && !file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+
+        public boolean isSpilled() {
+            return null != file;
+        }
+
+        /**
+         * @return the file into which the bytes were written or null if they fit in memory.
+         */
+
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * @return the bytes written or null if they were written to a file.
+         */
+
+        public byte[] toByteArray() {
+            return null == memory ? null : memory.toByteArray();
+        }
+
+    }
+
+}
@@ -0,0 +1,181 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.bulletin.pdi.xero.step.support;
+
+import org.pentaho.di.core.exception.KettleException;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>This chunker defers the request to Xero until the chunker is either started or is first
+ * pulled from.  Once started, the request is made on a background thread so that the
+ * initialization of the transformation does not have to wait for Xero; the step's thread only
+ * waits for the response when it pulls the first chunk.  A failure to make the request is
+ * thrown from that first pull.</p>
+ *
+ * @author Andrew Lindesay
+ */
+
+public class DeferredXMLChunker extends AbstractXMLChunker {
+
+    private final static AtomicInteger COUNTER = new AtomicInteger(1);
+
+    private final FutureTask<XMLChunker> openTask;
+
+    private boolean started = false;
+
+    private boolean closed = false;
+
+    /**
+     * <p>This is the chunker that has been opened, but not yet handed over to the step's thread
+     * so that a close that happens before the hand-over is still able to close it.</p>
+     */
+
+    private XMLChunker opened = null;
+
+    private XMLChunker delegate = null;
+
+    private volatile long awaitNanos = 0;
+
+    public DeferredXMLChunker(final XMLChunkerProvider provider) {
+
+        if (null == provider) {
+            throw new IllegalArgumentException("a chunker provider is required");
+        }
+
+        this.openTask = new FutureTask<XMLChunker>(new Callable<XMLChunker>() {
+            @Override
+            public XMLChunker call() throws Exception {
+                return handOver(provider.open());
+            }
+        });
+    }
+
+    /**
+     * <p>If the chunker was closed while the request was being made then the chunker that was
+     * opened is closed straight away.</p>
+     */
+
+    private XMLChunker handOver(XMLChunker xmlChunker) throws KettleException {
+        synchronized (this) {
+            if (!closed) {
+                opened = xmlChunker;
+                return xmlChunker;
+            }
+        }
+
+        xmlChunker.close();
+        return null;
+    }
+
+    /**
+     * <p>The time that the step's thread has spent waiting for the request to Xero to be
+     * made.</p>
+     */
+
+    public long getAwaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(awaitNanos);
+    }
+
+    /**
+     * <p>This will start making the request to Xero on a background thread.  Invoking this more
+     * than once has no effect.</p>
+     */
+
+    public synchronized void start() {
+        if (!started && !closed) {
+            started = true;
+            Thread thread = new Thread(openTask, "xero-open-" + COUNTER.getAndIncrement());
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private XMLChunker await() throws KettleException {
+        boolean runHere;
+
+        synchronized (this) {
+            if (closed) {
+                throw new KettleException("the chunker has been closed");
+            }
+
+            runHere = !started;
+            started = true;
+        }
+
+        // if the chunker was never started then the request is made on this thread.
+
+        if (runHere) {
+            openTask.run();
+        }
+
+        long start = System.nanoTime();
+
+        try {
+            XMLChunker result = openTask.get();
+
+            if (null == result) {
+                throw new KettleException("the chunker has been closed");
+            }
+
+            return result;
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new KettleException("interrupted while waiting for the xero request", ie);
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+
+            if (cause instanceof KettleException) {
+                throw (KettleException) cause;
+            }
+
+            throw new KettleException("unable to make the xero request", cause);
+        } finally {
+            awaitNanos += System.nanoTime() - start;
+        }
+    }
+
+    @Override
+    public XMLChunk pullNextChunk() throws KettleException {
+        if (null == delegate) {
+            delegate = await();
+        }
+
+        return delegate.pullNextChunk();
+    }
+
+    @Override
+    public void close() throws KettleException {
+        XMLChunker xmlChunker;
+
+        synchronized (this) {
+            closed = true;
+            xmlChunker = opened;
+            opened = null;
+        }
+
+        if (null != xmlChunker) {
+            xmlChunker.close();
+        }
+    }
+
+}
@@ -0,0 +1,127 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.bulletin.pdi.xero.step.support;
+
+import org.apache.commons.lang.CharEncoding;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>This is a compiled form of the container elements; a path of element names from the root
+ * of the document such as "Response/Contacts/Contact".  The names are interned so that StAX
+ * parsers which intern their element names (most do) can be matched with a reference comparison.
+ * An instance is immutable and so can be shared between threads.</p>
+ *
+ * @author Andrew Lindesay
+ */
+
+public final class ElementPath {
+
+    private final static Charset CHARSET_UTF8 = Charset.forName(CharEncoding.UTF_8);
+
+    public final static ElementPath ROOT = new ElementPath(new String[0]);
+
+    private final String[] names;
+
+    private final byte[][] namesUtf8;
+
+    public ElementPath(List<String> names) {
+        this(null == names ? null : names.toArray(new String[names.size()]));
+    }
+
+    public ElementPath(String[] names) {
+
+        if (null == names) {
+            throw new IllegalArgumentException("the names are required");
+        }
+
+        this.names = new String[names.length];
+        this.namesUtf8 = new byte[names.length][];
+
+        for (int i = 0; i < names.length; i++) {
+            if (null == names[i] || 0 == names[i].length()) {
+                throw new IllegalArgumentException("the names may not be empty");
+            }
+
+            this.names[i] = names[i].intern();
+            this.namesUtf8[i] = names[i].getBytes(CHARSET_UTF8);
+        }
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public String getName(int depthIndex) {
+        return names[depthIndex];
+    }
+
+    /**
+     * @return true if the element name at the zero-based depth index matches the supplied name.
+     */
+
+    public boolean matches(int depthIndex, String localName) {
+        String name = names[depthIndex];
+        return name == localName || name.equals(localName);
+    }
+
+    /**
+     * @return true if the element name at the zero-based depth index matches the UTF-8 bytes in
+     * the supplied region of the buffer.
+     */
+
+    public boolean matches(int depthIndex, byte[] buffer, int offset, int length) {
+        byte[] nameUtf8 = namesUtf8[depthIndex];
+
+        if (length != nameUtf8.length) {
+            return false;
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (buffer[offset + i] != nameUtf8[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof ElementPath && Arrays.equals(names, ((ElementPath) o).names));
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(names);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+
+        for (String name : names) {
+            result.append('/');
+            result.append(name);
+        }
+
+        return 0 == result.length() ? "/" : result.toString();
+    }
+
+}
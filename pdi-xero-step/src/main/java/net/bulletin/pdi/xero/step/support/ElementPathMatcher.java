@@ -0,0 +1,98 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.bulletin.pdi.xero.step.support;
+
+/**
+ * <p>This tracks the elements as they are opened and closed in an XML stream and is able to say
+ * if the current element is at, or is inside, the {@link ElementPath}.  Rather than keeping a stack of the
+ * element names, it only keeps the current depth and the number of leading elements on the
+ * current path that match the path.  Each element that is opened therefore costs at most one
+ * name comparison.</p>
+ *
+ * <p>An instance is not thread-safe; each chunker has its own.</p>
+ *
+ * @author Andrew Lindesay
+ */
+
+public final class ElementPathMatcher {
+
+    private final ElementPath elementPath;
+
+    private int depth = 0;
+
+    private int matchedDepth = 0;
+
+    public ElementPathMatcher(ElementPath elementPath) {
+
+        if (null == elementPath) {
+            throw new IllegalArgumentException("the element path is required");
+        }
+
+        this.elementPath = elementPath;
+    }
+
+    public ElementPath getElementPath() {
+        return elementPath;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    private boolean isNextDepthToMatch() {
+        return matchedDepth == depth - 1 && matchedDepth < elementPath.size();
+    }
+
+    public void push(String localName) {
+        depth++;
+
+        if (isNextDepthToMatch() && elementPath.matches(matchedDepth, localName)) {
+            matchedDepth = depth;
+        }
+    }
+
+    /**
+     * <p>As for {@link #push(String)}, but with the name supplied as UTF-8 bytes.</p>
+     */
+
+    public void push(byte[] buffer, int offset, int length) {
+        depth++;
+
+        if (isNextDepthToMatch() && elementPath.matches(matchedDepth, buffer, offset, length)) {
+            matchedDepth = depth;
+        }
+    }
+
+    public void pop() {
+        depth--;
+
+        if (matchedDepth > depth) {
+            matchedDepth = depth;
+        }
+    }
+
+    /**
+     * @return true if the leading elements of the current path match the element path; this
+     * means that descendents of an element at the path also match.  If the element path is empty
+     * then any element will match.
+     */
+
+    public boolean isMatched() {
+        return matchedDepth == elementPath.size();
+    }
+
+}
@@ -19,8 +19,14 @@ package net.bulletin.pdi.xero.step.support;
 import org.apache.commons.lang.CharEncoding;
 import org.apache.commons.lang.StringUtils;
 
+import java.io.File;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * @author Andrew Lindesay
@@ -28,6 +34,12 @@ import java.net.URLEncoder;
 
 public class Helpers {
 
+    private static final Pattern PATTERN_RETRYAFTER = Pattern.compile("^Retry-After:\\s*([0-9]{1,9})\\s*$", Pattern.CASE_INSENSITIVE | Pattern.MULTILINE);
+
+    private static final Pattern PATTERN_JSONDATE = Pattern.compile("^/Date\\((-?[0-9]{1,18})([+-][0-9]{4})?\\)/$");
+
+    private static final String FORMAT_DATE_XML = "yyyy-MM-dd'T'HH:mm:ss";
+
     /**
      * <p>This can be used with keys and so on in order to obfuscate the string for the logs.</p>
      */
@@ -75,5 +87,64 @@ public class Helpers {
         return url;
     }
 
+    /**
+     * <p>This will find the "Retry-After" header in the supplied HTTP response headers and will
+     * return the number of seconds that it specifies.  The form of the header that specifies a
+     * date is not supported.</p>
+     *
+     * @return the seconds to wait or -1 if there is no such header.
+     */
+
+    public static long parseRetryAfterSeconds(String httpResponseHeaders) {
+        if (null != httpResponseHeaders) {
+            Matcher matcher = PATTERN_RETRYAFTER.matcher(httpResponseHeaders);
+
+            if (matcher.find()) {
+                return Long.parseLong(matcher.group(1));
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * <p>In JSON, Xero presents a date as "/Date(1439434356790+0000)/" where the number is the
+     * milliseconds since the epoch in UTC.  This converts such a value into the form that Xero
+     * uses for the same date in XML so that the value is parsed in the same way for either
+     * format.  Any offset on the end is ignored because Xero always sends UTC.</p>
+     *
+     * @return the date in its XML form or the supplied value if it is not a JSON date.
+     */
+
+    public static String convertJsonDateToXml(String value) {
+        if (null != value) {
+            Matcher matcher = PATTERN_JSONDATE.matcher(value);
+
+            if (matcher.matches()) {
+                SimpleDateFormat format = new SimpleDateFormat(FORMAT_DATE_XML);
+                format.setTimeZone(TimeZone.getTimeZone("UTC"));
+                return format.format(new Date(Long.parseLong(matcher.group(1))));
+            }
+        }
+
+        return value;
+    }
+
+    /**
+     * <p>A file is written to a temporary file alongside it and then renamed over it so that a
+     * reader never sees a partially written file.  On some platforms a rename will not replace
+     * an existing file and so the existing file is deleted and the rename is tried again.</p>
+     *
+     * @return false if the temporary file could not be moved into place; it is then deleted.
+     */
+
+    public static boolean moveIntoPlace(File temporaryFile, File file) {
+        if (temporaryFile.renameTo(file) || (file.delete() && temporaryFile.renameTo(file))) {
+            return true;
+        }
+
+        temporaryFile.delete();
+        return false;
+    }
 
 }
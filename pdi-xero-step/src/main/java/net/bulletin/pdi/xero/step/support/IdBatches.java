@@ -0,0 +1,139 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.bulletin.pdi.xero.step.support;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>When fetching by id, the ids from the input rows are gathered here into batches that are
+ * each fetched with a single request.  The input rows are keyed by the lower-case id so that each
+ * record that comes back from Xero can be joined to the rows that asked for it, whatever the case
+ * of the id.  An id that appears in more than one input row is only put into a batch once.</p>
+ *
+ * <p>Each id is marked as resolved once Xero has returned its record or its batch has failed so
+ * that the input rows for ids that Xero did not return can be found at the end.</p>
+ *
+ * @author Andrew Lindesay
+ */
+
+public class IdBatches {
+
+    private final int batchSize;
+
+    private final Map<String, List<Object[]>> rows = new LinkedHashMap<String, List<Object[]>>();
+
+    private final List<List<String>> batches = new ArrayList<List<String>>();
+
+    private final Set<String> resolvedKeys = new HashSet<String>();
+
+    public IdBatches(int batchSize) {
+
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("the batch size must be at least one");
+        }
+
+        this.batchSize = batchSize;
+    }
+
+    public void add(String id, Object[] row) {
+
+        if (StringUtils.isBlank(id)) {
+            throw new IllegalArgumentException("the id is required");
+        }
+
+        String key = id.toLowerCase();
+        List<Object[]> idRows = rows.get(key);
+
+        if (null == idRows) {
+            idRows = new ArrayList<Object[]>();
+            rows.put(key, idRows);
+
+            List<String> batch = batches.isEmpty() ? null : batches.get(batches.size() - 1);
+
+            if (null == batch || batch.size() == batchSize) {
+                batch = new ArrayList<String>(batchSize);
+                batches.add(batch);
+            }
+
+            batch.add(id);
+        }
+
+        idRows.add(row);
+    }
+
+    public int getBatchCount() {
+        return batches.size();
+    }
+
+    public List<String> getBatch(int batchIndex) {
+        return Collections.unmodifiableList(batches.get(batchIndex));
+    }
+
+    /**
+     * @return the input rows that asked for the supplied id; there may be none.
+     */
+
+    public List<Object[]> getRows(String id) {
+        List<Object[]> result = null == id ? null : rows.get(id.toLowerCase());
+        return null == result ? Collections.<Object[]>emptyList() : result;
+    }
+
+    public void markResolved(String id) {
+        if (null != id) {
+            resolvedKeys.add(id.toLowerCase());
+        }
+    }
+
+    /**
+     * @return the input rows for the ids that have not been marked as resolved in the order in
+     * which the ids were first supplied.
+     */
+
+    public List<Object[]> getUnresolvedRows() {
+        List<Object[]> result = new ArrayList<Object[]>();
+
+        for (Map.Entry<String, List<Object[]>> entry : rows.entrySet()) {
+            if (!resolvedKeys.contains(entry.getKey())) {
+                result.addAll(entry.getValue());
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @return the supplied URL with the ids of the batch added as a comma-separated list in the
+     * query parameter.
+     */
+
+    public String createBatchUrl(String url, String parameter, int batchIndex) {
+        return Helpers.appendUrlQuery(
+                new StringBuilder(url),
+                parameter,
+                StringUtils.join(batches.get(batchIndex), ',')).toString();
+    }
+
+}
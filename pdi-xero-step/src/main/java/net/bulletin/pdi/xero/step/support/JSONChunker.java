@@ -0,0 +1,573 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.bulletin.pdi.xero.step.support;
+
+import org.apache.commons.lang.CharEncoding;
+import org.pentaho.di.core.exception.KettleException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * <p>This chunker reads a JSON response from Xero and breaks it up into records in the same way
+ * as the XML chunkers break up XML into chunks.  The container path is a path of object keys from
+ * the root of the document to an array; for example "Invoices".  Each item in the array is a
+ * record.  If the value at the path is not an array then it is a single record.</p>
+ *
+ * <p>The text of each record is copied exactly from the input and is carried by the
+ * {@link XMLChunk} in place of the XML.  The fields are extracted with an
+ * {@link XMLChunkFieldExtractor} by treating each object key as an element; arrays are
+ * transparent and so "Addresses/City" is the "City" of the first address.  A JSON null is the
+ * same as a missing field.</p>
+ *
+ * <p>The JSON is read with a small hand-written tokenizer so that no JSON library is required and
+ * so that the whole of the response is never held in memory.</p>
+ *
+ * @author Andrew Lindesay
+ */
+
+public class JSONChunker extends AbstractXMLChunker {
+
+    private final static Charset CHARSET_UTF8 = Charset.forName(CharEncoding.UTF_8);
+
+    private final static int SIZE_INPUT_BUFFER = 16 * 1024;
+
+    private final static String[] NO_FIELD_VALUES = new String[0];
+
+    private final Reader reader;
+
+    private final ElementPath containerPath;
+
+    private final XMLChunkFieldExtractor fieldExtractor;
+
+    private final boolean jsonIncluded;
+
+    private final char[] input = new char[SIZE_INPUT_BUFFER];
+
+    private int inputPosition = 0;
+
+    private int inputLimit = 0;
+
+    /**
+     * <p>While a record is being read with the JSON included, the characters that are read are
+     * copied into here.</p>
+     */
+
+    private StringBuilder record = null;
+
+    /**
+     * <p>If this is not null then records with JSON larger than its threshold are written to
+     * files rather than being held in memory.</p>
+     */
+
+    private ChunkSpill chunkSpill = null;
+
+    /**
+     * <p>Once the record being read has become too large to hold, the text of the record is
+     * moved out of {@link #record} and into this as it is read.</p>
+     */
+
+    private ChunkSpill.SpillingOutputStream recordSpillOutputStream = null;
+
+    private Writer recordSpillWriter = null;
+
+    private final StringBuilder text = new StringBuilder();
+
+    private boolean positioned = false;
+
+    private boolean lastRecord = false;
+
+    private boolean finished = false;
+
+    /**
+     * @param containerPath is the path of object keys to the array of records.
+     * @param fieldPaths    are paths of object keys relative to each record from which values
+     *                      should be extracted.
+     * @param jsonIncluded  is false if the JSON of each record is not required; only the values
+     *                      of the fields.
+     */
+
+    public JSONChunker(
+            InputStream inputStream,
+            ElementPath containerPath,
+            ElementPath[] fieldPaths,
+            boolean jsonIncluded) {
+
+        if (null == inputStream) {
+            throw new IllegalArgumentException("an input stream is required");
+        }
+
+        if (null == containerPath) {
+            throw new IllegalArgumentException("a container path is required");
+        }
+
+        this.reader = new InputStreamReader(inputStream, CHARSET_UTF8);
+        this.containerPath = containerPath;
+        this.fieldExtractor = null == fieldPaths || 0 == fieldPaths.length ? null : new XMLChunkFieldExtractor(fieldPaths);
+        this.jsonIncluded = jsonIncluded;
+    }
+
+    /**
+     * <p>Records with JSON larger than the threshold of the supplied spill are written to files
+     * rather than being held in memory.</p>
+     */
+
+    public void setChunkSpill(ChunkSpill chunkSpill) {
+        this.chunkSpill = chunkSpill;
+    }
+
+    // ------------------------------------------------------
+    // INPUT
+
+    private boolean fill() throws IOException {
+        inputPosition = 0;
+        inputLimit = 0;
+
+        while (0 == inputLimit) {
+            int read = reader.read(input, 0, input.length);
+
+            if (-1 == read) {
+                return false;
+            }
+
+            inputLimit = read;
+        }
+
+        return true;
+    }
+
+    private int peek() throws IOException {
+        if (inputPosition == inputLimit && !fill()) {
+            return -1;
+        }
+
+        return input[inputPosition];
+    }
+
+    private int read() throws IOException {
+        if (inputPosition == inputLimit && !fill()) {
+            return -1;
+        }
+
+        char c = input[inputPosition++];
+
+        if (null != record) {
+            record.append(c);
+
+            if (null != chunkSpill && record.length() > chunkSpill.getThresholdBytes()) {
+                spillRecord();
+            }
+        }
+
+        return c;
+    }
+
+    private void spillRecord() throws IOException {
+        if (null == recordSpillWriter) {
+            recordSpillOutputStream = chunkSpill.createOutputStream();
+            recordSpillWriter = new OutputStreamWriter(recordSpillOutputStream, CHARSET_UTF8);
+        }
+
+        recordSpillWriter.append(record);
+        record.setLength(0);
+    }
+
+    private void abandonRecordSpill() {
+        if (null != recordSpillOutputStream) {
+            recordSpillOutputStream.abandon();
+            recordSpillOutputStream = null;
+            recordSpillWriter = null;
+        }
+    }
+
+    private static boolean isWhitespace(int c) {
+        return ' ' == c || '\n' == c || '\r' == c || '\t' == c;
+    }
+
+    private int peekAfterWhitespace() throws IOException {
+        int c;
+
+        while (isWhitespace(c = peek())) {
+            read();
+        }
+
+        return c;
+    }
+
+    private int readAfterWhitespace() throws IOException {
+        peekAfterWhitespace();
+        return read();
+    }
+
+    private void expect(char expected) throws IOException, KettleException {
+        int c = readAfterWhitespace();
+
+        if (expected != c) {
+            throw createUnexpectedException(c, "'" + expected + "'");
+        }
+    }
+
+    private KettleException createUnexpectedException(int c, String expected) {
+        if (-1 == c) {
+            return new KettleException("the xero json stream ended unexpectedly; expected " + expected);
+        }
+
+        return new KettleException("malformed xero json stream; found '" + (char) c + "' but expected " + expected);
+    }
+
+    // ------------------------------------------------------
+    // VALUES
+
+    /**
+     * <p>The opening quote has already been read.</p>
+     *
+     * @param decoded is true if the decoded value of the string is required in {@link #text}.
+     */
+
+    private void readString(boolean decoded) throws IOException, KettleException {
+        text.setLength(0);
+
+        while (true) {
+            int c = read();
+
+            switch (c) {
+                case -1:
+                    throw createUnexpectedException(c, "'\"'");
+
+                case '"':
+                    return;
+
+                case '\\':
+                    c = read();
+
+                    switch (c) {
+                        case 'u':
+                            int codeUnit = 0;
+
+                            for (int i = 0; i < 4; i++) {
+                                int digit = Character.digit(read(), 16);
+
+                                if (-1 == digit) {
+                                    throw new KettleException("malformed unicode escape in the xero json stream");
+                                }
+
+                                codeUnit = (codeUnit << 4) | digit;
+                            }
+
+                            c = codeUnit;
+                            break;
+                        case 'b':
+                            c = '\b';
+                            break;
+                        case 'f':
+                            c = '\f';
+                            break;
+                        case 'n':
+                            c = '\n';
+                            break;
+                        case 'r':
+                            c = '\r';
+                            break;
+                        case 't':
+                            c = '\t';
+                            break;
+                        case '"':
+                        case '\\':
+                        case '/':
+                            break;
+                        default:
+                            throw createUnexpectedException(c, "an escape");
+                    }
+
+                    if (decoded) {
+                        text.append((char) c);
+                    }
+                    break;
+
+                default:
+                    if (decoded) {
+                        text.append((char) c);
+                    }
+                    break;
+            }
+        }
+    }
+
+    private static boolean isLiteral(int c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || '-' == c || '+' == c || '.' == c;
+    }
+
+    /**
+     * <p>Reads a number, true, false or null into {@link #text}.</p>
+     */
+
+    private void readLiteral() throws IOException, KettleException {
+        text.setLength(0);
+
+        while (isLiteral(peek())) {
+            text.append((char) read());
+        }
+
+        if (0 == text.length()) {
+            throw createUnexpectedException(peek(), "a value");
+        }
+    }
+
+    private static boolean isNull(CharSequence literal) {
+        return 4 == literal.length() && "null".contentEquals(literal);
+    }
+
+    /**
+     * @param extracting is true if the keys and values should be fed into the field extractor.
+     */
+
+    private void readValue(boolean extracting) throws IOException, KettleException {
+        int c = peekAfterWhitespace();
+
+        switch (c) {
+            case '{':
+                read();
+
+                if ('}' == peekAfterWhitespace()) {
+                    read();
+                    return;
+                }
+
+                do {
+                    expect('"');
+                    readString(extracting);
+                    expect(':');
+
+                    // a null value is treated in the same way as a missing key.
+
+                    boolean keyExtracting = extracting && 'n' != peekAfterWhitespace();
+
+                    if (keyExtracting) {
+                        fieldExtractor.startElement(text.toString());
+                    }
+
+                    readValue(keyExtracting);
+
+                    if (keyExtracting) {
+                        fieldExtractor.endElement();
+                    }
+
+                    c = readAfterWhitespace();
+                } while (',' == c);
+
+                if ('}' != c) {
+                    throw createUnexpectedException(c, "',' or '}'");
+                }
+                break;
+
+            case '[':
+                read();
+
+                if (']' == peekAfterWhitespace()) {
+                    read();
+                    return;
+                }
+
+                do {
+                    readValue(extracting);
+                    c = readAfterWhitespace();
+                } while (',' == c);
+
+                if (']' != c) {
+                    throw createUnexpectedException(c, "',' or ']'");
+                }
+                break;
+
+            case '"':
+                read();
+                extracting = extracting && fieldExtractor.isCapturing();
+                readString(extracting);
+
+                if (extracting) {
+                    fieldExtractor.characters(text.toString());
+                }
+                break;
+
+            default:
+                readLiteral();
+
+                if (extracting && !isNull(text)) {
+                    fieldExtractor.characters(text.toString());
+                }
+                break;
+        }
+    }
+
+    // ------------------------------------------------------
+    // NAVIGATION
+
+    /**
+     * <p>Reads through the document to the value at the container path.</p>
+     *
+     * @return false if there is no value at the container path.
+     */
+
+    private boolean position() throws IOException, KettleException {
+        for (int depth = 0; depth < containerPath.size(); depth++) {
+            if ('{' != peekAfterWhitespace()) {
+                return false;
+            }
+
+            read();
+            boolean found = false;
+
+            if ('}' == peekAfterWhitespace()) {
+                return false;
+            }
+
+            while (!found) {
+                expect('"');
+                readString(true);
+                expect(':');
+
+                if (containerPath.matches(depth, text.toString())) {
+                    found = true;
+                } else {
+                    readValue(false);
+                    int c = readAfterWhitespace();
+
+                    if ('}' == c) {
+                        return false;
+                    }
+
+                    if (',' != c) {
+                        throw createUnexpectedException(c, "',' or '}'");
+                    }
+                }
+            }
+        }
+
+        if ('[' == peekAfterWhitespace()) {
+            read();
+
+            if (']' == peekAfterWhitespace()) {
+                read();
+                return false;
+            }
+        } else {
+            lastRecord = true;
+        }
+
+        return true;
+    }
+
+    /**
+     * <p>The remainder of the document is read so that the underlying connection is able to be
+     * re-used.</p>
+     */
+
+    private void finish() throws IOException {
+        finished = true;
+
+        while (-1 != peek()) {
+            inputPosition = inputLimit;
+        }
+    }
+
+    @Override
+    public XMLChunk pullNextChunk() throws KettleException {
+        if (finished) {
+            return null;
+        }
+
+        try {
+            if (!positioned) {
+                positioned = true;
+
+                if (!position()) {
+                    finish();
+                    return null;
+                }
+            } else if (lastRecord) {
+                finish();
+                return null;
+            }
+
+            if (-1 == peekAfterWhitespace()) {
+                throw createUnexpectedException(-1, "a record");
+            }
+
+            StringBuilder json = jsonIncluded ? new StringBuilder() : null;
+            record = json;
+
+            if (null != fieldExtractor) {
+                fieldExtractor.reset();
+            }
+
+            try {
+                readValue(null != fieldExtractor);
+            } catch (IOException ioe) {
+                abandonRecordSpill();
+                throw ioe;
+            } catch (KettleException ke) {
+                abandonRecordSpill();
+                throw ke;
+            } finally {
+                record = null;
+            }
+
+            String[] fieldValues = null == fieldExtractor ? NO_FIELD_VALUES : fieldExtractor.getValues();
+            XMLChunk result;
+
+            if (null != recordSpillWriter) {
+                recordSpillWriter.append(json);
+                recordSpillWriter.close();
+                result = XMLChunk.fromSpillFile(recordSpillOutputStream.getFile(), fieldValues);
+                recordSpillOutputStream = null;
+                recordSpillWriter = null;
+            } else {
+                result = new XMLChunk(null == json ? null : json.toString(), fieldValues);
+            }
+
+            if (!lastRecord) {
+                int c = readAfterWhitespace();
+
+                if (']' == c) {
+                    lastRecord = true;
+                } else if (',' != c) {
+                    throw createUnexpectedException(c, "',' or ']'");
+                }
+            }
+
+            return result;
+        } catch (IOException ioe) {
+            throw new KettleException("a problem has arisen reading the xero json stream", ioe);
+        }
+    }
+
+    @Override
+    public void close() throws KettleException {
+        abandonRecordSpill();
+
+        try {
+            reader.close();
+        } catch (IOException ioe) {
+            throw new KettleException("unable to close the underlying xero stream", ioe);
+        }
+    }
+
+}
@@ -0,0 +1,126 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.bulletin.pdi.xero.step.support;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>This hands out the page numbers to fetch from Xero.  When a number of copies of the step
+ * are running, they share one coordinator so that each page is claimed by only one copy and the
+ * work is divided between the copies.  Once any copy finds a page with fewer chunks than the
+ * page size, no pages after it are handed out.</p>
+ *
+ * <p>The shared instances are reference counted and are identified by an owner, such as the
+ * running transformation, which is compared by identity together with a name, such as the name
+ * of the step.</p>
+ *
+ * @author Andrew Lindesay
+ */
+
+public class PageCoordinator {
+
+    private final static Map<Key, PageCoordinator> INSTANCES = new HashMap<Key, PageCoordinator>();
+
+    private int references = 0;
+
+    private int nextPage = 1;
+
+    private int lastPage = Integer.MAX_VALUE;
+
+    /**
+     * <p>Each call to this method should be matched by a call to
+     * {@link #release(Object, String)}.</p>
+     */
+
+    public static PageCoordinator acquire(Object owner, String name) {
+        Key key = new Key(owner, name);
+
+        synchronized (INSTANCES) {
+            PageCoordinator result = INSTANCES.get(key);
+
+            if (null == result) {
+                result = new PageCoordinator();
+                INSTANCES.put(key, result);
+            }
+
+            result.references++;
+            return result;
+        }
+    }
+
+    public static void release(Object owner, String name) {
+        Key key = new Key(owner, name);
+
+        synchronized (INSTANCES) {
+            PageCoordinator coordinator = INSTANCES.get(key);
+
+            if (null != coordinator && 0 == --coordinator.references) {
+                INSTANCES.remove(key);
+            }
+        }
+    }
+
+    /**
+     * @return the next page to fetch or -1 if there are no more pages.
+     */
+
+    public synchronized int claimPage() {
+        if (nextPage > lastPage) {
+            return -1;
+        }
+
+        return nextPage++;
+    }
+
+    /**
+     * <p>This should be invoked when a page is found with fewer chunks than the page size.</p>
+     */
+
+    public synchronized void markLastPage(int page) {
+        lastPage = Math.min(lastPage, page);
+    }
+
+    private static class Key {
+
+        private final Object owner;
+
+        private final String name;
+
+        Key(Object owner, String name) {
+
+            if (null == owner) {
+                throw new IllegalArgumentException("the owner is required");
+            }
+
+            this.owner = owner;
+            this.name = null == name ? "" : name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o || (o instanceof Key && owner == ((Key) o).owner && name.equals(((Key) o).name));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(owner) + name.hashCode();
+        }
+
+    }
+
+}
@@ -0,0 +1,232 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.bulletin.pdi.xero.step.support;
+
+import org.pentaho.di.core.exception.KettleException;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>This chunker walks through the pages of a Xero endpoint that supports the "page" query
+ * parameter.  A number of pages are fetched concurrently, but the chunks are returned in page
+ * order so that the stream is the same as if the pages were fetched one after the other.  The
+ * paging stops once a page is found that has fewer chunks in it than the page size.</p>
+ *
+ * <p>Each page is drained fully into memory by the worker that fetched it; a Xero page is of
+ * a limited size and so this is not a concern.  At most "concurrency" pages are held or
+ * in-flight at any one time.</p>
+ *
+ * <p>The pages are claimed from a {@link PageCoordinator}.  If the coordinator is shared by a
+ * number of chunkers then each chunker will only fetch the pages that it has claimed.</p>
+ *
+ * @author Andrew Lindesay
+ */
+
+public class PagingXMLChunker extends AbstractXMLChunker {
+
+    private final XMLChunkerPageProvider pageProvider;
+
+    private final int pageSize;
+
+    private final int concurrency;
+
+    private final ExecutorService executorService;
+
+    private final PageCoordinator pageCoordinator;
+
+    private final LinkedList<Future<List<XMLChunk>>> inFlightPages = new LinkedList<Future<List<XMLChunk>>>();
+
+    /**
+     * <p>These are the numbers of the pages in {@link #inFlightPages}.</p>
+     */
+
+    private final LinkedList<Integer> inFlightPageNumbers = new LinkedList<Integer>();
+
+    private boolean exhausted = false;
+
+    private Iterator<XMLChunk> currentPageIterator = null;
+
+    public PagingXMLChunker(XMLChunkerPageProvider pageProvider, int pageSize, int concurrency) {
+        this(pageProvider, pageSize, concurrency, new PageCoordinator());
+    }
+
+    public PagingXMLChunker(
+            XMLChunkerPageProvider pageProvider,
+            int pageSize,
+            int concurrency,
+            PageCoordinator pageCoordinator) {
+
+        if (null == pageProvider) {
+            throw new IllegalArgumentException("a page provider is required");
+        }
+
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("the page size must be at least one");
+        }
+
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("the concurrency must be at least one");
+        }
+
+        if (null == pageCoordinator) {
+            throw new IllegalArgumentException("a page coordinator is required");
+        }
+
+        this.pageProvider = pageProvider;
+        this.pageCoordinator = pageCoordinator;
+        this.pageSize = pageSize;
+        this.concurrency = concurrency;
+        this.executorService = Executors.newFixedThreadPool(concurrency, new PageThreadFactory());
+    }
+
+    private void submitPages() {
+        while (!exhausted && inFlightPages.size() < concurrency) {
+            final int page = pageCoordinator.claimPage();
+
+            if (-1 == page) {
+                exhausted = true;
+                return;
+            }
+
+            inFlightPageNumbers.add(page);
+
+            inFlightPages.add(executorService.submit(new Callable<List<XMLChunk>>() {
+                @Override
+                public List<XMLChunk> call() throws Exception {
+                    return pullAllXmlChunksFromPage(page);
+                }
+            }));
+        }
+    }
+
+    private List<XMLChunk> pullAllXmlChunksFromPage(int page) throws KettleException {
+        List<XMLChunk> result = new ArrayList<XMLChunk>(pageSize);
+        XMLChunker xmlChunker = pageProvider.openPage(page);
+
+        try {
+            XMLChunk chunk;
+
+            while (null != (chunk = xmlChunker.pullNextChunk())) {
+                result.add(chunk);
+            }
+        } finally {
+            xmlChunker.close();
+        }
+
+        return result;
+    }
+
+    private void cancelInFlightPages() {
+        for (Future<List<XMLChunk>> future : inFlightPages) {
+            future.cancel(true);
+        }
+
+        inFlightPages.clear();
+        inFlightPageNumbers.clear();
+    }
+
+    private List<XMLChunk> awaitNextPage() throws KettleException {
+        Future<List<XMLChunk>> future = inFlightPages.removeFirst();
+        inFlightPageNumbers.removeFirst();
+
+        try {
+            return future.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new KettleException("interrupted while waiting for a page from xero", ie);
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+
+            if (cause instanceof KettleException) {
+                throw (KettleException) cause;
+            }
+
+            throw new KettleException("unable to fetch a page from xero", cause);
+        }
+    }
+
+    @Override
+    public XMLChunk pullNextChunk() throws KettleException {
+
+        while (true) {
+
+            if (null != currentPageIterator && currentPageIterator.hasNext()) {
+                return currentPageIterator.next();
+            }
+
+            currentPageIterator = null;
+            submitPages();
+
+            if (inFlightPages.isEmpty()) {
+                return null;
+            }
+
+            int pageNumber = inFlightPageNumbers.getFirst();
+            List<XMLChunk> page = awaitNextPage();
+
+            // a short page means that there are no more pages after this one; any pages that
+            // were speculatively requested beyond it are of no interest.  Only the records count
+            // towards the size of the page and not the child records that were split out of them.
+
+            if (countRecords(page) < pageSize) {
+                pageCoordinator.markLastPage(pageNumber);
+                exhausted = true;
+                cancelInFlightPages();
+            }
+
+            currentPageIterator = page.iterator();
+        }
+    }
+
+    private static int countRecords(List<XMLChunk> page) {
+        int result = 0;
+
+        for (XMLChunk chunk : page) {
+            if (0 == chunk.getContainerIndex()) {
+                result++;
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public void close() throws KettleException {
+        exhausted = true;
+        cancelInFlightPages();
+        executorService.shutdownNow();
+    }
+
+    private static class PageThreadFactory implements ThreadFactory {
+
+        private final static AtomicInteger COUNTER = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "xero-page-" + COUNTER.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+
+    }
+
+}
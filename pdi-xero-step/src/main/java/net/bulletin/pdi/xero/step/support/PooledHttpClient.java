@@ -0,0 +1,377 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.bulletin.pdi.xero.step.support;
+
+import net.oauth.OAuth;
+import net.oauth.http.HttpClient;
+import net.oauth.http.HttpMessage;
+import net.oauth.http.HttpResponseMessage;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.DeflateInputStream;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * <p>This is an {@link HttpClient} for the OAuth library that keeps a pool of keep-alive
+ * connections so that a request to Xero can re-use the connection, and so avoid the TCP and TLS
+ * handshake, of an earlier request.  There is one pool in the JVM for each combination of pool
+ * size and idle eviction that is shared by pages, tenants, step copies and transformations.  Connections that have been idle for a while are
+ * evicted from the pool on a background thread.</p>
+ *
+ * <p>Unless the request says otherwise, a gzip or deflate compressed response is asked for and it
+ * is decompressed as it is read so that the whole of the response is never held in memory.  If
+ * {@link XeroRequestCounters} are supplied as the {@link #REQUEST_COUNTERS} parameter then the
+ * bytes that came over the network are counted.</p>
+ *
+ * @author Andrew Lindesay
+ */
+
+public class PooledHttpClient implements HttpClient {
+
+    public final static String REQUEST_COUNTERS = "requestCounters";
+
+    private final static String ENCODING_GZIP = "gzip";
+
+    private final static String ENCODING_DEFLATE = "deflate";
+
+    private final static Map<String, PooledHttpClient> INSTANCES = new HashMap<String, PooledHttpClient>();
+
+    private final CloseableHttpClient httpClient;
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+
+    public PooledHttpClient(int poolSize, long idleEvictionSeconds) {
+
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("the pool size must be at least one");
+        }
+
+        if (idleEvictionSeconds < 1) {
+            throw new IllegalArgumentException("the idle eviction must be at least one second");
+        }
+
+        connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(poolSize);
+        connectionManager.setDefaultMaxPerRoute(poolSize);
+
+        httpClient = HttpClientBuilder.create()
+                .setConnectionManager(connectionManager)
+                .evictExpiredConnections()
+                .evictIdleConnections(idleEvictionSeconds, TimeUnit.SECONDS)
+                .disableCookieManagement()
+                .disableContentCompression()
+                .build();
+    }
+
+    /**
+     * <p>Callers that ask for the same pool size and idle eviction share a pool.  A caller that
+     * asks for different settings has a pool of its own rather than silently being given a pool
+     * with the settings of whoever came first.</p>
+     */
+
+    public static synchronized PooledHttpClient getInstance(int poolSize, long idleEvictionSeconds) {
+        String key = poolSize + "/" + idleEvictionSeconds;
+        PooledHttpClient result = INSTANCES.get(key);
+
+        if (null == result) {
+            result = new PooledHttpClient(poolSize, idleEvictionSeconds);
+            INSTANCES.put(key, result);
+        }
+
+        return result;
+    }
+
+    public int getLeasedConnections() {
+        return connectionManager.getTotalStats().getLeased();
+    }
+
+    public int getAvailableConnections() {
+        return connectionManager.getTotalStats().getAvailable();
+    }
+
+    private RequestConfig createRequestConfig(Map<String, Object> parameters) {
+        RequestConfig.Builder builder = RequestConfig.custom();
+
+        for (Map.Entry<String, Object> parameter : parameters.entrySet()) {
+            if (REQUEST_COUNTERS.equals(parameter.getKey())) {
+                continue;
+            }
+
+            String value = parameter.getValue().toString();
+
+            if (FOLLOW_REDIRECTS.equals(parameter.getKey())) {
+                builder.setRedirectsEnabled(Boolean.parseBoolean(value));
+            } else if (CONNECT_TIMEOUT.equals(parameter.getKey())) {
+                builder.setConnectTimeout(Integer.parseInt(value));
+            } else if (READ_TIMEOUT.equals(parameter.getKey())) {
+                builder.setSocketTimeout(Integer.parseInt(value));
+            }
+        }
+
+        return builder.build();
+    }
+
+    @Override
+    public HttpResponseMessage execute(HttpMessage request, Map<String, Object> parameters) throws IOException {
+        RequestBuilder requestBuilder = RequestBuilder.create(request.method)
+                .setUri(request.url.toExternalForm())
+                .setConfig(createRequestConfig(parameters));
+        String contentLength = null;
+
+        for (Map.Entry<String, String> header : request.headers) {
+            if (HttpMessage.CONTENT_LENGTH.equalsIgnoreCase(header.getKey())) {
+                contentLength = header.getValue();
+            } else {
+                requestBuilder.addHeader(header.getKey(), header.getValue());
+            }
+        }
+
+        if (null == request.getHeader(HttpHeaders.ACCEPT_ENCODING)) {
+            requestBuilder.addHeader(HttpHeaders.ACCEPT_ENCODING, ENCODING_GZIP + ", " + ENCODING_DEFLATE);
+        }
+
+        InputStream body = request.getBody();
+
+        if (null != body) {
+            requestBuilder.setEntity(new InputStreamEntity(
+                    body,
+                    null == contentLength ? -1 : Long.parseLong(contentLength)));
+        }
+
+        Object requestCounters = parameters.get(REQUEST_COUNTERS);
+
+        return new PooledHttpResponse(
+                request,
+                httpClient.execute(requestBuilder.build()),
+                requestCounters instanceof XeroRequestCounters ? (XeroRequestCounters) requestCounters : null);
+    }
+
+    /**
+     * @return the content encoding that is able to be decoded or null if the response is not
+     * encoded or is encoded in some other way.
+     */
+
+    private static String getContentEncoding(CloseableHttpResponse response) {
+        Header header = response.getFirstHeader(HttpHeaders.CONTENT_ENCODING);
+
+        if (null != header) {
+            String value = header.getValue().trim();
+
+            if (ENCODING_GZIP.equalsIgnoreCase(value) || ("x-" + ENCODING_GZIP).equalsIgnoreCase(value)) {
+                return ENCODING_GZIP;
+            }
+
+            if (ENCODING_DEFLATE.equalsIgnoreCase(value)) {
+                return ENCODING_DEFLATE;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * <p>If the body is decoded here then the headers that describe the encoded body are not
+     * passed on.</p>
+     */
+
+    private static class PooledHttpResponse extends HttpResponseMessage {
+
+        private final CloseableHttpResponse response;
+
+        private final String contentEncoding;
+
+        private final XeroRequestCounters requestCounters;
+
+        PooledHttpResponse(HttpMessage request, CloseableHttpResponse response, XeroRequestCounters requestCounters) {
+            super(request.method, request.url);
+            this.response = response;
+            this.contentEncoding = getContentEncoding(response);
+            this.requestCounters = requestCounters;
+
+            for (Header header : response.getAllHeaders()) {
+                if (null == contentEncoding
+                        || (!HttpHeaders.CONTENT_ENCODING.equalsIgnoreCase(header.getName())
+                        && !HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(header.getName()))) {
+                    headers.add(new OAuth.Parameter(header.getName(), header.getValue()));
+                }
+            }
+        }
+
+        @Override
+        public int getStatusCode() {
+            return response.getStatusLine().getStatusCode();
+        }
+
+        @Override
+        protected InputStream openBody() throws IOException {
+            if (null == response.getEntity()) {
+                response.close();
+                return null;
+            }
+
+            InputStream result = response.getEntity().getContent();
+
+            if (null != requestCounters) {
+                result = requestCounters.countEncodedBytes(result);
+            }
+
+            PooledBodyInputStream body = new PooledBodyInputStream(result, response);
+
+            try {
+                if (ENCODING_GZIP.equals(contentEncoding)) {
+                    return new DecodedBodyInputStream(new GZIPInputStream(body), body);
+                }
+
+                if (ENCODING_DEFLATE.equals(contentEncoding)) {
+                    return new DecodedBodyInputStream(new DeflateInputStream(body), body);
+                }
+            } catch (IOException ioe) {
+                body.close();
+                throw ioe;
+            }
+
+            return body;
+        }
+
+        @Override
+        public void dump(Map<String, Object> into) throws IOException {
+            super.dump(into);
+            StringBuilder result = new StringBuilder();
+            result.append("HTTP ").append(getStatusCode());
+
+            if (null != response.getStatusLine().getReasonPhrase()) {
+                result.append(' ').append(response.getStatusLine().getReasonPhrase());
+            }
+
+            result.append(EOL);
+
+            for (Header header : response.getAllHeaders()) {
+                result.append(header.getName()).append(": ").append(header.getValue()).append(EOL);
+            }
+
+            into.put(RESPONSE, result.toString());
+        }
+
+    }
+
+    /**
+     * <p>Once a body has been read to the end, closing it returns the connection to the pool.  If
+     * the body is closed before it has been read to the end then the connection is discarded;
+     * this avoids reading the remainder of what may be a very large response only in order to
+     * re-use the connection.</p>
+     */
+
+    private static class PooledBodyInputStream extends FilterInputStream {
+
+        private final CloseableHttpResponse response;
+
+        private boolean ended = false;
+
+        PooledBodyInputStream(InputStream in, CloseableHttpResponse response) {
+            super(in);
+            this.response = response;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int result = super.read();
+            ended |= -1 == result;
+            return result;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int result = super.read(b, off, len);
+            ended |= -1 == result;
+            return result;
+        }
+
+        /**
+         * <p>A decoder may stop reading at the end of the compressed data without having seen
+         * the end of the body.  Anything that remains is read so that the connection is able to
+         * be re-used.</p>
+         */
+
+        void drain() throws IOException {
+            byte[] buffer = new byte[256];
+
+            for (int i = 0; i < 32 && !ended; i++) {
+                read(buffer, 0, buffer.length);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (ended) {
+                    super.close();
+                }
+            } finally {
+                response.close();
+            }
+        }
+
+    }
+
+    private static class DecodedBodyInputStream extends FilterInputStream {
+
+        private final PooledBodyInputStream body;
+
+        DecodedBodyInputStream(InputStream in, PooledBodyInputStream body) {
+            super(in);
+            this.body = body;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int result = super.read();
+
+            if (-1 == result) {
+                body.drain();
+            }
+
+            return result;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int result = super.read(b, off, len);
+
+            if (-1 == result) {
+                body.drain();
+            }
+
+            return result;
+        }
+
+    }
+
+}
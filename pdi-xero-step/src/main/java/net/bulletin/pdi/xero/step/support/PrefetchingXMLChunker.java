@@ -0,0 +1,274 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.bulletin.pdi.xero.step.support;
+
+import org.pentaho.di.core.exception.KettleException;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>This chunker wraps another chunker and pulls the chunks from it on a background thread into
+ * a bounded queue.  This means that reading from the network and parsing the XML is able to
+ * carry on while the step's thread is busy passing rows downstream.  The step's thread only has
+ * to take chunks off the queue.</p>
+ *
+ * <p>The time that the consumer spends waiting on an empty queue and the time that the producer
+ * spends waiting on a full queue are recorded.  If the consumer is stalling then the network or
+ * the parsing is the bottleneck.  If the producer is stalling then the downstream steps are the
+ * bottleneck.</p>
+ *
+ * <p>Once the producer has started, the delegate is only ever used on the producer's thread and it
+ * is the producer that closes the delegate when it stops.  Chunks that are discarded because the
+ * chunker was closed early have their spill files deleted.</p>
+ *
+ * @author Andrew Lindesay
+ */
+
+public class PrefetchingXMLChunker extends AbstractXMLChunker {
+
+    private final static Object END = new Object();
+
+    private final static AtomicInteger COUNTER = new AtomicInteger(1);
+
+    private final XMLChunker delegate;
+
+    private final BlockingQueue<Object> queue;
+
+    private final AtomicLong consumerStallNanos = new AtomicLong(0);
+
+    private final AtomicLong producerStallNanos = new AtomicLong(0);
+
+    private volatile boolean closed = false;
+
+    private Thread producerThread = null;
+
+    private boolean finished = false;
+
+    public PrefetchingXMLChunker(XMLChunker delegate, int queueDepth) {
+
+        if (null == delegate) {
+            throw new IllegalArgumentException("the delegate chunker is required");
+        }
+
+        if (queueDepth < 1) {
+            throw new IllegalArgumentException("the queue depth must be at least one");
+        }
+
+        this.delegate = delegate;
+        this.queue = new ArrayBlockingQueue<Object>(queueDepth);
+    }
+
+    public int getQueueDepth() {
+        return queue.size() + queue.remainingCapacity();
+    }
+
+    public int getQueueOccupancy() {
+        return queue.size();
+    }
+
+    /**
+     * <p>The time that the step's thread has spent waiting for the producer to supply a chunk.</p>
+     */
+
+    public long getConsumerStallMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(consumerStallNanos.get());
+    }
+
+    /**
+     * <p>The time that the producer has spent waiting for the step's thread to make space in the
+     * queue.</p>
+     */
+
+    public long getProducerStallMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(producerStallNanos.get());
+    }
+
+    private void startProducer() {
+        producerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                produce();
+            }
+        }, "xero-prefetch-" + COUNTER.getAndIncrement());
+
+        producerThread.setDaemon(true);
+        producerThread.start();
+    }
+
+    private void enqueue(Object item) throws InterruptedException {
+        if (!queue.offer(item)) {
+            long start = System.nanoTime();
+            queue.put(item);
+            producerStallNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * <p>If pulling from the delegate fails then that failure is handed over to the consumer
+     * even if closing the delegate afterwards fails as well.</p>
+     */
+
+    private void produce() {
+        Object end = END;
+
+        try {
+            XMLChunk chunk;
+
+            while (!closed && null != (chunk = delegate.pullNextChunk())) {
+                try {
+                    enqueue(chunk);
+                } catch (InterruptedException ie) {
+                    chunk.discard();
+                    throw ie;
+                }
+            }
+        } catch (KettleException ke) {
+            end = new ProducerFailure(ke);
+        } catch (RuntimeException re) {
+            end = new ProducerFailure(new KettleException("unable to prefetch from the xero xml stream", re));
+        } catch (InterruptedException ie) {
+            // the consumer has closed the chunker and so there is nobody to hand over to.
+        }
+
+        try {
+            delegate.close();
+        } catch (KettleException ke) {
+            if (END == end) {
+                end = new ProducerFailure(ke);
+            }
+        } catch (RuntimeException re) {
+            if (END == end) {
+                end = new ProducerFailure(new KettleException("unable to close the prefetched xero xml stream", re));
+            }
+        }
+
+        try {
+            if (!closed) {
+                enqueue(end);
+            }
+        } catch (InterruptedException ie) {
+            // as above.
+        }
+
+        // a chunk may have been put into the queue after the consumer emptied it.
+
+        if (closed) {
+            discardQueue();
+        }
+    }
+
+    private void discardQueue() {
+        Object item;
+
+        while (null != (item = queue.poll())) {
+            if (item instanceof XMLChunk) {
+                ((XMLChunk) item).discard();
+            }
+        }
+    }
+
+    private Object dequeue() throws KettleException {
+        Object item = queue.poll();
+
+        if (null == item) {
+            long start = System.nanoTime();
+
+            try {
+                item = queue.take();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new KettleException("interrupted while waiting for a chunk of the xero xml stream", ie);
+            } finally {
+                consumerStallNanos.addAndGet(System.nanoTime() - start);
+            }
+        }
+
+        return item;
+    }
+
+    @Override
+    public XMLChunk pullNextChunk() throws KettleException {
+        if (finished) {
+            return null;
+        }
+
+        if (null == producerThread) {
+            startProducer();
+        }
+
+        Object item = dequeue();
+
+        if (END == item) {
+            finished = true;
+            return null;
+        }
+
+        if (item instanceof ProducerFailure) {
+            finished = true;
+            throw ((ProducerFailure) item).getKettleException();
+        }
+
+        return (XMLChunk) item;
+    }
+
+    /**
+     * <p>If the producer is waiting on the network then it will only stop, and close the
+     * delegate, once the read returns or times out; it is not waited on for longer than a few
+     * seconds.</p>
+     */
+
+    @Override
+    public void close() throws KettleException {
+        closed = true;
+        finished = true;
+
+        if (null == producerThread) {
+            delegate.close();
+            return;
+        }
+
+        producerThread.interrupt();
+        discardQueue();
+
+        try {
+            producerThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+
+        discardQueue();
+    }
+
+    private static class ProducerFailure {
+
+        private final KettleException kettleException;
+
+        ProducerFailure(KettleException kettleException) {
+            this.kettleException = kettleException;
+        }
+
+        KettleException getKettleException() {
+            return kettleException;
+        }
+
+    }
+
+}
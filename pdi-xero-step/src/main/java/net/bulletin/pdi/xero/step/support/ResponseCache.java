@@ -0,0 +1,455 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.bulletin.pdi.xero.step.support;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.CharEncoding;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * <p>This is an on-disk cache of the bodies of responses from Xero.  Each body is stored gzip
+ * compressed alongside a small file of properties that holds the response's "ETag" and the time
+ * at which it was stored.  A body is only stored once it has been read through to the end so that
+ * a partial response is never cached.  Once the bodies in the directory exceed the maximum size,
+ * the least recently used are deleted.</p>
+ *
+ * <p>Xero treats the "If-Modified-Since" header as a filter on the data rather than as a
+ * validator and so a cached body is only revalidated with the "ETag".</p>
+ *
+ * @author Andrew Lindesay
+ */
+
+public class ResponseCache {
+
+    private final static String SUFFIX_BODY = ".body.gz";
+
+    private final static String SUFFIX_PROPERTIES = ".properties";
+
+    private final static String KEY_ETAG = "etag";
+
+    private final static String KEY_STOREDMILLIS = "stored_millis";
+
+    /**
+     * <p>An XML parser may stop reading just short of the end of the body.  On close, up to this
+     * many remaining bytes are read so that the body is still able to be cached.</p>
+     */
+
+    private final static int DRAIN_LIMIT = 64 * 1024;
+
+    /**
+     * <p>Step copies in the same JVM may use the same directory at once.</p>
+     */
+
+    private final static Object LOCK = new Object();
+
+    private final File directory;
+
+    private final long maxBytes;
+
+    private final AtomicLong hits = new AtomicLong(0);
+
+    private final AtomicLong revalidations = new AtomicLong(0);
+
+    private final AtomicLong stores = new AtomicLong(0);
+
+    public ResponseCache(File directory, long maxBytes) throws IOException {
+
+        if (null == directory) {
+            throw new IllegalArgumentException("the directory is required");
+        }
+
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("the maximum bytes must be at least one");
+        }
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("unable to create the response cache directory; " + directory);
+        }
+
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * <p>A cached body that was used without asking Xero.</p>
+     */
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * <p>A cached body that was used because Xero said that it was not modified.</p>
+     */
+
+    public long getRevalidations() {
+        return revalidations.get();
+    }
+
+    public long getStores() {
+        return stores.get();
+    }
+
+    public void incrementHits() {
+        hits.incrementAndGet();
+    }
+
+    public void incrementRevalidations() {
+        revalidations.incrementAndGet();
+    }
+
+    /**
+     * <p>The key identifies the request; for example the URL with the tenant and the headers
+     * that affect the response.  It is hashed into the name of the cache files.</p>
+     */
+
+    public static String createKey(String... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+
+            for (String part : parts) {
+                digest.update((null == part ? "" : part).getBytes(CharEncoding.UTF_8));
+                digest.update((byte) 0);
+            }
+
+            StringBuilder result = new StringBuilder();
+
+            for (byte b : digest.digest()) {
+                result.append(Character.forDigit((b >> 4) & 0xf, 16));
+                result.append(Character.forDigit(b & 0xf, 16));
+            }
+
+            return result.toString();
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new IllegalStateException("the digest algorithm must be supported", nsae);
+        } catch (UnsupportedEncodingException uee) {
+            throw new IllegalStateException("the encoding must be supported; " + CharEncoding.UTF_8, uee);
+        }
+    }
+
+    private File getBodyFile(String key) {
+        return new File(directory, key + SUFFIX_BODY);
+    }
+
+    private File getPropertiesFile(String key) {
+        return new File(directory, key + SUFFIX_PROPERTIES);
+    }
+
+    /**
+     * @return the cached response or null if there is no cached response for the key.
+     */
+
+    public Entry get(String key) {
+        synchronized (LOCK) {
+            File bodyFile = getBodyFile(key);
+            File propertiesFile = getPropertiesFile(key);
+
+            if (!bodyFile.exists() || !propertiesFile.exists()) {
+                return null;
+            }
+
+            InputStream inputStream = null;
+
+            try {
+                inputStream = new FileInputStream(propertiesFile);
+                Properties properties = new Properties();
+                properties.load(inputStream);
+                return new Entry(
+                        key,
+                        properties.getProperty(KEY_ETAG),
+                        Long.parseLong(properties.getProperty(KEY_STOREDMILLIS, "0")));
+            } catch (IOException ioe) {
+                return null;
+            } catch (NumberFormatException nfe) {
+                return null;
+            } finally {
+                IOUtils.closeQuietly(inputStream);
+            }
+        }
+    }
+
+    /**
+     * <p>Opens the cached body.  The body is marked as recently used so that it is not
+     * evicted.</p>
+     */
+
+    public InputStream openBody(Entry entry) throws IOException {
+        File bodyFile = getBodyFile(entry.getKey());
+
+        if (!bodyFile.setLastModified(System.currentTimeMillis())) {
+            throw new FileNotFoundException("the cached body has been evicted; " + bodyFile);
+        }
+
+        return new GZIPInputStream(new BufferedInputStream(new FileInputStream(bodyFile)));
+    }
+
+    /**
+     * <p>Marks the cached response as having been revalidated now.</p>
+     */
+
+    public void touch(Entry entry) throws IOException {
+        synchronized (LOCK) {
+            writeProperties(entry.getKey(), entry.getEtag());
+        }
+    }
+
+    /**
+     * @return a stream that reads the supplied body and copies it into the cache as it is read.
+     * The body is only put into the cache once the stream has been read to the end.
+     */
+
+    public InputStream store(String key, String etag, InputStream body) throws IOException {
+        File temporaryFile = File.createTempFile(key + "-", ".tmp", directory);
+        return new StoringInputStream(body, key, etag, temporaryFile);
+    }
+
+    private void writeProperties(String key, String etag) throws IOException {
+        Properties properties = new Properties();
+
+        if (null != etag) {
+            properties.setProperty(KEY_ETAG, etag);
+        }
+
+        properties.setProperty(KEY_STOREDMILLIS, Long.toString(System.currentTimeMillis()));
+
+        File temporaryFile = File.createTempFile(key + "-", ".tmp", directory);
+        OutputStream outputStream = new FileOutputStream(temporaryFile);
+
+        try {
+            properties.store(outputStream, null);
+        } finally {
+            outputStream.close();
+        }
+
+        moveIntoPlace(temporaryFile, getPropertiesFile(key));
+    }
+
+    private void moveIntoPlace(File temporaryFile, File file) throws IOException {
+        if (!Helpers.moveIntoPlace(temporaryFile, file)) {
+            throw new IOException("unable to move the cache file into place; " + file);
+        }
+    }
+
+    private void commit(String key, String etag, File temporaryFile) throws IOException {
+        synchronized (LOCK) {
+            moveIntoPlace(temporaryFile, getBodyFile(key));
+            writeProperties(key, etag);
+            stores.incrementAndGet();
+            evict();
+        }
+    }
+
+    /**
+     * <p>Deletes the least recently used bodies until the bodies fit into the maximum size.</p>
+     */
+
+    private void evict() {
+        File[] bodyFiles = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(SUFFIX_BODY);
+            }
+        });
+
+        if (null == bodyFiles) {
+            return;
+        }
+
+        long totalBytes = 0;
+
+        for (File bodyFile : bodyFiles) {
+            totalBytes += bodyFile.length();
+        }
+
+        if (totalBytes <= maxBytes) {
+            return;
+        }
+
+        Arrays.sort(bodyFiles, new Comparator<File>() {
+            @Override
+            public int compare(File o1, File o2) {
+                long lm1 = o1.lastModified();
+                long lm2 = o2.lastModified();
+                return lm1 < lm2 ? -1 : (lm1 == lm2 ? 0 : 1);
+            }
+        });
+
+        for (int i = 0; i < bodyFiles.length && totalBytes > maxBytes; i++) {
+            String name = bodyFiles[i].getName();
+            long length = bodyFiles[i].length();
+
+            if (bodyFiles[i].delete()) {
+                totalBytes -= length;
+                getPropertiesFile(name.substring(0, name.length() - SUFFIX_BODY.length())).delete();
+            }
+        }
+    }
+
+    public static class Entry {
+
+        private final String key;
+
+        private final String etag;
+
+        private final long storedMillis;
+
+        Entry(String key, String etag, long storedMillis) {
+            this.key = key;
+            this.etag = etag;
+            this.storedMillis = storedMillis;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public long getAgeMillis() {
+            return System.currentTimeMillis() - storedMillis;
+        }
+
+    }
+
+    /**
+     * <p>This copies what is read into a compressed temporary file which is moved into the
+     * cache once the end is reached.  If the stream is closed well before the end then the
+     * temporary file is deleted.</p>
+     */
+
+    private class StoringInputStream extends FilterInputStream {
+
+        private final String key;
+
+        private final String etag;
+
+        private final File temporaryFile;
+
+        private OutputStream outputStream;
+
+        StoringInputStream(InputStream in, String key, String etag, File temporaryFile) throws IOException {
+            super(in);
+            this.key = key;
+            this.etag = etag;
+            this.temporaryFile = temporaryFile;
+            this.outputStream = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)));
+        }
+
+        private void abandon() {
+            IOUtils.closeQuietly(outputStream);
+            outputStream = null;
+            temporaryFile.delete();
+        }
+
+        private void handleRead(byte[] b, int off, int result) {
+            if (null != outputStream) {
+                if (-1 == result) {
+                    OutputStream finishedOutputStream = outputStream;
+                    outputStream = null;
+
+                    try {
+                        finishedOutputStream.close();
+                        commit(key, etag, temporaryFile);
+                    } catch (IOException ioe) {
+                        // a failure to write to the cache should not stop the response from being read.
+                        temporaryFile.delete();
+                    }
+                } else {
+                    try {
+                        outputStream.write(b, off, result);
+                    } catch (IOException ioe) {
+                        // a failure to write to the cache should not stop the response from being read.
+                        abandon();
+                    }
+                }
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int result = read(b, 0, 1);
+            return -1 == result ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int result;
+
+            try {
+                result = super.read(b, off, len);
+            } catch (IOException ioe) {
+                abandon();
+                throw ioe;
+            }
+
+            handleRead(b, off, result);
+            return result;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            abandon();
+            return super.skip(n);
+        }
+
+        private void drain() {
+            byte[] buffer = new byte[4096];
+            int remaining = DRAIN_LIMIT;
+
+            try {
+                while (null != outputStream && remaining > 0) {
+                    int read = read(buffer, 0, Math.min(buffer.length, remaining));
+
+                    if (-1 == read) {
+                        return;
+                    }
+
+                    remaining -= read;
+                }
+            } catch (IOException ioe) {
+                // the body will not be cached.
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            drain();
+
+            try {
+                super.close();
+            } finally {
+                if (null != outputStream) {
+                    abandon();
+                }
+            }
+        }
+
+    }
+
+}
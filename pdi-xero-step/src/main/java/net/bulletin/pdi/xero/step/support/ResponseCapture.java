@@ -0,0 +1,296 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.bulletin.pdi.xero.step.support;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * <p>This captures the raw bodies of the responses from Xero into a directory so that they are
+ * able to be replayed later without calling Xero.  A replay runs at the speed of the disk, uses
+ * none of the Xero API quota and always produces the same input which is useful for debugging
+ * the downstream steps and for benchmarks.</p>
+ *
+ * <p>Each body is stored in a file named from a key that identifies the request; see
+ * {@link ResponseCache#createKey(String...)}.  A body is written through a {@link FileChannel}
+ * as it is read and is only put in place once it has been read to the end.  On replay, the file
+ * is memory-mapped and read from the mapping.</p>
+ *
+ * @author Andrew Lindesay
+ */
+
+public class ResponseCapture {
+
+    private final static String SUFFIX = ".capture";
+
+    /**
+     * <p>A large capture is mapped in segments of this size.</p>
+     */
+
+    private final static long SIZE_SEGMENT = 256L * 1024 * 1024;
+
+    /**
+     * <p>An XML parser may stop reading just short of the end of the body.  On close, up to this
+     * many remaining bytes are read so that the body is still able to be captured.</p>
+     */
+
+    private final static int DRAIN_LIMIT = 64 * 1024;
+
+    private final File directory;
+
+    public ResponseCapture(File directory) throws IOException {
+
+        if (null == directory) {
+            throw new IllegalArgumentException("the directory is required");
+        }
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("unable to create the capture directory; " + directory);
+        }
+
+        this.directory = directory;
+    }
+
+    private File getFile(String key) {
+        return new File(directory, key + SUFFIX);
+    }
+
+    /**
+     * @return a stream that reads the supplied body and copies it into the capture as it is
+     * read.
+     */
+
+    public InputStream capture(String key, InputStream body) throws IOException {
+        File temporaryFile = File.createTempFile(key + "-", ".tmp", directory);
+        return new CapturingInputStream(body, temporaryFile, getFile(key));
+    }
+
+    /**
+     * @throws FileNotFoundException if there is no capture for the key.
+     */
+
+    public InputStream replay(String key) throws IOException {
+        File file = getFile(key);
+
+        if (!file.isFile()) {
+            throw new FileNotFoundException("no response has been captured; " + file);
+        }
+
+        return new MappedInputStream(file);
+    }
+
+    /**
+     * <p>If the stream is closed well before the end then the capture is discarded.</p>
+     */
+
+    private static class CapturingInputStream extends FilterInputStream {
+
+        private final File temporaryFile;
+
+        private final File file;
+
+        private FileOutputStream outputStream;
+
+        private FileChannel channel;
+
+        CapturingInputStream(InputStream in, File temporaryFile, File file) throws IOException {
+            super(in);
+            this.temporaryFile = temporaryFile;
+            this.file = file;
+            this.outputStream = new FileOutputStream(temporaryFile);
+            this.channel = outputStream.getChannel();
+        }
+
+        private void abandon() {
+            IOUtils.closeQuietly(outputStream);
+            outputStream = null;
+            channel = null;
+            temporaryFile.delete();
+        }
+
+        private void complete() throws IOException {
+            FileOutputStream finishedOutputStream = outputStream;
+            outputStream = null;
+            channel = null;
+            finishedOutputStream.close();
+
+            if (!Helpers.moveIntoPlace(temporaryFile, file)) {
+                throw new IOException("unable to move the capture into place; " + file);
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int result = read(b, 0, 1);
+            return -1 == result ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int result;
+
+            try {
+                result = super.read(b, off, len);
+
+                if (null != channel) {
+                    if (-1 == result) {
+                        complete();
+                    } else {
+                        ByteBuffer buffer = ByteBuffer.wrap(b, off, result);
+
+                        while (buffer.hasRemaining()) {
+                            channel.write(buffer);
+                        }
+                    }
+                }
+            } catch (IOException ioe) {
+                abandon();
+                throw ioe;
+            }
+
+            return result;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            abandon();
+            return super.skip(n);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void drain() {
+            byte[] buffer = new byte[4096];
+            int remaining = DRAIN_LIMIT;
+
+            try {
+                while (null != channel && remaining > 0) {
+                    int read = read(buffer, 0, Math.min(buffer.length, remaining));
+
+                    if (-1 == read) {
+                        return;
+                    }
+
+                    remaining -= read;
+                }
+            } catch (IOException ioe) {
+                // the body will not be captured.
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            drain();
+
+            try {
+                super.close();
+            } finally {
+                if (null != outputStream) {
+                    abandon();
+                }
+            }
+        }
+
+    }
+
+    /**
+     * <p>This reads a file through a read-only memory mapping, one segment at a time.</p>
+     */
+
+    private static class MappedInputStream extends InputStream {
+
+        private final RandomAccessFile randomAccessFile;
+
+        private final long length;
+
+        private long segmentOffset = 0;
+
+        private MappedByteBuffer segment = null;
+
+        MappedInputStream(File file) throws IOException {
+            this.randomAccessFile = new RandomAccessFile(file, "r");
+            this.length = randomAccessFile.length();
+        }
+
+        /**
+         * @return false if there is nothing more to read.
+         */
+
+        private boolean ensureSegment() throws IOException {
+            if (null != segment && segment.hasRemaining()) {
+                return true;
+            }
+
+            if (null != segment) {
+                segmentOffset += segment.capacity();
+                segment = null;
+            }
+
+            if (segmentOffset >= length) {
+                return false;
+            }
+
+            segment = randomAccessFile.getChannel().map(
+                    FileChannel.MapMode.READ_ONLY,
+                    segmentOffset,
+                    Math.min(SIZE_SEGMENT, length - segmentOffset));
+
+            return segment.hasRemaining();
+        }
+
+        @Override
+        public int read() throws IOException {
+            return ensureSegment() ? segment.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (0 == len) {
+                return 0;
+            }
+
+            if (!ensureSegment()) {
+                return -1;
+            }
+
+            int result = Math.min(len, segment.remaining());
+            segment.get(b, off, result);
+            return result;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return null == segment ? 0 : segment.remaining();
+        }
+
+        @Override
+        public void close() throws IOException {
+            segment = null;
+            randomAccessFile.close();
+        }
+
+    }
+
+}
@@ -0,0 +1,64 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.bulletin.pdi.xero.step.support;
+
+import org.pentaho.di.core.exception.KettleException;
+
+/**
+ * <p>This chunker wraps another chunker and tags each of its chunks with the identifier of the
+ * tenant (Xero organisation) that the chunks were fetched for.</p>
+ *
+ * @author Andrew Lindesay
+ */
+
+public class TenantTaggingXMLChunker extends AbstractXMLChunker {
+
+    private final XMLChunker delegate;
+
+    private final String tenantId;
+
+    public TenantTaggingXMLChunker(XMLChunker delegate, String tenantId) {
+
+        if (null == delegate) {
+            throw new IllegalArgumentException("the delegate chunker is required");
+        }
+
+        if (null == tenantId) {
+            throw new IllegalArgumentException("the tenant id is required");
+        }
+
+        this.delegate = delegate;
+        this.tenantId = tenantId;
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    @Override
+    public XMLChunk pullNextChunk() throws KettleException {
+        XMLChunk chunk = delegate.pullNextChunk();
+        return null == chunk ? null : chunk.withTenantId(tenantId);
+    }
+
+    @Override
+    public void close() throws KettleException {
+        delegate.close();
+    }
+
+}
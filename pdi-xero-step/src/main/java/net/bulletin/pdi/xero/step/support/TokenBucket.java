@@ -0,0 +1,107 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bulletin.pdi.xero.step.support;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>This paces calls so that no more than a given number of calls are made in any period.  Up to
+ * the full number of calls may be made at once after a quiet spell; after that the calls are spread
+ * evenly across the period.  Rather than counting tokens, the bucket keeps the time at which the
+ * next call would be due if the calls were evenly spaced.  A caller reserves a slot and is told how
+ * long to wait for it so that the waiting is done outside of the lock.</p>
+ *
+ * <p>An instance is thread-safe and is shared by all of the threads that call the same Xero
+ * organisation.</p>
+ *
+ * @author Andrew Lindesay
+ */
+
+public class TokenBucket {
+
+    private long emissionIntervalNanos;
+
+    private long toleranceNanos;
+
+    private long theoreticalArrivalNanos = Long.MIN_VALUE;
+
+    public TokenBucket(int capacity, long period, TimeUnit unit) {
+
+        if (capacity < 1) {
+            throw new IllegalArgumentException("the capacity must be at least one");
+        }
+
+        if (period < 1) {
+            throw new IllegalArgumentException("the period must be at least one");
+        }
+
+        this.emissionIntervalNanos = Math.max(1L, unit.toNanos(period) / capacity);
+        this.toleranceNanos = emissionIntervalNanos * (capacity - 1);
+    }
+
+    /**
+     * <p>If the supplied capacity allows fewer calls in the period than the present capacity then
+     * the calls from now on are paced to the supplied capacity.  A larger capacity is ignored.</p>
+     *
+     * @return true if the capacity was lowered.
+     */
+
+    public synchronized boolean lowerCapacity(int capacity, long period, TimeUnit unit) {
+
+        if (capacity < 1) {
+            throw new IllegalArgumentException("the capacity must be at least one");
+        }
+
+        long intervalNanos = Math.max(1L, unit.toNanos(period) / capacity);
+
+        if (intervalNanos <= emissionIntervalNanos) {
+            return false;
+        }
+
+        emissionIntervalNanos = intervalNanos;
+        toleranceNanos = intervalNanos * (capacity - 1);
+        return true;
+    }
+
+    /**
+     * <p>Reserves the next call.</p>
+     *
+     * @return the nanoseconds that the caller needs to wait before making the call.
+     */
+
+    public synchronized long reserve(long nowNanos) {
+        long arrivalNanos = Math.max(theoreticalArrivalNanos, nowNanos);
+        theoreticalArrivalNanos = arrivalNanos + emissionIntervalNanos;
+        return Math.max(0L, arrivalNanos - toleranceNanos - nowNanos);
+    }
+
+    /**
+     * <p>Reserves the next call and waits until it may be made.</p>
+     *
+     * @return the nanoseconds that were spent waiting.
+     */
+
+    public long acquire() throws InterruptedException {
+        long waitNanos = reserve(System.nanoTime());
+
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+
+        return waitNanos;
+    }
+
+}
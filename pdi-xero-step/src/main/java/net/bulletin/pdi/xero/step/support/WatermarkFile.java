@@ -0,0 +1,170 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.bulletin.pdi.xero.step.support;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.CharEncoding;
+import org.apache.commons.lang.StringUtils;
+import org.pentaho.di.core.exception.KettleException;
+
+import java.io.*;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * <p>This stores a high-water mark of the "UpdatedDateUTC" values seen from Xero in a small
+ * local file.  The value is stored in the same form that Xero supplies; as UTC with optional
+ * fractional seconds.</p>
+ *
+ * <p>A new value is written to a temporary file alongside the file and then renamed over it so
+ * that a reader never sees a partially written value.  The value is only ever moved forward;
+ * if the stored value is already later then the new value is discarded.</p>
+ *
+ * @author Andrew Lindesay
+ */
+
+public class WatermarkFile {
+
+    private final static String FORMAT_WATERMARK = "yyyy-MM-dd'T'HH:mm:ss";
+
+    /**
+     * <p>Step copies in the same JVM may commit to the same file at once.</p>
+     */
+
+    private final static Object LOCK = new Object();
+
+    private final File file;
+
+    public WatermarkFile(File file) {
+
+        if (null == file) {
+            throw new IllegalArgumentException("the file is required");
+        }
+
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * <p>Parses a value such as "2015-06-25T01:49:59.123" as a UTC timestamp.  Any fractional
+     * seconds are ignored.</p>
+     */
+
+    public static Date parse(String value) throws KettleException {
+        String valueTrimmed = StringUtils.trimToEmpty(value);
+        int fractionalOffset = valueTrimmed.indexOf('.');
+
+        if (-1 != fractionalOffset) {
+            valueTrimmed = valueTrimmed.substring(0, fractionalOffset);
+        }
+
+        SimpleDateFormat format = new SimpleDateFormat(FORMAT_WATERMARK);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        format.setLenient(false);
+
+        try {
+            return format.parse(valueTrimmed);
+        } catch (ParseException pe) {
+            throw new KettleException("unable to parse the watermark; " + value, pe);
+        }
+    }
+
+    /**
+     * @return the stored watermark or null if there is no watermark stored yet.
+     */
+
+    public String read() throws KettleException {
+        synchronized (LOCK) {
+            return readUnlocked();
+        }
+    }
+
+    private String readUnlocked() throws KettleException {
+        if (!file.exists()) {
+            return null;
+        }
+
+        InputStream inputStream = null;
+
+        try {
+            inputStream = new FileInputStream(file);
+            return StringUtils.trimToNull(IOUtils.toString(inputStream, CharEncoding.UTF_8));
+        } catch (IOException ioe) {
+            throw new KettleException("unable to read the watermark file; " + file, ioe);
+        } finally {
+            IOUtils.closeQuietly(inputStream);
+        }
+    }
+
+    /**
+     * <p>Stores the value if it is later than the value that is already stored.</p>
+     *
+     * @return true if the value was stored.
+     */
+
+    public boolean commit(String value) throws KettleException {
+        Date valueDate = parse(value);
+
+        synchronized (LOCK) {
+            String existing = readUnlocked();
+
+            if (null != existing && !parse(existing).before(valueDate)) {
+                return false;
+            }
+
+            File directory = file.getAbsoluteFile().getParentFile();
+            File temporaryFile;
+            OutputStream outputStream = null;
+
+            try {
+                temporaryFile = File.createTempFile(file.getName(), ".tmp", directory);
+            } catch (IOException ioe) {
+                throw new KettleException("unable to create a temporary file for the watermark in; " + directory, ioe);
+            }
+
+            try {
+                outputStream = new FileOutputStream(temporaryFile);
+                outputStream.write(value.trim().getBytes(CharEncoding.UTF_8));
+                outputStream.flush();
+                ((FileOutputStream) outputStream).getFD().sync();
+                outputStream.close();
+                outputStream = null;
+
+                if (!Helpers.moveIntoPlace(temporaryFile, file)) {
+                    throw new KettleException("unable to move the watermark into place; " + file);
+                }
+            } catch (IOException ioe) {
+                throw new KettleException("unable to write the watermark file; " + file, ioe);
+            } finally {
+                IOUtils.closeQuietly(outputStream);
+
+                if (temporaryFile.exists() && !temporaryFile.delete()) {
+                    temporaryFile.deleteOnExit();
+                }
+            }
+
+            return true;
+        }
+    }
+
+}
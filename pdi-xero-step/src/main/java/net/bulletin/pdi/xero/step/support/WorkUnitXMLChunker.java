@@ -0,0 +1,257 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.bulletin.pdi.xero.step.support;
+
+import org.pentaho.di.core.exception.KettleException;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>This chunker fetches a number of units of work, such as the data for a number of tenants
+ * (Xero organisations) or for a number of batches of ids, concurrently on a bounded pool of
+ * workers.  The chunks from all of the units of work are merged into a single bounded queue from
+ * which they are pulled.  The chunks from any one unit of work are in order, but the chunks from
+ * different units of work are interleaved.</p>
+ *
+ * <p>A unit of work that fails does not affect the others; the failure is reported to the
+ * {@link XMLChunkerWorkUnitProvider} which decides whether the remaining units of work carry
+ * on.</p>
+ *
+ * <p>Chunks that are discarded because the chunker was closed early have their spill files
+ * deleted.</p>
+ *
+ * @author Andrew Lindesay
+ */
+
+public class WorkUnitXMLChunker extends AbstractXMLChunker {
+
+    private final static AtomicInteger COUNTER = new AtomicInteger(1);
+
+    private final XMLChunkerWorkUnitProvider workUnitProvider;
+
+    private final int workUnitCount;
+
+    private final int concurrency;
+
+    private final BlockingQueue<Object> queue;
+
+    private volatile boolean closed = false;
+
+    private ExecutorService executorService = null;
+
+    private int finishedWorkUnits = 0;
+
+    private int failedWorkUnits = 0;
+
+    public WorkUnitXMLChunker(
+            XMLChunkerWorkUnitProvider workUnitProvider,
+            int workUnitCount,
+            int concurrency,
+            int queueDepth) {
+
+        if (null == workUnitProvider) {
+            throw new IllegalArgumentException("a work unit provider is required");
+        }
+
+        if (workUnitCount < 0) {
+            throw new IllegalArgumentException("the work unit count may not be negative");
+        }
+
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("the concurrency must be at least one");
+        }
+
+        if (queueDepth < 1) {
+            throw new IllegalArgumentException("the queue depth must be at least one");
+        }
+
+        this.workUnitProvider = workUnitProvider;
+        this.workUnitCount = workUnitCount;
+        this.concurrency = concurrency;
+        this.queue = new ArrayBlockingQueue<Object>(queueDepth);
+    }
+
+    public int getWorkUnitCount() {
+        return workUnitCount;
+    }
+
+    public int getFinishedWorkUnitCount() {
+        return finishedWorkUnits;
+    }
+
+    public int getFailedWorkUnitCount() {
+        return failedWorkUnits;
+    }
+
+    private void startWorkUnits() {
+        executorService = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(concurrency, workUnitCount)),
+                new WorkUnitThreadFactory());
+
+        for (int i = 0; i < workUnitCount; i++) {
+            final int workUnitIndex = i;
+
+            executorService.submit(new Runnable() {
+                @Override
+                public void run() {
+                    produce(workUnitIndex);
+                }
+            });
+        }
+    }
+
+    private void produce(int workUnitIndex) {
+        try {
+            Object end = new WorkUnitEnd(workUnitIndex, null);
+
+            try {
+                XMLChunker xmlChunker = workUnitProvider.openWorkUnit(workUnitIndex);
+
+                try {
+                    XMLChunk chunk;
+
+                    while (!closed && null != (chunk = xmlChunker.pullNextChunk())) {
+                        try {
+                            queue.put(chunk);
+                        } catch (InterruptedException ie) {
+                            chunk.discard();
+                            throw ie;
+                        }
+                    }
+                } finally {
+                    xmlChunker.close();
+                }
+            } catch (KettleException ke) {
+                end = new WorkUnitEnd(workUnitIndex, ke);
+            } catch (RuntimeException re) {
+                end = new WorkUnitEnd(workUnitIndex, new KettleException("unable to fetch the work unit; " + workUnitIndex, re));
+            }
+
+            if (!closed) {
+                queue.put(end);
+            }
+        } catch (InterruptedException ie) {
+            // the consumer has closed the chunker and so there is nobody to hand over to.
+        }
+
+        // a chunk may have been put into the queue after the consumer emptied it.
+
+        if (closed) {
+            discardQueue();
+        }
+    }
+
+    private void discardQueue() {
+        Object item;
+
+        while (null != (item = queue.poll())) {
+            if (item instanceof XMLChunk) {
+                ((XMLChunk) item).discard();
+            }
+        }
+    }
+
+    @Override
+    public XMLChunk pullNextChunk() throws KettleException {
+
+        if (null == executorService) {
+            startWorkUnits();
+        }
+
+        while (finishedWorkUnits < workUnitCount) {
+            Object item;
+
+            try {
+                item = queue.take();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new KettleException("interrupted while waiting for a chunk from a work unit", ie);
+            }
+
+            if (item instanceof WorkUnitEnd) {
+                WorkUnitEnd workUnitEnd = (WorkUnitEnd) item;
+                finishedWorkUnits++;
+
+                if (null != workUnitEnd.getKettleException()) {
+                    failedWorkUnits++;
+                    workUnitProvider.workUnitFailed(workUnitEnd.getWorkUnitIndex(), workUnitEnd.getKettleException());
+                }
+            } else {
+                return (XMLChunk) item;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * <p>A worker that is waiting on the network will only stop once the read returns or times
+     * out; the workers are not waited on for longer than a few seconds.</p>
+     */
+
+    @Override
+    public void close() throws KettleException {
+        closed = true;
+
+        if (null != executorService) {
+            executorService.shutdownNow();
+            discardQueue();
+
+            try {
+                executorService.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        discardQueue();
+    }
+
+    private static class WorkUnitEnd {
+
+        private final int workUnitIndex;
+
+        private final KettleException kettleException;
+
+        WorkUnitEnd(int workUnitIndex, KettleException kettleException) {
+            this.workUnitIndex = workUnitIndex;
+            this.kettleException = kettleException;
+        }
+
+        int getWorkUnitIndex() {
+            return workUnitIndex;
+        }
+
+        KettleException getKettleException() {
+            return kettleException;
+        }
+
+    }
+
+    private static class WorkUnitThreadFactory implements ThreadFactory {
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "xero-work-" + COUNTER.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+
+    }
+
+}
@@ -0,0 +1,265 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.bulletin.pdi.xero.step.support;
+
+import org.apache.commons.lang.CharEncoding;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * <p>This is a single chunk that has been pulled from the XML stream.  It may carry the XML of
+ * the chunk as well as the values of any fields that were extracted from the chunk as it was
+ * read.  When the chunks are fetched for a number of tenants, each chunk also carries the identifier
+ * of the tenant that it came from.  An instance is immutable so that it can be handed between threads.</p>
+ *
+ * <p>The XML may be held either as a string or as UTF-8 bytes; a chunker that is writing bytes
+ * anyway can hand them over without decoding them so that they are able to go out on a binary
+ * field as they are.  Whichever form is asked for, the other is converted on demand.</p>
+ *
+ * <p>A chunk that was too large to hold in memory has instead been written to a file; see
+ * {@link ChunkSpill}.  Such a chunk has no XML in memory and carries the file instead.</p>
+ *
+ * <p>Where child records are split out of the chunks as well, a chunk for a child record comes
+ * from a container other than the first; see {@link #getContainerIndex()}.</p>
+ *
+ * @author Andrew Lindesay
+ */
+
+public final class XMLChunk {
+
+    private final static String[] EMPTY_FIELD_VALUES = new String[0];
+
+    private final static Charset CHARSET_UTF8 = Charset.forName(CharEncoding.UTF_8);
+
+    private final String xml;
+
+    private final byte[] xmlUtf8;
+
+    private final File spillFile;
+
+    private final String[] fieldValues;
+
+    private final String tenantId;
+
+    private final int containerIndex;
+
+    public XMLChunk(String xml) {
+        this(xml, EMPTY_FIELD_VALUES);
+    }
+
+    /**
+     * @param xml         is the XML of the chunk or null if the XML was not required.
+     * @param fieldValues are the text values of the fields in the order that the field paths
+     *                    were supplied to the chunker.  Where a field was not present in the
+     *                    chunk, the value is null.
+     */
+
+    public XMLChunk(String xml, String[] fieldValues) {
+        this(xml, fieldValues, null);
+    }
+
+    public XMLChunk(String xml, String[] fieldValues, String tenantId) {
+        this(xml, null, null, fieldValues, tenantId, 0);
+    }
+
+    private XMLChunk(
+            String xml,
+            byte[] xmlUtf8,
+            File spillFile,
+            String[] fieldValues,
+            String tenantId,
+            int containerIndex) {
+
+        if (null == fieldValues) {
+            throw new IllegalArgumentException("the field values are required");
+        }
+
+        this.xml = xml;
+        this.xmlUtf8 = xmlUtf8;
+        this.spillFile = spillFile;
+        this.fieldValues = fieldValues;
+        this.tenantId = tenantId;
+        this.containerIndex = containerIndex;
+    }
+
+    /**
+     * <p>The bytes are taken as they are and so the caller should not modify them afterwards.</p>
+     *
+     * @param xmlUtf8 is the XML of the chunk encoded as UTF-8 or null if the XML was not required.
+     */
+
+    public static XMLChunk fromUtf8(byte[] xmlUtf8, String[] fieldValues) {
+        return new XMLChunk(null, xmlUtf8, null, fieldValues, null, 0);
+    }
+
+    /**
+     * @param spillFile is the file into which the XML of the chunk was written.
+     */
+
+    public static XMLChunk fromSpillFile(File spillFile, String[] fieldValues) {
+
+        if (null == spillFile) {
+            throw new IllegalArgumentException("the spill file is required");
+        }
+
+        return new XMLChunk(null, null, spillFile, fieldValues, null, 0);
+    }
+
+    /**
+     * @return a chunk with the same content as this one, but from the supplied tenant.
+     */
+
+    public XMLChunk withTenantId(String tenantId) {
+        return new XMLChunk(xml, xmlUtf8, spillFile, fieldValues, tenantId, containerIndex);
+    }
+
+    /**
+     * <p>A child record is only complete once the chunk that it is in has been read and so its
+     * field values, which are those of the enclosing chunk, are supplied afterwards.</p>
+     *
+     * @return a chunk with the same XML as this one, but from the supplied container and with the
+     * supplied field values.
+     */
+
+    public XMLChunk withContainer(int containerIndex, String[] fieldValues) {
+        return new XMLChunk(xml, xmlUtf8, spillFile, fieldValues, tenantId, containerIndex);
+    }
+
+    /**
+     * @return 0 if the chunk is from the container elements or, if it is a child record, 1 plus
+     * the index of the child container that it is from.
+     */
+
+    public int getContainerIndex() {
+        return containerIndex;
+    }
+
+    public String getXml() {
+        if (null == xml && null != xmlUtf8) {
+            return new String(xmlUtf8, CHARSET_UTF8);
+        }
+
+        return xml;
+    }
+
+    /**
+     * <p>The bytes returned are shared with this chunk and so should not be modified.</p>
+     */
+
+    public byte[] getXmlUtf8() {
+        if (null == xmlUtf8 && null != xml) {
+            return xml.getBytes(CHARSET_UTF8);
+        }
+
+        return xmlUtf8;
+    }
+
+    /**
+     * @return the file holding the XML if the chunk was too large to hold in memory, otherwise
+     * null.
+     */
+
+    public File getSpillFile() {
+        return spillFile;
+    }
+
+    /**
+     * <p>A chunk that is not going to be handed on downstream has its spill file, if it has one,
+     * deleted here because there is nobody else to delete it.</p>
+     *
+     * @return false if the spill file could not be deleted; it is then deleted when the JVM exits.
+     */
+
+    public boolean discard() {
+        if (null != spillFile && !spillFile.delete()) {
+            spillFile.deleteOnExit();
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * @return the length of the XML in the form that it is held; characters for a string and
+     * bytes for UTF-8 or a spill file.  This avoids converting the XML only to measure it.
+     */
+
+    public long getXmlLength() {
+        if (null != xmlUtf8) {
+            return xmlUtf8.length;
+        }
+
+        if (null != spillFile) {
+            return spillFile.length();
+        }
+
+        return null == xml ? 0 : xml.length();
+    }
+
+    public int getFieldValueCount() {
+        return fieldValues.length;
+    }
+
+    public String getFieldValue(int index) {
+        return fieldValues[index];
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+
+        if (!(o instanceof XMLChunk)) {
+            return false;
+        }
+
+        XMLChunk other = (XMLChunk) o;
+        String xml = getXml();
+        String otherXml = other.getXml();
+        return (null == xml ? null == otherXml : xml.equals(otherXml))
+                && (null == spillFile ? null == other.spillFile : spillFile.equals(other.spillFile))
+                && Arrays.equals(fieldValues, other.fieldValues)
+                && containerIndex == other.containerIndex
+                && (null == tenantId ? null == other.tenantId : tenantId.equals(other.tenantId));
+    }
+
+    @Override
+    public int hashCode() {
+        String xml = getXml();
+        return 31 * (31 * (null == xml ? 0 : xml.hashCode()) + Arrays.hashCode(fieldValues))
+                + (null == tenantId ? 0 : tenantId.hashCode());
+    }
+
+    @Override
+    public String toString() {
+        String xml = getXml();
+        if (null != spillFile) {
+            return spillFile.getPath();
+        }
+
+        return null == xml ? Arrays.toString(fieldValues) : xml;
+    }
+
+}
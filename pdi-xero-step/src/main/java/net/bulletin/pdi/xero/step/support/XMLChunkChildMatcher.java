@@ -0,0 +1,143 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.bulletin.pdi.xero.step.support;
+
+/**
+ * <p>Within each chunk there may be child records that are wanted in the stream as chunks of
+ * their own; for example the "LineItem" elements inside each "Invoice".  This tracks a number of
+ * child element paths alongside the chunker's own so that the start and end of each child
+ * element is known as the XML is read in the one pass.  The paths are from the root of the
+ * document in the same way as the container elements.</p>
+ *
+ * <p>An instance is not thread-safe; each chunker has its own.</p>
+ *
+ * @author Andrew Lindesay
+ */
+
+public final class XMLChunkChildMatcher {
+
+    private final ElementPathMatcher[] matchers;
+
+    /**
+     * <p>For each child path, this is true while an element at that path is open.</p>
+     */
+
+    private final boolean[] open;
+
+    private int openCount = 0;
+
+    public XMLChunkChildMatcher(ElementPath[] childPaths) {
+
+        if (null == childPaths) {
+            throw new IllegalArgumentException("the child paths are required");
+        }
+
+        matchers = new ElementPathMatcher[childPaths.length];
+        open = new boolean[childPaths.length];
+
+        for (int i = 0; i < childPaths.length; i++) {
+            if (0 == childPaths[i].size()) {
+                throw new IllegalArgumentException("a child path may not be the root");
+            }
+
+            matchers[i] = new ElementPathMatcher(childPaths[i]);
+        }
+    }
+
+    public int size() {
+        return matchers.length;
+    }
+
+    /**
+     * @return true if an element at any of the child paths is presently open.
+     */
+
+    public boolean isAnyOpen() {
+        return 0 != openCount;
+    }
+
+    /**
+     * @return the index of the child path at which the element that was opened is or -1 if it is
+     * not at any of the child paths.
+     */
+
+    public int push(String localName) {
+        for (ElementPathMatcher matcher : matchers) {
+            matcher.push(localName);
+        }
+
+        return opened();
+    }
+
+    /**
+     * <p>As for {@link #push(String)}, but with the name supplied as UTF-8 bytes.</p>
+     */
+
+    public int push(byte[] buffer, int offset, int length) {
+        for (ElementPathMatcher matcher : matchers) {
+            matcher.push(buffer, offset, length);
+        }
+
+        return opened();
+    }
+
+    private int opened() {
+        int result = -1;
+
+        for (int i = 0; i < matchers.length; i++) {
+            ElementPathMatcher matcher = matchers[i];
+
+            if (matcher.isMatched() && matcher.getDepth() == matcher.getElementPath().size()) {
+                open[i] = true;
+                openCount++;
+
+                if (-1 == result) {
+                    result = i;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @return the index of the child path at which the element that was closed is or -1 if it is
+     * not at any of the child paths.
+     */
+
+    public int pop() {
+        int result = -1;
+
+        for (int i = 0; i < matchers.length; i++) {
+            ElementPathMatcher matcher = matchers[i];
+
+            if (open[i] && matcher.getDepth() == matcher.getElementPath().size()) {
+                open[i] = false;
+                openCount--;
+
+                if (-1 == result) {
+                    result = i;
+                }
+            }
+
+            matcher.pop();
+        }
+
+        return result;
+    }
+
+}
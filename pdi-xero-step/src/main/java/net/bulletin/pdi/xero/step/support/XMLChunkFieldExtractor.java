@@ -0,0 +1,170 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.bulletin.pdi.xero.step.support;
+
+/**
+ * <p>This extracts the text of elements within a chunk as the chunk is being read.  Each field is
+ * identified by an {@link ElementPath} relative to the root element of the chunk; for example
+ * "Contact/Name" inside an "Invoice" chunk.  The value of a field is all of the text within the
+ * first element found at its path, in the same way as the string value of an XPath expression.
+ * If no element is found at the path then the value is null.</p>
+ *
+ * <p>The chunker feeds the elements and text that appear inside the root element of the chunk
+ * into an instance and then collects the values when the chunk is complete.  An instance is not
+ * thread-safe; each chunker has its own.</p>
+ *
+ * @author Andrew Lindesay
+ */
+
+public class XMLChunkFieldExtractor {
+
+    private final ElementPathMatcher[] matchers;
+
+    private final StringBuilder[] values;
+
+    private final boolean[] completed;
+
+    /**
+     * <p>The number of fields presently collecting text.</p>
+     */
+
+    private int capturingCount = 0;
+
+    public XMLChunkFieldExtractor(ElementPath[] fieldPaths) {
+
+        if (null == fieldPaths) {
+            throw new IllegalArgumentException("the field paths are required");
+        }
+
+        matchers = new ElementPathMatcher[fieldPaths.length];
+        values = new StringBuilder[fieldPaths.length];
+        completed = new boolean[fieldPaths.length];
+
+        for (int i = 0; i < fieldPaths.length; i++) {
+            if (0 == fieldPaths[i].size()) {
+                throw new IllegalArgumentException("a field path may not be empty");
+            }
+
+            matchers[i] = new ElementPathMatcher(fieldPaths[i]);
+        }
+    }
+
+    public int getFieldCount() {
+        return matchers.length;
+    }
+
+    /**
+     * <p>This should be invoked as the root element of a new chunk is found.</p>
+     */
+
+    public void reset() {
+        for (int i = 0; i < matchers.length; i++) {
+            while (matchers[i].getDepth() > 0) {
+                matchers[i].pop();
+            }
+
+            values[i] = null;
+            completed[i] = false;
+        }
+
+        capturingCount = 0;
+    }
+
+    private boolean isExactlyAtPath(ElementPathMatcher matcher) {
+        return matcher.isMatched() && matcher.getDepth() == matcher.getElementPath().size();
+    }
+
+    private void afterPush() {
+        for (int i = 0; i < matchers.length; i++) {
+            if (null == values[i] && isExactlyAtPath(matchers[i])) {
+                values[i] = new StringBuilder();
+                capturingCount++;
+            }
+        }
+    }
+
+    public void startElement(String localName) {
+        for (ElementPathMatcher matcher : matchers) {
+            matcher.push(localName);
+        }
+
+        afterPush();
+    }
+
+    public void startElement(byte[] buffer, int offset, int length) {
+        for (ElementPathMatcher matcher : matchers) {
+            matcher.push(buffer, offset, length);
+        }
+
+        afterPush();
+    }
+
+    public void endElement() {
+        for (int i = 0; i < matchers.length; i++) {
+            if (null != values[i] && !completed[i] && isExactlyAtPath(matchers[i])) {
+                completed[i] = true;
+                capturingCount--;
+            }
+
+            matchers[i].pop();
+        }
+    }
+
+    /**
+     * <p>If this returns false then there is no need to supply text.</p>
+     */
+
+    public boolean isCapturing() {
+        return capturingCount > 0;
+    }
+
+    public void characters(char[] text, int offset, int length) {
+        if (capturingCount > 0) {
+            for (int i = 0; i < values.length; i++) {
+                if (null != values[i] && !completed[i]) {
+                    values[i].append(text, offset, length);
+                }
+            }
+        }
+    }
+
+    public void characters(String text) {
+        if (capturingCount > 0) {
+            for (int i = 0; i < values.length; i++) {
+                if (null != values[i] && !completed[i]) {
+                    values[i].append(text);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the values of the fields for the chunk that was just read.
+     */
+
+    public String[] getValues() {
+        String[] result = new String[values.length];
+
+        for (int i = 0; i < values.length; i++) {
+            result[i] = null == values[i] ? null : values[i].toString();
+        }
+
+        return result;
+    }
+
+}
@@ -32,5 +32,13 @@ public interface XMLChunker {
 
     String pullNextXmlChunk() throws KettleException;
 
+    /**
+     * <p>As for {@link #pullNextXmlChunk()}, but the chunk may also carry the values of fields
+     * that were extracted as the XML was read.  If there are no more chunks then this will return
+     * null.</p>
+     */
+
+    XMLChunk pullNextChunk() throws KettleException;
+
     void close() throws KettleException;
 }
@@ -21,7 +21,14 @@ import org.apache.xmlbeans.impl.common.XmlReaderToWriter;
 import org.pentaho.di.core.exception.KettleException;
 
 import javax.xml.stream.*;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
 import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Stack;
 
 /**
@@ -31,93 +38,342 @@ import java.util.Stack;
  * @author Andrew Lindesay
  */
 
-public class XMLChunkerImpl implements XMLChunker {
+public class XMLChunkerImpl extends AbstractXMLChunker {
+
+    private final static Charset CHARSET_UTF8 = Charset.forName(CharEncoding.UTF_8);
+
+    private final static ElementPath[] NO_FIELD_PATHS = new ElementPath[0];
+
+    private final static String[] NO_FIELD_VALUES = new String[0];
 
     private XMLChunkerState xmlChunkerState;
 
+    /**
+     * <p>If this is null then there are no fields to extract from the chunks.</p>
+     */
+
+    private XMLChunkFieldExtractor fieldExtractor;
+
+    /**
+     * <p>If the XML of the chunks is not required then there is no need to write it.</p>
+     */
+
+    private boolean xmlIncluded;
+
+    /**
+     * <p>If true then the XML of the chunks is written as UTF-8 bytes rather than to a string.</p>
+     */
+
+    private boolean xmlUtf8;
+
+    /**
+     * <p>If this is not null then chunks with XML larger than its threshold are written to files
+     * rather than being held in memory.</p>
+     */
+
+    private ChunkSpill chunkSpill = null;
+
+    /**
+     * <p>If this is not null then the child records within each chunk are also split out as
+     * chunks of their own.</p>
+     */
+
+    private XMLChunkChildMatcher childMatcher = null;
+
+    /**
+     * <p>The child records of a chunk are complete before the chunk itself is and so they are held
+     * here to be handed out after it.</p>
+     */
+
+    private final LinkedList<XMLChunk> pendingChunks = new LinkedList<XMLChunk>();
+
+    /**
+     * <p>The {@link XMLStreamReader} will not close the stream that it is reading from.  If this is
+     * supplied then it will be closed when this chunker is closed.</p>
+     */
+
+    private Closeable underlyingResource;
+
     public XMLChunkerImpl(XMLStreamReader xmlStreamReader, Stack<String> expectedContainerElementsStack) {
-        xmlChunkerState = new XMLChunkerState(xmlStreamReader, expectedContainerElementsStack);
+        this(xmlStreamReader, createElementPath(expectedContainerElementsStack), null);
+    }
+
+    public XMLChunkerImpl(XMLStreamReader xmlStreamReader, ElementPath expectedContainerElementPath) {
+        this(xmlStreamReader, expectedContainerElementPath, null);
+    }
+
+    public XMLChunkerImpl(
+            XMLStreamReader xmlStreamReader,
+            ElementPath expectedContainerElementPath,
+            Closeable underlyingResource) {
+        this(xmlStreamReader, expectedContainerElementPath, NO_FIELD_PATHS, true, underlyingResource);
+    }
+
+    /**
+     * @param fieldPaths  are paths relative to the root element of each chunk from which text
+     *                    values should be extracted; see {@link XMLChunkFieldExtractor}.
+     * @param xmlIncluded is false if the XML of each chunk is not required; only the values of
+     *                    the fields.
+     */
+
+    public XMLChunkerImpl(
+            XMLStreamReader xmlStreamReader,
+            ElementPath expectedContainerElementPath,
+            ElementPath[] fieldPaths,
+            boolean xmlIncluded,
+            Closeable underlyingResource) {
+        this(xmlStreamReader, expectedContainerElementPath, fieldPaths, xmlIncluded, false, underlyingResource);
+    }
+
+    /**
+     * @param xmlUtf8 is true if the XML of each chunk should be written straight out as UTF-8
+     *                bytes rather than to a string; see {@link XMLChunk#getXmlUtf8()}.
+     */
+
+    public XMLChunkerImpl(
+            XMLStreamReader xmlStreamReader,
+            ElementPath expectedContainerElementPath,
+            ElementPath[] fieldPaths,
+            boolean xmlIncluded,
+            boolean xmlUtf8,
+            Closeable underlyingResource) {
+        xmlChunkerState = new XMLChunkerState(xmlStreamReader, expectedContainerElementPath);
+        this.underlyingResource = underlyingResource;
+        this.xmlIncluded = xmlIncluded;
+        this.xmlUtf8 = xmlUtf8;
+
+        if (null != fieldPaths && 0 != fieldPaths.length) {
+            fieldExtractor = new XMLChunkFieldExtractor(fieldPaths);
+        }
+    }
+
+    public void setChunkSpill(ChunkSpill chunkSpill) {
+        this.chunkSpill = chunkSpill;
     }
 
     /**
-     * <p>Checks to see if the expected elements are present at the start of the actual current elements.</p>
-     *
-     * @return true if the expected elements can be seen at the start of the actual elements.
+     * <p>The child records at the supplied paths, which are from the root of the document, are
+     * split out of each chunk in the same pass.  Each child record follows the chunk that it is
+     * in and carries that chunk's field values; see {@link XMLChunk#getContainerIndex()}.</p>
      */
 
-    private boolean actualElementStackHasExpectedElements(XMLChunkerState data) {
-        Stack<String> actual = data.getElementStack();
-        Stack<String> expected = data.getExpectedContainerElementsStack();
+    public void setChildContainerPaths(ElementPath[] childContainerPaths) {
+        this.childMatcher = null == childContainerPaths || 0 == childContainerPaths.length
+                ? null : new XMLChunkChildMatcher(childContainerPaths);
+    }
+
+    /**
+     * <p>This is the XML of a child record as it is being written.</p>
+     */
+
+    private final class ChildCapture {
+
+        private final StringWriter stringWriter;
+
+        private final ByteArrayOutputStream outputStream;
+
+        private final XMLStreamWriter xmlStreamWriter;
 
-        if (actual.size() < expected.size()) {
-            return false;
+        private ChildCapture(XMLOutputFactory xmlOutputFactory) throws XMLStreamException {
+            if (xmlUtf8) {
+                stringWriter = null;
+                outputStream = new ByteArrayOutputStream();
+                xmlStreamWriter = xmlOutputFactory.createXMLStreamWriter(outputStream, CharEncoding.UTF_8);
+            } else {
+                stringWriter = new StringWriter();
+                outputStream = null;
+                xmlStreamWriter = xmlOutputFactory.createXMLStreamWriter(stringWriter);
+            }
+
+            xmlStreamWriter.writeStartDocument(CharEncoding.UTF_8, "1.0");
         }
 
-        for (int i = 0; i < expected.size(); i++) {
-            if (!actual.get(i).equals(expected.get(i))) {
-                return false;
+        private XMLChunk complete() throws XMLStreamException {
+            xmlStreamWriter.writeEndDocument();
+            xmlStreamWriter.close();
+
+            if (null != outputStream) {
+                return XMLChunk.fromUtf8(outputStream.toByteArray(), NO_FIELD_VALUES);
             }
+
+            return new XMLChunk(stringWriter.toString(), NO_FIELD_VALUES);
         }
 
-        return true;
     }
 
-    private String pullNextXmlChunkFromTopElementOnStack(XMLChunkerState data) throws KettleException {
-        Stack<String> elementStack = data.getElementStack();
+    private static ElementPath createElementPath(Stack<String> expectedContainerElementsStack) {
+        if (null == expectedContainerElementsStack) {
+            throw new IllegalArgumentException("an expected container element stack is required");
+        }
+
+        return new ElementPath(expectedContainerElementsStack);
+    }
+
+    private XMLChunk pullNextXmlChunkFromTopElementOnStack(XMLChunkerState data) throws KettleException {
+        ElementPathMatcher elementPathMatcher = data.getElementPathMatcher();
         XMLStreamReader xmlStreamReader = data.getXmlStreamReader();
 
-        int elementStackDepthOnEntry = elementStack.size();
-        StringWriter stringWriter = new StringWriter();
+        int elementStackDepthOnEntry = elementPathMatcher.getDepth();
+        StringWriter stringWriter = null;
+        ByteArrayOutputStream outputStream = null;
+        ChunkSpill.SpillingOutputStream spillingOutputStream = null;
+        ChildCapture[] childCaptures = null == childMatcher ? null : new ChildCapture[childMatcher.size()];
+        List<XMLChunk> childChunks = null == childMatcher ? null : new ArrayList<XMLChunk>();
+
+        if (null != fieldExtractor) {
+            fieldExtractor.reset();
+        }
 
         try {
-            XMLStreamWriter xmlStreamWriter = data.getXmlOutputFactory().createXMLStreamWriter(stringWriter);
+            XMLStreamWriter xmlStreamWriter = null;
+
+            if (xmlIncluded) {
+                if (null != chunkSpill) {
+                    spillingOutputStream = chunkSpill.createOutputStream();
+                    xmlStreamWriter = data.getXmlOutputFactory().createXMLStreamWriter(spillingOutputStream, CharEncoding.UTF_8);
+                } else if (xmlUtf8) {
+                    outputStream = new ByteArrayOutputStream();
+                    xmlStreamWriter = data.getXmlOutputFactory().createXMLStreamWriter(outputStream, CharEncoding.UTF_8);
+                } else {
+                    stringWriter = new StringWriter();
+                    xmlStreamWriter = data.getXmlOutputFactory().createXMLStreamWriter(stringWriter);
+                }
 
-            xmlStreamWriter.writeStartDocument(CharEncoding.UTF_8, "1.0");
+                xmlStreamWriter.writeStartDocument(CharEncoding.UTF_8, "1.0");
+
+                // put the current element on because presumably it's the open element for the one
+                // that is being looked for.
 
-            // put the current element on because presumably it's the open element for the one
-            // that is being looked for.
+                XmlReaderToWriter.write(xmlStreamReader, xmlStreamWriter);
+            }
 
-            XmlReaderToWriter.write(xmlStreamReader, xmlStreamWriter);
+            while (xmlStreamReader.hasNext() & elementPathMatcher.getDepth() >= elementStackDepthOnEntry) {
 
-            while (xmlStreamReader.hasNext() & elementStack.size() >= elementStackDepthOnEntry) {
+                int event = xmlStreamReader.next();
+                int childEnded = -1;
 
-                switch (xmlStreamReader.next()) {
+                switch (event) {
 
                     case XMLStreamConstants.END_DOCUMENT:
                         break; // handled below explicitly.
 
                     case XMLStreamConstants.END_ELEMENT:
-                        elementStack.pop();
-                        XmlReaderToWriter.write(xmlStreamReader, xmlStreamWriter);
+                        elementPathMatcher.pop();
+
+                        if (null != childMatcher) {
+                            childEnded = childMatcher.pop();
+                        }
+
+                        if (null != fieldExtractor && elementPathMatcher.getDepth() >= elementStackDepthOnEntry) {
+                            fieldExtractor.endElement();
+                        }
+
                         break;
 
                     case XMLStreamConstants.START_ELEMENT:
-                        elementStack.push(xmlStreamReader.getLocalName());
-                        XmlReaderToWriter.write(xmlStreamReader, xmlStreamWriter);
+                        elementPathMatcher.push(xmlStreamReader.getLocalName());
+
+                        if (null != childMatcher) {
+                            int childStarted = childMatcher.push(xmlStreamReader.getLocalName());
+
+                            if (-1 != childStarted) {
+                                childCaptures[childStarted] = new ChildCapture(data.getXmlOutputFactory());
+                            }
+                        }
+
+                        if (null != fieldExtractor) {
+                            fieldExtractor.startElement(xmlStreamReader.getLocalName());
+                        }
+
                         break;
 
-                    default:
-                        XmlReaderToWriter.write(xmlStreamReader, xmlStreamWriter);
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        if (null != fieldExtractor && fieldExtractor.isCapturing()) {
+                            fieldExtractor.characters(
+                                    xmlStreamReader.getTextCharacters(),
+                                    xmlStreamReader.getTextStart(),
+                                    xmlStreamReader.getTextLength());
+                        }
+
                         break;
 
                 }
 
+                if (null != xmlStreamWriter && XMLStreamConstants.END_DOCUMENT != event) {
+                    XmlReaderToWriter.write(xmlStreamReader, xmlStreamWriter);
+                }
+
+                if (null != childCaptures && XMLStreamConstants.END_DOCUMENT != event) {
+                    for (ChildCapture childCapture : childCaptures) {
+                        if (null != childCapture) {
+                            XmlReaderToWriter.write(xmlStreamReader, childCapture.xmlStreamWriter);
+                        }
+                    }
+
+                    if (-1 != childEnded) {
+                        childChunks.add(childCaptures[childEnded].complete().withContainer(childEnded + 1, NO_FIELD_VALUES));
+                        childCaptures[childEnded] = null;
+                    }
+                }
+
             }
 
-            xmlStreamWriter.writeEndDocument();
-            xmlStreamWriter.close();
+            if (null != xmlStreamWriter) {
+                xmlStreamWriter.writeEndDocument();
+                xmlStreamWriter.close();
+            }
+
+            if (null != spillingOutputStream) {
+                spillingOutputStream.close();
+            }
         } catch (Exception e) {
+            if (null != spillingOutputStream) {
+                spillingOutputStream.abandon();
+            }
+
             throw new KettleException("unable to process a chunk of the xero xml stream", e);
         }
 
-        return stringWriter.toString();
+        String[] fieldValues = null == fieldExtractor ? NO_FIELD_VALUES : fieldExtractor.getValues();
+
+        if (null != childChunks) {
+            for (XMLChunk childChunk : childChunks) {
+                pendingChunks.add(childChunk.withContainer(childChunk.getContainerIndex(), fieldValues));
+            }
+        }
+
+        if (null != spillingOutputStream) {
+            if (spillingOutputStream.isSpilled()) {
+                return XMLChunk.fromSpillFile(spillingOutputStream.getFile(), fieldValues);
+            }
+
+            byte[] bytes = spillingOutputStream.toByteArray();
+
+            if (xmlUtf8) {
+                return XMLChunk.fromUtf8(bytes, fieldValues);
+            }
+
+            return new XMLChunk(new String(bytes, CHARSET_UTF8), fieldValues);
+        }
+
+        if (null != outputStream) {
+            return XMLChunk.fromUtf8(outputStream.toByteArray(), fieldValues);
+        }
+
+        return new XMLChunk(null == stringWriter ? null : stringWriter.toString(), fieldValues);
     }
 
     @Override
-    public String pullNextXmlChunk() throws KettleException {
-        Stack<String> elementStack = xmlChunkerState.getElementStack();
+    public XMLChunk pullNextChunk() throws KettleException {
+        ElementPathMatcher elementPathMatcher = xmlChunkerState.getElementPathMatcher();
         XMLStreamReader xmlStreamReader = xmlChunkerState.getXmlStreamReader();
 
+        if (!pendingChunks.isEmpty()) {
+            return pendingChunks.removeFirst();
+        }
+
         try {
 
             while (xmlStreamReader.hasNext()) {
@@ -128,13 +384,22 @@ public class XMLChunkerImpl implements XMLChunker {
                         return null;
 
                     case XMLStreamConstants.END_ELEMENT:
-                        elementStack.pop();
+                        elementPathMatcher.pop();
+
+                        if (null != childMatcher) {
+                            childMatcher.pop();
+                        }
+
                         break;
 
                     case XMLStreamConstants.START_ELEMENT:
-                        elementStack.push(xmlStreamReader.getLocalName());
+                        elementPathMatcher.push(xmlStreamReader.getLocalName());
+
+                        if (null != childMatcher) {
+                            childMatcher.push(xmlStreamReader.getLocalName());
+                        }
 
-                        if (actualElementStackHasExpectedElements(xmlChunkerState)) {
+                        if (elementPathMatcher.isMatched()) {
                             return pullNextXmlChunkFromTopElementOnStack(xmlChunkerState);
                         }
 
@@ -152,11 +417,21 @@ public class XMLChunkerImpl implements XMLChunker {
 
     @Override
     public void close() throws KettleException {
-        if (null != xmlChunkerState && null != xmlChunkerState.xmlStreamReader) {
-            try {
-                xmlChunkerState.xmlStreamReader.close();
-            } catch (XMLStreamException xse) {
-                 throw new KettleException(xse);
+        try {
+            if (null != xmlChunkerState && null != xmlChunkerState.xmlStreamReader) {
+                try {
+                    xmlChunkerState.xmlStreamReader.close();
+                } catch (XMLStreamException xse) {
+                    throw new KettleException(xse);
+                }
+            }
+        } finally {
+            if (null != underlyingResource) {
+                try {
+                    underlyingResource.close();
+                } catch (IOException ioe) {
+                    throw new KettleException("unable to close the underlying xero stream", ioe);
+                }
             }
         }
     }
@@ -166,23 +441,21 @@ public class XMLChunkerImpl implements XMLChunker {
 
         private XMLStreamReader xmlStreamReader = null;
 
-        private Stack<String> elementStack = new Stack<String>();
+        private ElementPathMatcher elementPathMatcher;
 
-        private Stack<String> expectedContainerElementsStack;
+        private XMLOutputFactory xmlOutputFactory = XMLFactories.getXMLOutputFactory();
 
-        private XMLOutputFactory xmlOutputFactory = XMLOutputFactory.newInstance();
-
-        public XMLChunkerState(XMLStreamReader xmlStreamReader, Stack<String> expectedContainerElementsStack) {
+        public XMLChunkerState(XMLStreamReader xmlStreamReader, ElementPath expectedContainerElementPath) {
 
             if (null == xmlStreamReader) {
                 throw new IllegalArgumentException("an xml stream reader is required");
             }
 
-            if (null == expectedContainerElementsStack) {
-                throw new IllegalArgumentException("an expected container element stack is required");
+            if (null == expectedContainerElementPath) {
+                throw new IllegalArgumentException("an expected container element path is required");
             }
 
-            this.expectedContainerElementsStack = expectedContainerElementsStack;
+            this.elementPathMatcher = new ElementPathMatcher(expectedContainerElementPath);
             this.xmlStreamReader = xmlStreamReader;
         }
 
@@ -190,12 +463,8 @@ public class XMLChunkerImpl implements XMLChunker {
             return xmlStreamReader;
         }
 
-        public Stack<String> getElementStack() {
-            return elementStack;
-        }
-
-        public Stack<String> getExpectedContainerElementsStack() {
-            return expectedContainerElementsStack;
+        public ElementPathMatcher getElementPathMatcher() {
+            return elementPathMatcher;
         }
 
         public XMLOutputFactory getXmlOutputFactory() {
@@ -0,0 +1,37 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.bulletin.pdi.xero.step.support;
+
+import org.pentaho.di.core.exception.KettleException;
+
+/**
+ * <p>Implementations of this interface are able to fetch a single page of data from Xero and
+ * to provide a chunker over that page.  The page numbers start at 1.</p>
+ *
+ * @author Andrew Lindesay
+ */
+
+public interface XMLChunkerPageProvider {
+
+    /**
+     * <p>This method may be invoked concurrently from a number of threads.  The chunker that
+     * is returned will be closed by the caller once it has been drained.</p>
+     */
+
+    XMLChunker openPage(int page) throws KettleException;
+
+}
@@ -0,0 +1,50 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.bulletin.pdi.xero.step.support;
+
+import org.pentaho.di.core.exception.KettleException;
+
+/**
+ * <p>Implementations of this interface are able to fetch a single unit of work, such as the data
+ * for one tenant (a Xero organisation) or for one batch of ids, and to provide a chunker over
+ * that data.  The units of work are identified by their zero-based index up to the count of
+ * units supplied to the {@link WorkUnitXMLChunker}.</p>
+ *
+ * @author Andrew Lindesay
+ */
+
+public interface XMLChunkerWorkUnitProvider {
+
+    /**
+     * <p>This method may be invoked concurrently from a number of threads.  The chunker that
+     * is returned will be closed by the caller once it has been drained.</p>
+     */
+
+    XMLChunker openWorkUnit(int workUnitIndex) throws KettleException;
+
+    /**
+     * <p>This method is invoked when the data for a unit of work could not be fetched.  It is
+     * invoked on the thread that is pulling chunks from the {@link WorkUnitXMLChunker} and not on
+     * the thread that was fetching the data.  Any chunks from the unit of work that were pulled
+     * before the failure will already have been returned.  An exception thrown from here is
+     * thrown to the puller.</p>
+     */
+
+    void workUnitFailed(int workUnitIndex, KettleException kettleException) throws KettleException;
+
+}
@@ -0,0 +1,82 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.bulletin.pdi.xero.step.support;
+
+import org.pentaho.di.core.exception.KettleException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * <p>Finding a StAX factory involves a search of the classpath which is slow inside the class
+ * loader of a PDI plugin and matters for short transformations that are run often.  This holds
+ * one {@link XMLInputFactory} for each {@link XMLParserBackend} and one {@link XMLOutputFactory}
+ * for the JVM.  The factories are configured once when they are created and are not changed
+ * after that so that they may be used by many threads at once to create readers and
+ * writers.</p>
+ *
+ * <p>The input factories are configured for the responses from Xero; the text is not coalesced
+ * because the chunks are written out again event by event and DTDs and external entities are
+ * not supported because Xero does not send them.</p>
+ *
+ * @author Andrew Lindesay
+ */
+
+public class XMLFactories {
+
+    private final static Map<XMLParserBackend, XMLInputFactory> INPUT_FACTORIES =
+            new EnumMap<XMLParserBackend, XMLInputFactory>(XMLParserBackend.class);
+
+    private static XMLOutputFactory OUTPUT_FACTORY = null;
+
+    public static synchronized XMLInputFactory getXMLInputFactory(XMLParserBackend parser) throws KettleException {
+        if (null == parser) {
+            throw new IllegalArgumentException("the parser is required");
+        }
+
+        XMLInputFactory result = INPUT_FACTORIES.get(parser);
+
+        if (null == result) {
+            result = parser.createXMLInputFactory();
+            setPropertyIfSupported(result, XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+            setPropertyIfSupported(result, XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+            setPropertyIfSupported(result, XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+            setPropertyIfSupported(result, XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+            INPUT_FACTORIES.put(parser, result);
+        }
+
+        return result;
+    }
+
+    public static synchronized XMLOutputFactory getXMLOutputFactory() {
+        if (null == OUTPUT_FACTORY) {
+            OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+        }
+
+        return OUTPUT_FACTORY;
+    }
+
+    private static void setPropertyIfSupported(XMLInputFactory xmlInputFactory, String name, Object value) {
+        if (xmlInputFactory.isPropertySupported(name)) {
+            xmlInputFactory.setProperty(name, value);
+        }
+    }
+
+}
@@ -0,0 +1,104 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.bulletin.pdi.xero.step.support;
+
+import org.pentaho.di.core.exception.KettleException;
+
+import javax.xml.stream.FactoryConfigurationError;
+import javax.xml.stream.XMLInputFactory;
+import java.lang.reflect.Method;
+
+/**
+ * <p>This defines the StAX implementation that is used to parse the XML from Xero.  The
+ * implementations other than the default are loaded by name so that they are only required on
+ * the classpath if they are used.</p>
+ *
+ * @author Andrew Lindesay
+ */
+
+public enum XMLParserBackend {
+
+    /**
+     * <p>Whichever implementation {@link XMLInputFactory#newInstance()} resolves to; this depends
+     * on what else is on the classpath of PDI.</p>
+     */
+
+    DEFAULT(null),
+
+    /**
+     * <p>The implementation that is built into the JDK.</p>
+     */
+
+    JDK("com.sun.xml.internal.stream.XMLInputFactoryImpl"),
+
+    WOODSTOX("com.ctc.wstx.stax.WstxInputFactory"),
+
+    AALTO("com.fasterxml.aalto.stax.InputFactoryImpl");
+
+    private final String factoryClassName;
+
+    XMLParserBackend(String factoryClassName) {
+        this.factoryClassName = factoryClassName;
+    }
+
+    public String getFactoryClassName() {
+        return factoryClassName;
+    }
+
+    public boolean isAvailable() {
+        try {
+            createXMLInputFactory();
+            return true;
+        } catch (KettleException ke) {
+            return false;
+        }
+    }
+
+    public XMLInputFactory createXMLInputFactory() throws KettleException {
+        if (null == factoryClassName) {
+            try {
+                return XMLInputFactory.newInstance();
+            } catch (FactoryConfigurationError fce) {
+                throw new KettleException("unable to create the default xml parser", fce);
+            }
+        }
+
+        // from java 9 the jdk's implementation is not able to be created by name.
+
+        if (this == JDK) {
+            try {
+                Method method = XMLInputFactory.class.getMethod("newDefaultFactory");
+                return (XMLInputFactory) method.invoke(null);
+            } catch (NoSuchMethodException nsme) {
+                // an older jdk; carry on and create it by name.
+            } catch (Exception e) {
+                throw new KettleException("unable to create the jdk xml parser", e);
+            }
+        }
+
+        try {
+            Class<?> factoryClass = Class.forName(factoryClassName, true, XMLParserBackend.class.getClassLoader());
+            return (XMLInputFactory) factoryClass.newInstance();
+        } catch (ClassNotFoundException cnfe) {
+            throw new KettleException("the xml parser " + name() + " is not available; " + factoryClassName, cnfe);
+        } catch (Exception e) {
+            throw new KettleException("unable to create the xml parser " + name() + "; " + factoryClassName, e);
+        }
+    }
+
+}
@@ -0,0 +1,200 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.bulletin.pdi.xero.step.support;
+
+/**
+ * <p>This is a streaming implementation of the 64 bit xxHash.  It is not a cryptographic hash,
+ * but it is very fast and is well distributed and so is suitable to detect that the content of a
+ * record has changed.  Bytes are able to be supplied in any number of pieces and the hash is the
+ * same as if they had been supplied all at once.</p>
+ *
+ * @author Andrew Lindesay
+ */
+
+public class XXHash64 {
+
+    private final static long PRIME1 = 0x9E3779B185EBCA87L;
+
+    private final static long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+
+    private final static long PRIME3 = 0x165667B19E3779F9L;
+
+    private final static long PRIME4 = 0x85EBCA77C2B2AE63L;
+
+    private final static long PRIME5 = 0x27D4EB2F165667C5L;
+
+    private final long seed;
+
+    private final byte[] buffer = new byte[32];
+
+    private int bufferLength = 0;
+
+    private long totalLength = 0;
+
+    private long v1;
+
+    private long v2;
+
+    private long v3;
+
+    private long v4;
+
+    public XXHash64() {
+        this(0L);
+    }
+
+    public XXHash64(long seed) {
+        this.seed = seed;
+        reset();
+    }
+
+    public static long hash(byte[] value) {
+        XXHash64 result = new XXHash64();
+        result.update(value, 0, value.length);
+        return result.getValue();
+    }
+
+    public void reset() {
+        v1 = seed + PRIME1 + PRIME2;
+        v2 = seed + PRIME2;
+        v3 = seed;
+        v4 = seed - PRIME1;
+        bufferLength = 0;
+        totalLength = 0;
+    }
+
+    public void update(int b) {
+        buffer[bufferLength++] = (byte) b;
+        totalLength++;
+
+        if (32 == bufferLength) {
+            processStripe(buffer, 0);
+            bufferLength = 0;
+        }
+    }
+
+    public void update(byte[] b, int off, int len) {
+        totalLength += len;
+
+        if (bufferLength > 0) {
+            int copy = Math.min(len, 32 - bufferLength);
+            System.arraycopy(b, off, buffer, bufferLength, copy);
+            bufferLength += copy;
+            off += copy;
+            len -= copy;
+
+            if (32 != bufferLength) {
+                return;
+            }
+
+            processStripe(buffer, 0);
+            bufferLength = 0;
+        }
+
+        while (len >= 32) {
+            processStripe(b, off);
+            off += 32;
+            len -= 32;
+        }
+
+        System.arraycopy(b, off, buffer, 0, len);
+        bufferLength = len;
+    }
+
+    private void processStripe(byte[] b, int off) {
+        v1 = round(v1, readLong(b, off));
+        v2 = round(v2, readLong(b, off + 8));
+        v3 = round(v3, readLong(b, off + 16));
+        v4 = round(v4, readLong(b, off + 24));
+    }
+
+    /**
+     * @return the hash of the bytes supplied so far; more bytes may still be supplied after this.
+     */
+
+    public long getValue() {
+        long h;
+
+        if (totalLength >= 32) {
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h = mergeRound(h, v1);
+            h = mergeRound(h, v2);
+            h = mergeRound(h, v3);
+            h = mergeRound(h, v4);
+        } else {
+            h = seed + PRIME5;
+        }
+
+        h += totalLength;
+
+        int off = 0;
+
+        for (; off + 8 <= bufferLength; off += 8) {
+            h ^= round(0, readLong(buffer, off));
+            h = Long.rotateLeft(h, 27) * PRIME1 + PRIME4;
+        }
+
+        if (off + 4 <= bufferLength) {
+            h ^= (readInt(buffer, off) & 0xFFFFFFFFL) * PRIME1;
+            h = Long.rotateLeft(h, 23) * PRIME2 + PRIME3;
+            off += 4;
+        }
+
+        for (; off < bufferLength; off++) {
+            h ^= (buffer[off] & 0xFF) * PRIME5;
+            h = Long.rotateLeft(h, 11) * PRIME1;
+        }
+
+        h ^= h >>> 33;
+        h *= PRIME2;
+        h ^= h >>> 29;
+        h *= PRIME3;
+        h ^= h >>> 32;
+        return h;
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * PRIME2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * PRIME1;
+    }
+
+    private static long mergeRound(long acc, long value) {
+        acc ^= round(0, value);
+        return acc * PRIME1 + PRIME4;
+    }
+
+    private static long readLong(byte[] b, int off) {
+        return (b[off] & 0xFFL)
+                | (b[off + 1] & 0xFFL) << 8
+                | (b[off + 2] & 0xFFL) << 16
+                | (b[off + 3] & 0xFFL) << 24
+                | (b[off + 4] & 0xFFL) << 32
+                | (b[off + 5] & 0xFFL) << 40
+                | (b[off + 6] & 0xFFL) << 48
+                | (b[off + 7] & 0xFFL) << 56;
+    }
+
+    private static int readInt(byte[] b, int off) {
+        return (b[off] & 0xFF)
+                | (b[off + 1] & 0xFF) << 8
+                | (b[off + 2] & 0xFF) << 16
+                | (b[off + 3] & 0xFF) << 24;
+    }
+
+}
@@ -0,0 +1,193 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.bulletin.pdi.xero.step.support;
+
+import net.oauth.OAuth;
+import net.oauth.OAuthAccessor;
+import net.oauth.OAuthConsumer;
+import net.oauth.OAuthServiceProvider;
+import net.oauth.signature.OAuthSignatureMethod;
+import net.oauth.signature.RSA_SHA1;
+import net.oauth.signature.pem.PEMReader;
+import net.oauth.signature.pem.PKCS1EncodedKeySpec;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.CharEncoding;
+import org.apache.commons.lang.StringUtils;
+import org.pentaho.di.core.exception.KettleException;
+
+import java.io.*;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.spec.KeySpec;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Reading the Xero key file and parsing the RSA private key in it is slow enough to matter
+ * when a transformation is run often or with many step copies.  This cache holds the
+ * {@link OAuthAccessor}s, with their parsed private keys, for the JVM.  The accessors are keyed
+ * by the path of the key file, the time that the key file was modified, its length and the
+ * consumer key so that a key file that is replaced is read again.  The least recently used
+ * accessors are evicted once the cache is full.</p>
+ *
+ * <p>The private key is supplied to the signer as a {@link PrivateKey} rather than as the text
+ * of the key file so that the signer does not have to parse the key again for every request.
+ * An accessor is not modified once it is in the cache and so it may be used by many threads at
+ * once.</p>
+ *
+ * @author Andrew Lindesay
+ */
+
+public class XeroAccessorCache {
+
+    private final static int MAX_ENTRIES = 32;
+
+    private final static XeroAccessorCache INSTANCE = new XeroAccessorCache(MAX_ENTRIES);
+
+    private final Map<String, OAuthAccessor> accessors;
+
+    private final AtomicLong hits = new AtomicLong(0);
+
+    private final AtomicLong misses = new AtomicLong(0);
+
+    public XeroAccessorCache(final int maxEntries) {
+
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("the maximum entries must be at least one");
+        }
+
+        accessors = new LinkedHashMap<String, OAuthAccessor>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, OAuthAccessor> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public static XeroAccessorCache getInstance() {
+        return INSTANCE;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private String createCacheKey(File keyFile, String consumerKey) {
+        return keyFile.getAbsolutePath() + '|' + keyFile.lastModified() + '|' + keyFile.length() + '|' + consumerKey;
+    }
+
+    /**
+     * <p>This method may be invoked concurrently.</p>
+     */
+
+    public OAuthAccessor get(File keyFile, String consumerKey) throws KettleException {
+
+        if (!keyFile.exists()) {
+            throw new KettleException("the xero key file cannot be found; " + keyFile.getAbsolutePath());
+        }
+
+        String cacheKey = createCacheKey(keyFile, consumerKey);
+        OAuthAccessor result;
+
+        synchronized (accessors) {
+            result = accessors.get(cacheKey);
+        }
+
+        if (null != result) {
+            hits.incrementAndGet();
+            return result;
+        }
+
+        // the key is parsed outside of the lock; if two threads miss at the same time then they
+        // will both parse the key, but the result is the same.
+
+        misses.incrementAndGet();
+        result = createAccessor(readPrivateKey(keyFile), consumerKey);
+
+        synchronized (accessors) {
+            accessors.put(cacheKey, result);
+        }
+
+        return result;
+    }
+
+    private OAuthAccessor createAccessor(PrivateKey privateKey, String consumerKey) {
+        OAuthServiceProvider serviceProvider = new OAuthServiceProvider(null, null, null);
+        OAuthConsumer consumer = new OAuthConsumer(null, consumerKey, null, serviceProvider);
+        consumer.setProperty(RSA_SHA1.PRIVATE_KEY, privateKey);
+
+        consumer.setProperty(OAuth.OAUTH_SIGNATURE_METHOD, OAuth.RSA_SHA1);
+        OAuthAccessor accessor = new OAuthAccessor(consumer);
+        accessor.accessToken = consumerKey;
+        return accessor;
+    }
+
+    private PrivateKey readPrivateKey(File keyFile) throws KettleException {
+        InputStream inputStream = null;
+
+        try {
+            inputStream = new FileInputStream(keyFile);
+            String key = StringUtils.trimToEmpty(IOUtils.toString(inputStream, CharEncoding.UTF_8));
+
+            if (StringUtils.isBlank(key)) {
+                throw new KettleException("the xero key file appears to be blank; " + keyFile.getAbsolutePath());
+            }
+
+            return parsePrivateKey(key);
+        } catch (IOException ioe) {
+            throw new KettleException("unable to process the xero key file; " + keyFile.getAbsolutePath(), ioe);
+        } catch (GeneralSecurityException gse) {
+            throw new KettleException("unable to parse the key in the xero key file; " + keyFile.getAbsolutePath(), gse);
+        } finally {
+            IOUtils.closeQuietly(inputStream);
+        }
+    }
+
+    /**
+     * <p>The key is parsed in the same way as the OAuth library would parse it; either as a
+     * PEM file with a PKCS#1 or PKCS#8 private key in it or as a base-64 encoded PKCS#8 key.</p>
+     */
+
+    static PrivateKey parsePrivateKey(String key) throws GeneralSecurityException, IOException {
+        KeySpec keySpec;
+
+        if (key.startsWith("-----BEGIN ")) {
+            PEMReader reader = new PEMReader(key.getBytes(CharEncoding.UTF_8));
+            byte[] bytes = reader.getDerBytes();
+
+            if (PEMReader.PRIVATE_PKCS1_MARKER.equals(reader.getBeginMarker())) {
+                keySpec = new PKCS1EncodedKeySpec(bytes).getKeySpec();
+            } else if (PEMReader.PRIVATE_PKCS8_MARKER.equals(reader.getBeginMarker())) {
+                keySpec = new PKCS8EncodedKeySpec(bytes);
+            } else {
+                throw new IOException("the pem has an unknown marker for a private key; " + reader.getBeginMarker());
+            }
+        } else {
+            keySpec = new PKCS8EncodedKeySpec(OAuthSignatureMethod.decodeBase64(key));
+        }
+
+        return KeyFactory.getInstance("RSA").generatePrivate(keySpec);
+    }
+
+}
@@ -0,0 +1,135 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.bulletin.pdi.xero.step.support;
+
+import net.oauth.OAuth;
+import net.oauth.OAuthAccessor;
+import net.oauth.OAuthException;
+import net.oauth.OAuthMessage;
+import net.oauth.ParameterStyle;
+import net.oauth.client.OAuthClient;
+import net.oauth.http.HttpClient;
+import org.apache.commons.lang.StringUtils;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Map;
+
+/**
+ * <p>This is a signed GET of a URL from the Xero API.  The request may carry an
+ * "If-Modified-Since" header, which Xero uses to filter the records, and an "If-None-Match"
+ * header with the "ETag" of a cached response.  If Xero says that the cached response has not
+ * been modified then an {@link net.oauth.OAuthProblemException} with the HTTP status 304 is
+ * thrown.</p>
+ *
+ * @author Andrew Lindesay
+ */
+
+public class XeroGetRequest implements XeroRequest<OAuthMessage> {
+
+    private final OAuthAccessor accessor;
+
+    private final String url;
+
+    private final HttpClient httpClient;
+
+    private final String accept;
+
+    private final XeroRequestCounters requestCounters;
+
+    private final XeroGetStepMetrics metrics;
+
+    private String ifModifiedSince = null;
+
+    private String ifNoneMatch = null;
+
+    public XeroGetRequest(
+            OAuthAccessor accessor,
+            String url,
+            HttpClient httpClient,
+            String accept,
+            XeroRequestCounters requestCounters,
+            XeroGetStepMetrics metrics) {
+
+        if (null == accessor) {
+            throw new IllegalArgumentException("the accessor is required");
+        }
+
+        if (StringUtils.isBlank(url)) {
+            throw new IllegalArgumentException("the url is required");
+        }
+
+        if (null == httpClient) {
+            throw new IllegalArgumentException("the http client is required");
+        }
+
+        if (null == requestCounters || null == metrics) {
+            throw new IllegalArgumentException("the request counters and the metrics are required");
+        }
+
+        this.accessor = accessor;
+        this.url = url;
+        this.httpClient = httpClient;
+        this.accept = accept;
+        this.requestCounters = requestCounters;
+        this.metrics = metrics;
+    }
+
+    public void setIfModifiedSince(String ifModifiedSince) {
+        this.ifModifiedSince = StringUtils.trimToNull(ifModifiedSince);
+    }
+
+    public void setIfNoneMatch(String ifNoneMatch) {
+        this.ifNoneMatch = StringUtils.trimToNull(ifNoneMatch);
+    }
+
+    @Override
+    public OAuthMessage invoke() throws OAuthException, IOException, URISyntaxException {
+        OAuthMessage request = accessor.newRequestMessage(
+                "GET",
+                url,
+                new ArrayList<Map.Entry>(),
+                null);
+
+        OAuthClient client = new OAuthClient(httpClient);
+        client.getHttpParameters().put(PooledHttpClient.REQUEST_COUNTERS, requestCounters);
+
+        if (null != accept) {
+            request.getHeaders().add(new OAuth.Parameter("Accept", accept));
+        }
+
+        if (null != ifModifiedSince) {
+            request.getHeaders().add(new OAuth.Parameter("If-Modified-Since", ifModifiedSince));
+        }
+
+        if (null != ifNoneMatch) {
+            request.getHeaders().add(new OAuth.Parameter("If-None-Match", ifNoneMatch));
+        }
+
+        Object ps = accessor.consumer.getProperty(OAuthClient.PARAMETER_STYLE);
+        ParameterStyle style = (ps == null) ? ParameterStyle.BODY
+                : Enum.valueOf(ParameterStyle.class, ps.toString());
+
+        long start = System.nanoTime();
+        OAuthMessage response = client.invoke(request, style);
+        metrics.addTimeToFirstByteNanos(System.nanoTime() - start);
+        return response;
+    }
+
+}
@@ -0,0 +1,207 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.bulletin.pdi.xero.step.support;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>These are the metrics of a copy of the step.  The counts of the requests and the bytes are
+ * taken from the {@link XeroRequestCounters}.  The times are in nanoseconds as they are recorded
+ * and are reported in milliseconds.</p>
+ *
+ * @author Andrew Lindesay
+ */
+
+public class XeroGetStepMetrics implements XeroGetStepMetricsMBean {
+
+    private final XeroRequestCounters requestCounters;
+
+    private final AtomicLong timeToFirstByteNanos = new AtomicLong(0);
+
+    private final AtomicLong timeToFirstByteCount = new AtomicLong(0);
+
+    private final AtomicLong chunks = new AtomicLong(0);
+
+    private final AtomicLong chunkCharacters = new AtomicLong(0);
+
+    private final AtomicLong pullNanos = new AtomicLong(0);
+
+    private final AtomicLong putRowNanos = new AtomicLong(0);
+
+    private volatile PrefetchingXMLChunker prefetchingXmlChunker = null;
+
+    private volatile DeferredXMLChunker deferredXmlChunker = null;
+
+    public XeroGetStepMetrics(XeroRequestCounters requestCounters) {
+
+        if (null == requestCounters) {
+            throw new IllegalArgumentException("the request counters are required");
+        }
+
+        this.requestCounters = requestCounters;
+    }
+
+    /**
+     * <p>This is the time from sending a request until the status and headers of the response
+     * have been received.</p>
+     */
+
+    public void addTimeToFirstByteNanos(long nanos) {
+        timeToFirstByteNanos.addAndGet(nanos);
+        timeToFirstByteCount.incrementAndGet();
+    }
+
+    /**
+     * @param characters is the length of the chunk's XML or JSON or 0 if it is not included.  Where
+     *                   the chunk is carried as UTF-8, this is the length in bytes.
+     */
+
+    public void addChunk(long characters) {
+        chunks.incrementAndGet();
+        chunkCharacters.addAndGet(characters);
+    }
+
+    public void addPullNanos(long nanos) {
+        pullNanos.addAndGet(nanos);
+    }
+
+    public void addPutRowNanos(long nanos) {
+        putRowNanos.addAndGet(nanos);
+    }
+
+    /**
+     * <p>The prefetch figures are read from the supplied chunker as they are asked for.</p>
+     */
+
+    public void setPrefetchingXmlChunker(PrefetchingXMLChunker prefetchingXmlChunker) {
+        this.prefetchingXmlChunker = prefetchingXmlChunker;
+    }
+
+    /**
+     * <p>The wait for the first response is read from the supplied chunker as it is asked
+     * for.</p>
+     */
+
+    public void setDeferredXmlChunker(DeferredXMLChunker deferredXmlChunker) {
+        this.deferredXmlChunker = deferredXmlChunker;
+    }
+
+    @Override
+    public long getRequests() {
+        return requestCounters.getRequests();
+    }
+
+    @Override
+    public long getRetriedRequests() {
+        return requestCounters.getRetriedRequests();
+    }
+
+    @Override
+    public long getThrottledRequests() {
+        return requestCounters.getThrottledRequests();
+    }
+
+    @Override
+    public long getRateLimitWaitMillis() {
+        return requestCounters.getWaitMillis();
+    }
+
+    @Override
+    public long getAverageTimeToFirstByteMillis() {
+        long count = timeToFirstByteCount.get();
+        return 0 == count ? 0 : TimeUnit.NANOSECONDS.toMillis(timeToFirstByteNanos.get() / count);
+    }
+
+    @Override
+    public long getReceivedBytes() {
+        return requestCounters.getEncodedBytes();
+    }
+
+    @Override
+    public long getDecompressedBytes() {
+        return requestCounters.getDecodedBytes();
+    }
+
+    @Override
+    public long getChunks() {
+        return chunks.get();
+    }
+
+    @Override
+    public long getAverageChunkCharacters() {
+        long count = chunks.get();
+        return 0 == count ? 0 : chunkCharacters.get() / count;
+    }
+
+    @Override
+    public long getPullMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(pullNanos.get());
+    }
+
+    @Override
+    public long getPutRowMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(putRowNanos.get());
+    }
+
+    @Override
+    public long getChunksPerSecond() {
+        long nanos = pullNanos.get();
+        return 0 == nanos ? 0 : chunks.get() * TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+
+    @Override
+    public long getFirstResponseWaitMillis() {
+        DeferredXMLChunker chunker = deferredXmlChunker;
+        return null == chunker ? 0 : chunker.getAwaitMillis();
+    }
+
+    @Override
+    public int getPrefetchQueueOccupancy() {
+        PrefetchingXMLChunker chunker = prefetchingXmlChunker;
+        return null == chunker ? 0 : chunker.getQueueOccupancy();
+    }
+
+    @Override
+    public int getPrefetchQueueDepth() {
+        PrefetchingXMLChunker chunker = prefetchingXmlChunker;
+        return null == chunker ? 0 : chunker.getQueueDepth();
+    }
+
+    @Override
+    public long getPrefetchConsumerStallMillis() {
+        PrefetchingXMLChunker chunker = prefetchingXmlChunker;
+        return null == chunker ? 0 : chunker.getConsumerStallMillis();
+    }
+
+    @Override
+    public long getPrefetchProducerStallMillis() {
+        PrefetchingXMLChunker chunker = prefetchingXmlChunker;
+        return null == chunker ? 0 : chunker.getProducerStallMillis();
+    }
+
+    @Override
+    public String toString() {
+        return "xero chunks " + getChunks()
+                + "; average chunk " + getAverageChunkCharacters() + " characters"
+                + "; average time to first byte " + getAverageTimeToFirstByteMillis() + "ms"
+                + "; waiting for chunks " + getPullMillis() + "ms (" + getChunksPerSecond() + " chunks/s)"
+                + "; passing rows downstream " + getPutRowMillis() + "ms"
+                + (null == deferredXmlChunker ? "" : "; first row waiting for xero " + getFirstResponseWaitMillis() + "ms");
+    }
+
+}
@@ -0,0 +1,93 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.bulletin.pdi.xero.step.support;
+
+/**
+ * <p>This is the JMX view of the {@link XeroGetStepMetrics} of a running copy of the step.  The
+ * times show where a run is spending its time; waiting for Xero and parsing, waiting for the
+ * downstream steps or waiting for the rate limit.</p>
+ *
+ * @author Andrew Lindesay
+ */
+
+public interface XeroGetStepMetricsMBean {
+
+    long getRequests();
+
+    long getRetriedRequests();
+
+    long getThrottledRequests();
+
+    long getRateLimitWaitMillis();
+
+    long getAverageTimeToFirstByteMillis();
+
+    long getReceivedBytes();
+
+    long getDecompressedBytes();
+
+    long getChunks();
+
+    long getAverageChunkCharacters();
+
+    /**
+     * <p>The time that the step has spent waiting for the next chunk; this is the time spent
+     * fetching and parsing unless the chunks are being prefetched.</p>
+     */
+
+    long getPullMillis();
+
+    /**
+     * <p>The time that the step has spent passing rows downstream; when the downstream steps are
+     * the bottleneck, this is the time spent waiting for space in the output row set.</p>
+     */
+
+    long getPutRowMillis();
+
+    long getChunksPerSecond();
+
+    /**
+     * <p>Where the request to Xero is made in the background as the transformation starts, this
+     * is the time that the first row still had to wait for the response.</p>
+     */
+
+    long getFirstResponseWaitMillis();
+
+    /**
+     * <p>The number of chunks waiting in the prefetch queue; 0 if the chunks are not being
+     * prefetched.</p>
+     */
+
+    int getPrefetchQueueOccupancy();
+
+    int getPrefetchQueueDepth();
+
+    /**
+     * <p>The time that the step has spent waiting on an empty prefetch queue; if this is growing
+     * then Xero or the parsing is the bottleneck.</p>
+     */
+
+    long getPrefetchConsumerStallMillis();
+
+    /**
+     * <p>The time that the prefetch thread has spent waiting on a full prefetch queue; if this is
+     * growing then the downstream steps are the bottleneck.</p>
+     */
+
+    long getPrefetchProducerStallMillis();
+
+}
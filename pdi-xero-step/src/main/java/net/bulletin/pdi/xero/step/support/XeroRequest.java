@@ -0,0 +1,35 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bulletin.pdi.xero.step.support;
+
+import net.oauth.OAuthException;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+
+/**
+ * <p>This is a single request to the Xero API that the {@link XeroRequestScheduler} may invoke
+ * more than once if the request is throttled.  Each invocation should sign a fresh request because
+ * Xero will reject a nonce that has already been used.</p>
+ *
+ * @author Andrew Lindesay
+ */
+
+public interface XeroRequest<T> {
+
+    T invoke() throws OAuthException, IOException, URISyntaxException;
+
+}
@@ -0,0 +1,157 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bulletin.pdi.xero.step.support;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>These counters record how the requests to Xero were paced.  A request is throttled if it had
+ * to wait for the rate limit or if Xero refused it as being over the limit.  Each attempt after
+ * the first is counted as a retry.</p>
+ *
+ * <p>The bytes of the response bodies are counted both as they came over the network, which may
+ * be compressed, and as they were after they were decompressed.</p>
+ *
+ * @author Andrew Lindesay
+ */
+
+public class XeroRequestCounters {
+
+    private final AtomicLong requests = new AtomicLong(0);
+
+    private final AtomicLong throttledRequests = new AtomicLong(0);
+
+    private final AtomicLong retriedRequests = new AtomicLong(0);
+
+    private final AtomicLong waitNanos = new AtomicLong(0);
+
+    private final AtomicLong encodedBytes = new AtomicLong(0);
+
+    private final AtomicLong decodedBytes = new AtomicLong(0);
+
+    void incrementRequests() {
+        requests.incrementAndGet();
+    }
+
+    void incrementThrottledRequests() {
+        throttledRequests.incrementAndGet();
+    }
+
+    void incrementRetriedRequests() {
+        retriedRequests.incrementAndGet();
+    }
+
+    void addWaitNanos(long nanos) {
+        waitNanos.addAndGet(nanos);
+    }
+
+    /**
+     * @return a stream that counts the bytes read from the supplied stream as they came over the
+     * network.
+     */
+
+    InputStream countEncodedBytes(InputStream inputStream) {
+        return new CountingInputStream(inputStream, encodedBytes);
+    }
+
+    /**
+     * @return a stream that counts the bytes read from the supplied stream as they were after
+     * they were decompressed.
+     */
+
+    public InputStream countDecodedBytes(InputStream inputStream) {
+        return new CountingInputStream(inputStream, decodedBytes);
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getThrottledRequests() {
+        return throttledRequests.get();
+    }
+
+    public long getRetriedRequests() {
+        return retriedRequests.get();
+    }
+
+    public long getWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(waitNanos.get());
+    }
+
+    public long getEncodedBytes() {
+        return encodedBytes.get();
+    }
+
+    public long getDecodedBytes() {
+        return decodedBytes.get();
+    }
+
+    @Override
+    public String toString() {
+        return "xero requests " + getRequests()
+                + "; throttled " + getThrottledRequests()
+                + "; retried " + getRetriedRequests()
+                + "; waiting for the rate limit " + getWaitMillis() + "ms"
+                + "; received " + getEncodedBytes() + " bytes"
+                + "; decompressed " + getDecodedBytes() + " bytes";
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+
+        private final AtomicLong count;
+
+        CountingInputStream(InputStream in, AtomicLong count) {
+            super(in);
+            this.count = count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int result = super.read();
+
+            if (-1 != result) {
+                count.incrementAndGet();
+            }
+
+            return result;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int result = super.read(b, off, len);
+
+            if (result > 0) {
+                count.addAndGet(result);
+            }
+
+            return result;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long result = super.skip(n);
+            count.addAndGet(result);
+            return result;
+        }
+
+    }
+
+}
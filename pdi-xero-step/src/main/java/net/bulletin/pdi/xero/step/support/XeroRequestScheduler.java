@@ -0,0 +1,200 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.bulletin.pdi.xero.step.support;
+
+import net.oauth.OAuthException;
+import net.oauth.OAuthProblemException;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>This paces the requests to a single Xero organisation so that they stay within Xero's
+ * per-minute and per-day limits.  There is one scheduler per consumer key in the JVM so that
+ * step copies, pages and transformations that run at the same time share the limits.  The
+ * limits in effect are the lowest that any caller has asked for.</p>
+ *
+ * <p>If Xero refuses a request as being over the limit (HTTP 429) or as being unavailable
+ * (HTTP 503) then the request is retried after the time in the "Retry-After" header or, if there
+ * is no such header, after an exponential backoff with jitter.  A request that fails with an I/O
+ * error is also retried in this way; this is safe because the requests are GETs.</p>
+ *
+ * @author Andrew Lindesay
+ */
+
+public class XeroRequestScheduler {
+
+    private final static int HTTP_STATUS_TOO_MANY_REQUESTS = 429;
+
+    private final static int HTTP_STATUS_SERVICE_UNAVAILABLE = 503;
+
+    private final static long BACKOFF_BASE_MILLIS = 1000;
+
+    private final static long BACKOFF_MAX_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * <p>If Xero asks for a longer wait than this, typically because the daily limit has been
+     * reached, then the request fails rather than waiting.</p>
+     */
+
+    private final static long RETRY_AFTER_MAX_MILLIS = TimeUnit.MINUTES.toMillis(15);
+
+    private final static ConcurrentMap<String, XeroRequestScheduler> SCHEDULERS =
+            new ConcurrentHashMap<String, XeroRequestScheduler>();
+
+    private final TokenBucket minuteTokenBucket;
+
+    private final TokenBucket dayTokenBucket;
+
+    private final Random random = new Random();
+
+    public XeroRequestScheduler(int limitPerMinute, int limitPerDay) {
+        this.minuteTokenBucket = new TokenBucket(limitPerMinute, 1, TimeUnit.MINUTES);
+        this.dayTokenBucket = new TokenBucket(limitPerDay, 1, TimeUnit.DAYS);
+    }
+
+    /**
+     * <p>A caller that asks for lower limits than those of the existing scheduler for the
+     * consumer key lowers them for every caller.  Higher limits are ignored because another
+     * caller may be relying on the lower ones.</p>
+     */
+
+    public static XeroRequestScheduler getInstance(String consumerKey, int limitPerMinute, int limitPerDay) {
+        XeroRequestScheduler result = SCHEDULERS.get(consumerKey);
+
+        if (null == result) {
+            XeroRequestScheduler scheduler = new XeroRequestScheduler(limitPerMinute, limitPerDay);
+            result = SCHEDULERS.putIfAbsent(consumerKey, scheduler);
+
+            if (null == result) {
+                return scheduler;
+            }
+        }
+
+        result.lowerLimits(limitPerMinute, limitPerDay);
+        return result;
+    }
+
+    /**
+     * @return true if either of the limits was lowered.
+     */
+
+    public boolean lowerLimits(int limitPerMinute, int limitPerDay) {
+        boolean minuteLowered = minuteTokenBucket.lowerCapacity(limitPerMinute, 1, TimeUnit.MINUTES);
+        boolean dayLowered = dayTokenBucket.lowerCapacity(limitPerDay, 1, TimeUnit.DAYS);
+        return minuteLowered || dayLowered;
+    }
+
+    private void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting to make a request to xero");
+        }
+    }
+
+    private void acquire(XeroRequestCounters counters) throws IOException {
+        try {
+            long waitNanos = minuteTokenBucket.acquire() + dayTokenBucket.acquire();
+
+            if (waitNanos > 0) {
+                counters.incrementThrottledRequests();
+                counters.addWaitNanos(waitNanos);
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for the xero rate limit");
+        }
+    }
+
+    /**
+     * @return the milliseconds to wait before the next attempt where the attempt is zero-based.
+     */
+
+    long getBackoffMillis(int attempt) {
+        long ceiling = Math.min(BACKOFF_MAX_MILLIS, BACKOFF_BASE_MILLIS << Math.min(attempt, 16));
+        return ceiling / 2 + (long) (random.nextDouble() * (ceiling / 2));
+    }
+
+    private boolean isThrottled(OAuthProblemException ope) {
+        int status = ope.getHttpStatusCode();
+        return HTTP_STATUS_TOO_MANY_REQUESTS == status || HTTP_STATUS_SERVICE_UNAVAILABLE == status;
+    }
+
+    private long getRetryAfterMillis(OAuthProblemException ope) {
+        Object response = ope.getParameters().get(OAuthProblemException.HTTP_RESPONSE);
+        long retryAfterSeconds = Helpers.parseRetryAfterSeconds(null == response ? null : response.toString());
+        return -1 == retryAfterSeconds ? -1 : TimeUnit.SECONDS.toMillis(retryAfterSeconds);
+    }
+
+    /**
+     * <p>This method may be invoked concurrently.</p>
+     *
+     * @param maxRetries is the number of times that the request may be retried after the first
+     *                   attempt.
+     */
+
+    public <T> T execute(
+            XeroRequest<T> request,
+            int maxRetries,
+            XeroRequestCounters counters) throws OAuthException, IOException, URISyntaxException {
+
+        for (int attempt = 0; ; attempt++) {
+            acquire(counters);
+            counters.incrementRequests();
+
+            if (attempt > 0) {
+                counters.incrementRetriedRequests();
+            }
+
+            try {
+                return request.invoke();
+            } catch (OAuthProblemException ope) {
+                if (!isThrottled(ope) || attempt >= maxRetries) {
+                    throw ope;
+                }
+
+                long retryAfterMillis = getRetryAfterMillis(ope);
+
+                if (retryAfterMillis > RETRY_AFTER_MAX_MILLIS) {
+                    throw ope;
+                }
+
+                counters.incrementThrottledRequests();
+
+                // jitter is added to the retry-after so that concurrent requests do not all
+                // return to xero at the same moment.
+
+                sleep(-1 == retryAfterMillis
+                        ? getBackoffMillis(attempt)
+                        : retryAfterMillis + (long) (random.nextDouble() * BACKOFF_BASE_MILLIS));
+            } catch (IOException ioe) {
+                if (attempt >= maxRetries || Thread.currentThread().isInterrupted()) {
+                    throw ioe;
+                }
+
+                sleep(getBackoffMillis(attempt));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,71 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.bulletin.pdi.xero.step;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.pentaho.di.core.row.ValueMeta;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * @author Andrew Lindesay
+ */
+
+public class XeroGetStepFieldTest {
+
+    private final static String VALUE = "2015-08-13T03:05:56";
+
+    private Object convert(XeroGetStepField field, String value) throws Exception {
+        return field.createValueMeta("test").convertDataFromString(
+                value,
+                new ValueMeta(field.getName(), ValueMetaInterface.TYPE_STRING),
+                null,
+                null,
+                ValueMetaInterface.TRIM_TYPE_NONE);
+    }
+
+    @Test
+    public void testCreateValueMeta_utcDate() throws Exception {
+        XeroGetStepField field = new XeroGetStepField(
+                "updated", "UpdatedDateUTC", ValueMetaInterface.TYPE_DATE, null);
+
+        // ---------------------------------
+        Object value = convert(field, VALUE);
+        // ---------------------------------
+
+        Assert.assertTrue(field.isUtc());
+        Assert.assertEquals(new Date(1439435156000L), value);
+    }
+
+    @Test
+    public void testCreateValueMeta_localDate() throws Exception {
+        XeroGetStepField field = new XeroGetStepField(
+                "date", "Date", ValueMetaInterface.TYPE_DATE, null);
+
+        // ---------------------------------
+        Object value = convert(field, VALUE);
+        // ---------------------------------
+
+        Assert.assertFalse(field.isUtc());
+        Assert.assertEquals(new SimpleDateFormat(XeroGetStepField.FORMAT_DATE_XERO).parse(VALUE), value);
+    }
+
+}
@@ -0,0 +1,119 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.bulletin.pdi.xero.step;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMeta;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * @author Andrew Lindesay
+ */
+
+public class XeroGetStepMetaTest {
+
+    private XeroGetStepMeta createMeta() {
+        XeroGetStepMeta result = new XeroGetStepMeta();
+        result.setDefault();
+        result.setXmlFieldName("xml");
+        result.setOutputFields(Collections.singletonList(
+                new XeroGetStepField("name", "Name", ValueMetaInterface.TYPE_STRING, null)));
+        return result;
+    }
+
+    private RowMetaInterface createInputRowMeta(String... names) {
+        RowMetaInterface result = new RowMeta();
+
+        for (String name : names) {
+            result.addValueMeta(new ValueMeta(name, ValueMetaInterface.TYPE_STRING));
+        }
+
+        return result;
+    }
+
+    /**
+     * <p>This is the layout that Spoon shows to the steps downstream; it should be the same as
+     * the layout of the rows that the step puts out when it runs.</p>
+     */
+
+    private String[] getFieldNames(XeroGetStepMeta meta, RowMetaInterface inputRowMeta) throws Exception {
+        meta.getFields(inputRowMeta, "xero", null, null, null, null, null);
+        return inputRowMeta.getFieldNames();
+    }
+
+    @Test
+    public void testGetFields() throws Exception {
+        XeroGetStepMeta meta = createMeta();
+
+        // ---------------------------------
+        String[] names = getFieldNames(meta, createInputRowMeta("unrelated"));
+        // ---------------------------------
+
+        Assert.assertEquals(Arrays.asList("xml", "name"), Arrays.asList(names));
+        Assert.assertEquals(
+                Arrays.asList(names),
+                Arrays.asList(meta.createOutputRowMeta(null, "xero", null).getFieldNames()));
+    }
+
+    /**
+     * <p>The input rows that supply the tenants do not flow through the step.</p>
+     */
+
+    @Test
+    public void testGetFields_tenanted() throws Exception {
+        XeroGetStepMeta meta = createMeta();
+        meta.setTenantIdFieldName("tenant");
+        meta.setTenantKeyFileFieldName("keyfile");
+
+        // ---------------------------------
+        String[] names = getFieldNames(meta, createInputRowMeta("tenant", "keyfile"));
+        // ---------------------------------
+
+        Assert.assertEquals(Arrays.asList("xml", "name", "tenant"), Arrays.asList(names));
+        Assert.assertEquals(
+                Arrays.asList(names),
+                Arrays.asList(meta.createOutputRowMeta(null, "xero", null).getFieldNames()));
+    }
+
+    /**
+     * <p>The fields of the input rows that supply the ids lead each output row.</p>
+     */
+
+    @Test
+    public void testGetFields_fetchingByIds() throws Exception {
+        XeroGetStepMeta meta = createMeta();
+        meta.setIdFieldName("id");
+        meta.setIdPath("InvoiceID");
+
+        // ---------------------------------
+        String[] names = getFieldNames(meta, createInputRowMeta("id", "note"));
+        // ---------------------------------
+
+        Assert.assertEquals(Arrays.asList("id", "note", "xml", "name"), Arrays.asList(names));
+        Assert.assertEquals(
+                Arrays.asList(names),
+                Arrays.asList(meta.createOutputRowMeta(createInputRowMeta("id", "note"), "xero", null).getFieldNames()));
+    }
+
+}
@@ -0,0 +1,310 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.bulletin.pdi.xero.step.support;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.CharEncoding;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.xml.stream.XMLInputFactory;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Stack;
+
+/**
+ * <p>The byte range chunker should produce exactly the same output as the StAX chunker and so
+ * these tests run both over the same input and compare the results.</p>
+ *
+ * @author Andrew Lindesay
+ */
+
+public class ByteRangeXMLChunkerTest {
+
+    /**
+     * <p>This XML has a number of constructs that the StAX writer will write differently to how
+     * they appear in the input.</p>
+     */
+
+    private final static String XML_AWKWARD = "<?xml version=\"1.0\" encoding='UTF-8'?>\r\n"
+            + "<!DOCTYPE Response [ <!ELEMENT Response ANY> ]>\n"
+            + "<Response xmlns:x=\"urn:x\"><Items>"
+            + "<Item b = 'q\"q' a=\"&lt;&gt;&amp;&quot;'&#9;x\ty\r\nz\" xmlns=\"urn:y\" >"
+            + "A &amp; B &gt; C &quot;q&quot; &apos;&#169;&#x1F600; \u00e9\u4e2d > ]]&gt;"
+            + "<Empty/><E2 a='1' /><![CDATA[cd<>&\r\n]]></Item  >"
+            + "<Item><!--c\r\nd--><?pi   data  ?><?q?>line1\r\nline2\rline3\n</Item>"
+            + "<Item/>"
+            + "</Items></Response>\n<!-- trailing -->";
+
+    private byte[] readSampleXml() throws IOException {
+        InputStream inputStream = null;
+
+        try {
+            inputStream = ByteRangeXMLChunkerTest.class.getResourceAsStream("/sample_xml_a.xml");
+            return IOUtils.toByteArray(inputStream);
+        } finally {
+            if (null != inputStream) {
+                inputStream.close();
+            }
+        }
+    }
+
+    private Stack<String> createStack(String... elements) {
+        Stack<String> result = new Stack<String>();
+
+        for (String element : elements) {
+            result.push(element);
+        }
+
+        return result;
+    }
+
+    private List<String> pullAllXmlChunks(XMLChunker chunker) throws Exception {
+        List<String> result = new ArrayList<String>();
+        String xml;
+
+        while (null != (xml = chunker.pullNextXmlChunk())) {
+            result.add(xml);
+        }
+
+        chunker.close();
+        return result;
+    }
+
+    private List<XMLChunk> pullAllChunks(XMLChunker chunker) throws Exception {
+        List<XMLChunk> result = new ArrayList<XMLChunk>();
+        XMLChunk chunk;
+
+        while (null != (chunk = chunker.pullNextChunk())) {
+            result.add(chunk);
+        }
+
+        chunker.close();
+        return result;
+    }
+
+    private ElementPath[] createFieldPaths(String... paths) {
+        ElementPath[] result = new ElementPath[paths.length];
+
+        for (int i = 0; i < paths.length; i++) {
+            result[i] = new ElementPath(paths[i].split("/"));
+        }
+
+        return result;
+    }
+
+    /**
+     * <p>This stream only provides a few bytes at a time so that the chunker has to deal with
+     * constructs that span the boundaries of its buffer.</p>
+     */
+
+    private InputStream createTricklingInputStream(byte[] data) {
+        return new FilterInputStream(new ByteArrayInputStream(data)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 3));
+            }
+        };
+    }
+
+    private void checkSameAsXMLChunkerImpl(byte[] xml, Stack<String> expectedContainerElementsStack) throws Exception {
+        List<String> expected = pullAllXmlChunks(new XMLChunkerImpl(
+                XMLInputFactory.newInstance().createXMLStreamReader(new ByteArrayInputStream(xml)),
+                expectedContainerElementsStack));
+
+        // ---------------------------------
+        List<String> actual = pullAllXmlChunks(new ByteRangeXMLChunker(
+                createTricklingInputStream(xml),
+                expectedContainerElementsStack));
+        // ---------------------------------
+
+        Assert.assertFalse("expected some chunks", expected.isEmpty());
+        Assert.assertEquals(expected, actual);
+    }
+
+    private void checkFieldsSameAsXMLChunkerImpl(byte[] xml, Stack<String> expectedContainerElementsStack, ElementPath[] fieldPaths) throws Exception {
+        checkFieldsSameAsXMLChunkerImpl(xml, expectedContainerElementsStack, fieldPaths, true);
+    }
+
+    private void checkFieldsSameAsXMLChunkerImpl(
+            byte[] xml,
+            Stack<String> expectedContainerElementsStack,
+            ElementPath[] fieldPaths,
+            boolean xmlIncluded) throws Exception {
+        List<XMLChunk> expected = pullAllChunks(new XMLChunkerImpl(
+                XMLInputFactory.newInstance().createXMLStreamReader(new ByteArrayInputStream(xml)),
+                new ElementPath(expectedContainerElementsStack),
+                fieldPaths,
+                xmlIncluded,
+                null));
+
+        // ---------------------------------
+        List<XMLChunk> actual = pullAllChunks(new ByteRangeXMLChunker(
+                createTricklingInputStream(xml),
+                new ElementPath(expectedContainerElementsStack),
+                fieldPaths,
+                xmlIncluded));
+        // ---------------------------------
+
+        Assert.assertFalse("expected some chunks", expected.isEmpty());
+        Assert.assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testPullNextChunk_sampleWithFields() throws Exception {
+        checkFieldsSameAsXMLChunkerImpl(
+                readSampleXml(),
+                createStack("Response", "Artists", "Artist"),
+                createFieldPaths("Name", "Genres/Genre", "Genres", "Missing"));
+    }
+
+    @Test
+    public void testPullNextChunk_awkwardWithFields() throws Exception {
+        checkFieldsSameAsXMLChunkerImpl(
+                XML_AWKWARD.getBytes(CharEncoding.UTF_8),
+                createStack("Response", "Items"),
+                createFieldPaths("Item", "Item/Empty", "Item/E2", "Missing"));
+    }
+
+    /**
+     * <p>Without the XML, the chunker empties its buffer as it goes and so the text of a field
+     * that is spread across many pieces of markup has to be collected as it passes.</p>
+     */
+
+    @Test
+    public void testPullNextChunk_sampleWithFieldsOnly() throws Exception {
+        checkFieldsSameAsXMLChunkerImpl(
+                readSampleXml(),
+                createStack("Response"),
+                createFieldPaths("Artists/Artist/Name", "Artists/Artist/Genres", "Artists", "Missing"),
+                false);
+    }
+
+    @Test
+    public void testPullNextChunk_awkwardWithFieldsOnly() throws Exception {
+        checkFieldsSameAsXMLChunkerImpl(
+                XML_AWKWARD.getBytes(CharEncoding.UTF_8),
+                createStack("Response", "Items"),
+                createFieldPaths("Item", "Item/Empty", "Item/E2", "Missing"),
+                false);
+    }
+
+    /**
+     * <p>When the chunks are carried as UTF-8 bytes, both chunkers should produce the same bytes
+     * as would be had from encoding the string form.</p>
+     */
+
+    @Test
+    public void testPullNextChunk_awkwardAsUtf8() throws Exception {
+        byte[] xml = XML_AWKWARD.getBytes(CharEncoding.UTF_8);
+        ElementPath containerPath = new ElementPath(createStack("Response", "Items", "Item"));
+        ElementPath[] fieldPaths = createFieldPaths("E2");
+        List<XMLChunk> expected = pullAllChunks(new XMLChunkerImpl(
+                XMLInputFactory.newInstance().createXMLStreamReader(new ByteArrayInputStream(xml)),
+                containerPath, fieldPaths, true, null));
+
+        // ---------------------------------
+        List<XMLChunk> actualStax = pullAllChunks(new XMLChunkerImpl(
+                XMLInputFactory.newInstance().createXMLStreamReader(new ByteArrayInputStream(xml)),
+                containerPath, fieldPaths, true, true, null));
+        List<XMLChunk> actualByteRange = pullAllChunks(new ByteRangeXMLChunker(
+                createTricklingInputStream(xml), containerPath, fieldPaths, true, true));
+        // ---------------------------------
+
+        Assert.assertEquals(3, expected.size());
+        Assert.assertEquals(expected, actualStax);
+        Assert.assertEquals(expected, actualByteRange);
+
+        for (int i = 0; i < expected.size(); i++) {
+            byte[] expectedUtf8 = expected.get(i).getXml().getBytes(CharEncoding.UTF_8);
+            Assert.assertArrayEquals(expectedUtf8, actualStax.get(i).getXmlUtf8());
+            Assert.assertArrayEquals(expectedUtf8, actualByteRange.get(i).getXmlUtf8());
+            Assert.assertEquals(expectedUtf8.length, actualByteRange.get(i).getXmlLength());
+        }
+    }
+
+    /**
+     * <p>Each line item should follow its invoice and carry the invoice's fields.  Both chunkers
+     * should produce the same chunks.</p>
+     */
+
+    @Test
+    public void testPullNextChunk_withChildren() throws Exception {
+        byte[] xml = ("<Response><Invoices>"
+                + "<Invoice><InvoiceID>a</InvoiceID><LineItems>"
+                + "<LineItem><Description>a1</Description></LineItem>"
+                + "<LineItem><Description>a2</Description><Tracking><Option>t</Option></Tracking></LineItem>"
+                + "</LineItems></Invoice>"
+                + "<Invoice><LineItems/><InvoiceID>b</InvoiceID></Invoice>"
+                + "</Invoices></Response>").getBytes(CharEncoding.UTF_8);
+        ElementPath containerPath = new ElementPath(createStack("Response", "Invoices", "Invoice"));
+        ElementPath[] childPaths = new ElementPath[] {
+                new ElementPath(createStack("Response", "Invoices", "Invoice", "LineItems", "LineItem")),
+                new ElementPath(createStack("Response", "Invoices", "Invoice", "LineItems", "LineItem", "Tracking", "Option"))
+        };
+        ElementPath[] fieldPaths = createFieldPaths("InvoiceID");
+        XMLChunkerImpl staxChunker = new XMLChunkerImpl(
+                XMLInputFactory.newInstance().createXMLStreamReader(new ByteArrayInputStream(xml)),
+                containerPath, fieldPaths, false, null);
+        staxChunker.setChildContainerPaths(childPaths);
+        ByteRangeXMLChunker byteRangeChunker = new ByteRangeXMLChunker(
+                createTricklingInputStream(xml), containerPath, fieldPaths, false);
+        byteRangeChunker.setChildContainerPaths(childPaths);
+
+        // ---------------------------------
+        List<XMLChunk> actualStax = pullAllChunks(staxChunker);
+        List<XMLChunk> actualByteRange = pullAllChunks(byteRangeChunker);
+        // ---------------------------------
+
+        String declaration = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
+        String[] a = new String[] { "a" };
+        List<XMLChunk> expected = new ArrayList<XMLChunk>();
+        expected.add(new XMLChunk(null, a));
+        expected.add(new XMLChunk(declaration + "<LineItem><Description>a1</Description></LineItem>").withContainer(1, a));
+        expected.add(new XMLChunk(declaration + "<Option>t</Option>").withContainer(2, a));
+        expected.add(new XMLChunk(declaration + "<LineItem><Description>a2</Description><Tracking><Option>t</Option></Tracking></LineItem>").withContainer(1, a));
+        expected.add(new XMLChunk(null, new String[] { "b" }));
+
+        Assert.assertEquals(expected, actualStax);
+        Assert.assertEquals(expected, actualByteRange);
+    }
+
+    @Test
+    public void testPullNextXmlChunk_sampleWithContainerElements() throws Exception {
+        checkSameAsXMLChunkerImpl(readSampleXml(), createStack("Response", "Artists", "Artist"));
+    }
+
+    @Test
+    public void testPullNextXmlChunk_sampleWithoutContainerElements() throws Exception {
+        checkSameAsXMLChunkerImpl(readSampleXml(), createStack());
+    }
+
+    @Test
+    public void testPullNextXmlChunk_awkwardWithContainerElements() throws Exception {
+        checkSameAsXMLChunkerImpl(XML_AWKWARD.getBytes(CharEncoding.UTF_8), createStack("Response", "Items", "Item"));
+    }
+
+    @Test
+    public void testPullNextXmlChunk_awkwardWithoutContainerElements() throws Exception {
+        checkSameAsXMLChunkerImpl(XML_AWKWARD.getBytes(CharEncoding.UTF_8), createStack());
+    }
+
+}
@@ -0,0 +1,94 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.bulletin.pdi.xero.step.support;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+/**
+ * @author Andrew Lindesay
+ */
+
+public class ChangeIndexTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File file;
+
+    @Before
+    public void setUp() {
+        file = new File(temporaryFolder.getRoot(), "changeindex.bin");
+    }
+
+    @Test
+    public void testObserve() throws Exception {
+        ChangeIndex changeIndex = new ChangeIndex(file);
+        changeIndex.load();
+
+        // ---------------------------------
+        ChangeIndex.Change first = changeIndex.observe("a", 10L);
+        ChangeIndex.Change same = changeIndex.observe("a", 10L);
+        ChangeIndex.Change changed = changeIndex.observe("a", 11L);
+        ChangeIndex.Change zero = changeIndex.observe("b", 0L);
+        ChangeIndex.Change zeroAgain = changeIndex.observe("b", 0L);
+        // ---------------------------------
+
+        Assert.assertEquals(ChangeIndex.Change.NEW, first);
+        Assert.assertEquals(ChangeIndex.Change.UNCHANGED, same);
+        Assert.assertEquals(ChangeIndex.Change.CHANGED, changed);
+        Assert.assertEquals(ChangeIndex.Change.NEW, zero);
+        Assert.assertEquals(ChangeIndex.Change.UNCHANGED, zeroAgain);
+        Assert.assertEquals(2, changeIndex.size());
+        Assert.assertEquals(2, changeIndex.getNewCount());
+        Assert.assertEquals(1, changeIndex.getChangedCount());
+        Assert.assertEquals(2, changeIndex.getUnchangedCount());
+    }
+
+    /**
+     * <p>Enough records are stored that the table has to grow a number of times and these should
+     * all be read back from the file.</p>
+     */
+
+    @Test
+    public void testCommit() throws Exception {
+        ChangeIndex changeIndex = new ChangeIndex(file);
+
+        for (int i = 0; i < 5000; i++) {
+            changeIndex.observe("record-" + i, i * 7919L);
+        }
+
+        // ---------------------------------
+        changeIndex.commit();
+        ChangeIndex reloaded = new ChangeIndex(file);
+        reloaded.load();
+        // ---------------------------------
+
+        Assert.assertEquals(5000, reloaded.size());
+        Assert.assertEquals(ChangeIndex.Change.UNCHANGED, reloaded.observe("record-12", 12 * 7919L));
+        Assert.assertEquals(ChangeIndex.Change.CHANGED, reloaded.observe("record-13", 1L));
+        Assert.assertEquals(ChangeIndex.Change.NEW, reloaded.observe("record-5000", 1L));
+        Assert.assertEquals(8 + 5000 * 16, file.length());
+    }
+
+}
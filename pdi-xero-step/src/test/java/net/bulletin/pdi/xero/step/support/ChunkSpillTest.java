@@ -0,0 +1,185 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.bulletin.pdi.xero.step.support;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.CharEncoding;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.xml.stream.XMLInputFactory;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.Stack;
+
+/**
+ * <p>Each chunker should write out a chunk that is larger than the threshold into a file with
+ * exactly the same content as it would otherwise have held in memory.</p>
+ *
+ * @author Andrew Lindesay
+ */
+
+public class ChunkSpillTest {
+
+    private final static int THRESHOLD = 100;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File directory;
+
+    @Before
+    public void setUp() {
+        directory = new File(temporaryFolder.getRoot(), "chunkspill");
+    }
+
+    private String createXml(int items) {
+        StringBuilder result = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?><Response><Items>");
+
+        for (int i = 0; i < items; i++) {
+            result.append("<Item><Name>n").append(i).append(" \u00e9</Name></Item>");
+        }
+
+        return result.append("</Items></Response>").toString();
+    }
+
+    private void checkSpilled(XMLChunk expected, XMLChunk actual) throws Exception {
+        Assert.assertNotNull(expected.getXml());
+        Assert.assertNull(expected.getSpillFile());
+        Assert.assertNull(actual.getXml());
+        Assert.assertNotNull(actual.getSpillFile());
+        Assert.assertEquals(directory, actual.getSpillFile().getParentFile());
+        Assert.assertEquals(expected.getXml(), FileUtils.readFileToString(actual.getSpillFile(), CharEncoding.UTF_8));
+        Assert.assertEquals(expected.getXmlUtf8().length, actual.getXmlLength());
+    }
+
+    @Test
+    public void testSpillingOutputStream() throws Exception {
+        ChunkSpill chunkSpill = new ChunkSpill(directory, THRESHOLD, ".xml");
+        ChunkSpill.SpillingOutputStream small = chunkSpill.createOutputStream();
+        ChunkSpill.SpillingOutputStream large = chunkSpill.createOutputStream();
+
+        // ---------------------------------
+        small.write(new byte[THRESHOLD]);
+        small.close();
+        large.write(new byte[THRESHOLD]);
+        large.write(1);
+        large.close();
+        // ---------------------------------
+
+        Assert.assertFalse(small.isSpilled());
+        Assert.assertEquals(THRESHOLD, small.toByteArray().length);
+        Assert.assertTrue(large.isSpilled());
+        Assert.assertNull(large.toByteArray());
+        Assert.assertEquals(THRESHOLD + 1, large.getFile().length());
+        Assert.assertTrue(large.getFile().getName().endsWith(".xml"));
+
+        large.abandon();
+        Assert.assertFalse(large.getFile().exists());
+    }
+
+    @Test
+    public void testByteRangeXMLChunker() throws Exception {
+        byte[] xml = createXml(50).getBytes(CharEncoding.UTF_8);
+        XMLChunk expected = new ByteRangeXMLChunker(new ByteArrayInputStream(xml), new Stack<String>()).pullNextChunk();
+        ByteRangeXMLChunker chunker = new ByteRangeXMLChunker(
+                new ByteArrayInputStream(xml),
+                new ElementPath(new Stack<String>()),
+                new ElementPath[] { new ElementPath(new String[] { "Items", "Item", "Name" }) },
+                true);
+        chunker.setChunkSpill(new ChunkSpill(directory, THRESHOLD, ".xml"));
+
+        // ---------------------------------
+        XMLChunk actual = chunker.pullNextChunk();
+        // ---------------------------------
+
+        checkSpilled(expected, actual);
+        Assert.assertEquals("n0 \u00e9", actual.getFieldValue(0));
+        Assert.assertNull(chunker.pullNextChunk());
+        chunker.close();
+    }
+
+    @Test
+    public void testXMLChunkerImpl() throws Exception {
+        byte[] xml = createXml(50).getBytes(CharEncoding.UTF_8);
+        XMLChunk expected = new XMLChunkerImpl(
+                XMLInputFactory.newInstance().createXMLStreamReader(new ByteArrayInputStream(xml)),
+                new Stack<String>()).pullNextChunk();
+        XMLChunkerImpl chunker = new XMLChunkerImpl(
+                XMLInputFactory.newInstance().createXMLStreamReader(new ByteArrayInputStream(xml)),
+                new ElementPath(new Stack<String>()));
+        chunker.setChunkSpill(new ChunkSpill(directory, THRESHOLD, ".xml"));
+
+        // ---------------------------------
+        XMLChunk actual = chunker.pullNextChunk();
+        // ---------------------------------
+
+        checkSpilled(expected, actual);
+        chunker.close();
+    }
+
+    /**
+     * <p>Chunks that are smaller than the threshold should stay in memory.</p>
+     */
+
+    @Test
+    public void testXMLChunkerImpl_small() throws Exception {
+        byte[] xml = createXml(50).getBytes(CharEncoding.UTF_8);
+        XMLChunkerImpl chunker = new XMLChunkerImpl(
+                XMLInputFactory.newInstance().createXMLStreamReader(new ByteArrayInputStream(xml)),
+                new ElementPath(new String[] { "Response", "Items", "Item" }));
+        chunker.setChunkSpill(new ChunkSpill(directory, THRESHOLD, ".xml"));
+
+        // ---------------------------------
+        XMLChunk actual = chunker.pullNextChunk();
+        // ---------------------------------
+
+        Assert.assertNull(actual.getSpillFile());
+        Assert.assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?><Item><Name>n0 \u00e9</Name></Item>", actual.getXml());
+        chunker.close();
+    }
+
+    @Test
+    public void testJSONChunker() throws Exception {
+        StringBuilder json = new StringBuilder("{\"Invoices\":[{\"Lines\":[");
+
+        for (int i = 0; i < 50; i++) {
+            json.append(0 == i ? "" : ",").append("{\"Desc\":\"l").append(i).append(" \\u00e9 \u00e9\"}");
+        }
+
+        json.append("]}]}");
+        String invoice = json.substring(13, json.length() - 2);
+        JSONChunker chunker = new JSONChunker(
+                new ByteArrayInputStream(json.toString().getBytes(CharEncoding.UTF_8)),
+                new ElementPath(new String[] { "Invoices" }),
+                null,
+                true);
+        chunker.setChunkSpill(new ChunkSpill(directory, THRESHOLD, ".json"));
+
+        // ---------------------------------
+        XMLChunk actual = chunker.pullNextChunk();
+        // ---------------------------------
+
+        checkSpilled(new XMLChunk(invoice), actual);
+        Assert.assertNull(chunker.pullNextChunk());
+        chunker.close();
+    }
+
+}
@@ -0,0 +1,138 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.bulletin.pdi.xero.step.support;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.pentaho.di.core.exception.KettleException;
+
+/**
+ * @author Andrew Lindesay
+ */
+
+public class DeferredXMLChunkerTest {
+
+    /**
+     * <p>This provider records the thread on which the chunker was opened and then provides a
+     * chunker over two chunks.</p>
+     */
+
+    private static class RecordingXMLChunkerProvider implements XMLChunkerProvider {
+
+        private final boolean fail;
+
+        private volatile String threadName = null;
+
+        private int opens = 0;
+
+        RecordingXMLChunkerProvider(boolean fail) {
+            this.fail = fail;
+        }
+
+        @Override
+        public XMLChunker open() throws KettleException {
+            threadName = Thread.currentThread().getName();
+            opens++;
+
+            if (fail) {
+                throw new KettleException("simulated failure");
+            }
+
+            return new AbstractXMLChunker() {
+
+                private int pulled = 0;
+
+                @Override
+                public XMLChunk pullNextChunk() throws KettleException {
+                    return pulled < 2 ? new XMLChunk("<Chunk>" + (pulled++) + "</Chunk>") : null;
+                }
+
+                @Override
+                public void close() throws KettleException {
+                }
+            };
+        }
+    }
+
+    /**
+     * <p>Once started, the request should be made on a background thread and the step's thread
+     * should then only wait for it when it pulls the first chunk.</p>
+     */
+
+    @Test
+    public void testPullNextXmlChunk_started() throws Exception {
+        RecordingXMLChunkerProvider provider = new RecordingXMLChunkerProvider(false);
+        DeferredXMLChunker chunker = new DeferredXMLChunker(provider);
+
+        // ---------------------------------
+        chunker.start();
+        chunker.start();
+        String first = chunker.pullNextXmlChunk();
+        String second = chunker.pullNextXmlChunk();
+        String third = chunker.pullNextXmlChunk();
+        // ---------------------------------
+
+        Assert.assertEquals("<Chunk>0</Chunk>", first);
+        Assert.assertEquals("<Chunk>1</Chunk>", second);
+        Assert.assertNull(third);
+        Assert.assertTrue(provider.threadName.startsWith("xero-open-"));
+        Assert.assertEquals(1, provider.opens);
+        chunker.close();
+    }
+
+    /**
+     * <p>If the chunker was never started then the request should be made on the thread that
+     * pulls the first chunk.</p>
+     */
+
+    @Test
+    public void testPullNextXmlChunk_notStarted() throws Exception {
+        RecordingXMLChunkerProvider provider = new RecordingXMLChunkerProvider(false);
+        DeferredXMLChunker chunker = new DeferredXMLChunker(provider);
+
+        // ---------------------------------
+        String first = chunker.pullNextXmlChunk();
+        // ---------------------------------
+
+        Assert.assertEquals("<Chunk>0</Chunk>", first);
+        Assert.assertEquals(Thread.currentThread().getName(), provider.threadName);
+        chunker.close();
+    }
+
+    /**
+     * <p>A failure to make the request should be thrown from the first pull.</p>
+     */
+
+    @Test
+    public void testPullNextXmlChunk_failure() throws Exception {
+        DeferredXMLChunker chunker = new DeferredXMLChunker(new RecordingXMLChunkerProvider(true));
+        chunker.start();
+
+        try {
+            // ---------------------------------
+            chunker.pullNextXmlChunk();
+            // ---------------------------------
+            Assert.fail("expected the failure to be thrown");
+        } catch (KettleException ke) {
+            Assert.assertTrue(ke.getMessage().contains("simulated failure"));
+        } finally {
+            chunker.close();
+        }
+    }
+
+}
@@ -0,0 +1,88 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.bulletin.pdi.xero.step.support;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Andrew Lindesay
+ */
+
+public class ElementPathMatcherTest {
+
+    @Test
+    public void testIsMatched() {
+        ElementPathMatcher matcher = new ElementPathMatcher(new ElementPath(new String[]{"Response", "Items", "Item"}));
+
+        // ---------------------------------
+        matcher.push("Response");
+        boolean atResponse = matcher.isMatched();
+        matcher.push("Items");
+        matcher.push("Item");
+        boolean atItem = matcher.isMatched();
+        matcher.push("Name");
+        boolean atName = matcher.isMatched();
+        matcher.pop();
+        matcher.pop();
+        matcher.push("Other".getBytes(), 0, 5);
+        boolean atOther = matcher.isMatched();
+        matcher.pop();
+        matcher.push("xItemx".getBytes(), 1, 4);
+        boolean atItemBytes = matcher.isMatched();
+        // ---------------------------------
+
+        Assert.assertFalse(atResponse);
+        Assert.assertTrue(atItem);
+        Assert.assertTrue("expected a descendent of the path to also match", atName);
+        Assert.assertFalse(atOther);
+        Assert.assertTrue(atItemBytes);
+        Assert.assertEquals(3, matcher.getDepth());
+    }
+
+    /**
+     * <p>Once the path has diverged, an element with the right name further down should not
+     * match.</p>
+     */
+
+    @Test
+    public void testIsMatched_diverged() {
+        ElementPathMatcher matcher = new ElementPathMatcher(new ElementPath(new String[]{"Response", "Item"}));
+
+        // ---------------------------------
+        matcher.push("Response");
+        matcher.push("Other");
+        matcher.push("Item");
+        // ---------------------------------
+
+        Assert.assertFalse(matcher.isMatched());
+    }
+
+    @Test
+    public void testIsMatched_root() {
+        ElementPathMatcher matcher = new ElementPathMatcher(ElementPath.ROOT);
+
+        // ---------------------------------
+        matcher.push("Response");
+        // ---------------------------------
+
+        Assert.assertTrue(matcher.isMatched());
+        Assert.assertEquals("/", ElementPath.ROOT.toString());
+    }
+
+}
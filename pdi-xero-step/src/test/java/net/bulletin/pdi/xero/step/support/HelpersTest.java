@@ -16,8 +16,14 @@
 
 package net.bulletin.pdi.xero.step.support;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.CharEncoding;
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
 
 /**
  * @author Andrew Lindesay
@@ -25,6 +31,9 @@ import org.junit.Test;
 
 public class HelpersTest {
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     @Test
     public void testObfuscateAuthenticationDetailForLog_withoutMarkers() {
         String input = "456789abcdefghijklmnopqrstuvwxyz0123456789abcdefghijklmnopqrstuv"
@@ -51,4 +60,61 @@ public class HelpersTest {
         Assert.assertEquals("45...23", result);
     }
 
+    @Test
+    public void testParseRetryAfterSeconds() {
+        String input = "HTTP 429 Too Many Requests\r\n"
+                + "Content-Type: text/html\r\n"
+                + "retry-after:  37 \r\n"
+                + "X-Rate-Limit-Problem: minute\r\n";
+
+        // ------------------------------------------------------
+        long result = Helpers.parseRetryAfterSeconds(input);
+        // ------------------------------------------------------
+
+        Assert.assertEquals(37L, result);
+    }
+
+    @Test
+    public void testParseRetryAfterSeconds_missing() {
+
+        // ------------------------------------------------------
+        long result = Helpers.parseRetryAfterSeconds("HTTP 503 Service Unavailable\r\nRetry-After: Fri, 31 Dec 1999 23:59:59 GMT\r\n");
+        // ------------------------------------------------------
+
+        Assert.assertEquals(-1L, result);
+    }
+
+    @Test
+    public void testConvertJsonDateToXml() {
+
+        // ------------------------------------------------------
+        String result = Helpers.convertJsonDateToXml("/Date(1439434356790+0000)/");
+        // ------------------------------------------------------
+
+        Assert.assertEquals("2015-08-13T02:52:36", result);
+        Assert.assertEquals("2015-08-13T00:00:00", Helpers.convertJsonDateToXml("/Date(1439424000000)/"));
+        Assert.assertEquals("2015-08-13T02:52:36", Helpers.convertJsonDateToXml("2015-08-13T02:52:36"));
+        Assert.assertNull(Helpers.convertJsonDateToXml(null));
+    }
+
+    /**
+     * <p>The temporary file should replace the existing file.</p>
+     */
+
+    @Test
+    public void testMoveIntoPlace() throws Exception {
+        File file = temporaryFolder.newFile("target.txt");
+        FileUtils.writeStringToFile(file, "old", CharEncoding.UTF_8);
+        File temporaryFile = temporaryFolder.newFile("target.txt.tmp");
+        FileUtils.writeStringToFile(temporaryFile, "new", CharEncoding.UTF_8);
+
+        // ------------------------------------------------------
+        boolean result = Helpers.moveIntoPlace(temporaryFile, file);
+        // ------------------------------------------------------
+
+        Assert.assertTrue(result);
+        Assert.assertEquals("new", FileUtils.readFileToString(file, CharEncoding.UTF_8));
+        Assert.assertFalse(temporaryFile.exists());
+    }
+
 }
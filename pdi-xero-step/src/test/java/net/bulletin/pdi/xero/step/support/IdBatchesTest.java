@@ -0,0 +1,123 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.bulletin.pdi.xero.step.support;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author Andrew Lindesay
+ */
+
+public class IdBatchesTest {
+
+    private IdBatches createIdBatches(int batchSize, String... ids) {
+        IdBatches result = new IdBatches(batchSize);
+
+        for (int i = 0; i < ids.length; i++) {
+            result.add(ids[i], new Object[] { ids[i], (long) i });
+        }
+
+        return result;
+    }
+
+    @Test
+    public void testAdd_splitsIntoBatches() {
+
+        // ---------------------------------
+        IdBatches idBatches = createIdBatches(2, "a", "b", "c", "d", "e");
+        // ---------------------------------
+
+        Assert.assertEquals(3, idBatches.getBatchCount());
+        Assert.assertEquals(Arrays.asList("a", "b"), idBatches.getBatch(0));
+        Assert.assertEquals(Arrays.asList("c", "d"), idBatches.getBatch(1));
+        Assert.assertEquals(Arrays.asList("e"), idBatches.getBatch(2));
+    }
+
+    /**
+     * <p>An id that is supplied again, even in a different case, should not take another place in
+     * a batch, but its row should still be joined.</p>
+     */
+
+    @Test
+    public void testAdd_withDuplicateIds() {
+
+        // ---------------------------------
+        IdBatches idBatches = createIdBatches(2, "a", "B", "A", "b", "c");
+        // ---------------------------------
+
+        Assert.assertEquals(2, idBatches.getBatchCount());
+        Assert.assertEquals(Arrays.asList("a", "B"), idBatches.getBatch(0));
+        Assert.assertEquals(Arrays.asList("c"), idBatches.getBatch(1));
+        Assert.assertEquals(2, idBatches.getRows("a").size());
+        Assert.assertEquals(2, idBatches.getRows("b").size());
+        Assert.assertEquals(1, idBatches.getRows("c").size());
+    }
+
+    /**
+     * <p>Xero may write the id back in a different case to that in which it was supplied.</p>
+     */
+
+    @Test
+    public void testGetRows_joinsOnLowerCase() {
+        IdBatches idBatches = createIdBatches(10, "297c2dc5-cc47-4afd-8ec8-74990b8761e9", "X");
+
+        // ---------------------------------
+        Object[] row = idBatches.getRows("297C2DC5-CC47-4AFD-8EC8-74990B8761E9").get(0);
+        // ---------------------------------
+
+        Assert.assertEquals("297c2dc5-cc47-4afd-8ec8-74990b8761e9", row[0]);
+        Assert.assertEquals(1, idBatches.getRows("x").size());
+        Assert.assertTrue(idBatches.getRows("y").isEmpty());
+        Assert.assertTrue(idBatches.getRows(null).isEmpty());
+    }
+
+    @Test
+    public void testGetUnresolvedRows() {
+        IdBatches idBatches = createIdBatches(2, "a", "b", "c", "B");
+        idBatches.markResolved("A");
+        idBatches.markResolved("c");
+        idBatches.markResolved("z");
+
+        // ---------------------------------
+        List<Object[]> rows = idBatches.getUnresolvedRows();
+        // ---------------------------------
+
+        Assert.assertEquals(2, rows.size());
+        Assert.assertEquals("b", rows.get(0)[0]);
+        Assert.assertEquals("B", rows.get(1)[0]);
+    }
+
+    @Test
+    public void testCreateBatchUrl() {
+        IdBatches idBatches = createIdBatches(2, "a1", "b2", "c3");
+
+        // ---------------------------------
+        String url = idBatches.createBatchUrl("https://api.xero.com/api.xro/2.0/Invoices?where=x", "IDs", 0);
+        // ---------------------------------
+
+        Assert.assertEquals("https://api.xero.com/api.xro/2.0/Invoices?where=x&IDs=a1%2Cb2", url);
+        Assert.assertEquals(
+                "https://api.xero.com/api.xro/2.0/Invoices?IDs=c3",
+                idBatches.createBatchUrl("https://api.xero.com/api.xro/2.0/Invoices", "IDs", 1));
+    }
+
+}
@@ -0,0 +1,185 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.bulletin.pdi.xero.step.support;
+
+import org.apache.commons.lang.CharEncoding;
+import org.junit.Assert;
+import org.junit.Test;
+import org.pentaho.di.core.exception.KettleException;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author Andrew Lindesay
+ */
+
+public class JSONChunkerTest {
+
+    private final static String INVOICE_A = "{\"InvoiceID\":\"a\",\"Contact\":{\"Name\":\"A \\\"q\\\" \\u00e9\\/\"},"
+            + "\"Total\":12.5,\"Lines\":[{\"Desc\":\"l1\"},{\"Desc\":\"l2\"}],\"Reference\":null}";
+
+    private final static String INVOICE_B = "{ \"InvoiceID\" : \"b\", \"Lines\" : [ ], \"Total\" : -3 }";
+
+    private final static String JSON_INVOICES = "{\"Id\":\"f1\",\"Status\":\"OK\",\"Nested\":{\"Invoices\":[{}]},"
+            + "\"Invoices\":[ " + INVOICE_A + " ,\n" + INVOICE_B + "\n]}\n";
+
+    /**
+     * <p>This stream only provides a few bytes at a time so that the chunker has to deal with
+     * values that span the boundaries of its buffer.</p>
+     */
+
+    private InputStream createTricklingInputStream(String json) throws IOException {
+        return new FilterInputStream(new ByteArrayInputStream(json.getBytes(CharEncoding.UTF_8))) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 3));
+            }
+        };
+    }
+
+    private ElementPath[] createFieldPaths(String... paths) {
+        ElementPath[] result = new ElementPath[paths.length];
+
+        for (int i = 0; i < paths.length; i++) {
+            result[i] = new ElementPath(paths[i].split("/"));
+        }
+
+        return result;
+    }
+
+    private List<XMLChunk> pullAllChunks(JSONChunker chunker) throws Exception {
+        List<XMLChunk> result = new ArrayList<XMLChunk>();
+        XMLChunk chunk;
+
+        while (null != (chunk = chunker.pullNextChunk())) {
+            result.add(chunk);
+        }
+
+        chunker.close();
+        return result;
+    }
+
+    @Test
+    public void testPullNextChunk_withFields() throws Exception {
+        JSONChunker chunker = new JSONChunker(
+                createTricklingInputStream(JSON_INVOICES),
+                new ElementPath(new String[] { "Invoices" }),
+                createFieldPaths("InvoiceID", "Contact/Name", "Total", "Lines/Desc", "Reference", "Missing"),
+                true);
+
+        // ---------------------------------
+        List<XMLChunk> chunks = pullAllChunks(chunker);
+        // ---------------------------------
+
+        Assert.assertEquals(
+                Arrays.asList(
+                        new XMLChunk(INVOICE_A, new String[] { "a", "A \"q\" \u00e9/", "12.5", "l1", null, null }),
+                        new XMLChunk(INVOICE_B, new String[] { "b", null, "-3", null, null, null })),
+                chunks);
+    }
+
+    @Test
+    public void testPullNextChunk_withoutJson() throws Exception {
+        JSONChunker chunker = new JSONChunker(
+                createTricklingInputStream(JSON_INVOICES),
+                new ElementPath(new String[] { "Invoices" }),
+                createFieldPaths("InvoiceID"),
+                false);
+
+        // ---------------------------------
+        List<XMLChunk> chunks = pullAllChunks(chunker);
+        // ---------------------------------
+
+        Assert.assertEquals(
+                Arrays.asList(new XMLChunk(null, new String[] { "a" }), new XMLChunk(null, new String[] { "b" })),
+                chunks);
+    }
+
+    @Test
+    public void testPullNextChunk_rootArray() throws Exception {
+        JSONChunker chunker = new JSONChunker(
+                createTricklingInputStream("[" + INVOICE_B + "," + INVOICE_A + "]"),
+                ElementPath.ROOT,
+                null,
+                true);
+
+        // ---------------------------------
+        List<XMLChunk> chunks = pullAllChunks(chunker);
+        // ---------------------------------
+
+        Assert.assertEquals(Arrays.asList(new XMLChunk(INVOICE_B), new XMLChunk(INVOICE_A)), chunks);
+    }
+
+    @Test
+    public void testPullNextChunk_singleObject() throws Exception {
+        JSONChunker chunker = new JSONChunker(
+                createTricklingInputStream("{\"Organisation\":" + INVOICE_B + "}"),
+                new ElementPath(new String[] { "Organisation" }),
+                createFieldPaths("InvoiceID"),
+                true);
+
+        // ---------------------------------
+        List<XMLChunk> chunks = pullAllChunks(chunker);
+        // ---------------------------------
+
+        Assert.assertEquals(Arrays.asList(new XMLChunk(INVOICE_B, new String[] { "b" })), chunks);
+    }
+
+    @Test
+    public void testPullNextChunk_missingOrEmpty() throws Exception {
+        for (String json : new String[] { "{\"Id\":\"f1\"}", "{\"Invoices\":[]}", "{}", "[]" }) {
+
+            // ---------------------------------
+            List<XMLChunk> chunks = pullAllChunks(new JSONChunker(
+                    createTricklingInputStream(json),
+                    new ElementPath(new String[] { "Invoices" }),
+                    null,
+                    true));
+            // ---------------------------------
+
+            Assert.assertTrue("expected no chunks for " + json, chunks.isEmpty());
+        }
+    }
+
+    @Test
+    public void testPullNextChunk_truncated() throws Exception {
+        JSONChunker chunker = new JSONChunker(
+                createTricklingInputStream("{\"Invoices\":[" + INVOICE_B + "," + INVOICE_A.substring(0, 30)),
+                new ElementPath(new String[] { "Invoices" }),
+                null,
+                true);
+        Assert.assertEquals(new XMLChunk(INVOICE_B), chunker.pullNextChunk());
+
+        try {
+            // ---------------------------------
+            chunker.pullNextChunk();
+            // ---------------------------------
+            Assert.fail("expected the truncated json to fail");
+        } catch (KettleException ke) {
+            // expected
+        } finally {
+            chunker.close();
+        }
+    }
+
+}
@@ -0,0 +1,69 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.bulletin.pdi.xero.step.support;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Andrew Lindesay
+ */
+
+public class PageCoordinatorTest {
+
+    @Test
+    public void testClaimPage() {
+        PageCoordinator pageCoordinator = new PageCoordinator();
+        Assert.assertEquals(1, pageCoordinator.claimPage());
+        Assert.assertEquals(2, pageCoordinator.claimPage());
+        Assert.assertEquals(3, pageCoordinator.claimPage());
+
+        // ---------------------------------
+        pageCoordinator.markLastPage(2);
+        // ---------------------------------
+
+        Assert.assertEquals(-1, pageCoordinator.claimPage());
+    }
+
+    @Test
+    public void testAcquire() {
+        Object owner = new Object();
+        Object otherOwner = new Object();
+
+        // ---------------------------------
+        PageCoordinator first = PageCoordinator.acquire(owner, "Xero GET");
+        PageCoordinator second = PageCoordinator.acquire(owner, "Xero GET");
+        PageCoordinator otherName = PageCoordinator.acquire(owner, "Xero GET 2");
+        PageCoordinator otherOwnerCoordinator = PageCoordinator.acquire(otherOwner, "Xero GET");
+        // ---------------------------------
+
+        Assert.assertSame(first, second);
+        Assert.assertNotSame(first, otherName);
+        Assert.assertNotSame(first, otherOwnerCoordinator);
+
+        PageCoordinator.release(owner, "Xero GET");
+        Assert.assertSame(first, PageCoordinator.acquire(owner, "Xero GET"));
+        PageCoordinator.release(owner, "Xero GET");
+        PageCoordinator.release(owner, "Xero GET");
+        Assert.assertNotSame("expected a new instance once all were released", first, PageCoordinator.acquire(owner, "Xero GET"));
+
+        PageCoordinator.release(owner, "Xero GET");
+        PageCoordinator.release(owner, "Xero GET 2");
+        PageCoordinator.release(otherOwner, "Xero GET");
+    }
+
+}
@@ -0,0 +1,241 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.bulletin.pdi.xero.step.support;
+
+import org.apache.commons.lang.CharEncoding;
+import org.junit.Assert;
+import org.junit.Test;
+import org.pentaho.di.core.exception.KettleException;
+
+import javax.xml.stream.XMLInputFactory;
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Stack;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Andrew Lindesay
+ */
+
+public class PagingXMLChunkerTest {
+
+    private final static int PAGE_SIZE = 3;
+
+    private Stack<String> createExpectedContainerElementsStack() {
+        Stack<String> result = new Stack<String>();
+        result.push("Response");
+        result.push("Contacts");
+        result.push("Contact");
+        return result;
+    }
+
+    /**
+     * <p>This provider simulates a Xero endpoint that has a given number of contacts.  Each contact
+     * has a name that is its ordinal position in the whole data set.</p>
+     */
+
+    private static class FakePageProvider implements XMLChunkerPageProvider {
+
+        private final int totalContacts;
+
+        private final Stack<String> expectedContainerElementsStack;
+
+        private final AtomicInteger pagesOpened = new AtomicInteger(0);
+
+        private int phonesPerContact = 0;
+
+        FakePageProvider(int totalContacts, Stack<String> expectedContainerElementsStack) {
+            this.totalContacts = totalContacts;
+            this.expectedContainerElementsStack = expectedContainerElementsStack;
+        }
+
+        /**
+         * <p>Each contact then has this many phones which are split out as child records.</p>
+         */
+
+        void setPhonesPerContact(int phonesPerContact) {
+            this.phonesPerContact = phonesPerContact;
+        }
+
+        @Override
+        public XMLChunker openPage(int page) throws KettleException {
+            pagesOpened.incrementAndGet();
+            StringBuilder xml = new StringBuilder("<Response><Contacts>");
+
+            for (int i = (page - 1) * PAGE_SIZE; i < Math.min(totalContacts, page * PAGE_SIZE); i++) {
+                xml.append("<Contact><Name>").append(i).append("</Name><Phones>");
+
+                for (int j = 0; j < phonesPerContact; j++) {
+                    xml.append("<Phone>").append(j).append("</Phone>");
+                }
+
+                xml.append("</Phones></Contact>");
+            }
+
+            xml.append("</Contacts></Response>");
+
+            try {
+                XMLChunkerImpl result = new XMLChunkerImpl(
+                        XMLInputFactory.newInstance().createXMLStreamReader(
+                                new ByteArrayInputStream(xml.toString().getBytes(CharEncoding.UTF_8))),
+                        expectedContainerElementsStack);
+                result.setChildContainerPaths(new ElementPath[] {
+                        new ElementPath(new String[] { "Response", "Contacts", "Contact", "Phones", "Phone" })
+                });
+                return result;
+            } catch (Exception e) {
+                throw new KettleException(e);
+            }
+        }
+
+    }
+
+    private List<String> pullAllXmlChunks(XMLChunker chunker) throws KettleException {
+        List<String> result = new ArrayList<String>();
+        String xml;
+
+        while (null != (xml = chunker.pullNextXmlChunk())) {
+            result.add(xml);
+        }
+
+        chunker.close();
+        return result;
+    }
+
+    private void checkChunksAreInOrder(List<String> chunks, int expectedCount) {
+        Assert.assertEquals(expectedCount, chunks.size());
+
+        for (int i = 0; i < expectedCount; i++) {
+            Assert.assertTrue(
+                    "the chunk " + i + " is out of order; " + chunks.get(i),
+                    chunks.get(i).contains("<Name>" + i + "</Name>"));
+        }
+    }
+
+    /**
+     * <p>The last page is short and so the paging should stop there with all of the contacts
+     * emitted in order.</p>
+     */
+
+    @Test
+    public void testPullNextXmlChunk_withShortLastPage() throws Exception {
+        FakePageProvider pageProvider = new FakePageProvider(11, createExpectedContainerElementsStack());
+
+        // ---------------------------------
+        List<String> chunks = pullAllXmlChunks(new PagingXMLChunker(pageProvider, PAGE_SIZE, 2));
+        // ---------------------------------
+
+        checkChunksAreInOrder(chunks, 11);
+    }
+
+    /**
+     * <p>The child records on the short last page should not make it look full and so the paging
+     * should stop there without asking for another page.</p>
+     */
+
+    @Test
+    public void testPullNextXmlChunk_withShortLastPageOfChildRecords() throws Exception {
+        FakePageProvider pageProvider = new FakePageProvider(11, createExpectedContainerElementsStack());
+        pageProvider.setPhonesPerContact(2);
+        PagingXMLChunker chunker = new PagingXMLChunker(pageProvider, PAGE_SIZE, 1);
+        int records = 0;
+        int childRecords = 0;
+        XMLChunk chunk;
+
+        // ---------------------------------
+        while (null != (chunk = chunker.pullNextChunk())) {
+            if (0 == chunk.getContainerIndex()) {
+                records++;
+            } else {
+                childRecords++;
+            }
+        }
+        // ---------------------------------
+
+        chunker.close();
+        Assert.assertEquals(11, records);
+        Assert.assertEquals(22, childRecords);
+        Assert.assertEquals(4, pageProvider.pagesOpened.get());
+    }
+
+    /**
+     * <p>The last page with data in it is full and so the paging should continue onto the empty
+     * page that follows it before stopping.</p>
+     */
+
+    @Test
+    public void testPullNextXmlChunk_withEmptyLastPage() throws Exception {
+        FakePageProvider pageProvider = new FakePageProvider(12, createExpectedContainerElementsStack());
+
+        // ---------------------------------
+        List<String> chunks = pullAllXmlChunks(new PagingXMLChunker(pageProvider, PAGE_SIZE, 4));
+        // ---------------------------------
+
+        checkChunksAreInOrder(chunks, 12);
+        Assert.assertTrue("expected the empty fifth page to have been opened", pageProvider.pagesOpened.get() >= 5);
+    }
+
+    /**
+     * <p>Two chunkers share the pages between them as two copies of the step would; between them
+     * they should produce each of the contacts exactly once.</p>
+     */
+
+    @Test
+    public void testPullNextXmlChunk_withSharedPageCoordinator() throws Exception {
+        FakePageProvider pageProvider = new FakePageProvider(20, createExpectedContainerElementsStack());
+        PageCoordinator pageCoordinator = new PageCoordinator();
+        XMLChunker[] chunkers = new XMLChunker[] {
+                new PagingXMLChunker(pageProvider, PAGE_SIZE, 2, pageCoordinator),
+                new PagingXMLChunker(pageProvider, PAGE_SIZE, 2, pageCoordinator)
+        };
+        List<Integer> names = new ArrayList<Integer>();
+        int[] counts = new int[chunkers.length];
+        boolean more = true;
+
+        // ---------------------------------
+        while (more) {
+            more = false;
+
+            for (int i = 0; i < chunkers.length; i++) {
+                String xml = chunkers[i].pullNextXmlChunk();
+
+                if (null != xml) {
+                    more = true;
+                    counts[i]++;
+                    names.add(Integer.parseInt(xml.replaceAll("^.*<Name>([0-9]+)</Name>.*$", "$1")));
+                }
+            }
+        }
+        // ---------------------------------
+
+        for (XMLChunker chunker : chunkers) {
+            chunker.close();
+        }
+
+        Collections.sort(names);
+        Assert.assertEquals(20, names.size());
+
+        for (int i = 0; i < 20; i++) {
+            Assert.assertEquals(Integer.valueOf(i), names.get(i));
+        }
+
+        Assert.assertTrue("expected both chunkers to have done some of the work", counts[0] > 0 && counts[1] > 0);
+    }
+
+}
@@ -0,0 +1,189 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.bulletin.pdi.xero.step.support;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import net.oauth.http.HttpMessage;
+import net.oauth.http.HttpResponseMessage;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.CharEncoding;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * @author Andrew Lindesay
+ */
+
+public class PooledHttpClientTest {
+
+    private final static String BODY = "<Response><Contacts><Contact/></Contacts></Response>";
+
+    private HttpServer httpServer;
+
+    private int gzipRequests = 0;
+
+    @Before
+    public void setUp() throws IOException {
+        httpServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        httpServer.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] body = BODY.getBytes(CharEncoding.UTF_8);
+                String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+
+                if (null != acceptEncoding && acceptEncoding.contains("gzip")) {
+                    gzipRequests++;
+                    exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+                    exchange.sendResponseHeaders(200, 0);
+                    GZIPOutputStream outputStream = new GZIPOutputStream(exchange.getResponseBody());
+                    outputStream.write(body);
+                    outputStream.close();
+                } else {
+                    exchange.sendResponseHeaders(200, body.length);
+                    OutputStream outputStream = exchange.getResponseBody();
+                    outputStream.write(body);
+                    outputStream.close();
+                }
+            }
+        });
+        httpServer.start();
+    }
+
+    @After
+    public void tearDown() {
+        httpServer.stop(0);
+    }
+
+    private String get(PooledHttpClient client) throws IOException {
+        URL url = new URL("http://127.0.0.1:" + httpServer.getAddress().getPort() + "/api.xro/2.0/Contacts");
+        HttpResponseMessage response = client.execute(
+                new HttpMessage("GET", url),
+                Collections.<String, Object>emptyMap());
+        Assert.assertEquals(200, response.getStatusCode());
+        InputStream inputStream = response.getBody();
+
+        try {
+            return IOUtils.toString(inputStream, CharEncoding.UTF_8);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * <p>The response is compressed and so should be decompressed and, having been read to the
+     * end, the connection should be back in the pool to be re-used by the second request.</p>
+     */
+
+    @Test
+    public void testExecute() throws Exception {
+        PooledHttpClient client = new PooledHttpClient(2, 60);
+
+        // ---------------------------------
+        String first = get(client);
+        String second = get(client);
+        // ---------------------------------
+
+        Assert.assertEquals(BODY, first);
+        Assert.assertEquals(BODY, second);
+        Assert.assertEquals(2, gzipRequests);
+        Assert.assertEquals(0, client.getLeasedConnections());
+        Assert.assertEquals(1, client.getAvailableConnections());
+    }
+
+    private int gzipLength(String value) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        GZIPOutputStream outputStream = new GZIPOutputStream(result);
+        outputStream.write(value.getBytes(CharEncoding.UTF_8));
+        outputStream.close();
+        return result.size();
+    }
+
+    /**
+     * <p>The compressed bytes should be counted and, because the body is decompressed here, the
+     * headers should no longer say that it is compressed.</p>
+     */
+
+    @Test
+    public void testExecute_withRequestCounters() throws Exception {
+        PooledHttpClient client = new PooledHttpClient(1, 60);
+        XeroRequestCounters requestCounters = new XeroRequestCounters();
+        URL url = new URL("http://127.0.0.1:" + httpServer.getAddress().getPort() + "/");
+
+        // ---------------------------------
+        HttpResponseMessage response = client.execute(
+                new HttpMessage("GET", url),
+                Collections.<String, Object>singletonMap(PooledHttpClient.REQUEST_COUNTERS, requestCounters));
+        InputStream inputStream = requestCounters.countDecodedBytes(response.getBody());
+        String body = IOUtils.toString(inputStream, CharEncoding.UTF_8);
+        inputStream.close();
+        // ---------------------------------
+
+        Assert.assertEquals(BODY, body);
+        Assert.assertNull(response.getHeader("Content-Encoding"));
+        Assert.assertEquals(gzipLength(BODY), requestCounters.getEncodedBytes());
+        Assert.assertEquals(BODY.length(), requestCounters.getDecodedBytes());
+        Assert.assertEquals(1, client.getAvailableConnections());
+    }
+
+    @Test
+    public void testExecute_withTimeouts() throws Exception {
+        PooledHttpClient client = new PooledHttpClient(1, 60);
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put(PooledHttpClient.CONNECT_TIMEOUT, 5000);
+        parameters.put(PooledHttpClient.READ_TIMEOUT, 5000);
+        URL url = new URL("http://127.0.0.1:" + httpServer.getAddress().getPort() + "/");
+
+        // ---------------------------------
+        HttpResponseMessage response = client.execute(new HttpMessage("GET", url), parameters);
+        // ---------------------------------
+
+        Assert.assertEquals(200, response.getStatusCode());
+        response.getBody().close();
+    }
+
+    /**
+     * <p>A caller with different settings should not be handed the pool of an earlier caller.</p>
+     */
+
+    @Test
+    public void testGetInstance() {
+
+        // ---------------------------------
+        PooledHttpClient client = PooledHttpClient.getInstance(3, 31);
+        // ---------------------------------
+
+        Assert.assertSame(client, PooledHttpClient.getInstance(3, 31));
+        Assert.assertNotSame(client, PooledHttpClient.getInstance(4, 31));
+        Assert.assertNotSame(client, PooledHttpClient.getInstance(3, 32));
+    }
+
+}
@@ -0,0 +1,221 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.bulletin.pdi.xero.step.support;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.pentaho.di.core.exception.KettleException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Andrew Lindesay
+ */
+
+public class PrefetchingXMLChunkerTest {
+
+    /**
+     * <p>This chunker produces a fixed number of chunks and then will optionally fail.  It may
+     * also fail as it is closed.</p>
+     */
+
+    private static class CountingXMLChunker extends AbstractXMLChunker {
+
+        private final int count;
+
+        private final boolean failAtEnd;
+
+        private final boolean failAtClose;
+
+        private int pulled = 0;
+
+        private boolean closed = false;
+
+        CountingXMLChunker(int count, boolean failAtEnd) {
+            this(count, failAtEnd, false);
+        }
+
+        CountingXMLChunker(int count, boolean failAtEnd, boolean failAtClose) {
+            this.count = count;
+            this.failAtEnd = failAtEnd;
+            this.failAtClose = failAtClose;
+        }
+
+        @Override
+        public XMLChunk pullNextChunk() throws KettleException {
+            if (pulled < count) {
+                return new XMLChunk("<Chunk>" + (pulled++) + "</Chunk>");
+            }
+
+            if (failAtEnd) {
+                throw new KettleException("simulated failure");
+            }
+
+            return null;
+        }
+
+        @Override
+        public void close() throws KettleException {
+            closed = true;
+
+            if (failAtClose) {
+                throw new KettleException("simulated close failure");
+            }
+        }
+    }
+
+    /**
+     * <p>This chunker produces chunks that have been spilled into files and records the threads
+     * that used it.</p>
+     */
+
+    private static class SpillingXMLChunker extends AbstractXMLChunker {
+
+        private final List<File> spillFiles = new ArrayList<File>();
+
+        private final List<Thread> pullingThreads = new ArrayList<Thread>();
+
+        private final List<Thread> closingThreads = new ArrayList<Thread>();
+
+        @Override
+        public synchronized XMLChunk pullNextChunk() throws KettleException {
+            pullingThreads.add(Thread.currentThread());
+
+            try {
+                File spillFile = File.createTempFile("prefetch", ".xml");
+                spillFiles.add(spillFile);
+                return XMLChunk.fromSpillFile(spillFile, new String[0]);
+            } catch (IOException ioe) {
+                throw new KettleException(ioe);
+            }
+        }
+
+        @Override
+        public synchronized void close() throws KettleException {
+            closingThreads.add(Thread.currentThread());
+        }
+    }
+
+    /**
+     * <p>The queue is much smaller than the number of chunks so the producer will have to wait for
+     * the consumer.  The chunks should arrive in the same order that they were produced.</p>
+     */
+
+    @Test
+    public void testPullNextXmlChunk_inOrder() throws Exception {
+        CountingXMLChunker delegate = new CountingXMLChunker(1000, false);
+        PrefetchingXMLChunker chunker = new PrefetchingXMLChunker(delegate, 4);
+
+        // ---------------------------------
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals("<Chunk>" + i + "</Chunk>", chunker.pullNextXmlChunk());
+        }
+
+        String last = chunker.pullNextXmlChunk();
+        chunker.close();
+        // ---------------------------------
+
+        Assert.assertNull("expected the last chunk to be null", last);
+        Assert.assertNull("expected the chunker to remain at the end", chunker.pullNextXmlChunk());
+        Assert.assertTrue("expected the delegate to be closed", delegate.closed);
+        Assert.assertEquals(4, chunker.getQueueDepth());
+    }
+
+    /**
+     * <p>A failure in the producer should be surfaced to the consumer after the chunks that were
+     * produced before the failure.</p>
+     */
+
+    @Test
+    public void testPullNextXmlChunk_producerFailure() throws Exception {
+        PrefetchingXMLChunker chunker = new PrefetchingXMLChunker(new CountingXMLChunker(2, true), 8);
+
+        Assert.assertEquals("<Chunk>0</Chunk>", chunker.pullNextXmlChunk());
+        Assert.assertEquals("<Chunk>1</Chunk>", chunker.pullNextXmlChunk());
+
+        try {
+            // ---------------------------------
+            chunker.pullNextXmlChunk();
+            // ---------------------------------
+            Assert.fail("expected the failure from the producer to be thrown");
+        } catch (KettleException ke) {
+            Assert.assertTrue(ke.getMessage().contains("simulated failure"));
+        } finally {
+            chunker.close();
+        }
+    }
+
+    /**
+     * <p>Where the delegate also fails as it is closed, the consumer should still see the
+     * failure that stopped the producer.</p>
+     */
+
+    @Test
+    public void testPullNextXmlChunk_producerAndCloseFailure() throws Exception {
+        CountingXMLChunker delegate = new CountingXMLChunker(0, true, true);
+        PrefetchingXMLChunker chunker = new PrefetchingXMLChunker(delegate, 8);
+
+        try {
+            // ---------------------------------
+            chunker.pullNextXmlChunk();
+            // ---------------------------------
+            Assert.fail("expected the failure from the producer to be thrown");
+        } catch (KettleException ke) {
+            Assert.assertTrue(ke.getMessage().contains("simulated failure"));
+        } finally {
+            chunker.close();
+        }
+
+        Assert.assertTrue("expected the delegate to be closed", delegate.closed);
+    }
+
+    /**
+     * <p>The chunker is closed while the producer is waiting on a full queue.  The delegate should
+     * only have been used and closed by the producer and the chunks that were never pulled should
+     * have had their spill files deleted.</p>
+     */
+
+    @Test
+    public void testClose_whileProducing() throws Exception {
+        SpillingXMLChunker delegate = new SpillingXMLChunker();
+        PrefetchingXMLChunker chunker = new PrefetchingXMLChunker(delegate, 2);
+        File pulledSpillFile = chunker.pullNextChunk().getSpillFile();
+        Assert.assertTrue(pulledSpillFile.delete());
+
+        while (chunker.getQueueOccupancy() < chunker.getQueueDepth()) {
+            Thread.sleep(10);
+        }
+
+        // ---------------------------------
+        chunker.close();
+        // ---------------------------------
+
+        synchronized (delegate) {
+            Assert.assertEquals(1, delegate.closingThreads.size());
+            Assert.assertFalse(delegate.closingThreads.contains(Thread.currentThread()));
+            Assert.assertFalse(delegate.pullingThreads.contains(Thread.currentThread()));
+
+            for (File spillFile : delegate.spillFiles) {
+                Assert.assertFalse("expected the spill file to be deleted; " + spillFile, spillFile.exists());
+            }
+        }
+    }
+
+}
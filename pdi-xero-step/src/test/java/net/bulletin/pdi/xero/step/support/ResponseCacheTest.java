@@ -0,0 +1,163 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.bulletin.pdi.xero.step.support;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * @author Andrew Lindesay
+ */
+
+public class ResponseCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File directory;
+
+    @Before
+    public void setUp() {
+        directory = new File(temporaryFolder.getRoot(), "responsecache");
+    }
+
+    private byte[] readBody(ResponseCache responseCache, String key) throws Exception {
+        ResponseCache.Entry entry = responseCache.get(key);
+        Assert.assertNotNull("expected a cached response for " + key, entry);
+        InputStream inputStream = responseCache.openBody(entry);
+
+        try {
+            return IOUtils.toByteArray(inputStream);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private void store(ResponseCache responseCache, String key, String etag, byte[] body) throws Exception {
+        InputStream inputStream = responseCache.store(key, etag, new ByteArrayInputStream(body));
+
+        try {
+            Assert.assertTrue(Arrays.equals(body, IOUtils.toByteArray(inputStream)));
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    @Test
+    public void testCreateKey() {
+
+        // ---------------------------------
+        String key = ResponseCache.createKey("https://api.xero.com/api.xro/2.0/Contacts", "ck", null);
+        // ---------------------------------
+
+        Assert.assertEquals(40, key.length());
+        Assert.assertEquals(key, ResponseCache.createKey("https://api.xero.com/api.xro/2.0/Contacts", "ck", ""));
+        Assert.assertFalse(key.equals(ResponseCache.createKey("https://api.xero.com/api.xro/2.0/Contacts", "ck2", null)));
+        Assert.assertFalse(ResponseCache.createKey("ab", "c").equals(ResponseCache.createKey("a", "bc")));
+    }
+
+    @Test
+    public void testStore() throws Exception {
+        ResponseCache responseCache = new ResponseCache(directory, 1024 * 1024);
+        byte[] body = TestHelpers.createBody(100000);
+
+        // ---------------------------------
+        store(responseCache, "k1", "\"abc\"", body);
+        // ---------------------------------
+
+        Assert.assertEquals(1, responseCache.getStores());
+        Assert.assertEquals("\"abc\"", responseCache.get("k1").getEtag());
+        Assert.assertTrue(Arrays.equals(body, readBody(responseCache, "k1")));
+        Assert.assertNull(responseCache.get("k2"));
+        Assert.assertEquals("expected no temporary files to remain", 2, directory.list().length);
+    }
+
+    @Test
+    public void testStore_closedBeforeEnd() throws Exception {
+        ResponseCache responseCache = new ResponseCache(directory, 1024 * 1024);
+        InputStream inputStream = responseCache.store("k1", null, new ByteArrayInputStream(TestHelpers.createBody(1000000)));
+
+        // ---------------------------------
+        Assert.assertEquals(1000, inputStream.read(new byte[1000]));
+        inputStream.close();
+        // ---------------------------------
+
+        Assert.assertEquals(0, responseCache.getStores());
+        Assert.assertNull(responseCache.get("k1"));
+        Assert.assertEquals("expected no temporary files to remain", 0, directory.list().length);
+    }
+
+    @Test
+    public void testStore_closedJustBeforeEnd() throws Exception {
+        ResponseCache responseCache = new ResponseCache(directory, 1024 * 1024);
+        byte[] body = TestHelpers.createBody(2000);
+        InputStream inputStream = responseCache.store("k1", null, new ByteArrayInputStream(body));
+
+        // ---------------------------------
+        Assert.assertEquals(1000, inputStream.read(new byte[1000]));
+        inputStream.close();
+        // ---------------------------------
+
+        Assert.assertEquals(1, responseCache.getStores());
+        Assert.assertTrue(Arrays.equals(body, readBody(responseCache, "k1")));
+    }
+
+    @Test
+    public void testTouch() throws Exception {
+        ResponseCache responseCache = new ResponseCache(directory, 1024 * 1024);
+        byte[] body = TestHelpers.createBody(1000);
+        store(responseCache, "k1", "\"abc\"", body);
+        Thread.sleep(200);
+        Assert.assertTrue(responseCache.get("k1").getAgeMillis() >= 200);
+
+        // ---------------------------------
+        responseCache.touch(responseCache.get("k1"));
+        // ---------------------------------
+
+        ResponseCache.Entry entry = responseCache.get("k1");
+        Assert.assertTrue(entry.getAgeMillis() < 200);
+        Assert.assertEquals("\"abc\"", entry.getEtag());
+        Assert.assertTrue(Arrays.equals(body, readBody(responseCache, "k1")));
+    }
+
+    @Test
+    public void testStore_evictsLeastRecentlyUsed() throws Exception {
+        ResponseCache responseCache = new ResponseCache(directory, 5000);
+        store(responseCache, "k1", null, TestHelpers.createBody(2000));
+        store(responseCache, "k2", null, TestHelpers.createBody(2001));
+        Assert.assertTrue(new File(directory, "k1.body.gz").setLastModified(System.currentTimeMillis() - 20000));
+        Assert.assertTrue(new File(directory, "k2.body.gz").setLastModified(System.currentTimeMillis() - 10000));
+
+        // ---------------------------------
+        store(responseCache, "k3", null, TestHelpers.createBody(2002));
+        // ---------------------------------
+
+        Assert.assertNull(responseCache.get("k1"));
+        Assert.assertNotNull(responseCache.get("k2"));
+        Assert.assertNotNull(responseCache.get("k3"));
+    }
+
+}
@@ -0,0 +1,107 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.bulletin.pdi.xero.step.support;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * @author Andrew Lindesay
+ */
+
+public class ResponseCaptureTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File directory;
+
+    @Before
+    public void setUp() {
+        directory = new File(temporaryFolder.getRoot(), "responsecapture");
+    }
+
+    private byte[] replay(ResponseCapture responseCapture, String key) throws Exception {
+        InputStream inputStream = responseCapture.replay(key);
+
+        try {
+            return IOUtils.toByteArray(inputStream);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    @Test
+    public void testCaptureAndReplay() throws Exception {
+        ResponseCapture responseCapture = new ResponseCapture(directory);
+        byte[] body = TestHelpers.createBody(300000);
+        InputStream inputStream = responseCapture.capture("k1", new ByteArrayInputStream(body));
+
+        // ---------------------------------
+        byte[] captured = IOUtils.toByteArray(inputStream);
+        inputStream.close();
+        byte[] replayed = replay(responseCapture, "k1");
+        // ---------------------------------
+
+        Assert.assertTrue(Arrays.equals(body, captured));
+        Assert.assertTrue(Arrays.equals(body, replayed));
+        Assert.assertEquals("expected no temporary files to remain", 1, directory.list().length);
+    }
+
+    @Test
+    public void testCapture_closedBeforeEnd() throws Exception {
+        ResponseCapture responseCapture = new ResponseCapture(directory);
+        InputStream inputStream = responseCapture.capture("k1", new ByteArrayInputStream(TestHelpers.createBody(1000000)));
+
+        // ---------------------------------
+        Assert.assertEquals(1000, inputStream.read(new byte[1000]));
+        inputStream.close();
+        // ---------------------------------
+
+        Assert.assertEquals("expected no files to remain", 0, directory.list().length);
+    }
+
+    @Test
+    public void testReplay_empty() throws Exception {
+        ResponseCapture responseCapture = new ResponseCapture(directory);
+        InputStream inputStream = responseCapture.capture("k1", new ByteArrayInputStream(new byte[0]));
+        Assert.assertEquals(-1, inputStream.read());
+        inputStream.close();
+
+        // ---------------------------------
+        byte[] replayed = replay(responseCapture, "k1");
+        // ---------------------------------
+
+        Assert.assertEquals(0, replayed.length);
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void testReplay_notCaptured() throws Exception {
+        new ResponseCapture(directory).replay("k1");
+    }
+
+}
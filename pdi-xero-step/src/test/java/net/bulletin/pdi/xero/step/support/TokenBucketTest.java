@@ -0,0 +1,98 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.bulletin.pdi.xero.step.support;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Andrew Lindesay
+ */
+
+public class TokenBucketTest {
+
+    private final static long SECOND_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * <p>With a capacity of 60 per minute, the first 60 calls can be made at once and the calls
+     * after that are spaced one second apart.</p>
+     */
+
+    @Test
+    public void testReserve_burstThenPaced() {
+        TokenBucket tokenBucket = new TokenBucket(60, 1, TimeUnit.MINUTES);
+        long now = 1000 * SECOND_NANOS;
+
+        // ------------------------------------------------------
+        for (int i = 0; i < 60; i++) {
+            Assert.assertEquals("call " + i, 0L, tokenBucket.reserve(now));
+        }
+
+        long wait61 = tokenBucket.reserve(now);
+        long wait62 = tokenBucket.reserve(now);
+        // ------------------------------------------------------
+
+        Assert.assertEquals(SECOND_NANOS, wait61);
+        Assert.assertEquals(2 * SECOND_NANOS, wait62);
+    }
+
+    /**
+     * <p>After a quiet spell the full capacity is available again.</p>
+     */
+
+    @Test
+    public void testReserve_refills() {
+        TokenBucket tokenBucket = new TokenBucket(2, 2, TimeUnit.SECONDS);
+        long now = 1000 * SECOND_NANOS;
+
+        tokenBucket.reserve(now);
+        tokenBucket.reserve(now);
+
+        // ------------------------------------------------------
+        long waitStillEmpty = tokenBucket.reserve(now + SECOND_NANOS / 2);
+        long waitRefilled = tokenBucket.reserve(now + 10 * SECOND_NANOS);
+        // ------------------------------------------------------
+
+        Assert.assertEquals(SECOND_NANOS / 2, waitStillEmpty);
+        Assert.assertEquals(0L, waitRefilled);
+    }
+
+    /**
+     * <p>Once lowered, the calls should be paced to the lower capacity; raising the capacity
+     * should have no effect.</p>
+     */
+
+    @Test
+    public void testLowerCapacity() {
+        TokenBucket tokenBucket = new TokenBucket(60, 1, TimeUnit.MINUTES);
+        long now = 1000 * SECOND_NANOS;
+
+        // ------------------------------------------------------
+        boolean lowered = tokenBucket.lowerCapacity(2, 1, TimeUnit.MINUTES);
+        boolean raised = tokenBucket.lowerCapacity(120, 1, TimeUnit.MINUTES);
+        // ------------------------------------------------------
+
+        Assert.assertTrue(lowered);
+        Assert.assertFalse(raised);
+        Assert.assertEquals(0L, tokenBucket.reserve(now));
+        Assert.assertEquals(0L, tokenBucket.reserve(now));
+        Assert.assertEquals(30 * SECOND_NANOS, tokenBucket.reserve(now));
+    }
+
+}
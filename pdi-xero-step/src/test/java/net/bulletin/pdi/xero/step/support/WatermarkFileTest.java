@@ -0,0 +1,103 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.bulletin.pdi.xero.step.support;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.CharEncoding;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+/**
+ * @author Andrew Lindesay
+ */
+
+public class WatermarkFileTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File file;
+
+    @Before
+    public void setUp() {
+        file = new File(temporaryFolder.getRoot(), "watermark.txt");
+    }
+
+    @Test
+    public void testParse() throws Exception {
+
+        // ---------------------------------
+        long withFraction = WatermarkFile.parse("2015-06-25T01:49:59.123").getTime();
+        long withoutFraction = WatermarkFile.parse(" 2015-06-25T01:49:59 ").getTime();
+        // ---------------------------------
+
+        GregorianCalendar expected = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+        expected.clear();
+        expected.set(2015, 5, 25, 1, 49, 59);
+
+        Assert.assertEquals(expected.getTimeInMillis(), withFraction);
+        Assert.assertEquals(expected.getTimeInMillis(), withoutFraction);
+    }
+
+    @Test
+    public void testCommit_movesForwardOnly() throws Exception {
+        WatermarkFile watermarkFile = new WatermarkFile(file);
+
+        // ---------------------------------
+        boolean first = watermarkFile.commit("2015-06-25T01:49:59.123");
+        boolean earlier = watermarkFile.commit("2015-06-24T10:00:00");
+        boolean later = watermarkFile.commit("2015-06-26T10:00:00");
+        // ---------------------------------
+
+        Assert.assertTrue(first);
+        Assert.assertFalse(earlier);
+        Assert.assertTrue(later);
+        Assert.assertEquals("2015-06-26T10:00:00", watermarkFile.read());
+        Assert.assertEquals("2015-06-26T10:00:00", FileUtils.readFileToString(file, CharEncoding.UTF_8));
+        Assert.assertEquals("expected no temporary files to remain", 1, countSiblings());
+    }
+
+    private int countSiblings() {
+        int result = 0;
+
+        for (File sibling : file.getParentFile().listFiles()) {
+            if (sibling.getName().startsWith(file.getName())) {
+                result++;
+            }
+        }
+
+        return result;
+    }
+
+    @Test
+    public void testRead_missing() throws Exception {
+
+        // ---------------------------------
+        String value = new WatermarkFile(file).read();
+        // ---------------------------------
+
+        Assert.assertNull(value);
+    }
+
+}
@@ -0,0 +1,246 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.bulletin.pdi.xero.step.support;
+
+import org.apache.commons.lang.CharEncoding;
+import org.junit.Assert;
+import org.junit.Test;
+import org.pentaho.di.core.exception.KettleException;
+
+import javax.xml.stream.XMLInputFactory;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * @author Andrew Lindesay
+ */
+
+public class WorkUnitXMLChunkerTest {
+
+    private final static List<String> TENANT_IDS = Arrays.asList("t0", "t1", "t2", "t3", "t4");
+
+    /**
+     * <p>This provider simulates a number of Xero organisations with each unit of work being one
+     * tenant; the tenant at index n has n contacts.  The tenant at the failing index fails after
+     * producing its contacts.</p>
+     */
+
+    private static class FakeTenantProvider implements XMLChunkerWorkUnitProvider {
+
+        private final int failingTenantIndex;
+
+        private final List<Integer> failedTenantIndexes = Collections.synchronizedList(new ArrayList<Integer>());
+
+        private boolean rethrowingFailure = false;
+
+        FakeTenantProvider(int failingTenantIndex) {
+            this.failingTenantIndex = failingTenantIndex;
+        }
+
+        /**
+         * <p>The failure of a tenant is then thrown on to the puller as the step does when there is
+         * no error handling.</p>
+         */
+
+        void setRethrowingFailure(boolean rethrowingFailure) {
+            this.rethrowingFailure = rethrowingFailure;
+        }
+
+        @Override
+        public XMLChunker openWorkUnit(int tenantIndex) throws KettleException {
+            StringBuilder xml = new StringBuilder("<Response><Contacts>");
+
+            for (int i = 0; i < tenantIndex; i++) {
+                xml.append("<Contact><Name>").append(i).append("</Name></Contact>");
+            }
+
+            if (tenantIndex == failingTenantIndex) {
+                xml.append("<Contact><Name>broken</Contacts>");
+            } else {
+                xml.append("</Contacts></Response>");
+            }
+
+            try {
+                return new TenantTaggingXMLChunker(
+                        new XMLChunkerImpl(
+                                XMLInputFactory.newInstance().createXMLStreamReader(
+                                        new ByteArrayInputStream(xml.toString().getBytes(CharEncoding.UTF_8))),
+                                new ElementPath(new String[]{"Response", "Contacts", "Contact"}),
+                                new ElementPath[]{new ElementPath(new String[]{"Name"})},
+                                false,
+                                null),
+                        TENANT_IDS.get(tenantIndex));
+            } catch (Exception e) {
+                throw new KettleException(e);
+            }
+        }
+
+        @Override
+        public void workUnitFailed(int tenantIndex, KettleException kettleException) throws KettleException {
+            failedTenantIndexes.add(tenantIndex);
+
+            if (rethrowingFailure) {
+                throw new KettleException("tenant failed; " + TENANT_IDS.get(tenantIndex), kettleException);
+            }
+        }
+
+    }
+
+    /**
+     * <p>Each unit of work from this provider produces chunks that have been spilled into files
+     * without end.</p>
+     */
+
+    private static class SpillingWorkUnitProvider implements XMLChunkerWorkUnitProvider {
+
+        private final List<File> spillFiles = Collections.synchronizedList(new ArrayList<File>());
+
+        @Override
+        public XMLChunker openWorkUnit(int workUnitIndex) {
+            return new AbstractXMLChunker() {
+                @Override
+                public XMLChunk pullNextChunk() throws KettleException {
+                    try {
+                        File spillFile = File.createTempFile("workunit", ".xml");
+                        spillFiles.add(spillFile);
+                        return XMLChunk.fromSpillFile(spillFile, new String[0]);
+                    } catch (IOException ioe) {
+                        throw new KettleException(ioe);
+                    }
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+
+        @Override
+        public void workUnitFailed(int workUnitIndex, KettleException kettleException) {
+        }
+
+    }
+
+    private Map<String, List<String>> pullAllNamesByTenant(WorkUnitXMLChunker chunker) throws KettleException {
+        Map<String, List<String>> result = new TreeMap<String, List<String>>();
+        XMLChunk chunk;
+
+        while (null != (chunk = chunker.pullNextChunk())) {
+            List<String> names = result.get(chunk.getTenantId());
+
+            if (null == names) {
+                names = new ArrayList<String>();
+                result.put(chunk.getTenantId(), names);
+            }
+
+            names.add(chunk.getFieldValue(0));
+        }
+
+        chunker.close();
+        return result;
+    }
+
+    /**
+     * <p>The chunks for each tenant should be tagged with the tenant and be in order within the
+     * tenant.  A queue that is smaller than the data means that the workers have to wait.</p>
+     */
+
+    @Test
+    public void testPullNextChunk() throws Exception {
+        FakeTenantProvider tenantProvider = new FakeTenantProvider(-1);
+        WorkUnitXMLChunker chunker = new WorkUnitXMLChunker(tenantProvider, TENANT_IDS.size(), 2, 1);
+
+        // ---------------------------------
+        Map<String, List<String>> namesByTenant = pullAllNamesByTenant(chunker);
+        // ---------------------------------
+
+        Assert.assertEquals(Arrays.asList("t1", "t2", "t3", "t4"), new ArrayList<String>(namesByTenant.keySet()));
+        Assert.assertEquals(Arrays.asList("0", "1", "2", "3"), namesByTenant.get("t4"));
+        Assert.assertEquals(5, chunker.getFinishedWorkUnitCount());
+        Assert.assertEquals(0, chunker.getFailedWorkUnitCount());
+        Assert.assertTrue(tenantProvider.failedTenantIndexes.isEmpty());
+    }
+
+    /**
+     * <p>A tenant that fails should be reported, but should not stop the other tenants.</p>
+     */
+
+    @Test
+    public void testPullNextChunk_withFailingTenant() throws Exception {
+        FakeTenantProvider tenantProvider = new FakeTenantProvider(2);
+        WorkUnitXMLChunker chunker = new WorkUnitXMLChunker(tenantProvider, TENANT_IDS.size(), 3, 10);
+
+        // ---------------------------------
+        Map<String, List<String>> namesByTenant = pullAllNamesByTenant(chunker);
+        // ---------------------------------
+
+        Assert.assertEquals(Arrays.asList("0", "1", "2"), namesByTenant.get("t3"));
+        Assert.assertEquals(Arrays.asList("0", "1", "2", "3"), namesByTenant.get("t4"));
+        Assert.assertEquals(1, chunker.getFailedWorkUnitCount());
+        Assert.assertEquals(Collections.singletonList(2), tenantProvider.failedTenantIndexes);
+    }
+
+    /**
+     * <p>A failure that the provider throws on should stop the pulling of chunks.</p>
+     */
+
+    @Test
+    public void testPullNextChunk_withRethrownFailure() throws Exception {
+        FakeTenantProvider tenantProvider = new FakeTenantProvider(2);
+        tenantProvider.setRethrowingFailure(true);
+        WorkUnitXMLChunker chunker = new WorkUnitXMLChunker(tenantProvider, TENANT_IDS.size(), 3, 10);
+
+        try {
+            // ---------------------------------
+            pullAllNamesByTenant(chunker);
+            // ---------------------------------
+            Assert.fail("expected the failure of the tenant to be thrown");
+        } catch (KettleException ke) {
+            Assert.assertTrue(ke.getMessage().contains("tenant failed; t2"));
+        } finally {
+            chunker.close();
+        }
+    }
+
+    /**
+     * <p>The chunker is closed while the workers are waiting on a full queue.  The chunks that
+     * were never pulled should have had their spill files deleted.</p>
+     */
+
+    @Test
+    public void testClose_whileProducing() throws Exception {
+        SpillingWorkUnitProvider workUnitProvider = new SpillingWorkUnitProvider();
+        WorkUnitXMLChunker chunker = new WorkUnitXMLChunker(workUnitProvider, 3, 3, 2);
+        Assert.assertTrue(chunker.pullNextChunk().discard());
+        Thread.sleep(100);
+
+        // ---------------------------------
+        chunker.close();
+        // ---------------------------------
+
+        synchronized (workUnitProvider.spillFiles) {
+            Assert.assertTrue(workUnitProvider.spillFiles.size() > 1);
+
+            for (File spillFile : workUnitProvider.spillFiles) {
+                Assert.assertFalse("expected the spill file to be deleted; " + spillFile, spillFile.exists());
+            }
+        }
+    }
+
+}
@@ -115,6 +115,76 @@ public class XMLChunkerTest {
 
     }
 
+    /**
+     * <p>The values of the fields are extracted from each chunk as it is read.  Where there are
+     * a number of elements at the path, the first is taken and where there is no element at the
+     * path, the value is null.  The XML is not required in this case.</p>
+     */
+
+    @Test
+    public void testPullNextChunk_withFields() throws Exception {
+        byte[] sampleXml = readSampleXml();
+
+        XMLChunker chunker = new XMLChunkerImpl(
+                XMLInputFactory.newInstance().createXMLStreamReader(new ByteArrayInputStream(sampleXml)), // all in-memory
+                new ElementPath(createExpectedContainerElementsStack()),
+                new ElementPath[]{
+                        new ElementPath(new String[]{"Name"}),
+                        new ElementPath(new String[]{"Genres", "Genre"}),
+                        new ElementPath(new String[]{"Missing"})
+                },
+                false,
+                null);
+
+        // ---------------------------------
+        XMLChunk actuals[] = new XMLChunk[]{
+                chunker.pullNextChunk(),
+                chunker.pullNextChunk(),
+                chunker.pullNextChunk(),
+                chunker.pullNextChunk()
+        };
+        // ---------------------------------
+
+        Assert.assertEquals(new XMLChunk(null, new String[]{"Len Lye", "Kinetic Sculpture", null}), actuals[0]);
+        Assert.assertEquals(new XMLChunk(null, new String[]{"Alexander Caulder", "Sculpture", null}), actuals[1]);
+        Assert.assertEquals(new XMLChunk(null, new String[]{"Marc Chagall", "Painting", null}), actuals[2]);
+        Assert.assertNull("expected the last chunk to be null", actuals[3]);
+    }
+
+    /**
+     * <p>Each of the parsers that is available should produce the same chunks.  The default and
+     * the JDK parsers are always available.</p>
+     */
+
+    @Test
+    public void testPullNextChunk_withEachParser() throws Exception {
+        byte[] sampleXml = readSampleXml();
+
+        Assert.assertTrue(XMLParserBackend.DEFAULT.isAvailable());
+        Assert.assertTrue(XMLParserBackend.JDK.isAvailable());
+
+        for (XMLParserBackend parser : XMLParserBackend.values()) {
+            if (parser.isAvailable()) {
+                XMLChunker chunker = new XMLChunkerImpl(
+                        parser.createXMLInputFactory().createXMLStreamReader(new ByteArrayInputStream(sampleXml)),
+                        new ElementPath(createExpectedContainerElementsStack()),
+                        new ElementPath[]{new ElementPath(new String[]{"Name"})},
+                        true,
+                        null);
+
+                // ---------------------------------
+                XMLChunk first = chunker.pullNextChunk();
+                XMLChunk second = chunker.pullNextChunk();
+                // ---------------------------------
+
+                Assert.assertEquals(parser.name(), "Len Lye", first.getFieldValue(0));
+                checkChunkForArtistDetails(first.getXml(), "Len Lye", new String[]{"Kinetic Sculpture", "Poetry", "Film"});
+                Assert.assertEquals(parser.name(), "Alexander Caulder", second.getFieldValue(0));
+                chunker.close();
+            }
+        }
+    }
+
     /**
      * <p>This test is checking to see that, without any container elements, the chunking will produce one
      * document and that single document should be the whole of the input.</p>
@@ -0,0 +1,82 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.bulletin.pdi.xero.step.support;
+
+import org.apache.commons.lang.CharEncoding;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+
+/**
+ * @author Andrew Lindesay
+ */
+
+public class XMLFactoriesTest {
+
+    /**
+     * <p>The same configured factory should be returned each time.</p>
+     */
+
+    @Test
+    public void testGetXMLInputFactory() throws Exception {
+
+        // ---------------------------------
+        XMLInputFactory first = XMLFactories.getXMLInputFactory(XMLParserBackend.DEFAULT);
+        XMLInputFactory second = XMLFactories.getXMLInputFactory(XMLParserBackend.DEFAULT);
+        // ---------------------------------
+
+        Assert.assertSame(first, second);
+        Assert.assertEquals(Boolean.FALSE, first.getProperty(XMLInputFactory.IS_COALESCING));
+        Assert.assertEquals(Boolean.FALSE, first.getProperty(XMLInputFactory.SUPPORT_DTD));
+        Assert.assertSame(XMLFactories.getXMLOutputFactory(), XMLFactories.getXMLOutputFactory());
+    }
+
+    /**
+     * <p>Because DTDs are not supported, an entity that is declared in the document should not be
+     * expanded.</p>
+     */
+
+    @Test
+    public void testGetXMLInputFactory_dtdNotSupported() throws Exception {
+        String xml = "<!DOCTYPE Response [<!ENTITY secret \"expanded\">]><Response>&secret;</Response>";
+        XMLInputFactory xmlInputFactory = XMLFactories.getXMLInputFactory(XMLParserBackend.JDK);
+        StringBuilder text = new StringBuilder();
+
+        try {
+            // ---------------------------------
+            XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(
+                    new ByteArrayInputStream(xml.getBytes(CharEncoding.UTF_8)));
+
+            while (reader.hasNext()) {
+                if (XMLStreamConstants.CHARACTERS == reader.next()) {
+                    text.append(reader.getText());
+                }
+            }
+            // ---------------------------------
+        } catch (Exception e) {
+            // an undeclared entity may also be reported as an error.
+        }
+
+        Assert.assertFalse(text.toString().contains("expanded"));
+    }
+
+}
@@ -0,0 +1,78 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.bulletin.pdi.xero.step.support;
+
+import org.apache.commons.lang.CharEncoding;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Andrew Lindesay
+ */
+
+public class XXHash64Test {
+
+    /**
+     * <p>These are the published values for the 64 bit xxHash with a seed of zero; the last is
+     * long enough to use the stripes.</p>
+     */
+
+    @Test
+    public void testHash() throws Exception {
+
+        // ---------------------------------
+        long empty = XXHash64.hash(new byte[0]);
+        long abc = XXHash64.hash("abc".getBytes(CharEncoding.UTF_8));
+        long sentence = XXHash64.hash("Nobody inspects the spammish repetition".getBytes(CharEncoding.UTF_8));
+        // ---------------------------------
+
+        Assert.assertEquals(0xEF46DB3751D8E999L, empty);
+        Assert.assertEquals(0x44BC2CF5AD770999L, abc);
+        Assert.assertEquals(0xFBCEA83C8A378BF1L, sentence);
+    }
+
+    /**
+     * <p>The hash should be the same however the bytes are broken up.</p>
+     */
+
+    @Test
+    public void testUpdate_inPieces() throws Exception {
+        byte[] value = new byte[1000];
+
+        for (int i = 0; i < value.length; i++) {
+            value[i] = (byte) (i * 31);
+        }
+
+        XXHash64 bytewise = new XXHash64();
+        XXHash64 pieces = new XXHash64();
+
+        // ---------------------------------
+        for (byte b : value) {
+            bytewise.update(b);
+        }
+
+        for (int offset = 0, length = 1; offset < value.length; offset += length, length = (length * 3) % 37 + 1) {
+            pieces.update(value, offset, Math.min(length, value.length - offset));
+        }
+        // ---------------------------------
+
+        Assert.assertEquals(XXHash64.hash(value), bytewise.getValue());
+        Assert.assertEquals(XXHash64.hash(value), pieces.getValue());
+    }
+
+}
@@ -0,0 +1,148 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.bulletin.pdi.xero.step.support;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import net.oauth.OAuthAccessor;
+import net.oauth.OAuthConsumer;
+import net.oauth.OAuthMessage;
+import net.oauth.OAuthProblemException;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>These tests run the request through the {@link PooledHttpClient} against a local server that
+ * behaves as Xero does with an "ETag"; the cached response is revalidated with "If-None-Match" and
+ * the server responds that it has not been modified.</p>
+ *
+ * @author Andrew Lindesay
+ */
+
+public class XeroGetRequestTest {
+
+    private final static String ETAG = "\"v1\"";
+
+    private final static byte[] BODY = TestHelpers.createBody(50000);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private HttpServer httpServer;
+
+    private final List<String> ifNoneMatchHeaderValues = Collections.synchronizedList(new ArrayList<String>());
+
+    @Before
+    public void setUp() throws IOException {
+        httpServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        httpServer.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+                ifNoneMatchHeaderValues.add(ifNoneMatch);
+
+                if (ETAG.equals(ifNoneMatch)) {
+                    exchange.sendResponseHeaders(HttpURLConnection.HTTP_NOT_MODIFIED, -1);
+                    exchange.close();
+                } else {
+                    exchange.getResponseHeaders().add("ETag", ETAG);
+                    exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, BODY.length);
+                    OutputStream outputStream = exchange.getResponseBody();
+                    outputStream.write(BODY);
+                    outputStream.close();
+                }
+            }
+        });
+        httpServer.start();
+    }
+
+    @After
+    public void tearDown() {
+        httpServer.stop(0);
+    }
+
+    private XeroGetRequest createRequest(XeroRequestCounters requestCounters) {
+        OAuthAccessor accessor = new OAuthAccessor(new OAuthConsumer(null, "consumer", "secret", null));
+        accessor.accessToken = "consumer";
+        return new XeroGetRequest(
+                accessor,
+                "http://127.0.0.1:" + httpServer.getAddress().getPort() + "/api.xro/2.0/Contacts",
+                PooledHttpClient.getInstance(2, 30),
+                "application/xml",
+                requestCounters,
+                new XeroGetStepMetrics(requestCounters));
+    }
+
+    private byte[] readFully(InputStream inputStream) throws IOException {
+        try {
+            return IOUtils.toByteArray(inputStream);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * <p>The first response is stored into the cache with its "ETag".  The second request carries
+     * the "ETag" and, as the server says that nothing has changed, the cached body is used.</p>
+     */
+
+    @Test
+    public void testInvoke_revalidatesCachedResponse() throws Exception {
+        ResponseCache responseCache = new ResponseCache(temporaryFolder.newFolder("cache"), 1024 * 1024);
+        XeroRequestCounters requestCounters = new XeroRequestCounters();
+
+        OAuthMessage response = createRequest(requestCounters).invoke();
+        Assert.assertArrayEquals(BODY, readFully(responseCache.store(
+                "k1", response.getHeader("ETag"), response.getBodyAsStream())));
+        ResponseCache.Entry entry = responseCache.get("k1");
+        Assert.assertEquals(ETAG, entry.getEtag());
+
+        XeroGetRequest request = createRequest(requestCounters);
+        request.setIfNoneMatch(entry.getEtag());
+
+        try {
+            // ---------------------------------
+            request.invoke();
+            // ---------------------------------
+            Assert.fail("expected the response to be not modified");
+        } catch (OAuthProblemException ope) {
+            Assert.assertEquals(HttpURLConnection.HTTP_NOT_MODIFIED, ope.getHttpStatusCode());
+        }
+
+        Assert.assertEquals(2, ifNoneMatchHeaderValues.size());
+        Assert.assertNull(ifNoneMatchHeaderValues.get(0));
+        Assert.assertEquals(ETAG, ifNoneMatchHeaderValues.get(1));
+        Assert.assertArrayEquals(BODY, readFully(responseCache.openBody(entry)));
+    }
+
+}
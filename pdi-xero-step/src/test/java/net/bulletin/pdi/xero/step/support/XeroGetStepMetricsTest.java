@@ -0,0 +1,136 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.bulletin.pdi.xero.step.support;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.pentaho.di.core.exception.KettleException;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Andrew Lindesay
+ */
+
+public class XeroGetStepMetricsTest {
+
+    private XMLChunker createEmptyChunker() {
+        return new AbstractXMLChunker() {
+            @Override
+            public XMLChunk pullNextChunk() {
+                return null;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Test
+    public void testAverages() {
+        XeroGetStepMetrics metrics = new XeroGetStepMetrics(new XeroRequestCounters());
+        Assert.assertEquals(0, metrics.getAverageChunkCharacters());
+        Assert.assertEquals(0, metrics.getChunksPerSecond());
+
+        // ---------------------------------
+        metrics.addChunk(100);
+        metrics.addChunk(300);
+        metrics.addPullNanos(TimeUnit.MILLISECONDS.toNanos(500));
+        metrics.addTimeToFirstByteNanos(TimeUnit.MILLISECONDS.toNanos(100));
+        metrics.addTimeToFirstByteNanos(TimeUnit.MILLISECONDS.toNanos(300));
+        // ---------------------------------
+
+        Assert.assertEquals(2, metrics.getChunks());
+        Assert.assertEquals(200, metrics.getAverageChunkCharacters());
+        Assert.assertEquals(4, metrics.getChunksPerSecond());
+        Assert.assertEquals(500, metrics.getPullMillis());
+        Assert.assertEquals(200, metrics.getAverageTimeToFirstByteMillis());
+    }
+
+    @Test
+    public void testPrefetch() throws Exception {
+        XeroGetStepMetrics metrics = new XeroGetStepMetrics(new XeroRequestCounters());
+        Assert.assertEquals(0, metrics.getPrefetchQueueDepth());
+
+        // ---------------------------------
+        metrics.setPrefetchingXmlChunker(new PrefetchingXMLChunker(createEmptyChunker(), 3));
+        // ---------------------------------
+
+        Assert.assertEquals(3, metrics.getPrefetchQueueDepth());
+        Assert.assertEquals(0, metrics.getPrefetchQueueOccupancy());
+        Assert.assertEquals(0, metrics.getPrefetchConsumerStallMillis());
+    }
+
+    /**
+     * <p>The request is slow and so the first pull should have to wait for it.</p>
+     */
+
+    @Test
+    public void testFirstResponseWait() throws Exception {
+        XeroGetStepMetrics metrics = new XeroGetStepMetrics(new XeroRequestCounters());
+        DeferredXMLChunker chunker = new DeferredXMLChunker(new XMLChunkerProvider() {
+            @Override
+            public XMLChunker open() throws KettleException {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException ie) {
+                    throw new KettleException(ie);
+                }
+
+                return createEmptyChunker();
+            }
+        });
+        metrics.setDeferredXmlChunker(chunker);
+        chunker.start();
+
+        // ---------------------------------
+        Assert.assertNull(chunker.pullNextChunk());
+        // ---------------------------------
+
+        Assert.assertTrue(metrics.getFirstResponseWaitMillis() >= 100);
+        Assert.assertTrue(metrics.toString().contains("first row waiting for xero"));
+        chunker.close();
+    }
+
+    /**
+     * <p>The metrics should be a compliant standard MBean.</p>
+     */
+
+    @Test
+    public void testRegisterMBean() throws Exception {
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName("net.bulletin.pdi.xero:type=XeroGetStep,step=test");
+        XeroGetStepMetrics metrics = new XeroGetStepMetrics(new XeroRequestCounters());
+        metrics.addChunk(10);
+
+        // ---------------------------------
+        mBeanServer.registerMBean(metrics, objectName);
+        // ---------------------------------
+
+        try {
+            Assert.assertEquals(1L, mBeanServer.getAttribute(objectName, "Chunks"));
+            Assert.assertEquals(0, mBeanServer.getAttribute(objectName, "PrefetchQueueDepth"));
+        } finally {
+            mBeanServer.unregisterMBean(objectName);
+        }
+    }
+
+}
@@ -0,0 +1,142 @@
+/**
+ *    Copyright 2015 Bulletin.Net (NZ) Limited : www.bulletin.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.bulletin.pdi.xero.step.support;
+
+import net.oauth.OAuthException;
+import net.oauth.OAuthProblemException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+
+/**
+ * @author Andrew Lindesay
+ */
+
+public class XeroRequestSchedulerTest {
+
+    /**
+     * <p>This request fails with the supplied status a number of times before it succeeds.</p>
+     */
+
+    private static class FlakyRequest implements XeroRequest<String> {
+
+        private final int status;
+
+        private int failuresRemaining;
+
+        private int invocations = 0;
+
+        FlakyRequest(int status, int failures) {
+            this.status = status;
+            this.failuresRemaining = failures;
+        }
+
+        @Override
+        public String invoke() throws OAuthException, IOException, URISyntaxException {
+            invocations++;
+
+            if (failuresRemaining > 0) {
+                failuresRemaining--;
+                OAuthProblemException ope = new OAuthProblemException("rate limit exceeded");
+                ope.setParameter(OAuthProblemException.HTTP_STATUS_CODE, status);
+                ope.setParameter(OAuthProblemException.HTTP_RESPONSE, "HTTP " + status + "\r\nRetry-After: 0\r\n");
+                throw ope;
+            }
+
+            return "ok";
+        }
+
+    }
+
+    @Test
+    public void testExecute_retriesThrottled() throws Exception {
+        XeroRequestScheduler scheduler = new XeroRequestScheduler(1000, 100000);
+        XeroRequestCounters counters = new XeroRequestCounters();
+        FlakyRequest request = new FlakyRequest(429, 2);
+
+        // ------------------------------------------------------
+        String result = scheduler.execute(request, 3, counters);
+        // ------------------------------------------------------
+
+        Assert.assertEquals("ok", result);
+        Assert.assertEquals(3, request.invocations);
+        Assert.assertEquals(3L, counters.getRequests());
+        Assert.assertEquals(2L, counters.getRetriedRequests());
+        Assert.assertEquals(2L, counters.getThrottledRequests());
+    }
+
+    @Test
+    public void testExecute_givesUp() throws Exception {
+        XeroRequestScheduler scheduler = new XeroRequestScheduler(1000, 100000);
+        XeroRequestCounters counters = new XeroRequestCounters();
+        FlakyRequest request = new FlakyRequest(503, 5);
+
+        try {
+            // ------------------------------------------------------
+            scheduler.execute(request, 1, counters);
+            // ------------------------------------------------------
+            Assert.fail("expected the request to fail");
+        } catch (OAuthProblemException ope) {
+            Assert.assertEquals(503, ope.getHttpStatusCode());
+        }
+
+        Assert.assertEquals(2, request.invocations);
+    }
+
+    /**
+     * <p>A request that is refused for some reason other than throttling is not retried.</p>
+     */
+
+    @Test
+    public void testExecute_notThrottled() throws Exception {
+        XeroRequestScheduler scheduler = new XeroRequestScheduler(1000, 100000);
+        FlakyRequest request = new FlakyRequest(401, 1);
+
+        try {
+            // ------------------------------------------------------
+            scheduler.execute(request, 3, new XeroRequestCounters());
+            // ------------------------------------------------------
+            Assert.fail("expected the request to fail");
+        } catch (OAuthProblemException ope) {
+            Assert.assertEquals(401, ope.getHttpStatusCode());
+        }
+
+        Assert.assertEquals(1, request.invocations);
+    }
+
+    /**
+     * <p>A later caller for the same consumer key shares the scheduler and is only able to lower
+     * its limits.</p>
+     */
+
+    @Test
+    public void testGetInstance() {
+        XeroRequestScheduler scheduler = XeroRequestScheduler.getInstance("test-get-instance", 60, 5000);
+
+        // ---------------------------------
+        XeroRequestScheduler lower = XeroRequestScheduler.getInstance("test-get-instance", 30, 5000);
+        // ---------------------------------
+
+        Assert.assertSame(scheduler, lower);
+        Assert.assertFalse(scheduler.lowerLimits(60, 5000));
+        Assert.assertTrue(scheduler.lowerLimits(30, 1000));
+        Assert.assertNotSame(scheduler, XeroRequestScheduler.getInstance("test-get-instance-other", 60, 5000));
+    }
+
+}